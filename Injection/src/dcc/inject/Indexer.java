@@ -11,12 +11,8 @@
 package dcc.inject;
 
 import java.io.InputStream;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Field;
-import java.lang.reflect.Method;
 import java.util.ArrayDeque;
 import java.util.Collection;
-import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Queue;
@@ -26,8 +22,7 @@ public class Indexer {
 
 	private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(Indexer.class);
 	private Set<Class<?>> classesToInstantiate = new LinkedHashSet<>();
-	private Set<Field> fieldsToInject = new LinkedHashSet<>();
-	private Set<Method> methodsToInject = new LinkedHashSet<>();
+	private Set<Class<?>> classesToInject = new LinkedHashSet<>();
 
 	public static Indexer load(Collection<? extends Class<?>> classes) {
 		return new Indexer(classes);
@@ -72,7 +67,7 @@ public class Indexer {
 			Class<?> clazz = classesToInspect.poll();
 			for (Class<?> dependency : inspectClass(clazz)) {
 				if (!classesToInstantiate.contains(dependency)) {
-					classesToInstantiate.add(clazz);
+					classesToInstantiate.add(dependency);
 					classesToInspect.add(dependency);
 				}
 			}
@@ -80,41 +75,22 @@ public class Indexer {
 	}
 
 	private Set<Class<?>> inspectClass(Class<?> clazz) {
-		Set<Class<?>> dependencies = new HashSet<>();
 		log.debug("Inspecting class: {}", clazz);
-
-		for (Constructor<?> constructor : InjectionUtils.getConstructors(clazz)) {
-			log.debug("Inspecting constructor: {}", constructor);
-			for (Class<?> type : constructor.getParameterTypes())
-				dependencies.add(type);
-		}
-
-		for (Field field : InjectionUtils.getFields(clazz)) {
-			log.debug("Inspecting field: {}", field);
-			dependencies.add(field.getType());
-			fieldsToInject.add(field);
-		}
-
-		for (Method method : InjectionUtils.getMethods(clazz)) {
-			log.debug("Inspecting method: {}", method);
-			for (Class<?> type : method.getParameterTypes())
-				dependencies.add(type);
-			methodsToInject.add(method);
-		}
-
-		return dependencies;
+		InjectionPlan plan = InjectionPlan.of(clazz);
+		if (plan.hasMembersToInject())
+			classesToInject.add(clazz);
+		return plan.getDependencies();
 	}
 
 	Set<Class<?>> getClassesToInstantiate() {
 		return classesToInstantiate;
 	}
 
-	Set<Field> getFieldsToInject() {
-		return fieldsToInject;
-	}
-
-	Set<Method> getMethodsToInject() {
-		return methodsToInject;
+	/**
+	 * @return the inspected classes with {@link Inject} fields or methods
+	 */
+	Set<Class<?>> getClassesToInject() {
+		return classesToInject;
 	}
 
 }
@@ -0,0 +1,172 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Daniel Coelho de Castro.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Daniel Coelho de Castro - initial API and implementation
+ ******************************************************************************/
+package dcc.inject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.Set;
+
+/**
+ * Injection metadata recorded at compile time, so that classes can be
+ * injected without scanning them by reflection.
+ * <p>
+ * Subclasses are generated by
+ * {@link dcc.inject.processor.InjectionIndexProcessor}, one per module, and
+ * registered as services of this class. Every class compiled with the
+ * processor is indexed, including those without any {@link Inject} member,
+ * so the index also tells which classes need no scanning at all. Classes
+ * loaded from elsewhere, such as external modules, are scanned as before
+ * unless their index is added with {@link #load(ClassLoader)}.
+ */
+public abstract class InjectionIndex {
+
+	private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(InjectionIndex.class);
+	private static Map<String, IndexedClass> indexed;
+
+	/**
+	 * @return the indexed entry for the given class, or {@code null} if it
+	 *         was not compiled with the processor
+	 */
+	public static IndexedClass get(Class<?> clazz) {
+		return getAll().get(clazz.getName());
+	}
+
+	/**
+	 * @return the binary names of all indexed classes, empty if no index was
+	 *         generated
+	 */
+	public static Set<String> getIndexedClasses() {
+		return Collections.unmodifiableSet(getAll().keySet());
+	}
+
+	/**
+	 * @param annotation
+	 *            - canonical name of an annotation recorded by the processor
+	 * @return the binary names of the indexed classes carrying it
+	 */
+	public static Set<String> getClassesAnnotatedWith(String annotation) {
+		Set<String> classes = new LinkedHashSet<>();
+		for (IndexedClass entry : getAll().values())
+			if (entry.annotations.containsKey(annotation))
+				classes.add(entry.name);
+		return classes;
+	}
+
+	/**
+	 * Adds the indices registered in another class loader, such as the one
+	 * of an external module.
+	 */
+	public static synchronized void load(ClassLoader loader) {
+		Map<String, IndexedClass> all = new HashMap<>(getAll());
+		load(loader, all);
+		indexed = all;
+	}
+
+	private static synchronized Map<String, IndexedClass> getAll() {
+		if (indexed == null) {
+			Map<String, IndexedClass> all = new HashMap<>();
+			load(InjectionIndex.class.getClassLoader(), all);
+			indexed = all;
+		}
+		return indexed;
+	}
+
+	private static void load(ClassLoader loader, Map<String, IndexedClass> all) {
+		for (InjectionIndex index : ServiceLoader.load(InjectionIndex.class,
+				loader)) {
+			log.debug("Loaded injection index {} ({} classes)", index
+					.getClass().getName(), index.entries.size());
+			all.putAll(index.entries);
+		}
+	}
+
+	private final Map<String, IndexedClass> entries = new LinkedHashMap<>();
+
+	/**
+	 * Adds a class to this index; called by the generated subclasses.
+	 * 
+	 * @param name
+	 *            - binary name of the class
+	 */
+	protected final IndexedClass type(String name) {
+		IndexedClass entry = new IndexedClass(name);
+		entries.put(name, entry);
+		return entry;
+	}
+
+	/**
+	 * What the processor found in one class. Type names are binary names, or
+	 * keywords for primitive types, prefixed with {@value #OPTIONAL} when the
+	 * dependency is marked {@link InjectionUtils.Optional}.
+	 */
+	public static final class IndexedClass {
+
+		public static final String OPTIONAL = "?";
+
+		final String name;
+		String[] constructor;
+		final List<String> fieldNames = new ArrayList<>();
+		final List<String> fieldTypes = new ArrayList<>();
+		final List<String> methodNames = new ArrayList<>();
+		final List<String[]> methodParameters = new ArrayList<>();
+		final Map<String, Map<String, String>> annotations = new HashMap<>();
+
+		private IndexedClass(String name) {
+			this.name = name;
+		}
+
+		public IndexedClass constructor(String... parameterTypes) {
+			constructor = parameterTypes;
+			return this;
+		}
+
+		public IndexedClass field(String name, String type) {
+			fieldNames.add(name);
+			fieldTypes.add(type);
+			return this;
+		}
+
+		public IndexedClass method(String name, String... parameterTypes) {
+			methodNames.add(name);
+			methodParameters.add(parameterTypes);
+			return this;
+		}
+
+		public IndexedClass annotation(String annotation, String element,
+				String value) {
+			Map<String, String> values = annotations.get(annotation);
+			if (values == null) {
+				values = new LinkedHashMap<>();
+				annotations.put(annotation, values);
+			}
+			if (element != null)
+				values.put(element, value);
+			return this;
+		}
+
+		/**
+		 * @return the values of a recorded annotation on this class, defaults
+		 *         included, or {@code null} if it does not carry it
+		 */
+		public Map<String, String> getAnnotation(String annotation) {
+			Map<String, String> values = annotations.get(annotation);
+			return values != null ? Collections.unmodifiableMap(values) : null;
+		}
+
+	}
+
+}
@@ -0,0 +1,372 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Daniel Coelho de Castro.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Daniel Coelho de Castro - initial API and implementation
+ ******************************************************************************/
+package dcc.inject;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import dcc.inject.InjectionIndex.IndexedClass;
+
+/**
+ * How to build and inject instances of one class, worked out once and shared
+ * by all {@link Context}s.
+ * <p>
+ * The {@link Inject} members are looked up when the plan is first requested:
+ * by name if the class is in the {@link InjectionIndex}, or else by scanning
+ * the class for annotations. The plan keeps them as {@link MethodHandle}s, so
+ * creating and injecting an instance afterwards costs no more reflection.
+ */
+public final class InjectionPlan {
+
+	private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(InjectionPlan.class);
+	private static final ConcurrentHashMap<Class<?>, InjectionPlan> plans = new ConcurrentHashMap<>();
+
+	private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(
+			Object.class, Object[].class);
+	private static final MethodType SETTER_TYPE = MethodType.methodType(
+			void.class, Object.class, Object.class);
+	private static final MethodType METHOD_TYPE = MethodType.methodType(
+			void.class, Object.class, Object[].class);
+
+	/**
+	 * @return the plan for the given class, built on first use
+	 */
+	public static InjectionPlan of(Class<?> clazz) {
+		InjectionPlan plan = plans.get(clazz);
+		if (plan == null) {
+			plan = new InjectionPlan(clazz);
+			InjectionPlan previous = plans.putIfAbsent(clazz, plan);
+			if (previous != null)
+				plan = previous;
+		}
+		return plan;
+	}
+
+	/**
+	 * Forgets all plans, so that the next requests scan their classes again.
+	 */
+	public static void clearCache() {
+		plans.clear();
+	}
+
+	private static final Map<String, Class<?>> PRIMITIVES = new HashMap<>();
+	static {
+		for (Class<?> type : new Class<?>[] { boolean.class, byte.class,
+				char.class, short.class, int.class, long.class, float.class,
+				double.class })
+			PRIMITIVES.put(type.getName(), type);
+	}
+
+	private final Class<?> clazz;
+
+	private Constructor<?> constructor;
+	private MethodHandle constructorHandle;
+	private Class<?>[] constructorParameters = new Class<?>[0];
+	private boolean[] constructorOptional = new boolean[0];
+
+	private final List<Field> fields = new ArrayList<>();
+	private final List<Boolean> fieldOptional = new ArrayList<>();
+	private MethodHandle[] fieldSetters;
+
+	private final List<Method> methods = new ArrayList<>();
+	private final List<boolean[]> methodOptional = new ArrayList<>();
+	private MethodHandle[] methodHandles;
+	private Class<?>[][] methodParameters;
+
+	private final Set<Class<?>> dependencies;
+	private final Set<Class<?>> requiredDependencies;
+	private final Set<Class<?>> requiredConstructorDependencies;
+
+	private InjectionPlan(Class<?> clazz) {
+		this.clazz = clazz;
+		IndexedClass entry = InjectionIndex.get(clazz);
+		boolean indexed = false;
+		if (entry != null)
+			try {
+				findIndexedMembers(entry);
+				indexed = true;
+			} catch (ReflectiveOperationException | LinkageError e) {
+				log.warn("Stale injection index for {}, scanning it instead: {}",
+						clazz, e.toString());
+				constructor = null;
+				constructorOptional = new boolean[0];
+				fields.clear();
+				fieldOptional.clear();
+				methods.clear();
+				methodOptional.clear();
+			}
+		if (!indexed)
+			scanMembers();
+		if (constructor == null)
+			try {
+				constructor = clazz.getDeclaredConstructor();
+			} catch (NoSuchMethodException | SecurityException e) {
+				// Cannot be instantiated, but may still be injected
+			}
+		if (constructor != null) {
+			constructorParameters = constructor.getParameterTypes();
+			if (constructorOptional.length != constructorParameters.length)
+				constructorOptional = new boolean[constructorParameters.length];
+		}
+
+		createHandles();
+
+		Set<Class<?>> dependencies = new LinkedHashSet<>();
+		Set<Class<?>> required = new LinkedHashSet<>();
+		Set<Class<?>> requiredByConstructor = new LinkedHashSet<>();
+		for (int i = 0; i < constructorParameters.length; i++) {
+			dependencies.add(constructorParameters[i]);
+			if (!constructorOptional[i]) {
+				required.add(constructorParameters[i]);
+				requiredByConstructor.add(constructorParameters[i]);
+			}
+		}
+		for (int i = 0; i < fields.size(); i++) {
+			dependencies.add(fields.get(i).getType());
+			if (!fieldOptional.get(i))
+				required.add(fields.get(i).getType());
+		}
+		for (int i = 0; i < methods.size(); i++)
+			for (int j = 0; j < methodParameters[i].length; j++) {
+				dependencies.add(methodParameters[i][j]);
+				if (!methodOptional.get(i)[j])
+					required.add(methodParameters[i][j]);
+			}
+		this.dependencies = Collections.unmodifiableSet(dependencies);
+		requiredDependencies = Collections.unmodifiableSet(required);
+		requiredConstructorDependencies = Collections
+				.unmodifiableSet(requiredByConstructor);
+		log.debug("Planned injection of {}{}: {} field(s), {} method(s)",
+				clazz, indexed ? " from the index" : "", fields.size(),
+				methods.size());
+	}
+
+	private void findIndexedMembers(IndexedClass entry)
+			throws ReflectiveOperationException {
+		ClassLoader loader = clazz.getClassLoader();
+		if (entry.constructor != null) {
+			constructorOptional = optional(entry.constructor);
+			constructor = clazz.getDeclaredConstructor(resolve(
+					entry.constructor, loader));
+		}
+		for (int i = 0; i < entry.fieldNames.size(); i++) {
+			fields.add(clazz.getDeclaredField(entry.fieldNames.get(i)));
+			fieldOptional.add(entry.fieldTypes.get(i).startsWith(
+					IndexedClass.OPTIONAL));
+		}
+		for (int i = 0; i < entry.methodNames.size(); i++) {
+			String[] parameters = entry.methodParameters.get(i);
+			methods.add(clazz.getDeclaredMethod(entry.methodNames.get(i),
+					resolve(parameters, loader)));
+			methodOptional.add(optional(parameters));
+		}
+	}
+
+	private void scanMembers() {
+		for (Constructor<?> c : clazz.getDeclaredConstructors())
+			if (c.isAnnotationPresent(Inject.class)) {
+				constructor = c;
+				constructorOptional = optional(c.getParameterAnnotations());
+				break;
+			}
+		for (Field field : clazz.getDeclaredFields())
+			if (field.isAnnotationPresent(Inject.class)) {
+				fields.add(field);
+				fieldOptional.add(field
+						.isAnnotationPresent(InjectionUtils.Optional.class));
+			}
+		for (Method method : clazz.getDeclaredMethods())
+			if (method.isAnnotationPresent(Inject.class)) {
+				methods.add(method);
+				methodOptional.add(optional(method.getParameterAnnotations()));
+			}
+	}
+
+	private void createHandles() {
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+		if (constructor != null && !Modifier.isAbstract(clazz.getModifiers()))
+			try {
+				constructor.setAccessible(true);
+				constructorHandle = lookup.unreflectConstructor(constructor)
+						.asSpreader(Object[].class,
+								constructor.getParameterCount())
+						.asType(CONSTRUCTOR_TYPE);
+			} catch (IllegalAccessException | RuntimeException e) {
+				log.error("Cannot access constructor {}: {}", constructor,
+						e.toString());
+			}
+
+		List<MethodHandle> handles = new ArrayList<>();
+		for (int i = 0; i < fields.size(); i++) {
+			Field field = fields.get(i);
+			try {
+				field.setAccessible(true);
+				handles.add(lookup.unreflectSetter(field).asType(SETTER_TYPE));
+			} catch (IllegalAccessException | RuntimeException e) {
+				log.error("Cannot access field {}: {}", field, e.toString());
+				fields.remove(i);
+				fieldOptional.remove(i--);
+			}
+		}
+		fieldSetters = handles.toArray(new MethodHandle[handles.size()]);
+
+		handles.clear();
+		for (int i = 0; i < methods.size(); i++) {
+			Method method = methods.get(i);
+			try {
+				method.setAccessible(true);
+				MethodHandle handle = lookup.unreflect(method);
+				handles.add(handle.asType(handle.type().generic())
+						.asSpreader(Object[].class, method.getParameterCount())
+						.asType(METHOD_TYPE));
+			} catch (IllegalAccessException | RuntimeException e) {
+				log.error("Cannot access method {}: {}", method, e.toString());
+				methods.remove(i);
+				methodOptional.remove(i--);
+			}
+		}
+		methodHandles = handles.toArray(new MethodHandle[handles.size()]);
+		methodParameters = new Class<?>[methods.size()][];
+		for (int i = 0; i < methodParameters.length; i++)
+			methodParameters[i] = methods.get(i).getParameterTypes();
+	}
+
+	private static Class<?>[] resolve(String[] typeNames, ClassLoader loader)
+			throws ClassNotFoundException {
+		Class<?>[] types = new Class<?>[typeNames.length];
+		for (int i = 0; i < types.length; i++) {
+			String name = typeNames[i];
+			if (name.startsWith(IndexedClass.OPTIONAL))
+				name = name.substring(IndexedClass.OPTIONAL.length());
+			types[i] = PRIMITIVES.get(name);
+			if (types[i] == null)
+				types[i] = Class.forName(name, false, loader);
+		}
+		return types;
+	}
+
+	private static boolean[] optional(String[] typeNames) {
+		boolean[] optional = new boolean[typeNames.length];
+		for (int i = 0; i < optional.length; i++)
+			optional[i] = typeNames[i].startsWith(IndexedClass.OPTIONAL);
+		return optional;
+	}
+
+	private static boolean[] optional(Annotation[][] parameterAnnotations) {
+		boolean[] optional = new boolean[parameterAnnotations.length];
+		for (int i = 0; i < optional.length; i++)
+			for (Annotation annotation : parameterAnnotations[i])
+				if (annotation instanceof InjectionUtils.Optional)
+					optional[i] = true;
+		return optional;
+	}
+
+	public Class<?> getPlannedClass() {
+		return clazz;
+	}
+
+	/**
+	 * @return the classes injected into an instance, in the order they are
+	 *         resolved: constructor parameters, then fields, then method
+	 *         parameters
+	 */
+	public Set<Class<?>> getDependencies() {
+		return dependencies;
+	}
+
+	/**
+	 * @return the dependencies not marked {@link InjectionUtils.Optional}
+	 */
+	public Set<Class<?>> getRequiredDependencies() {
+		return requiredDependencies;
+	}
+
+	/**
+	 * @return the parameters of the {@link Inject} constructor not marked
+	 *         {@link InjectionUtils.Optional}
+	 */
+	public Set<Class<?>> getRequiredConstructorDependencies() {
+		return requiredConstructorDependencies;
+	}
+
+	/**
+	 * @return {@code true} if the class has fields or methods to inject after
+	 *         construction
+	 */
+	public boolean hasMembersToInject() {
+		return fieldSetters.length > 0 || methodHandles.length > 0;
+	}
+
+	/**
+	 * Creates an instance, taking the parameters of its {@link Inject}
+	 * constructor from the context, which may not have been fully injected yet.
+	 * 
+	 * @return the new instance, or {@code null} if it could not be created
+	 */
+	Object instantiate(Context context) {
+		if (constructorHandle == null) {
+			log.error("Failed to instantiate {}: no usable constructor", clazz);
+			return null;
+		}
+		Object[] params = new Object[constructorParameters.length];
+		for (int i = 0; i < params.length; i++)
+			params[i] = context.getIncomplete(constructorParameters[i]);
+		try {
+			return constructorHandle.invokeExact(params);
+		} catch (Throwable e) {
+			log.error("Failed to instantiate {} with {}: {}", clazz,
+					constructor, e.toString());
+			return null;
+		}
+	}
+
+	void injectFields(Object object, Context context) {
+		for (int i = 0; i < fieldSetters.length; i++)
+			try {
+				fieldSetters[i].invokeExact(object,
+						(Object) context.getInstance(fields.get(i).getType()));
+			} catch (Throwable e) {
+				log.error("Failed to inject field {} into {}: {}",
+						fields.get(i), object, e.toString());
+			}
+	}
+
+	void injectMethods(Object object, Context context) {
+		for (int i = 0; i < methodHandles.length; i++) {
+			Class<?>[] paramTypes = methodParameters[i];
+			Object[] params = new Object[paramTypes.length];
+			for (int j = 0; j < params.length; j++)
+				params[j] = context.getInstance(paramTypes[j]);
+			try {
+				methodHandles[i].invokeExact(object, params);
+			} catch (Throwable e) {
+				log.error("Failed to inject method {} into {}: {}",
+						methods.get(i), object, e.toString());
+			}
+		}
+	}
+
+}
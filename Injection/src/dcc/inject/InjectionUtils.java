@@ -10,7 +10,10 @@
  ******************************************************************************/
 package dcc.inject;
 
-import java.lang.annotation.Annotation;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
@@ -46,21 +49,12 @@ public final class InjectionUtils {
 		return methods;
 	}
 
+	/**
+	 * @return the classes injected into instances of {@code clazz}, taken
+	 *         from its cached {@link InjectionPlan}
+	 */
 	public static Set<Class<?>> getAllDependencies(Class<?> clazz) {
-		Set<Class<?>> dependencies = new HashSet<>();
-
-		for (Constructor<?> constructor : getConstructors(clazz))
-			for (Class<?> dependency : constructor.getParameterTypes())
-				dependencies.add(dependency);
-
-		for (Field field : getFields(clazz))
-			dependencies.add(field.getType());
-
-		for (Method method : getMethods(clazz))
-			for (Class<?> dependency : method.getParameterTypes())
-				dependencies.add(dependency);
-
-		return dependencies;
+		return new HashSet<>(InjectionPlan.of(clazz).getDependencies());
 	}
 
 	public static <T> Set<Class<? extends T>> getAllDependenciesOfType(
@@ -73,48 +67,21 @@ public final class InjectionUtils {
 		return dependenciesOfType;
 	}
 
-        public static Set<Class<?>> getRequiredDependencies(Class<?> clazz) {
-                Set<Class<?>> dependencies = new HashSet<>();
-
-                dependencies.addAll(getRequiredConstructorDependencies(clazz));
-
-                for (Field field : getFields(clazz))
-                        if (!field.isAnnotationPresent(Optional.class))
-                                dependencies.add(field.getType());
-
-		for (Method method : getMethods(clazz)) {
-			Class<?>[] types = method.getParameterTypes();
-			Annotation[][] annotations = method.getParameterAnnotations();
-			for (int i = 0; i < types.length; i++) {
-				if (isRequiredParameter(types[i], annotations[i]))
-					dependencies.add(types[i]);
-			}
-		}
+	/**
+	 * @return the dependencies of {@code clazz} not marked {@link Optional}
+	 */
+	public static Set<Class<?>> getRequiredDependencies(Class<?> clazz) {
+		return new HashSet<>(InjectionPlan.of(clazz).getRequiredDependencies());
+	}
 
-                return dependencies;
-        }
-
-        public static Set<Class<?>> getRequiredConstructorDependencies(Class<?> clazz) {
-                Set<Class<?>> dependencies = new HashSet<>();
-
-                for (Constructor<?> constructor : getConstructors(clazz)) {
-                        Class<?>[] types = constructor.getParameterTypes();
-                        Annotation[][] annotations = constructor.getParameterAnnotations();
-                        for (int i = 0; i < types.length; i++) {
-                                if (isRequiredParameter(types[i], annotations[i]))
-                                        dependencies.add(types[i]);
-                        }
-                }
-
-                return dependencies;
-        }
-
-	private static boolean isRequiredParameter(Class<?> type,
-			Annotation[] annotations) {
-		for (int i = 0; i < annotations.length; i++)
-			if (annotations[i] instanceof Optional)
-				return false;
-		return true;
+	/**
+	 * @return the parameters of the {@link Inject} constructor of
+	 *         {@code clazz} not marked {@link Optional}
+	 */
+	public static Set<Class<?>> getRequiredConstructorDependencies(
+			Class<?> clazz) {
+		return new HashSet<>(InjectionPlan.of(clazz)
+				.getRequiredConstructorDependencies());
 	}
 
 	public static <T> Set<Class<? extends T>> getRequiredDependenciesOfType(
@@ -127,6 +94,11 @@ public final class InjectionUtils {
 		return dependenciesOfType;
 	}
 
+	/**
+	 * Marks a dependency that may be missing from the context.
+	 */
+	@Retention(RetentionPolicy.RUNTIME)
+	@Target({ ElementType.FIELD, ElementType.PARAMETER })
 	public static @interface Optional {
 	}
 
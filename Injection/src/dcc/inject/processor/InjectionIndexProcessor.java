@@ -0,0 +1,322 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Daniel Coelho de Castro.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Daniel Coelho de Castro - initial API and implementation
+ ******************************************************************************/
+package dcc.inject.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+import dcc.inject.InjectionIndex;
+
+/**
+ * Writes an {@link InjectionIndex} of every class in the compiled module,
+ * with its {@link dcc.inject.Inject} constructor, fields and methods and
+ * selected class annotations, and registers it as a service.
+ * <p>
+ * Options:
+ * <ul>
+ * <li>{@value #INDEX_OPTION}: name of the generated class, which must differ
+ * between modules (default {@value #DEFAULT_INDEX});</li>
+ * <li>{@value #METADATA_OPTION}: comma-separated canonical names of class
+ * annotations to record, such as
+ * {@code dcc.mouseglob.report.ReportInfo}.</li>
+ * </ul>
+ */
+@SupportedAnnotationTypes("*")
+@SupportedOptions({ InjectionIndexProcessor.INDEX_OPTION,
+		InjectionIndexProcessor.METADATA_OPTION })
+public class InjectionIndexProcessor extends AbstractProcessor {
+
+	public static final String INDEX_OPTION = "dcc.inject.index";
+	public static final String METADATA_OPTION = "dcc.inject.metadata";
+	public static final String DEFAULT_INDEX = "dcc.inject.generated.GeneratedInjectionIndex";
+
+	private static final String INJECT = "dcc.inject.Inject";
+	private static final String OPTIONAL = "dcc.inject.InjectionUtils.Optional";
+	/** Classes per generated method, keeping each well below the size limit. */
+	private static final int CLASSES_PER_METHOD = 200;
+
+	private final List<String> entries = new ArrayList<>();
+	private final Set<String> indexed = new LinkedHashSet<>();
+	private Set<String> metadata;
+	private boolean written;
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations,
+			RoundEnvironment roundEnv) {
+		if (metadata == null) {
+			metadata = new LinkedHashSet<>();
+			String option = processingEnv.getOptions().get(METADATA_OPTION);
+			if (option != null)
+				for (String name : option.split(","))
+					if (!name.trim().isEmpty())
+						metadata.add(name.trim());
+		}
+
+		if (written)
+			return false;
+		for (Element element : roundEnv.getRootElements())
+			visit(element);
+
+		// Written after the first round rather than the last, so that the
+		// index is compiled with the rest; classes generated by other
+		// processors in later rounds are scanned at run time instead
+		if (!written && !entries.isEmpty()) {
+			written = true;
+			write();
+		}
+		// Other processors may still want the annotations
+		return false;
+	}
+
+	private void visit(Element element) {
+		if (!(element instanceof TypeElement))
+			return;
+		TypeElement type = (TypeElement) element;
+		if (type.getKind().isClass()
+				&& indexed.add(binaryName(type)))
+			entries.add(describe(type));
+		for (Element enclosed : type.getEnclosedElements())
+			visit(enclosed);
+	}
+
+	/**
+	 * @return the builder calls adding the given class to the index
+	 */
+	private String describe(TypeElement type) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("type(").append(literal(binaryName(type))).append(")");
+
+		for (Element member : type.getEnclosedElements()) {
+			if (!isAnnotated(member, INJECT))
+				continue;
+			if (member.getKind() == ElementKind.CONSTRUCTOR) {
+				sb.append("\n\t\t\t\t.constructor(")
+						.append(parameters((ExecutableElement) member))
+						.append(")");
+			} else if (member.getKind() == ElementKind.FIELD) {
+				sb.append("\n\t\t\t\t.field(")
+						.append(literal(member.getSimpleName().toString()))
+						.append(", ").append(literal(typeName(member)))
+						.append(")");
+			} else if (member.getKind() == ElementKind.METHOD) {
+				ExecutableElement method = (ExecutableElement) member;
+				sb.append("\n\t\t\t\t.method(")
+						.append(literal(method.getSimpleName().toString()));
+				if (!method.getParameters().isEmpty())
+					sb.append(", ").append(parameters(method));
+				sb.append(")");
+			}
+		}
+
+		for (AnnotationMirror annotation : type.getAnnotationMirrors()) {
+			TypeElement annotationType = (TypeElement) annotation
+					.getAnnotationType().asElement();
+			String name = annotationType.getQualifiedName().toString();
+			if (!metadata.contains(name))
+				continue;
+			Map<? extends ExecutableElement, ? extends AnnotationValue> values = processingEnv
+					.getElementUtils().getElementValuesWithDefaults(annotation);
+			if (values.isEmpty())
+				sb.append("\n\t\t\t\t.annotation(").append(literal(name))
+						.append(", null, null)");
+			for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> value : values
+					.entrySet())
+				sb.append("\n\t\t\t\t.annotation(").append(literal(name))
+						.append(", ")
+						.append(literal(value.getKey().getSimpleName()
+								.toString())).append(", ")
+						.append(literal(String.valueOf(value.getValue()
+								.getValue()))).append(")");
+		}
+		return sb.append(";").toString();
+	}
+
+	private String parameters(ExecutableElement executable) {
+		StringBuilder sb = new StringBuilder();
+		for (VariableElement parameter : executable.getParameters()) {
+			if (sb.length() > 0)
+				sb.append(", ");
+			sb.append(literal(typeName(parameter)));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return the runtime name of the element's type, marked if optional
+	 */
+	private String typeName(Element element) {
+		String name = runtimeName(processingEnv.getTypeUtils().erasure(
+				element.asType()));
+		return isAnnotated(element, OPTIONAL) ? InjectionIndex.IndexedClass.OPTIONAL
+				+ name
+				: name;
+	}
+
+	/**
+	 * @return the name {@code Class.forName} expects for the type, or the
+	 *         keyword of a primitive type
+	 */
+	private String runtimeName(TypeMirror type) {
+		if (type.getKind().isPrimitive())
+			return type.toString();
+		if (type.getKind() == TypeKind.ARRAY)
+			return "[" + descriptor(((ArrayType) type).getComponentType());
+		return binaryName((TypeElement) ((DeclaredType) type).asElement());
+	}
+
+	private String descriptor(TypeMirror type) {
+		switch (type.getKind()) {
+		case BOOLEAN:
+			return "Z";
+		case BYTE:
+			return "B";
+		case CHAR:
+			return "C";
+		case SHORT:
+			return "S";
+		case INT:
+			return "I";
+		case LONG:
+			return "J";
+		case FLOAT:
+			return "F";
+		case DOUBLE:
+			return "D";
+		case ARRAY:
+			return "[" + descriptor(((ArrayType) type).getComponentType());
+		default:
+			return "L" + runtimeName(type) + ";";
+		}
+	}
+
+	private String binaryName(TypeElement type) {
+		return processingEnv.getElementUtils().getBinaryName(type).toString();
+	}
+
+	private static boolean isAnnotated(Element element, String annotation) {
+		for (AnnotationMirror mirror : element.getAnnotationMirrors())
+			if (((TypeElement) mirror.getAnnotationType().asElement())
+					.getQualifiedName().contentEquals(annotation))
+				return true;
+		return false;
+	}
+
+	private void write() {
+		String indexName = processingEnv.getOptions().get(INDEX_OPTION);
+		if (indexName == null)
+			indexName = DEFAULT_INDEX;
+		int dot = indexName.lastIndexOf('.');
+		String packageName = dot > 0 ? indexName.substring(0, dot) : null;
+		String simpleName = indexName.substring(dot + 1);
+
+		try (Writer w = processingEnv.getFiler().createSourceFile(indexName)
+				.openWriter()) {
+			if (packageName != null)
+				w.write("package " + packageName + ";\n\n");
+			w.write("/** Generated by " + getClass().getName()
+					+ "; do not edit. */\n");
+			w.write("public final class " + simpleName + " extends "
+					+ InjectionIndex.class.getName() + " {\n\n");
+			w.write("\tpublic " + simpleName + "() {\n");
+			int parts = (entries.size() + CLASSES_PER_METHOD - 1)
+					/ CLASSES_PER_METHOD;
+			for (int part = 0; part < parts; part++)
+				w.write("\t\tpart" + part + "();\n");
+			w.write("\t}\n");
+			for (int part = 0; part < parts; part++) {
+				w.write("\n\tprivate void part" + part + "() {\n");
+				int to = Math.min(entries.size(), (part + 1)
+						* CLASSES_PER_METHOD);
+				for (int i = part * CLASSES_PER_METHOD; i < to; i++)
+					w.write("\t\t" + entries.get(i) + "\n");
+				w.write("\t}\n");
+			}
+			w.write("\n}\n");
+		} catch (IOException e) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+					"Cannot write injection index " + indexName + ": " + e);
+			return;
+		}
+
+		try {
+			FileObject services = processingEnv.getFiler().createResource(
+					StandardLocation.CLASS_OUTPUT, "",
+					"META-INF/services/" + InjectionIndex.class.getName());
+			try (Writer w = services.openWriter()) {
+				w.write(indexName + "\n");
+			}
+		} catch (IOException e) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+					"Cannot register injection index " + indexName + ": " + e);
+		}
+	}
+
+	private static String literal(String s) {
+		StringBuilder sb = new StringBuilder("\"");
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch (c) {
+			case '"':
+				sb.append("\\\"");
+				break;
+			case '\\':
+				sb.append("\\\\");
+				break;
+			case '\n':
+				sb.append("\\n");
+				break;
+			case '\r':
+				sb.append("\\r");
+				break;
+			case '\t':
+				sb.append("\\t");
+				break;
+			default:
+				if (c < 0x20 || c > 0x7e)
+					sb.append(String.format("\\u%04x", (int) c));
+				else
+					sb.append(c);
+			}
+		}
+		return sb.append('"').toString();
+	}
+
+}
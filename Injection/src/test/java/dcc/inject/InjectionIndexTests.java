@@ -0,0 +1,187 @@
+package dcc.inject;
+
+import dcc.inject.processor.InjectionIndexProcessor;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * Compiles fixtures with the injection index processor and checks the
+ * generated index and the plans built from it. No external test framework
+ * required; run main() to execute checks.
+ */
+public class InjectionIndexTests {
+
+    private static final String ANNOTATION = "fixture.Info";
+    private static final List<File> TEMP = new ArrayList<>();
+
+    private static final String INFO = "package fixture;\n"
+            + "import java.lang.annotation.*;\n"
+            + "@Retention(RetentionPolicy.RUNTIME)\n"
+            + "public @interface Info { String name(); int order() default 3; }\n";
+
+    private static final String SERVICE = "package fixture;\n"
+            + "import dcc.inject.Inject;\n"
+            + "import dcc.inject.InjectionUtils;\n"
+            + "public class Service {\n"
+            + "    public final Store store;\n"
+            + "    @Inject private Clock clock;\n"
+            + "    @Inject @InjectionUtils.Optional private Runnable missing;\n"
+            + "    @Inject int[] counts;\n"
+            + "    public Listener listener;\n"
+            + "    public int calls;\n"
+            + "    @Inject Service(Store store) { this.store = store; }\n"
+            + "    @Inject private void set%s(Listener listener) { this.listener = listener; calls++; }\n"
+            + "    public Clock getClock() { return clock; }\n"
+            + "    public Runnable getMissing() { return missing; }\n"
+            + "    public static class Store {}\n"
+            + "    public static class Clock {}\n"
+            + "    public static class Listener {}\n"
+            + "    @Info(name = \"plain\") public static class Plain {}\n"
+            + "}\n";
+
+    public static void main(String[] args) {
+        boolean ok = true;
+        try {
+            ok &= indexesMembersAndAnnotations();
+            ok &= injectsFromIndex();
+            ok &= staleIndexFallsBackToScan();
+        } catch (Throwable t) {
+            System.out.println("[DEBUG_LOG] InjectionIndex tests FAILED: " + t);
+            t.printStackTrace();
+            System.exit(1);
+        } finally {
+            for (File dir : TEMP) deleteTree(dir);
+        }
+        System.out.println("[DEBUG_LOG] InjectionIndex tests " + (ok ? "OK" : "FAILED"));
+    }
+
+    static boolean indexesMembersAndAnnotations() throws Exception {
+        ClassLoader loader = compile("Listener", "fixture.FixtureIndex");
+        InjectionIndex.load(loader);
+
+        InjectionIndex.IndexedClass service = InjectionIndex.get(loader.loadClass("fixture.Service"));
+        if (service == null) throw new AssertionError("class not indexed");
+        if (!Arrays.equals(service.constructor, new String[] { "fixture.Service$Store" }))
+            throw new AssertionError("constructor " + Arrays.toString(service.constructor));
+        if (!service.fieldNames.equals(Arrays.asList("clock", "missing", "counts")))
+            throw new AssertionError("fields " + service.fieldNames);
+        if (!service.fieldTypes.equals(Arrays.asList("fixture.Service$Clock", "?java.lang.Runnable", "[I")))
+            throw new AssertionError("field types " + service.fieldTypes);
+        if (!service.methodNames.equals(Collections.singletonList("setListener"))
+                || !Arrays.equals(service.methodParameters.get(0), new String[] { "fixture.Service$Listener" }))
+            throw new AssertionError("methods " + service.methodNames);
+
+        InjectionIndex.IndexedClass store = InjectionIndex.get(loader.loadClass("fixture.Service$Store"));
+        if (store == null || store.constructor != null || !store.fieldNames.isEmpty())
+            throw new AssertionError("plain nested class");
+
+        Set<String> annotated = InjectionIndex.getClassesAnnotatedWith(ANNOTATION);
+        if (!annotated.equals(Collections.singleton("fixture.Service$Plain")))
+            throw new AssertionError("annotated " + annotated);
+        Map<String, String> info = InjectionIndex.get(loader.loadClass("fixture.Service$Plain")).getAnnotation(ANNOTATION);
+        if (!"plain".equals(info.get("name")) || !"3".equals(info.get("order")))
+            throw new AssertionError("annotation values " + info);
+        return true;
+    }
+
+    static boolean injectsFromIndex() throws Exception {
+        ClassLoader loader = compile("Listener", "fixture.FixtureIndex");
+        InjectionIndex.load(loader);
+        Class<?> type = loader.loadClass("fixture.Service");
+        if (InjectionIndex.get(type) == null) throw new AssertionError("class not indexed");
+        check(type, new Context().getNewInstance(type));
+
+        InjectionPlan plan = InjectionPlan.of(type);
+        if (plan.getRequiredDependencies().contains(Runnable.class))
+            throw new AssertionError("optional dependency required");
+        if (!plan.getRequiredConstructorDependencies().equals(
+                Collections.singleton(loader.loadClass("fixture.Service$Store"))))
+            throw new AssertionError("constructor dependencies " + plan.getRequiredConstructorDependencies());
+        return true;
+    }
+
+    static boolean staleIndexFallsBackToScan() throws Exception {
+        // Index compiled against a setter the classes no longer have
+        ClassLoader stale = compile("Listener", "fixture.FixtureIndex");
+        ClassLoader current = compile("Observer", null);
+        URL[] urls = { ((URLClassLoader) current).getURLs()[0], ((URLClassLoader) stale).getURLs()[0] };
+        ClassLoader loader = new URLClassLoader(urls, InjectionIndexTests.class.getClassLoader());
+        InjectionIndex.load(loader);
+        Class<?> type = loader.loadClass("fixture.Service");
+        if (InjectionIndex.get(type) == null) throw new AssertionError("class not indexed");
+        check(type, new Context().getNewInstance(type));
+        return true;
+    }
+
+    // --- helpers ---
+    private static void check(Class<?> type, Object service) throws Exception {
+        if (service == null) throw new AssertionError("not instantiated");
+        if (type.getField("store").get(service) == null) throw new AssertionError("constructor not injected");
+        if (type.getMethod("getClock").invoke(service) == null) throw new AssertionError("field not injected");
+        if (type.getMethod("getMissing").invoke(service) != null) throw new AssertionError("optional field injected");
+        if (type.getField("listener").get(service) == null || type.getField("calls").getInt(service) != 1)
+            throw new AssertionError("method not injected");
+    }
+
+    /**
+     * Compiles the fixtures into a new directory, with the processor unless
+     * no index name is given, and returns a class loader over it.
+     */
+    private static ClassLoader compile(String setter, String indexName) throws IOException {
+        Path dir = tempDir("injection-index");
+        Path sources = Files.createDirectories(dir.resolve("src/fixture"));
+        Path classes = Files.createDirectories(dir.resolve("classes"));
+        Files.write(sources.resolve("Info.java"), INFO.getBytes(StandardCharsets.UTF_8));
+        Files.write(sources.resolve("Service.java"), String.format(SERVICE, setter).getBytes(StandardCharsets.UTF_8));
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        List<String> options = new ArrayList<>(Arrays.asList("-d", classes.toString(),
+                "-cp", System.getProperty("java.class.path")));
+        if (indexName == null) {
+            options.add("-proc:none");
+        } else {
+            options.add("-A" + InjectionIndexProcessor.INDEX_OPTION + "=" + indexName);
+            options.add("-A" + InjectionIndexProcessor.METADATA_OPTION + "=" + ANNOTATION);
+        }
+        try (StandardJavaFileManager files = compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8)) {
+            JavaCompiler.CompilationTask task = compiler.getTask(null, files, null, options, null,
+                    files.getJavaFileObjects(sources.resolve("Info.java").toFile(),
+                            sources.resolve("Service.java").toFile()));
+            if (indexName != null) task.setProcessors(Collections.singletonList(new InjectionIndexProcessor()));
+            if (!task.call()) throw new AssertionError("fixtures did not compile");
+        }
+        return new URLClassLoader(new URL[] { classes.toUri().toURL() },
+                InjectionIndexTests.class.getClassLoader());
+    }
+
+    /** Creates a temporary directory, deleted when the checks end. */
+    private static Path tempDir(String prefix) throws IOException {
+        Path dir = Files.createTempDirectory(prefix);
+        TEMP.add(dir.toFile());
+        return dir;
+    }
+
+    private static void deleteTree(File file) {
+        File[] children = file.listFiles();
+        if (children != null)
+            for (File child : children)
+                deleteTree(child);
+        file.delete();
+    }
+}
@@ -0,0 +1,108 @@
+package dcc.inject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Checks that cached injection plans build and inject instances as the
+ * reflective scan did, and are shared between contexts. No external test
+ * framework required; run main() to execute checks.
+ */
+public class InjectionPlanTests {
+
+    public static void main(String[] args) {
+        boolean ok = true;
+        try {
+            ok &= injectsConstructorFieldsAndMethods();
+            ok &= plansAreSharedBetweenContexts();
+            ok &= dependenciesInResolutionOrder();
+            ok &= indexerInjectsLoadedClasses();
+            ok &= uninstantiableClassGivesNull();
+        } catch (Throwable t) {
+            System.out.println("[DEBUG_LOG] InjectionPlan tests FAILED: " + t);
+            t.printStackTrace();
+            System.exit(1);
+        }
+        System.out.println("[DEBUG_LOG] InjectionPlan tests " + (ok ? "OK" : "FAILED"));
+    }
+
+    static boolean injectsConstructorFieldsAndMethods() {
+        Context context = new Context();
+        Service service = context.getNewInstance(Service.class);
+        if (service.store == null) throw new AssertionError("constructor not injected");
+        if (service.clock == null) throw new AssertionError("private field not injected");
+        if (service.listener == null || service.calls != 1) throw new AssertionError("private method not injected");
+        if (context.getInstance(Store.class) != service.store) throw new AssertionError("dependency not shared");
+        if (context.getNewInstance(Service.class) == service) throw new AssertionError("new instance reused");
+        return true;
+    }
+
+    static boolean plansAreSharedBetweenContexts() {
+        InjectionPlan plan = InjectionPlan.of(Service.class);
+        new Context().getNewInstance(Service.class);
+        new Context().getNewInstance(Service.class);
+        if (InjectionPlan.of(Service.class) != plan) throw new AssertionError("plan rebuilt");
+        InjectionPlan.clearCache();
+        if (InjectionPlan.of(Service.class) == plan) throw new AssertionError("cache not cleared");
+        return true;
+    }
+
+    static boolean dependenciesInResolutionOrder() {
+        List<Class<?>> order = new ArrayList<>(InjectionPlan.of(Service.class).getDependencies());
+        if (!order.equals(Arrays.asList(Store.class, Clock.class, Listener.class)))
+            throw new AssertionError("order " + order);
+        if (!InjectionUtils.getAllDependencies(Service.class).containsAll(order))
+            throw new AssertionError("getAllDependencies");
+        if (InjectionPlan.of(Store.class).hasMembersToInject()) throw new AssertionError("plain class has members");
+        return true;
+    }
+
+    static boolean indexerInjectsLoadedClasses() {
+        Context context = new Context();
+        context.inject(Indexer.load(Service.class));
+        Service service = context.getInstance(Service.class);
+        if (service.clock == null || service.listener == null || service.calls != 1)
+            throw new AssertionError("indexed class not injected");
+        return true;
+    }
+
+    static boolean uninstantiableClassGivesNull() {
+        if (new Context().getNewInstance(NoDefault.class) != null) throw new AssertionError("instantiated without a constructor");
+        return true;
+    }
+
+    // --- fixtures ---
+    static class Store {
+    }
+
+    static class Clock {
+    }
+
+    static class Listener {
+    }
+
+    static class Service {
+        final Store store;
+        @Inject
+        private Clock clock;
+        Listener listener;
+        int calls;
+
+        @Inject
+        private Service(Store store) {
+            this.store = store;
+        }
+
+        @Inject
+        private void setListener(Listener listener) {
+            this.listener = listener;
+            calls++;
+        }
+    }
+
+    static class NoDefault {
+        NoDefault(int value) {
+        }
+    }
+}
@@ -56,7 +56,7 @@ public class Box {
 		double l = Math.min(left, box.left);
 		double r = Math.max(right, box.right);
 		double t = Math.min(top, box.top);
-		double b = Math.min(bottom, box.bottom);
+		double b = Math.max(bottom, box.bottom);
 		return new Box(l, t, r, b);
 	}
 
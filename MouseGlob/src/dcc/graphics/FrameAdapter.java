@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Daniel Coelho de Castro.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Daniel Coelho de Castro - initial API and implementation
+ ******************************************************************************/
+package dcc.graphics;
+
+import java.nio.ByteBuffer;
+
+import org.bytedeco.javacv.Frame;
+
+import dcc.graphics.image.GrayscaleImage;
+import dcc.graphics.image.Image;
+import dcc.graphics.math.async.Operation1D;
+
+/**
+ * Copies decoded FFmpeg frames straight into {@link Image} pixels, without
+ * going through a <code>BufferedImage</code>. Only packed 8-bit BGR (the
+ * grabber's default) and 8-bit gray frames are handled; for anything else the
+ * methods return <code>null</code> and callers should fall back to
+ * <code>Java2DFrameConverter</code>.
+ */
+public final class FrameAdapter {
+
+	private FrameAdapter() {
+	}
+
+	/**
+	 * Determines whether the frame's pixel layout can be read directly.
+	 * 
+	 * @param frame
+	 *            - a decoded video frame
+	 * @return <code>true</code> for BGR24 and GRAY8 frames
+	 */
+	public static boolean isSupported(Frame frame) {
+		return frame != null && frame.image != null && frame.image.length > 0
+				&& frame.image[0] instanceof ByteBuffer
+				&& frame.imageDepth == Frame.DEPTH_UBYTE
+				&& (frame.imageChannels == 3 || frame.imageChannels == 1)
+				&& frame.imageWidth > 0 && frame.imageHeight > 0;
+	}
+
+	/**
+	 * Copies a frame into an ARGB image, reusing the destination's pixel
+	 * buffer when possible.
+	 * 
+	 * @param frame
+	 *            - a BGR24 or GRAY8 frame
+	 * @param destination
+	 *            - image to fill, or <code>null</code>
+	 * @return the filled image, or <code>null</code> if the frame is not
+	 *         supported
+	 */
+	public static Image frameToImage(Frame frame, Image destination) {
+		if (!isSupported(frame))
+			return null;
+
+		destination = resize(frame, destination);
+		if (frame.imageChannels == 1)
+			new GrayRows(frame, destination.getPixels()).execute();
+		else
+			new BGRRows(frame, destination.getPixels(), false).execute();
+		return destination;
+	}
+
+	/**
+	 * Fills a grayscale image with the luminance of a frame, as
+	 * {@link Image#luminance(GrayscaleImage)} would compute it from the
+	 * {@link #frameToImage(Frame, Image) converted} frame, in one pass.
+	 * 
+	 * @param frame
+	 *            - a BGR24 or GRAY8 frame
+	 * @param destination
+	 *            - image to fill, or <code>null</code>
+	 * @return the filled image, or <code>null</code> if the frame is not
+	 *         supported
+	 */
+	public static GrayscaleImage frameToGrayscale(Frame frame,
+			GrayscaleImage destination) {
+		if (!isSupported(frame))
+			return null;
+
+		if (destination == null)
+			destination = new GrayscaleImage(frame.imageWidth,
+					frame.imageHeight);
+		else
+			destination.setSize(frame.imageWidth, frame.imageHeight);
+		if (frame.imageChannels == 1)
+			new GrayRows(frame, destination.getPixels()).execute();
+		else
+			new BGRRows(frame, destination.getPixels(), true).execute();
+		return destination;
+	}
+
+	private static Image resize(Frame frame, Image destination) {
+		if (destination == null)
+			return new Image(frame.imageWidth, frame.imageHeight);
+		destination.setSize(frame.imageWidth, frame.imageHeight);
+		return destination;
+	}
+
+	private static class BGRRows extends Operation1D {
+
+		private final ByteBuffer src;
+		private final int[] dst;
+		private final int width, stride;
+		private final boolean luma;
+
+		BGRRows(Frame frame, int[] dst, boolean luma) {
+			super(frame.imageHeight);
+			this.src = (ByteBuffer) frame.image[0];
+			this.dst = dst;
+			this.width = frame.imageWidth;
+			this.stride = frame.imageStride;
+			this.luma = luma;
+		}
+
+		@Override
+		protected void compute(int y) {
+			int s = y * stride;
+			int d = y * width;
+			for (int x = 0; x < width; x++, s += 3, d++) {
+				int b = src.get(s) & 0xff;
+				int g = src.get(s + 1) & 0xff;
+				int r = src.get(s + 2) & 0xff;
+				dst[d] = luma ? Color.luma(r, g, b) : Color.rgb(r, g, b);
+			}
+		}
+
+	}
+
+	private static class GrayRows extends Operation1D {
+
+		private final ByteBuffer src;
+		private final int[] dst;
+		private final int width, stride;
+
+		GrayRows(Frame frame, int[] dst) {
+			super(frame.imageHeight);
+			this.src = (ByteBuffer) frame.image[0];
+			this.dst = dst;
+			this.width = frame.imageWidth;
+			this.stride = frame.imageStride;
+		}
+
+		@Override
+		protected void compute(int y) {
+			int s = y * stride;
+			int d = y * width;
+			for (int x = 0; x < width; x++)
+				dst[d + x] = Color.gray(src.get(s + x) & 0xff);
+		}
+
+	}
+
+}
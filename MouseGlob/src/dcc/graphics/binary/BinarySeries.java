@@ -32,6 +32,14 @@ public class BinarySeries extends DefaultBinaryMask1D {
 		bits.set(size++, value);
 	}
 
+	/**
+	 * Adds the same value several times.
+	 */
+	public void add(boolean value, int count) {
+		bits.set(size, size + count, value);
+		size += count;
+	}
+
 	@Override
 	public boolean get(int index) {
 		if (index < 0 || index >= size)
@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Daniel Coelho de Castro.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ *
+ * Contributors:
+ *     Daniel Coelho de Castro - initial API and implementation
+ ******************************************************************************/
+package dcc.graphics.binary;
+
+import java.util.Arrays;
+
+import dcc.graphics.Box;
+import dcc.graphics.math.SummedAreaTable;
+
+/**
+ * Run-length encoding of a binary mask as vertical runs, one or more per
+ * column. The mask is sampled once; sums over it then cost one summed-area
+ * table lookup per run instead of one per pixel.
+ */
+public class MaskRuns {
+
+	/** Triples (x, top, bottom), bottom exclusive. */
+	private final int[] runs;
+	private final int count;
+	private final int area;
+
+	public MaskRuns(BinaryMask2D mask, Box.Int bounds) {
+		int[] r = new int[48];
+		int n = 0, a = 0;
+		for (int x = bounds.left; x < bounds.right; x++) {
+			int top = -1;
+			for (int y = bounds.top; y <= bounds.bottom; y++) {
+				boolean inside = y < bounds.bottom && mask.get(x, y);
+				if (inside && top < 0) {
+					top = y;
+				} else if (!inside && top >= 0) {
+					if (3 * n + 3 > r.length)
+						r = Arrays.copyOf(r, 2 * r.length);
+					r[3 * n] = x;
+					r[3 * n + 1] = top;
+					r[3 * n + 2] = y;
+					a += y - top;
+					n++;
+					top = -1;
+				}
+			}
+		}
+		runs = Arrays.copyOf(r, 3 * n);
+		count = n;
+		area = a;
+	}
+
+	/**
+	 * @return the number of runs
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * @return the number of pixels in the mask
+	 */
+	public int getArea() {
+		return area;
+	}
+
+	/**
+	 * @param table
+	 *            - summed-area table of the values to add
+	 * @return the sum of the values under the mask
+	 */
+	public double sum(SummedAreaTable table) {
+		double sum = 0;
+		for (int i = 0; i < runs.length; i += 3) {
+			int x = runs[i];
+			sum += table.getSum(x, runs[i + 1], x + 1, runs[i + 2]);
+		}
+		return sum;
+	}
+
+}
@@ -198,6 +198,10 @@ public class BinaryImage extends GrayscaleImage {
 		return get(x, y) == Color.WHITE;
 	}
 
+	public PackedBinaryImage pack(PackedBinaryImage destination) {
+		return PackedBinaryImage.pack(this, destination);
+	}
+
 	public BinaryImage invert(BinaryImage destination) {
 		return new BinaryImage(super.invert(destination));
 	}
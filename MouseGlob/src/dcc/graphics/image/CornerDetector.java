@@ -47,6 +47,7 @@ public class CornerDetector extends ScalarMap {
 				v[i][j] = noble(structure.get(i, j));
 			}
 		}.execute();
+		modified();
 
 		gIx2.release();
 		gIy2.release();
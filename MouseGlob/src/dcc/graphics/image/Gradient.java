@@ -40,6 +40,8 @@ public class Gradient extends VectorMap {
 
 		dx(map, x.getValues());
 		dy(map, y.getValues());
+		x.modified();
+		y.modified();
 	}
 
 	public void calculate(ScalarMap map, double sigma) {
@@ -50,6 +52,8 @@ public class Gradient extends VectorMap {
 		double[] dg = FilterFactory.dGaussian(sigma);
 		apply(map.getValues(), x.getValues(), buffer, dg, g);
 		apply(map.getValues(), y.getValues(), buffer, g, dg);
+		x.modified();
+		y.modified();
 	}
 
 	private static void dx(final ScalarMap map, final double[][] dst) {
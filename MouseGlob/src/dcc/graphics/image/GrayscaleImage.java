@@ -13,6 +13,7 @@ package dcc.graphics.image;
 import dcc.graphics.Box;
 import dcc.graphics.Color;
 import dcc.graphics.math.async.Operation1D;
+import dcc.graphics.math.async.RowBands;
 
 public class GrayscaleImage extends Image {
 	public GrayscaleImage(int width, int height, int[] pixels) {
@@ -98,7 +99,7 @@ public class GrayscaleImage extends Image {
 	}
 
 	public GrayscaleImage blur(double sigma, GrayscaleImage destination) {
-		return new GrayscaleImage(super.blur(sigma, destination));
+		return SeparableFilter.gaussian(sigma).apply(this, destination);
 	}
 
 	public GrayscaleImage invert(GrayscaleImage destination) {
@@ -119,6 +120,156 @@ public class GrayscaleImage extends Image {
 		return applyLUT(lut, destination);
 	}
 
+	/**
+	 * Adaptive threshold against the mean gray level of a square window
+	 * around each pixel. Windows are cut at the image borders. The cost per
+	 * pixel does not depend on the window size.
+	 * 
+	 * @param blockSize
+	 *            - side of the window, in pixels (odd)
+	 * @param c
+	 *            - how much brighter than the mean a pixel must be to be set
+	 *            (darker, if {@code inverse})
+	 * @param inverse
+	 *            - {@code true} to select pixels darker than their
+	 *            surroundings
+	 * @param integral
+	 *            - integral image to build and use, or {@code null}
+	 * @param destination
+	 *            - where to write the result, or {@code null}
+	 * @return the thresholded image
+	 */
+	public BinaryImage meanThreshold(int blockSize, final int c,
+			final boolean inverse, IntegralImage integral,
+			BinaryImage destination) {
+		final IntegralImage table = (integral != null ? integral
+				: new IntegralImage(false)).compute(this);
+		final BinaryImage result = check(destination);
+		final int[] dst = result.pixels;
+		final int r = blockSize / 2;
+		new RowBands(height) {
+			@Override
+			protected void compute(int from, int to) {
+				for (int y = from; y < to; y++) {
+					int y0 = Math.max(0, y - r), y1 = Math.min(height, y + r + 1);
+					for (int x = 0; x < width; x++) {
+						int x0 = Math.max(0, x - r), x1 = Math.min(width, x
+								+ r + 1);
+						int area = (x1 - x0) * (y1 - y0);
+						// g > mean + c, without dividing
+						int g = pixels[x + y * width] & 0xff;
+						int sum = table.getSum(x0, y0, x1, y1);
+						boolean set = inverse ? g * area < sum - c * area
+								: g * area > sum + c * area;
+						dst[x + y * width] = set ? Color.WHITE : Color.BLACK;
+					}
+				}
+			}
+		}.execute();
+		return result;
+	}
+
+	/**
+	 * Sauvola's adaptive threshold: the threshold of each pixel is
+	 * {@code m * (1 + k * (s / r - 1))}, where {@code m} and {@code s} are the
+	 * mean and standard deviation of a square window around it. Low-contrast
+	 * windows therefore get a threshold away from their mean, which keeps
+	 * uniform background out of the result. Bright objects are found by
+	 * applying the rule to inverted gray levels.
+	 * 
+	 * @param blockSize
+	 *            - side of the window, in pixels (odd)
+	 * @param k
+	 *            - sensitivity, typically between 0.2 and 0.5
+	 * @param r
+	 *            - dynamic range of the standard deviation, typically 128
+	 * @param inverse
+	 *            - {@code true} to select pixels darker than their
+	 *            surroundings
+	 * @param integral
+	 *            - integral image with sums of squares to build and use, or
+	 *            {@code null}
+	 * @param destination
+	 *            - where to write the result, or {@code null}
+	 * @return the thresholded image
+	 */
+	public BinaryImage sauvolaThreshold(int blockSize, final double k,
+			final double r, final boolean inverse, IntegralImage integral,
+			BinaryImage destination) {
+		if (integral != null && !integral.hasSquares())
+			throw new IllegalArgumentException(
+					"Sauvola thresholding needs sums of squares");
+		final IntegralImage table = (integral != null ? integral
+				: new IntegralImage(true)).compute(this);
+		final BinaryImage result = check(destination);
+		final int[] dst = result.pixels;
+		final int half = blockSize / 2;
+		new RowBands(height) {
+			@Override
+			protected void compute(int from, int to) {
+				for (int y = from; y < to; y++) {
+					int y0 = Math.max(0, y - half), y1 = Math.min(height, y
+							+ half + 1);
+					for (int x = 0; x < width; x++) {
+						int x0 = Math.max(0, x - half), x1 = Math.min(width, x
+								+ half + 1);
+						double area = (x1 - x0) * (y1 - y0);
+						double mean = table.getSum(x0, y0, x1, y1) / area;
+						double variance = table.getSumOfSquares(x0, y0, x1, y1)
+								/ area - mean * mean;
+						double s = Math.sqrt(Math.max(0, variance));
+						int g = pixels[x + y * width] & 0xff;
+						boolean set;
+						if (inverse)
+							set = g < mean * (1 + k * (s / r - 1));
+						else
+							set = 255 - g < (255 - mean) * (1 + k * (s / r - 1));
+						dst[x + y * width] = set ? Color.WHITE : Color.BLACK;
+					}
+				}
+			}
+		}.execute();
+		return result;
+	}
+
+	public PackedBinaryImage threshold(int threshold,
+			PackedBinaryImage destination) {
+		return packThreshold(threshold, false, destination);
+	}
+
+	public PackedBinaryImage inverseThreshold(int threshold,
+			PackedBinaryImage destination) {
+		return packThreshold(threshold, true, destination);
+	}
+
+	private PackedBinaryImage packThreshold(final int threshold,
+			final boolean inverse, PackedBinaryImage destination) {
+		if (destination == null)
+			destination = new PackedBinaryImage(width, height);
+		else
+			destination.setSize(width, height);
+
+		final long[] dst = destination.words;
+		final int stride = destination.stride;
+		new Operation1D(height) {
+			@Override
+			protected void compute(int y) {
+				int offset = y * width;
+				int row = y * stride;
+				for (int w = 0; w < stride; w++) {
+					int start = w << 6;
+					int end = Math.min(start + 64, width);
+					long bits = 0L;
+					for (int x = start; x < end; x++)
+						if ((Color.r(pixels[offset + x]) >= threshold) != inverse)
+							bits |= 1L << (x & 63);
+					dst[row + w] = bits;
+				}
+			}
+		}.execute();
+		return destination;
+	}
+
 	public BinaryImage bandThreshold(int center, int threshold,
 			BinaryImage destination) {
 		int[] lut = new int[256];
@@ -64,6 +64,7 @@ public class Hough extends ScalarMap {
 					}
 				}
 			}
+			modified();
 		}
 	}
 
@@ -10,6 +10,7 @@
  ******************************************************************************/
 package dcc.graphics.image;
 
+import java.util.Arrays;
 import java.util.Iterator;
 
 import dcc.graphics.Box;
@@ -65,20 +66,16 @@ public class Image implements Map<Integer>, Cloneable {
 	}
 
 	public Image copy(Image destination, int x0, int y0, int x1, int y1) {
-		x1 = Math.min(x1, width);
-		y1 = Math.min(y1, width);
+		x1 = Math.min(x1, width - 1);
+		y1 = Math.min(y1, height - 1);
 		int w = x1 - x0 + 1;
 		int h = y1 - y0 + 1;
 
 		if (destination == null)
 			destination = new Image(w, h);
 
-		else if (destination.pixels.length != w * h) {
-			destination.release();
-			destination.pixels = IntegerArrayPool.get(w * h);
-			destination.width = w;
-			destination.height = h;
-		}
+		else
+			destination.setSize(w, h);
 
 		for (int j = 0; j < h; j++)
 			System.arraycopy(pixels, x0 + (j + y0) * width, destination.pixels,
@@ -95,6 +92,37 @@ public class Image implements Map<Integer>, Cloneable {
 		return copy(destination, x0, y0, x1, y1);
 	}
 
+	/**
+	 * Copies an image into this one, with its top-left corner at the given
+	 * position. The image must fit.
+	 * 
+	 * @param image
+	 *            - the image to copy from
+	 * @param x0
+	 *            - horizontal position of its left column
+	 * @param y0
+	 *            - vertical position of its top row
+	 */
+	public void paste(Image image, int x0, int y0) {
+		for (int j = 0; j < image.height; j++)
+			System.arraycopy(image.pixels, j * image.width, pixels, x0
+					+ (j + y0) * width, image.width);
+	}
+
+	/**
+	 * Sets every pixel inside a box (inclusive of its corners) to one colour.
+	 * 
+	 * @param box
+	 *            - the region to fill
+	 * @param c
+	 *            - the colour
+	 */
+	public void fill(Box.Int box, int c) {
+		for (int y = box.top; y <= box.bottom; y++)
+			Arrays.fill(pixels, box.left + y * width, box.right + 1 + y * width,
+					c);
+	}
+
 	@Override
 	public final Integer get(int x, int y) {
 		return pixels[x + y * width];
@@ -210,9 +238,17 @@ public class Image implements Map<Integer>, Cloneable {
 		return this;
 	}
 
+	/**
+	 * Gaussian blur of each colour channel; see {@link SeparableFilter}.
+	 * 
+	 * @param sigma
+	 *            - standard deviation, in pixels
+	 * @param destination
+	 *            - where to write the result; may be this image
+	 * @return the blurred image
+	 */
 	public Image blur(double sigma, Image destination) {
-		return filter(FilterFactory.gaussianX(sigma), destination).filter(
-				FilterFactory.gaussianY(sigma), destination);
+		return SeparableFilter.gaussian(sigma).apply(this, destination);
 	}
 
 	public Image brighten(int x, Image destination) {
@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Daniel Coelho de Castro.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ *
+ * Contributors:
+ *     Daniel Coelho de Castro - initial API and implementation
+ ******************************************************************************/
+package dcc.graphics.image;
+
+/**
+ * Integral image (summed-area table) of a grayscale image: once built, the sum
+ * of the gray levels in any rectangle, and optionally the sum of their
+ * squares, is read in constant time.
+ * <p>
+ * Rectangles are half-open, from {@code (x0, y0)} inclusive to
+ * {@code (x1, y1)} exclusive, and must lie inside the image. Tables are kept
+ * between calls to {@link #compute(GrayscaleImage)}, so one instance can be
+ * reused frame after frame without allocating.
+ */
+public class IntegralImage {
+
+	private final boolean squares;
+	private int width, height;
+	/** Row-major: entry (x, y) at y * (width + 1) + x. */
+	private int[] sums;
+	private long[] sumsOfSquares;
+
+	/**
+	 * @param squares
+	 *            - whether to also keep the sums of squared gray levels
+	 */
+	public IntegralImage(boolean squares) {
+		this.squares = squares;
+	}
+
+	public boolean hasSquares() {
+		return squares;
+	}
+
+	public IntegralImage compute(GrayscaleImage image) {
+		int w = image.width, h = image.height;
+		if (sums == null || w != width || h != height) {
+			// The first row and column stay zero
+			sums = new int[(w + 1) * (h + 1)];
+			sumsOfSquares = squares ? new long[sums.length] : null;
+		}
+		width = w;
+		height = h;
+
+		// Sums may wrap around on huge images; rectangle sums stay exact as
+		// long as they fit in an int
+		int[] pixels = image.pixels;
+		int stride = w + 1;
+		for (int y = 0; y < h; y++) {
+			int row = y * w, prev = y * stride + 1, curr = prev + stride;
+			int rowSum = 0;
+			long rowSquares = 0;
+			for (int x = 0; x < w; x++) {
+				int v = pixels[row + x] & 0xff;
+				rowSum += v;
+				sums[curr + x] = sums[prev + x] + rowSum;
+				if (squares) {
+					rowSquares += v * v;
+					sumsOfSquares[curr + x] = sumsOfSquares[prev + x]
+							+ rowSquares;
+				}
+			}
+		}
+		return this;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getSum(int x0, int y0, int x1, int y1) {
+		int stride = width + 1;
+		return sums[y1 * stride + x1] - sums[y0 * stride + x1]
+				- sums[y1 * stride + x0] + sums[y0 * stride + x0];
+	}
+
+	public long getSumOfSquares(int x0, int y0, int x1, int y1) {
+		int stride = width + 1;
+		return sumsOfSquares[y1 * stride + x1] - sumsOfSquares[y0 * stride + x1]
+				- sumsOfSquares[y1 * stride + x0] + sumsOfSquares[y0 * stride + x0];
+	}
+
+	public double getMean(int x0, int y0, int x1, int y1) {
+		return (double) getSum(x0, y0, x1, y1) / ((x1 - x0) * (y1 - y0));
+	}
+
+}
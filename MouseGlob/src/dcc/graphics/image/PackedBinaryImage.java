@@ -0,0 +1,432 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Daniel Coelho de Castro.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Daniel Coelho de Castro - initial API and implementation
+ ******************************************************************************/
+package dcc.graphics.image;
+
+import java.util.Arrays;
+
+import dcc.graphics.Box;
+import dcc.graphics.Color;
+import dcc.graphics.binary.BinaryMask2D;
+import dcc.graphics.math.async.Operation1D;
+import dcc.graphics.pool.LongArrayPool;
+
+/**
+ * Bit-packed counterpart of {@link BinaryImage}. Each row is stored in
+ * <code>stride</code> consecutive <code>long</code> words, 64 pixels per word
+ * (pixel <code>x</code> is bit <code>x % 64</code> of word <code>x / 64</code>
+ * ). Bits past the end of a row are always zero.
+ * <p>
+ * Morphology and logical operations work on whole words at a time, and
+ * follow the same conventions as their {@link BinaryImage} counterparts:
+ * structuring element entries are used if non-zero, and pixels closer to the
+ * border than the element radius are copied unchanged.
+ */
+public class PackedBinaryImage implements BinaryMask2D, Cloneable {
+
+	private static final int SHIFT = 6;
+	private static final int BITS = 1 << SHIFT;
+	private static final int MOD = BITS - 1;
+
+	protected int width;
+	protected int height;
+	protected int stride;
+	protected long[] words;
+
+	public PackedBinaryImage(int width, int height) {
+		this.width = width;
+		this.height = height;
+		stride = strideOf(width);
+		words = LongArrayPool.get(stride * height);
+		Arrays.fill(words, 0L);
+	}
+
+	public static int strideOf(int width) {
+		return (width + MOD) >>> SHIFT;
+	}
+
+	public final void setSize(int newWidth, int newHeight) {
+		if (width != newWidth || height != newHeight) {
+			release();
+			width = newWidth;
+			height = newHeight;
+			stride = strideOf(width);
+			words = LongArrayPool.get(stride * height);
+			Arrays.fill(words, 0L);
+		}
+	}
+
+	@Override
+	public PackedBinaryImage clone() {
+		return copy(null);
+	}
+
+	public PackedBinaryImage copy(PackedBinaryImage destination) {
+		destination = check(destination);
+		System.arraycopy(words, 0, destination.words, 0, words.length);
+		return destination;
+	}
+
+	public PackedBinaryImage copy(PackedBinaryImage destination, Box.Int box) {
+		final int x0 = box.left;
+		final int y0 = box.top;
+		destination = check(destination, box.width + 1, box.height + 1);
+		final PackedBinaryImage dst = destination;
+		new Operation1D(dst.height) {
+			@Override
+			protected void compute(int j) {
+				int row = j * dst.stride;
+				for (int w = 0; w < dst.stride; w++)
+					dst.words[row + w] = word(y0 + j, x0 + (w << SHIFT));
+				dst.words[row + dst.stride - 1] &= dst.tailMask();
+			}
+		}.execute();
+		return destination;
+	}
+
+	public PackedBinaryImage get(Box.Int box) {
+		return copy(null, box);
+	}
+
+	/**
+	 * Packs a binary image, setting the pixels equal to {@link Color#WHITE}.
+	 */
+	public static PackedBinaryImage pack(BinaryImage image,
+			PackedBinaryImage destination) {
+		return pack(image, 0, 0, image.width, image.height, destination);
+	}
+
+	/**
+	 * Packs the region of a binary image delimited by the given box, as in
+	 * {@link BinaryImage#get(Box.Int)}, without creating the intermediate
+	 * cropped image.
+	 */
+	public static PackedBinaryImage pack(BinaryImage image, Box.Int box,
+			PackedBinaryImage destination) {
+		return pack(image, box.left, box.top, box.width + 1, box.height + 1,
+				destination);
+	}
+
+	private static PackedBinaryImage pack(BinaryImage image, final int x0,
+			final int y0, int w, int h, PackedBinaryImage destination) {
+		if (destination == null)
+			destination = new PackedBinaryImage(w, h);
+		else
+			destination.setSize(w, h);
+
+		final int[] src = image.pixels;
+		final int srcWidth = image.width;
+		final PackedBinaryImage dst = destination;
+		new Operation1D(h) {
+			@Override
+			protected void compute(int j) {
+				int offset = x0 + (y0 + j) * srcWidth;
+				int row = j * dst.stride;
+				for (int w = 0; w < dst.stride; w++) {
+					int start = w << SHIFT;
+					int end = Math.min(start + BITS, dst.width);
+					long bits = 0L;
+					for (int x = start; x < end; x++)
+						if (src[offset + x] == Color.WHITE)
+							bits |= 1L << (x & MOD);
+					dst.words[row + w] = bits;
+				}
+			}
+		}.execute();
+		return destination;
+	}
+
+	/**
+	 * Expands this image back to the <code>int</code>-backed representation.
+	 */
+	public BinaryImage unpack(BinaryImage destination) {
+		if (destination == null || destination.width != width
+				|| destination.height != height)
+			destination = new BinaryImage(width, height);
+
+		final int[] dst = destination.pixels;
+		new Operation1D(height) {
+			@Override
+			protected void compute(int y) {
+				int row = y * stride;
+				int offset = y * width;
+				for (int x = 0; x < width; x++) {
+					long bit = words[row + (x >>> SHIFT)] >>> (x & MOD);
+					dst[offset + x] = (bit & 1L) != 0 ? Color.WHITE
+							: Color.BLACK;
+				}
+			}
+		}.execute();
+		return destination;
+	}
+
+	@Override
+	public final boolean get(int x, int y) {
+		return ((words[y * stride + (x >>> SHIFT)] >>> (x & MOD)) & 1L) != 0;
+	}
+
+	public final boolean checkPixel(int x, int y) {
+		return get(x, y);
+	}
+
+	public final void set(int x, int y, boolean value) {
+		int i = y * stride + (x >>> SHIFT);
+		long bit = 1L << (x & MOD);
+		if (value)
+			words[i] |= bit;
+		else
+			words[i] &= ~bit;
+	}
+
+	public void clear() {
+		Arrays.fill(words, 0L);
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getStride() {
+		return stride;
+	}
+
+	public long[] getWords() {
+		return words;
+	}
+
+	public Box getBox() {
+		return Box.fromSize(width - 1, height - 1);
+	}
+
+	public boolean dimensionsMatch(PackedBinaryImage image) {
+		return width == image.width && height == image.height;
+	}
+
+	/**
+	 * @return the number of set pixels
+	 */
+	public int count() {
+		int count = 0;
+		for (long word : words)
+			count += Long.bitCount(word);
+		return count;
+	}
+
+	public PackedBinaryImage dilate(int[][] element,
+			PackedBinaryImage destination) {
+		return morph(element, true, destination);
+	}
+
+	public PackedBinaryImage erode(int[][] element,
+			PackedBinaryImage destination) {
+		return morph(element, false, destination);
+	}
+
+	public PackedBinaryImage open(int[][] element,
+			PackedBinaryImage destination) {
+		PackedBinaryImage eroded = erode(element, null);
+		destination = eroded.dilate(element, destination);
+		eroded.release();
+		return destination;
+	}
+
+	public PackedBinaryImage close(int[][] element,
+			PackedBinaryImage destination) {
+		PackedBinaryImage dilated = dilate(element, null);
+		destination = dilated.erode(element, destination);
+		dilated.release();
+		return destination;
+	}
+
+	public PackedBinaryImage hitAndMiss(int[][] element,
+			PackedBinaryImage destination) {
+		return erode(element, destination);
+	}
+
+	private PackedBinaryImage morph(int[][] element, final boolean dilate,
+			PackedBinaryImage destination) {
+		destination = check(destination);
+		final PackedBinaryImage target = (destination == this) ? new PackedBinaryImage(
+				width, height) : destination;
+
+		final int ew = element[0].length;
+		final int eh = element.length;
+
+		final int rw = (ew - 1) / 2;
+		final int rh = (eh - 1) / 2;
+
+		int n = 0;
+		for (int j = 0; j < eh; j++)
+			for (int i = 0; i < ew; i++)
+				if (element[j][i] != 0)
+					n++;
+
+		final int[] dx = new int[n], dy = new int[n];
+		n = 0;
+		for (int j = 0; j < eh; j++) {
+			for (int i = 0; i < ew; i++) {
+				if (element[j][i] != 0) {
+					dx[n] = i - rw;
+					dy[n] = j - rh;
+					n++;
+				}
+			}
+		}
+
+		final long[] interior = columnMask(rw, width - rw);
+		final long[] dst = target.words;
+		new Operation1D(height) {
+			@Override
+			protected void compute(int y) {
+				int row = y * stride;
+				if (y < rh || y >= height - rh) {
+					System.arraycopy(words, row, dst, row, stride);
+					return;
+				}
+				for (int w = 0; w < stride; w++) {
+					int bit = w << SHIFT;
+					long src = words[row + w];
+					long acc = src;
+					if (dilate)
+						for (int k = 0; k < dx.length; k++)
+							acc |= word(y + dy[k], bit + dx[k]);
+					else
+						for (int k = 0; k < dx.length; k++)
+							acc &= word(y + dy[k], bit + dx[k]);
+					long m = interior[w];
+					dst[row + w] = (acc & m) | (src & ~m);
+				}
+			}
+		}.execute();
+
+		if (target != destination) {
+			target.copy(destination);
+			target.release();
+		}
+		return destination;
+	}
+
+	/**
+	 * ANDs this image in place with the region of <code>mask</code> whose top
+	 * left corner is at <code>(x, y)</code>. Pixels outside of the mask are
+	 * cleared.
+	 */
+	public PackedBinaryImage and(final PackedBinaryImage mask, final int x,
+			final int y) {
+		new Operation1D(height) {
+			@Override
+			protected void compute(int j) {
+				int row = j * stride;
+				for (int w = 0; w < stride; w++)
+					words[row + w] &= mask.word(y + j, x + (w << SHIFT));
+			}
+		}.execute();
+		return this;
+	}
+
+	public PackedBinaryImage and(PackedBinaryImage image,
+			PackedBinaryImage destination) {
+		destination = check(destination);
+		long[] a = words, b = image.words, dst = destination.words;
+		for (int i = 0; i < a.length; i++)
+			dst[i] = a[i] & b[i];
+		return destination;
+	}
+
+	public PackedBinaryImage or(PackedBinaryImage image,
+			PackedBinaryImage destination) {
+		destination = check(destination);
+		long[] a = words, b = image.words, dst = destination.words;
+		for (int i = 0; i < a.length; i++)
+			dst[i] = a[i] | b[i];
+		return destination;
+	}
+
+	public PackedBinaryImage xor(PackedBinaryImage image,
+			PackedBinaryImage destination) {
+		destination = check(destination);
+		long[] a = words, b = image.words, dst = destination.words;
+		for (int i = 0; i < a.length; i++)
+			dst[i] = a[i] ^ b[i];
+		return destination;
+	}
+
+	public PackedBinaryImage invert(PackedBinaryImage destination) {
+		destination = check(destination);
+		long[] dst = destination.words;
+		long tail = tailMask();
+		for (int y = 0; y < height; y++) {
+			int row = y * stride;
+			for (int w = 0; w < stride; w++)
+				dst[row + w] = ~words[row + w];
+			dst[row + stride - 1] &= tail;
+		}
+		return destination;
+	}
+
+	/**
+	 * Reads the 64 pixels of row <code>y</code> starting at column
+	 * <code>x</code>, which may lie outside of the image. Pixels outside of
+	 * the image read as zero.
+	 */
+	private long word(int y, int x) {
+		if (y < 0 || y >= height)
+			return 0L;
+		int row = y * stride;
+		int w = x >> SHIFT;
+		int s = x & MOD;
+		long lo = (w >= 0 && w < stride) ? words[row + w] : 0L;
+		if (s == 0)
+			return lo;
+		long hi = (w + 1 >= 0 && w + 1 < stride) ? words[row + w + 1] : 0L;
+		return (lo >>> s) | (hi << (BITS - s));
+	}
+
+	private long tailMask() {
+		int r = width & MOD;
+		return r == 0 ? -1L : (1L << r) - 1;
+	}
+
+	/**
+	 * @return one row of words with the bits of columns
+	 *         <code>[from, to)</code> set
+	 */
+	private long[] columnMask(int from, int to) {
+		long[] mask = new long[stride];
+		for (int x = Math.max(from, 0); x < Math.min(to, width); x++)
+			mask[x >>> SHIFT] |= 1L << (x & MOD);
+		return mask;
+	}
+
+	protected PackedBinaryImage check(PackedBinaryImage buffer) {
+		return check(buffer, width, height);
+	}
+
+	private static PackedBinaryImage check(PackedBinaryImage buffer, int w,
+			int h) {
+		if (buffer == null)
+			return new PackedBinaryImage(w, h);
+		buffer.setSize(w, h);
+		return buffer;
+	}
+
+	public synchronized void release() {
+		width = 0;
+		height = 0;
+		stride = 0;
+		LongArrayPool.release(words);
+		words = null;
+	}
+
+}
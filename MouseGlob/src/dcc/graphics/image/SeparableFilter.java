@@ -0,0 +1,482 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Daniel Coelho de Castro.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Daniel Coelho de Castro - initial API and implementation
+ ******************************************************************************/
+package dcc.graphics.image;
+
+import dcc.graphics.math.ScalarMap;
+import dcc.graphics.math.async.RowBands;
+import dcc.graphics.pool.DoubleMatrixPool;
+import dcc.graphics.pool.IntegerArrayPool;
+
+/**
+ * Separable Gaussian blur for images and scalar maps.
+ * <p>
+ * The blur runs as a horizontal pass into a pooled scratch buffer followed by
+ * a vertical pass into the destination, so the source is never read after it
+ * has been overwritten and the destination may be the source itself. Both
+ * passes walk rows in memory order and are split into bands of rows that run
+ * in parallel. Borders are handled by repeating the edge pixels.
+ * <p>
+ * Image channels are filtered with a fixed-point integer kernel and carry
+ * {@value #EXTRA} extra bits of precision between passes. For sigma above
+ * {@link #BOX_SIGMA} the Gaussian is approximated by {@value #BOX_PASSES}
+ * successive box blurs computed with running sums, whose cost does not depend
+ * on sigma.
+ * <p>
+ * Filters are immutable and shared: use {@link #gaussian(double)}.
+ */
+public final class SeparableFilter {
+
+	/** Largest sigma filtered with a true Gaussian kernel. */
+	public static final double BOX_SIGMA = 4.0;
+
+	private static final int SHIFT = 14;
+	private static final int HALF = 1 << (SHIFT - 1);
+	private static final int EXTRA = 6;
+	private static final int BOX_PASSES = 3;
+	/** Minimum number of pixels handled by one parallel band. */
+	private static final int MIN_BAND_PIXELS = 16384;
+
+	/** Plane values are stored as they are, with the extra precision bits. */
+	private static final int RAW = -1;
+	/** Plane values are stored as opaque gray pixels. */
+	private static final int GRAY = -2;
+
+	private static final SeparableFilter[] cache = new SeparableFilter[8];
+	private static int nextCacheSlot = 0;
+
+	private final double sigma;
+	private final int radius;
+	private final int[] kernel;
+	private final double[] weights;
+	private final int[] boxRadii;
+
+	/**
+	 * @param sigma
+	 *            - standard deviation of the Gaussian, in pixels
+	 * @return a filter for that sigma, shared with other callers
+	 */
+	public static synchronized SeparableFilter gaussian(double sigma) {
+		for (SeparableFilter filter : cache)
+			if (filter != null && filter.sigma == sigma)
+				return filter;
+		SeparableFilter filter = new SeparableFilter(sigma);
+		cache[nextCacheSlot] = filter;
+		nextCacheSlot = (nextCacheSlot + 1) % cache.length;
+		return filter;
+	}
+
+	private SeparableFilter(double sigma) {
+		this.sigma = sigma;
+		if (sigma > BOX_SIGMA) {
+			boxRadii = boxRadii(sigma);
+			radius = 0;
+			kernel = null;
+			weights = null;
+		} else if (sigma > 0) {
+			boxRadii = null;
+			weights = FilterFactory.gaussian(sigma);
+			radius = (weights.length - 1) / 2;
+			kernel = new int[weights.length];
+			int sum = 0;
+			for (int i = 0; i < weights.length; i++) {
+				kernel[i] = (int) Math.round(weights[i] * (1 << SHIFT));
+				sum += kernel[i];
+			}
+			// Rounding must not change the overall brightness
+			kernel[radius] += (1 << SHIFT) - sum;
+		} else {
+			boxRadii = null;
+			radius = 0;
+			kernel = new int[] { 1 << SHIFT };
+			weights = new double[] { 1 };
+		}
+	}
+
+	/**
+	 * Box sizes whose successive application best matches a Gaussian (Kovesi,
+	 * "Fast almost-Gaussian filtering").
+	 */
+	private static int[] boxRadii(double sigma) {
+		double wIdeal = Math.sqrt(12 * sigma * sigma / BOX_PASSES + 1);
+		int wl = (int) Math.floor(wIdeal);
+		if (wl % 2 == 0)
+			wl--;
+		int wu = wl + 2;
+		double mIdeal = (12 * sigma * sigma - BOX_PASSES * wl * wl - 4
+				* BOX_PASSES * wl - 3 * BOX_PASSES)
+				/ (-4.0 * wl - 4);
+		int m = (int) Math.round(mIdeal);
+
+		int[] radii = new int[BOX_PASSES];
+		for (int i = 0; i < BOX_PASSES; i++)
+			radii[i] = ((i < m ? wl : wu) - 1) / 2;
+		return radii;
+	}
+
+	public double getSigma() {
+		return sigma;
+	}
+
+	/**
+	 * @return {@code true} if this filter approximates the Gaussian with box
+	 *         blurs
+	 */
+	public boolean isBoxApproximation() {
+		return boxRadii != null;
+	}
+
+	/**
+	 * Blurs each colour channel of an image.
+	 * 
+	 * @param source
+	 *            - image to blur
+	 * @param destination
+	 *            - where to write the result; may be {@code source} or
+	 *            {@code null}
+	 * @return the blurred image
+	 */
+	public Image apply(Image source, Image destination) {
+		destination = source.check(destination);
+		for (int shift = 16; shift >= 0; shift -= 8)
+			filterPlane(source.pixels, shift, destination.pixels, shift,
+					source.width, source.height);
+		return destination;
+	}
+
+	/**
+	 * Blurs a grayscale image.
+	 * 
+	 * @param source
+	 *            - image to blur
+	 * @param destination
+	 *            - where to write the result; may be {@code source} or
+	 *            {@code null}
+	 * @return the blurred image
+	 */
+	public GrayscaleImage apply(GrayscaleImage source,
+			GrayscaleImage destination) {
+		destination = source.check(destination);
+		filterPlane(source.pixels, 0, destination.pixels, GRAY, source.width,
+				source.height);
+		return destination;
+	}
+
+	/**
+	 * Blurs a scalar map.
+	 * 
+	 * @param source
+	 *            - map to blur
+	 * @param destination
+	 *            - where to write the result; may be {@code source} or
+	 *            {@code null}
+	 * @return the blurred map
+	 */
+	public ScalarMap apply(ScalarMap source, ScalarMap destination) {
+		int width = source.getWidth(), height = source.getHeight();
+		if (destination == null || !source.dimensionsMatch(destination))
+			destination = new ScalarMap(width, height);
+		double[][] src = source.getValues(), dst = destination.getValues();
+		double[][] temp = DoubleMatrixPool.get(width, height);
+
+		if (boxRadii == null) {
+			alongColumns(src, temp, height);
+			acrossColumns(temp, dst, width);
+		} else {
+			double[][] in = src;
+			for (int r : boxRadii) {
+				boxAlongColumns(in, temp, r, height);
+				boxAcrossColumns(temp, dst, r, width);
+				in = dst;
+			}
+		}
+
+		DoubleMatrixPool.release(temp);
+		destination.modified();
+		return destination;
+	}
+
+	/**
+	 * Filters one channel of a pixel array.
+	 * 
+	 * @param in
+	 *            - source pixels
+	 * @param inShift
+	 *            - bit offset of the channel to read
+	 * @param out
+	 *            - destination pixels
+	 * @param outShift
+	 *            - bit offset of the channel to write, or {@link #GRAY}
+	 */
+	private void filterPlane(int[] in, int inShift, int[] out, int outShift,
+			int width, int height) {
+		int[] temp = IntegerArrayPool.get(width * height);
+
+		if (boxRadii == null) {
+			horizontal(in, inShift, temp, width, height);
+			vertical(temp, out, outShift, width, height);
+		} else {
+			int[] plane = IntegerArrayPool.get(width * height);
+			int[] src = in;
+			int srcShift = inShift;
+			for (int pass = 0; pass < boxRadii.length; pass++) {
+				boolean last = pass == boxRadii.length - 1;
+				boxHorizontal(src, srcShift, temp, boxRadii[pass], width,
+						height);
+				boxVertical(temp, last ? out : plane, last ? outShift : RAW,
+						boxRadii[pass], width, height);
+				src = plane;
+				srcShift = RAW;
+			}
+			IntegerArrayPool.release(plane);
+		}
+
+		IntegerArrayPool.release(temp);
+	}
+
+	private static int bandHeight(int width) {
+		return Math.max(RowBands.DEFAULT_BAND_HEIGHT,
+				(MIN_BAND_PIXELS + width - 1) / Math.max(1, width));
+	}
+
+	private static int load(int p, int shift) {
+		return shift == RAW ? p : ((p >>> shift) & 0xff) << EXTRA;
+	}
+
+	private static void store(int[] out, int i, int v, int shift) {
+		if (shift == RAW) {
+			out[i] = v;
+			return;
+		}
+		int c = (v + (1 << (EXTRA - 1))) >> EXTRA;
+		if (c > 255)
+			c = 255;
+		if (shift == GRAY)
+			out[i] = 0xff000000 | c * 0x010101;
+		else
+			out[i] = (out[i] & ~(0xff << shift)) | 0xff000000 | c << shift;
+	}
+
+	private static int clamp(int i, int max) {
+		return i < 0 ? 0 : (i > max ? max : i);
+	}
+
+	private void horizontal(final int[] in, final int shift, final int[] out,
+			final int width, int height) {
+		final int[] k = kernel;
+		final int r = radius;
+		new RowBands(height, bandHeight(width)) {
+			@Override
+			protected void compute(int from, int to) {
+				for (int y = from; y < to; y++) {
+					int row = y * width;
+					for (int x = 0; x < width; x++) {
+						int sum = 0;
+						if (x >= r && x < width - r) {
+							int o = row + x - r;
+							for (int i = 0; i < k.length; i++)
+								sum += k[i] * load(in[o + i], shift);
+						} else {
+							for (int i = 0; i < k.length; i++)
+								sum += k[i]
+										* load(in[row
+												+ clamp(x + i - r, width - 1)],
+												shift);
+						}
+						out[row + x] = (sum + HALF) >> SHIFT;
+					}
+				}
+			}
+		}.execute();
+	}
+
+	private void vertical(final int[] in, final int[] out, final int shift,
+			final int width, final int height) {
+		final int[] k = kernel;
+		final int r = radius;
+		new RowBands(height, bandHeight(width)) {
+			@Override
+			protected void compute(int from, int to) {
+				int[] acc = IntegerArrayPool.get(width);
+				for (int y = from; y < to; y++) {
+					int o = clamp(y - r, height - 1) * width;
+					for (int x = 0; x < width; x++)
+						acc[x] = k[0] * in[o + x];
+					for (int i = 1; i < k.length; i++) {
+						o = clamp(y + i - r, height - 1) * width;
+						int ki = k[i];
+						for (int x = 0; x < width; x++)
+							acc[x] += ki * in[o + x];
+					}
+					int row = y * width;
+					for (int x = 0; x < width; x++)
+						store(out, row + x, (acc[x] + HALF) >> SHIFT, shift);
+				}
+				IntegerArrayPool.release(acc);
+			}
+		}.execute();
+	}
+
+	private static void boxHorizontal(final int[] in, final int shift,
+			final int[] out, final int r, final int width, int height) {
+		final int n = 2 * r + 1;
+		new RowBands(height, bandHeight(width)) {
+			@Override
+			protected void compute(int from, int to) {
+				int max = width - 1;
+				for (int y = from; y < to; y++) {
+					int row = y * width;
+					int sum = 0;
+					for (int j = -r; j <= r; j++)
+						sum += load(in[row + clamp(j, max)], shift);
+					for (int x = 0; x < width; x++) {
+						out[row + x] = (sum + n / 2) / n;
+						sum += load(in[row + clamp(x + r + 1, max)], shift)
+								- load(in[row + clamp(x - r, max)], shift);
+					}
+				}
+			}
+		}.execute();
+	}
+
+	private static void boxVertical(final int[] in, final int[] out,
+			final int shift, final int r, final int width, final int height) {
+		final int n = 2 * r + 1;
+		new RowBands(height, bandHeight(width)) {
+			@Override
+			protected void compute(int from, int to) {
+				int max = height - 1;
+				int[] acc = IntegerArrayPool.get(width);
+				int o = clamp(from - r, max) * width;
+				for (int x = 0; x < width; x++)
+					acc[x] = in[o + x];
+				for (int j = from - r + 1; j <= from + r; j++) {
+					o = clamp(j, max) * width;
+					for (int x = 0; x < width; x++)
+						acc[x] += in[o + x];
+				}
+				for (int y = from; y < to; y++) {
+					int row = y * width;
+					for (int x = 0; x < width; x++)
+						store(out, row + x, (acc[x] + n / 2) / n, shift);
+					int add = clamp(y + r + 1, max) * width;
+					int sub = clamp(y - r, max) * width;
+					for (int x = 0; x < width; x++)
+						acc[x] += in[add + x] - in[sub + x];
+				}
+				IntegerArrayPool.release(acc);
+			}
+		}.execute();
+	}
+
+	/*
+	 * Scalar maps are stored as values[x][y], so a column is contiguous in
+	 * memory and plays the part of an image row.
+	 */
+
+	private void alongColumns(final double[][] in, final double[][] out,
+			final int height) {
+		final double[] w = weights;
+		final int r = radius;
+		new RowBands(in.length, bandHeight(height)) {
+			@Override
+			protected void compute(int from, int to) {
+				for (int x = from; x < to; x++) {
+					double[] src = in[x], dst = out[x];
+					for (int y = 0; y < height; y++) {
+						double sum = 0;
+						for (int i = 0; i < w.length; i++)
+							sum += w[i] * src[clamp(y + i - r, height - 1)];
+						dst[y] = sum;
+					}
+				}
+			}
+		}.execute();
+	}
+
+	private void acrossColumns(final double[][] in, final double[][] out,
+			final int width) {
+		final double[] w = weights;
+		final int r = radius;
+		final int height = in[0].length;
+		new RowBands(width, bandHeight(height)) {
+			@Override
+			protected void compute(int from, int to) {
+				for (int x = from; x < to; x++) {
+					double[] dst = out[x];
+					double[] src = in[clamp(x - r, width - 1)];
+					for (int y = 0; y < height; y++)
+						dst[y] = w[0] * src[y];
+					for (int i = 1; i < w.length; i++) {
+						src = in[clamp(x + i - r, width - 1)];
+						double wi = w[i];
+						for (int y = 0; y < height; y++)
+							dst[y] += wi * src[y];
+					}
+				}
+			}
+		}.execute();
+	}
+
+	private static void boxAlongColumns(final double[][] in,
+			final double[][] out, final int r, final int height) {
+		final double scale = 1.0 / (2 * r + 1);
+		new RowBands(in.length, bandHeight(height)) {
+			@Override
+			protected void compute(int from, int to) {
+				int max = height - 1;
+				for (int x = from; x < to; x++) {
+					double[] src = in[x], dst = out[x];
+					double sum = 0;
+					for (int j = -r; j <= r; j++)
+						sum += src[clamp(j, max)];
+					for (int y = 0; y < height; y++) {
+						dst[y] = sum * scale;
+						sum += src[clamp(y + r + 1, max)] - src[clamp(y - r, max)];
+					}
+				}
+			}
+		}.execute();
+	}
+
+	private static void boxAcrossColumns(final double[][] in,
+			final double[][] out, final int r, final int width) {
+		final double scale = 1.0 / (2 * r + 1);
+		final int height = in[0].length;
+		new RowBands(width, bandHeight(height)) {
+			@Override
+			protected void compute(int from, int to) {
+				int max = width - 1;
+				// Running column sums, built in the destination and scaled at the end
+				double[] first = out[from];
+				for (int y = 0; y < height; y++)
+					first[y] = 0;
+				for (int j = from - r; j <= from + r; j++) {
+					double[] src = in[clamp(j, max)];
+					for (int y = 0; y < height; y++)
+						first[y] += src[y];
+				}
+				for (int x = from + 1; x < to; x++) {
+					double[] prev = out[x - 1], dst = out[x];
+					double[] add = in[clamp(x + r, max)];
+					double[] sub = in[clamp(x - r - 1, max)];
+					for (int y = 0; y < height; y++)
+						dst[y] = prev[y] + add[y] - sub[y];
+				}
+				for (int x = from; x < to; x++) {
+					double[] dst = out[x];
+					for (int y = 0; y < height; y++)
+						dst[y] *= scale;
+				}
+			}
+		}.execute();
+	}
+
+}
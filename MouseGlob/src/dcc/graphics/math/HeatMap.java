@@ -42,6 +42,7 @@ public class HeatMap extends ScalarMap {
 					v[tx][ty] += value * g;
 				}
 			}
+		modified();
 	}
 
 	public void increment(double x, double y) {
@@ -57,5 +58,6 @@ public class HeatMap extends ScalarMap {
 					interpolator.increment(tx, ty, value * g);
 				}
 			}
+		modified();
 	}
 }
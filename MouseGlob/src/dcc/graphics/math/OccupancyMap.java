@@ -0,0 +1,50 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Daniel Coelho de Castro.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Daniel Coelho de Castro - initial API and implementation
+ ******************************************************************************/
+package dcc.graphics.math;
+
+/**
+ * Unblurred occupancy grid, built up from a trajectory one segment at a time.
+ * <p>
+ * Each segment spreads its weight over the pixels it runs through, so the map
+ * can follow a growing trajectory at a cost proportional to the new samples
+ * only. Smoothed versions are derived from it on demand, see
+ * {@link ScaleSpace}.
+ */
+public final class OccupancyMap extends ScalarMap {
+
+	public OccupancyMap(int width, int height) {
+		super(width, height);
+		reset();
+	}
+
+	/**
+	 * Spreads a weight evenly along a segment, excluding its end point, which
+	 * starts the next segment.
+	 * 
+	 * @param p1
+	 *            - start of the segment, in pixels
+	 * @param p2
+	 *            - end of the segment, in pixels
+	 * @param weight
+	 *            - weight of the whole segment
+	 */
+	public synchronized void addSegment(Vector p1, Vector p2, double weight) {
+		double n = p1.distance(p2) + 1;
+		for (int j = 0; j < n - 1; j++) {
+			Vector p = p1.lerp(p2, j / n);
+			int x = (int) p.x, y = (int) p.y;
+			if (x >= 0 && x < width && y >= 0 && y < height)
+				v[x][y] += weight / n;
+		}
+		modified();
+	}
+
+}
@@ -13,10 +13,10 @@ package dcc.graphics.math;
 import java.util.Arrays;
 
 import dcc.graphics.Box;
-import dcc.graphics.image.FilterFactory;
+import dcc.graphics.binary.MaskRuns;
 import dcc.graphics.image.GrayscaleImage;
-import dcc.graphics.math.async.FilterHorizontal;
-import dcc.graphics.math.async.FilterVertical;
+import dcc.graphics.image.PackedBinaryImage;
+import dcc.graphics.image.SeparableFilter;
 import dcc.graphics.math.async.Operation1D;
 import dcc.graphics.math.async.Operation2D;
 import dcc.graphics.pool.DoubleMatrixPool;
@@ -27,6 +27,9 @@ public class ScalarMap extends DefaultMap<Double> {
 	protected int width;
 	protected int height;
 
+	private SummedAreaTable sums;
+	private boolean sumsValid;
+
 	public ScalarMap(int width, int height) {
 		setSize(width, height);
 	}
@@ -42,6 +45,15 @@ public class ScalarMap extends DefaultMap<Double> {
 		this.height = height;
 		DoubleMatrixPool.release(v);
 		v = DoubleMatrixPool.get(width, height);
+		modified();
+	}
+
+	/**
+	 * Must be called after changing values through {@link #getValues()} or
+	 * directly in a subclass, so that cached box sums are recomputed.
+	 */
+	public void modified() {
+		sumsValid = false;
 	}
 
 	public void reset() {
@@ -51,6 +63,7 @@ public class ScalarMap extends DefaultMap<Double> {
 				Arrays.fill(v[i], 0);
 			}
 		}.execute();
+		modified();
 	}
 
 	public void set(final GrayscaleImage image) {
@@ -61,6 +74,18 @@ public class ScalarMap extends DefaultMap<Double> {
 				v[x][y] = image.value(x, y);
 			}
 		}.execute();
+		modified();
+	}
+
+	public void set(final PackedBinaryImage image) {
+		setSize(image.getWidth(), image.getHeight());
+		new Operation2D(width, height) {
+			@Override
+			protected void compute(int x, int y) {
+				v[x][y] = image.get(x, y) ? 1d : 0d;
+			}
+		}.execute();
+		modified();
 	}
 
 	public void copy(final ScalarMap source) {
@@ -72,10 +97,12 @@ public class ScalarMap extends DefaultMap<Double> {
 				System.arraycopy(source.v[i], 0, v[i], 0, height);
 			}
 		}.execute();
+		modified();
 	}
 
 	protected void set(int i, int j, double value) {
 		v[i][j] = value;
+		modified();
 	}
 
 	@Override
@@ -194,16 +221,7 @@ public class ScalarMap extends DefaultMap<Double> {
 	}
 
 	public ScalarMap blur(double sigma) {
-		double[][] temp = DoubleMatrixPool.get(width, height);
-		ScalarMap g = new ScalarMap(width, height);
-		double[] filter = FilterFactory.gaussian(sigma);
-
-		new FilterHorizontal(v, temp, filter).execute();
-		new FilterVertical(temp, g.v, filter).execute();
-
-		DoubleMatrixPool.release(temp);
-
-		return g;
+		return SeparableFilter.gaussian(sigma).apply(this, null);
 	}
 
 	public double getSum() {
@@ -227,27 +245,42 @@ public class ScalarMap extends DefaultMap<Double> {
 		return summation.sum;
 	}
 
+	/**
+	 * Sums the values inside a box, ignoring {@code NaN}s. The first call after
+	 * a change builds a summed-area table; later calls take constant time.
+	 * 
+	 * @param box
+	 *            - the box, from its top-left corner (inclusive) to its
+	 *            bottom-right corner (exclusive)
+	 * @return the sum
+	 */
 	public double getSum(Box box) {
 		Box mapBounds = Box.fromSize(width, height);
-		final Box.Int bounds = mapBounds.clamp(box).toInt();
-		class Summation extends Operation2D {
-			private double sum = 0;
+		Box.Int bounds = mapBounds.clamp(box).toInt();
+		return getSummedAreaTable().getSum(bounds.left, bounds.top,
+				bounds.right, bounds.bottom);
+	}
 
-			private Summation() {
-				super(bounds.left, bounds.right, bounds.top, bounds.bottom);
-			}
+	/**
+	 * Sums the values under a mask, ignoring {@code NaN}s, in time proportional
+	 * to the number of runs of the mask.
+	 */
+	public double getSum(MaskRuns mask) {
+		return mask.sum(getSummedAreaTable());
+	}
 
-			@Override
-			protected void compute(int x, int y) {
-				if (!Double.isNaN(v[x][y]))
-					sum += v[x][y];
-			}
+	/**
+	 * @return a summed-area table of the current values, rebuilt only when the
+	 *         map has changed
+	 */
+	public synchronized SummedAreaTable getSummedAreaTable() {
+		if (sums == null)
+			sums = new SummedAreaTable(false);
+		if (!sumsValid) {
+			sums.compute(this);
+			sumsValid = true;
 		}
-
-		Summation summation = new Summation();
-		summation.execute();
-
-		return summation.sum;
+		return sums;
 	}
 
 	public double getMean() {
@@ -259,6 +292,8 @@ public class ScalarMap extends DefaultMap<Double> {
 		height = 0;
 		DoubleMatrixPool.release(v);
 		v = null;
+		sums = null;
+		sumsValid = false;
 	}
 
 }
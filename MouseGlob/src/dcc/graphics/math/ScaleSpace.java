@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Daniel Coelho de Castro.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Daniel Coelho de Castro - initial API and implementation
+ ******************************************************************************/
+package dcc.graphics.math;
+
+import dcc.graphics.image.SeparableFilter;
+
+/**
+ * Gaussian blurs of a map at several scales, each computed only when asked
+ * for and kept until {@link #invalidate()}.
+ * <p>
+ * Levels keep the size of the map and are blurred from it directly: with
+ * {@link SeparableFilter} the cost hardly grows with sigma, and blurring
+ * coarse levels from finer ones would add up the errors of small kernels.
+ */
+public class ScaleSpace {
+
+	private final ScalarMap base;
+	private final double[] sigmas;
+	private final ScalarMap[] levels;
+	private final boolean[] valid;
+
+	/**
+	 * @param base
+	 *            - map to blur; levels are computed while holding its lock
+	 * @param sigmas
+	 *            - standard deviation of each level, in pixels
+	 */
+	public ScaleSpace(ScalarMap base, double[] sigmas) {
+		this.base = base;
+		this.sigmas = sigmas.clone();
+		levels = new ScalarMap[sigmas.length];
+		valid = new boolean[sigmas.length];
+	}
+
+	public int size() {
+		return levels.length;
+	}
+
+	public double getSigma(int level) {
+		return sigmas[level];
+	}
+
+	/**
+	 * @return the base map blurred at the given level, recomputed if the base
+	 *         has changed since
+	 */
+	public ScalarMap getLevel(int level) {
+		synchronized (base) {
+			synchronized (this) {
+				if (valid[level])
+					return levels[level];
+				levels[level] = SeparableFilter.gaussian(sigmas[level]).apply(
+						base, levels[level]);
+				valid[level] = true;
+				return levels[level];
+			}
+		}
+	}
+
+	/**
+	 * Marks all levels as out of date, to be called after the base changes.
+	 */
+	public synchronized void invalidate() {
+		for (int i = 0; i < valid.length; i++)
+			valid[i] = false;
+	}
+
+	public synchronized void release() {
+		for (int i = 0; i < levels.length; i++) {
+			if (levels[i] != null)
+				levels[i].release();
+			levels[i] = null;
+			valid[i] = false;
+		}
+	}
+
+}
@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Daniel Coelho de Castro.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ *
+ * Contributors:
+ *     Daniel Coelho de Castro - initial API and implementation
+ ******************************************************************************/
+package dcc.graphics.math;
+
+/**
+ * Summed-area table of a scalar map: once built, the sum (and optionally the
+ * sum of squares) of any axis-aligned rectangle is read in constant time.
+ * <p>
+ * Rectangles are half-open, from {@code (x0, y0)} inclusive to
+ * {@code (x1, y1)} exclusive, and are clamped to the map. {@code NaN} values
+ * count as zero.
+ */
+public class SummedAreaTable {
+
+	private final boolean squares;
+	private int width, height;
+	/** Column-major like ScalarMap: entry (x, y) at x * (height + 1) + y. */
+	private double[] sums;
+	private double[] sumsOfSquares;
+
+	/**
+	 * @param squares
+	 *            - whether to also keep the sums of squared values, for
+	 *            {@link #getVariance(int, int, int, int)}
+	 */
+	public SummedAreaTable(boolean squares) {
+		this.squares = squares;
+	}
+
+	public SummedAreaTable compute(ScalarMap map) {
+		return compute(map.getValues(), map.getWidth(), map.getHeight());
+	}
+
+	public SummedAreaTable compute(double[][] values, int width, int height) {
+		int size = (width + 1) * (height + 1);
+		if (sums == null || sums.length != size) {
+			sums = new double[size];
+			sumsOfSquares = squares ? new double[size] : null;
+		}
+		this.width = width;
+		this.height = height;
+
+		int stride = height + 1;
+		for (int x = 1; x <= width; x++) {
+			double[] column = values[x - 1];
+			int prev = (x - 1) * stride, curr = x * stride;
+			double columnSum = 0, columnSquares = 0;
+			for (int y = 1; y <= height; y++) {
+				double v = column[y - 1];
+				if (v != v)
+					v = 0;
+				columnSum += v;
+				sums[curr + y] = sums[prev + y] + columnSum;
+				if (squares) {
+					columnSquares += v * v;
+					sumsOfSquares[curr + y] = sumsOfSquares[prev + y]
+							+ columnSquares;
+				}
+			}
+		}
+		return this;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public double getSum(int x0, int y0, int x1, int y1) {
+		return rectangle(sums, x0, y0, x1, y1);
+	}
+
+	public double getSumOfSquares(int x0, int y0, int x1, int y1) {
+		if (!squares)
+			throw new IllegalStateException("Sums of squares were not kept");
+		return rectangle(sumsOfSquares, x0, y0, x1, y1);
+	}
+
+	public double getMean(int x0, int y0, int x1, int y1) {
+		int area = area(x0, y0, x1, y1);
+		return area == 0 ? Double.NaN : getSum(x0, y0, x1, y1) / area;
+	}
+
+	public double getVariance(int x0, int y0, int x1, int y1) {
+		int area = area(x0, y0, x1, y1);
+		if (area == 0)
+			return Double.NaN;
+		double mean = getSum(x0, y0, x1, y1) / area;
+		return Math.max(0, getSumOfSquares(x0, y0, x1, y1) / area - mean
+				* mean);
+	}
+
+	/**
+	 * @return the number of cells of the rectangle that lie inside the map
+	 */
+	public int area(int x0, int y0, int x1, int y1) {
+		int w = Math.min(x1, width) - Math.max(x0, 0);
+		int h = Math.min(y1, height) - Math.max(y0, 0);
+		return w > 0 && h > 0 ? w * h : 0;
+	}
+
+	private double rectangle(double[] table, int x0, int y0, int x1, int y1) {
+		x0 = Math.max(x0, 0);
+		y0 = Math.max(y0, 0);
+		x1 = Math.min(x1, width);
+		y1 = Math.min(y1, height);
+		if (x1 <= x0 || y1 <= y0)
+			return 0;
+		int stride = height + 1;
+		return table[x1 * stride + y1] - table[x0 * stride + y1]
+				- table[x1 * stride + y0] + table[x0 * stride + y0];
+	}
+
+}
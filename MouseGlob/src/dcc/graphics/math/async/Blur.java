@@ -10,37 +10,35 @@
  ******************************************************************************/
 package dcc.graphics.math.async;
 
-import dcc.graphics.image.FilterFactory;
+import dcc.graphics.image.SeparableFilter;
 import dcc.graphics.math.ScalarMap;
 
 public class Blur {
 
-	private ScalarMap buffer;
 	private ScalarMap result;
-	private double[] filter;
+	private SeparableFilter filter;
 
 	public Blur(double sigma) {
 		setSigma(sigma);
 	}
 
 	public void setSigma(double sigma) {
-		filter = FilterFactory.gaussian(sigma);
+		filter = SeparableFilter.gaussian(sigma);
 	}
 
+	/**
+	 * Blurs a map into a buffer owned by this object, which is reused by the
+	 * next call.
+	 * 
+	 * @param map
+	 *            - map to blur
+	 * @param async
+	 *            - unused; maps large enough to benefit are always split into
+	 *            parallel bands
+	 * @return the blurred map
+	 */
 	public ScalarMap calculate(ScalarMap map, boolean async) {
-		int width = map.getWidth(), height = map.getHeight();
-		if (buffer == null || !map.dimensionsMatch(buffer))
-			buffer = new ScalarMap(width, height);
-		if (result == null || !map.dimensionsMatch(result))
-			result = new ScalarMap(width, height);
-
-		Operation2D horz = new FilterHorizontal(map.getValues(),
-				buffer.getValues(), filter);
-		Operation2D vert = new FilterVertical(buffer.getValues(),
-				result.getValues(), filter);
-		horz.execute(async);
-		vert.execute(async);
-
+		result = filter.apply(map, result);
 		return result;
 	}
 }
@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Daniel Coelho de Castro.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Daniel Coelho de Castro - initial API and implementation
+ ******************************************************************************/
+package dcc.graphics.math.async;
+
+/**
+ * An operation over the rows of an image, split into horizontal bands of
+ * consecutive rows that are processed in parallel. Each band is handed to
+ * {@link #compute(int, int)} whole, so per-band scratch state can be set up
+ * once instead of once per row.
+ */
+public abstract class RowBands {
+
+	public static final int DEFAULT_BAND_HEIGHT = 32;
+
+	private final int rows;
+	private final int bandHeight;
+
+	protected RowBands(int rows, int bandHeight) {
+		this.rows = rows;
+		this.bandHeight = Math.max(1, bandHeight);
+	}
+
+	protected RowBands(int rows) {
+		this(rows, DEFAULT_BAND_HEIGHT);
+	}
+
+	/**
+	 * Processes rows {@code from} (inclusive) to {@code to} (exclusive).
+	 */
+	protected abstract void compute(int from, int to);
+
+	public final void execute() {
+		int bands = (rows + bandHeight - 1) / bandHeight;
+		new BandAsyncTask(0, bands).execute(bands > 1);
+	}
+
+	@SuppressWarnings("serial")
+	private class BandAsyncTask extends AsyncTask {
+
+		private final int min, max;
+
+		private BandAsyncTask(int min, int max) {
+			this.min = min;
+			this.max = max;
+		}
+
+		@Override
+		protected void computeDirectly() {
+			for (int band = min; band < max; band++)
+				RowBands.this.compute(band * bandHeight,
+						Math.min(rows, (band + 1) * bandHeight));
+		}
+
+		@Override
+		protected void compute() {
+			if (max - min <= 1) {
+				computeDirectly();
+			} else {
+				int split = (min + max) / 2;
+				invokeAll(new BandAsyncTask(min, split), new BandAsyncTask(
+						split, max));
+			}
+		}
+	}
+
+}
@@ -14,27 +14,27 @@ public class DoubleMatrixPool {
 
 	private static PoolMap poolMap;
 
-	private static void initialize() {
+	private static synchronized void initialize() {
 		if (poolMap == null)
 			poolMap = new PoolMap();
 	}
 
-	public static double[][] get(int width, int height) {
+	public static synchronized double[][] get(int width, int height) {
 		initialize();
 		return poolMap.get(width, height);
 	}
 
-	public static void release(double[][] matrix) {
+	public static synchronized void release(double[][] matrix) {
 		initialize();
 		poolMap.release(matrix);
 	}
 
-	public static void clear() {
+	public static synchronized void clear() {
 		initialize();
 		poolMap.clear();
 	}
 
-	public static String status() {
+	public static synchronized String status() {
 		initialize();
 		return poolMap.toString();
 	}
@@ -14,27 +14,27 @@ public class IntegerArrayPool {
 
 	private static PoolMap poolMap;
 
-	private static void initialize() {
+	private static synchronized void initialize() {
 		if (poolMap == null)
 			poolMap = new PoolMap();
 	}
 
-	public static int[] get(int length) {
+	public static synchronized int[] get(int length) {
 		initialize();
 		return poolMap.get(length);
 	}
 
-	public static void release(int[] array) {
+	public static synchronized void release(int[] array) {
 		initialize();
 		poolMap.release(array);
 	}
 
-	public static void clear() {
+	public static synchronized void clear() {
 		initialize();
 		poolMap.clear();
 	}
 
-	public static String status() {
+	public static synchronized String status() {
 		initialize();
 		return poolMap.toString();
 	}
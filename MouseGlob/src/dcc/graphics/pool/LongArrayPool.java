@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Daniel Coelho de Castro.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Daniel Coelho de Castro - initial API and implementation
+ ******************************************************************************/
+package dcc.graphics.pool;
+
+public class LongArrayPool {
+
+	private static PoolMap poolMap;
+
+	private static synchronized void initialize() {
+		if (poolMap == null)
+			poolMap = new PoolMap();
+	}
+
+	public static synchronized long[] get(int length) {
+		initialize();
+		return poolMap.get(length);
+	}
+
+	public static synchronized void release(long[] array) {
+		initialize();
+		poolMap.release(array);
+	}
+
+	public static synchronized void clear() {
+		initialize();
+		poolMap.clear();
+	}
+
+	public static synchronized String status() {
+		initialize();
+		return poolMap.toString();
+	}
+
+	private static class PoolMap extends ObjectPoolMap<long[]> {
+
+		void release(long[] array) {
+			if (array == null)
+				return;
+			release(array, array.length);
+		}
+
+		@Override
+		ObjectPool<long[]> newPool(int hash) {
+			return new Pool(hash);
+		}
+
+	}
+
+	private static class Pool extends ObjectPool<long[]> {
+
+		private final int length;
+
+		Pool(int length) {
+			this.length = length;
+		}
+
+		@Override
+		long[] newInstance() {
+			return new long[length];
+		}
+
+		@Override
+		boolean isValid(long[] array) {
+			return array.length == length;
+		}
+
+		@Override
+		public String toString() {
+			return String
+					.format("[%d: %d (%d)]", length, size(), getHitCount());
+		}
+
+	}
+}
@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Daniel Coelho de Castro.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Daniel Coelho de Castro - initial API and implementation
+ ******************************************************************************/
+package dcc.graphics.series;
+
+import dcc.util.DoubleList;
+
+/**
+ * Live, read-only view of one coordinate of a {@link Series2D}. Keeps no
+ * values of its own and does not notify listeners; listen to the source
+ * instead.
+ */
+class ComponentSeries1D extends Series1D {
+
+	private final Series2D source;
+	private final boolean x;
+
+	ComponentSeries1D(Series2D source, boolean x) {
+		super(1);
+		this.source = source;
+		this.x = x;
+	}
+
+	@Override
+	public double get(int index) {
+		if (index < 0)
+			index += source.size();
+		return x ? source.getX(index) : source.getY(index);
+	}
+
+	@Override
+	public int size() {
+		return source.size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return source.isEmpty();
+	}
+
+	@Override
+	public double getMinY() {
+		return x ? source.getMinX() : source.getMinY();
+	}
+
+	@Override
+	public double getMaxY() {
+		return x ? source.getMaxX() : source.getMaxY();
+	}
+
+	@Override
+	public void add(double value) {
+		throw new UnsupportedOperationException("Read-only view");
+	}
+
+	@Override
+	public void add(double[] values) {
+		throw new UnsupportedOperationException("Read-only view");
+	}
+
+	@Override
+	public void add(Iterable<Double> values) {
+		throw new UnsupportedOperationException("Read-only view");
+	}
+
+	@Override
+	void add(DoubleList values) {
+		throw new UnsupportedOperationException("Read-only view");
+	}
+
+	@Override
+	public void remove(int index) {
+		throw new UnsupportedOperationException("Read-only view");
+	}
+
+	@Override
+	public void set(int index, double value) {
+		throw new UnsupportedOperationException("Read-only view");
+	}
+
+	@Override
+	public void clear() {
+		throw new UnsupportedOperationException("Read-only view");
+	}
+
+}
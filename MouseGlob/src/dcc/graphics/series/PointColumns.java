@@ -0,0 +1,163 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Daniel Coelho de Castro.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ *
+ * Contributors:
+ *     Daniel Coelho de Castro - initial API and implementation
+ ******************************************************************************/
+package dcc.graphics.series;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Append-mostly storage of 2D points as two primitive columns.
+ * <p>
+ * The first {@code spillThreshold} points live in {@code double[]} arrays on
+ * the heap. Later points, if a threshold is set, go to a memory-mapped
+ * temporary file, so very long sessions do not grow the heap. The file is
+ * deleted when the columns are cleared or the program exits.
+ * <p>
+ * One thread may append while others read: the size is published after the
+ * values, so readers never see a point before it is written.
+ */
+final class PointColumns {
+
+	/** Points per mapped chunk: 2^20 points, 16 MB. */
+	private static final int CHUNK_SHIFT = 20;
+	private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+	private static final int POINT_BYTES = 16;
+
+	private final int heapLimit;
+	private double[] xs, ys;
+	private volatile int size;
+
+	private FileChannel channel;
+	private ByteBuffer[] chunks;
+
+	/**
+	 * @param initialCapacity
+	 *            - initial length of the heap columns
+	 * @param spillThreshold
+	 *            - number of points kept on the heap before spilling to a
+	 *            mapped file, or {@code 0} to never spill
+	 */
+	PointColumns(int initialCapacity, int spillThreshold) {
+		heapLimit = spillThreshold > 0 ? spillThreshold : Integer.MAX_VALUE;
+		int capacity = Math.max(1, Math.min(initialCapacity, heapLimit));
+		xs = new double[capacity];
+		ys = new double[capacity];
+	}
+
+	int size() {
+		return size;
+	}
+
+	double getX(int i) {
+		check(i);
+		if (i < heapLimit)
+			return xs[i];
+		i -= heapLimit;
+		return chunks[i >>> CHUNK_SHIFT].getDouble((i & CHUNK_MASK)
+				* POINT_BYTES);
+	}
+
+	double getY(int i) {
+		check(i);
+		if (i < heapLimit)
+			return ys[i];
+		i -= heapLimit;
+		return chunks[i >>> CHUNK_SHIFT].getDouble((i & CHUNK_MASK)
+				* POINT_BYTES + 8);
+	}
+
+	void add(double x, double y) {
+		int n = size;
+		write(n, x, y);
+		size = n + 1;
+	}
+
+	void set(int i, double x, double y) {
+		check(i);
+		write(i, x, y);
+	}
+
+	void clear() {
+		size = 0;
+		if (channel != null) {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				// The file is deleted on exit anyway
+			}
+			channel = null;
+			chunks = null;
+		}
+	}
+
+	boolean isSpilled() {
+		return channel != null;
+	}
+
+	private void write(int i, double x, double y) {
+		if (i < heapLimit) {
+			if (i >= xs.length) {
+				int capacity = (int) Math.min((long) xs.length * 2, heapLimit);
+				xs = Arrays.copyOf(xs, Math.max(capacity, i + 1));
+				ys = Arrays.copyOf(ys, xs.length);
+			}
+			xs[i] = x;
+			ys[i] = y;
+		} else {
+			i -= heapLimit;
+			ByteBuffer chunk = chunk(i >>> CHUNK_SHIFT);
+			int offset = (i & CHUNK_MASK) * POINT_BYTES;
+			chunk.putDouble(offset, x);
+			chunk.putDouble(offset + 8, y);
+		}
+	}
+
+	private ByteBuffer chunk(int index) {
+		if (chunks == null || index >= chunks.length || chunks[index] == null) {
+			try {
+				if (channel == null) {
+					Path file = Files.createTempFile("series", ".bin");
+					file.toFile().deleteOnExit();
+					channel = FileChannel.open(file, StandardOpenOption.READ,
+							StandardOpenOption.WRITE,
+							StandardOpenOption.DELETE_ON_CLOSE);
+					chunks = new ByteBuffer[4];
+				}
+				if (index >= chunks.length)
+					chunks = Arrays.copyOf(chunks,
+							Math.max(index + 1, 2 * chunks.length));
+				chunks[index] = channel.map(MapMode.READ_WRITE,
+						(long) index * CHUNK_SIZE * POINT_BYTES,
+						(long) CHUNK_SIZE * POINT_BYTES).order(
+						ByteOrder.nativeOrder());
+			} catch (IOException e) {
+				throw new IllegalStateException(
+						"Could not map series storage", e);
+			}
+		}
+		return chunks[index];
+	}
+
+	private void check(int i) {
+		if (i < 0 || i >= size)
+			throw new IndexOutOfBoundsException("Index: " + i + ", Size: "
+					+ size);
+	}
+
+}
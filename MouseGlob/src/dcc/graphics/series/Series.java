@@ -11,6 +11,7 @@
 package dcc.graphics.series;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
 import dcc.graphics.math.Vector;
@@ -19,9 +20,44 @@ public abstract class Series implements Iterable<Vector> {
 
 	protected static final int INITIAL_SIZE = 1000;
 
+	/**
+	 * Updates open on each thread, see {@link #beginUpdate()}.
+	 */
+	private static final ThreadLocal<Update> updates = new ThreadLocal<Update>();
+
+	/**
+	 * Opens an update on the calling thread: until the matching
+	 * {@link #endUpdate()}, changes to any series made on this thread are
+	 * coalesced, and each changed series notifies its listeners once when the
+	 * update ends. Updates may be nested; only the outermost one delivers.
+	 */
+	public static void beginUpdate() {
+		Update update = updates.get();
+		if (update == null) {
+			update = new Update();
+			updates.set(update);
+		}
+		update.depth++;
+	}
+
+	/**
+	 * Closes an update opened by {@link #beginUpdate()}, delivering the
+	 * pending notifications if it is the outermost one.
+	 */
+	public static void endUpdate() {
+		Update update = updates.get();
+		if (update == null || --update.depth > 0)
+			return;
+		// Listeners that change other series now notify directly
+		updates.remove();
+		update.deliver();
+	}
+
 	private List<BoundsListener> boundsListeners;
 	private List<SeriesListener> seriesListeners;
 
+	private boolean boundsPending, seriesPending;
+
 	Series() {
 		boundsListeners = new ArrayList<BoundsListener>();
 		seriesListeners = new ArrayList<SeriesListener>();
@@ -46,6 +82,13 @@ public abstract class Series implements Iterable<Vector> {
 	}
 
 	protected final void notifyBoundsChanged() {
+		Update update = updates.get();
+		if (update != null) {
+			if (!boundsPending && !seriesPending)
+				update.pending.add(this);
+			boundsPending = true;
+			return;
+		}
 		synchronized (boundsListeners) {
 			for (BoundsListener listener : boundsListeners)
 				listener.onBoundsChanged(this);
@@ -58,9 +101,33 @@ public abstract class Series implements Iterable<Vector> {
 		}
 	}
 
+	/**
+	 * Adds a listener that is notified at most {@code rate} times per second,
+	 * on a background thread, so that slow listeners such as reports never
+	 * hold up whoever changes the series. Changes in between are coalesced,
+	 * and the last one is always delivered.
+	 * 
+	 * @param listener
+	 *            - the listener
+	 * @param rate
+	 *            - the maximum notification rate, in Hz
+	 */
+	public final void addSeriesListener(SeriesListener listener, double rate) {
+		addSeriesListener(new ThrottledSeriesListener(listener, rate));
+	}
+
 	public final void removeSeriesListener(SeriesListener listener) {
 		synchronized (seriesListeners) {
-			seriesListeners.remove(listener);
+			Iterator<SeriesListener> it = seriesListeners.iterator();
+			while (it.hasNext()) {
+				SeriesListener l = it.next();
+				if (l == listener
+						|| (l instanceof ThrottledSeriesListener && ((ThrottledSeriesListener) l)
+								.wraps(listener))) {
+					it.remove();
+					break;
+				}
+			}
 		}
 	}
 
@@ -71,6 +138,13 @@ public abstract class Series implements Iterable<Vector> {
 	}
 
 	protected final void notifySeriesChanged() {
+		Update update = updates.get();
+		if (update != null) {
+			if (!boundsPending && !seriesPending)
+				update.pending.add(this);
+			seriesPending = true;
+			return;
+		}
 		synchronized (seriesListeners) {
 			for (SeriesListener listener : seriesListeners)
 				listener.onSeriesChanged(this);
@@ -91,4 +165,23 @@ public abstract class Series implements Iterable<Vector> {
 
 	public abstract double getMaxY();
 
+	private static final class Update {
+
+		private int depth;
+		private final List<Series> pending = new ArrayList<Series>();
+
+		private void deliver() {
+			for (Series series : pending) {
+				boolean bounds = series.boundsPending;
+				boolean changed = series.seriesPending;
+				series.boundsPending = series.seriesPending = false;
+				if (bounds)
+					series.notifyBoundsChanged();
+				if (changed)
+					series.notifySeriesChanged();
+			}
+		}
+
+	}
+
 }
@@ -36,6 +36,10 @@ public class Series1D extends Series {
 		add(values);
 	}
 
+	Series1D(int initialCapacity) {
+		values = new DoubleList(initialCapacity);
+	}
+
 	public void add(double value) {
 		updateBounds(value);
 		values.add(value);
@@ -62,7 +66,14 @@ public class Series1D extends Series {
 	}
 
 	public void add(Series1D series) {
-		add(series.values);
+		int n = series.size();
+		for (int i = 0; i < n; i++) {
+			double value = series.get(i);
+			updateBounds(value);
+			values.add(value);
+		}
+		notifyBoundsChanged();
+		notifySeriesChanged();
 	}
 
 	void add(DoubleList values) {
@@ -103,8 +114,8 @@ public class Series1D extends Series {
 
 	public double get(double x) {
 		int i = (int) Math.floor(x);
-		double y1 = values.get(i);
-		double y2 = values.get(i + 1);
+		double y1 = get(i);
+		double y2 = get(i + 1);
 		return y1 + (x - i) * (y2 - y1);
 	}
 
@@ -10,25 +10,58 @@
  ******************************************************************************/
 package dcc.graphics.series;
 
-import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.List;
+import java.util.NoSuchElementException;
 
 import dcc.graphics.math.Vector;
 
+/**
+ * Series of 2D points, stored as two primitive columns.
+ * <p>
+ * Points are kept in {@code double[]} columns rather than one {@link Vector}
+ * per sample. {@link #getX(int)} and {@link #getY(int)} read them without
+ * allocating; {@link #get(int)} builds a {@code Vector} on demand. Very long
+ * series can spill to a memory-mapped file, see
+ * {@link #setSpillThreshold(int)}.
+ * <p>
+ * {@link #scale(double)}, {@link #getX()} and {@link #getY()} return live,
+ * read-only views rather than copies.
+ */
 public class Series2D extends Series implements Iterable<Vector> {
 
-	protected final List<Vector> points;
+	private static volatile int spillThreshold = 0;
+
+	/**
+	 * Sets how many points new series keep on the heap before spilling the
+	 * rest to a memory-mapped temporary file.
+	 * 
+	 * @param threshold
+	 *            - the number of points, or {@code 0} to never spill
+	 */
+	public static void setSpillThreshold(int threshold) {
+		spillThreshold = Math.max(0, threshold);
+	}
+
+	public static int getSpillThreshold() {
+		return spillThreshold;
+	}
+
+	private final PointColumns columns;
 	private double minX, maxX, minY, maxY;
 
 	public Series2D() {
-		points = new ArrayList<Vector>(INITIAL_SIZE);
+		this(new PointColumns(INITIAL_SIZE, spillThreshold));
+	}
+
+	private Series2D(PointColumns columns) {
+		this.columns = columns;
 	}
 
 	public void add(double x, double y) {
-		boolean boundsChanged = updateBounds(x, y);
-		synchronized (points) {
-			points.add(new Vector(x, y));
+		boolean boundsChanged;
+		synchronized (columns) {
+			boundsChanged = updateBounds(x, y);
+			columns.add(x, y);
 		}
 		if (boundsChanged)
 			notifyBoundsChanged();
@@ -37,16 +70,17 @@ public class Series2D extends Series implements Iterable<Vector> {
 
 	public void add(Vector p) {
 		add(p.x, p.y);
-		notifySeriesChanged();
 	}
 
 	void add(double[] xs, double[] ys) {
 		boolean boundsChanged = false;
 		int n = Math.min(xs.length, ys.length);
-		for (int i = 0; i < n; i++) {
-			if (updateBounds(xs[i], ys[i]))
-				boundsChanged = true;
-			points.add(new Vector(xs[i], ys[i]));
+		synchronized (columns) {
+			for (int i = 0; i < n; i++) {
+				if (updateBounds(xs[i], ys[i]))
+					boundsChanged = true;
+				columns.add(xs[i], ys[i]);
+			}
 		}
 		if (boundsChanged)
 			notifyBoundsChanged();
@@ -55,10 +89,14 @@ public class Series2D extends Series implements Iterable<Vector> {
 
 	void add(Series2D series) {
 		boolean boundsChanged = false;
-		for (Vector point : series) {
-			if (updateBounds(point.x, point.y))
-				boundsChanged = true;
-			points.add(point);
+		int n = series.size();
+		synchronized (columns) {
+			for (int i = 0; i < n; i++) {
+				double x = series.getX(i), y = series.getY(i);
+				if (updateBounds(x, y))
+					boundsChanged = true;
+				columns.add(x, y);
+			}
 		}
 		if (boundsChanged)
 			notifyBoundsChanged();
@@ -81,27 +119,46 @@ public class Series2D extends Series implements Iterable<Vector> {
 	 */
 	public Vector get(int index) {
 		if (index < 0) {
-			index = points.size() + index;
+			index = size() + index;
 			if (index < 0)
 				return null;
 		}
-		return points.get(index);
+		return new Vector(getX(index), getY(index));
 	}
 
 	public Vector get(double x) {
 		int i = (int) Math.floor(x);
-		Vector p1 = points.get(i);
-		Vector p2 = points.get(i + 1);
-		return p1.lerp(p2, x - i);
+		double k = x - i;
+		double x1 = getX(i), y1 = getY(i);
+		return new Vector(x1 + k * (getX(i + 1) - x1), y1 + k
+				* (getY(i + 1) - y1));
+	}
+
+	/**
+	 * Gets the horizontal coordinate of the {@code index}-th point, without
+	 * allocating.
+	 */
+	public double getX(int index) {
+		return columns.getX(index);
+	}
+
+	/**
+	 * Gets the vertical coordinate of the {@code index}-th point, without
+	 * allocating.
+	 */
+	public double getY(int index) {
+		return columns.getY(index);
 	}
 
 	public void set(int index, Vector p) {
-		points.set(index, p);
+		synchronized (columns) {
+			columns.set(index, p.x, p.y);
+		}
 	}
 
 	private boolean updateBounds(double x, double y) {
 		boolean boundsChanged = false;
-		if (points.isEmpty()) {
+		if (columns.size() == 0) {
 			minX = maxX = x;
 			minY = maxY = y;
 			boundsChanged = true;
@@ -128,17 +185,17 @@ public class Series2D extends Series implements Iterable<Vector> {
 
 	@Override
 	public boolean isEmpty() {
-		return points.isEmpty();
+		return size() == 0;
 	}
 
 	@Override
 	public int size() {
-		return points.size();
+		return columns.size();
 	}
 
 	public void clear() {
-		synchronized (this) {
-			points.clear();
+		synchronized (columns) {
+			columns.clear();
 		}
 		notifyBoundsChanged();
 		notifySeriesChanged();
@@ -149,10 +206,8 @@ public class Series2D extends Series implements Iterable<Vector> {
 		dudt.add(Vector.ZERO);
 		int n = Math.min(size(), t.size());
 		for (int i = 1; i < n; i++) {
-			Vector u0 = get(i);
-			Vector u1 = get(i - 1);
-			double dx = u0.x - u1.x;
-			double dy = u0.y - u1.y;
+			double dx = getX(i) - getX(i - 1);
+			double dy = getY(i) - getY(i - 1);
 			double dt = t.diff(i);
 			dudt.add(dx / dt, dy / dt);
 		}
@@ -161,49 +216,79 @@ public class Series2D extends Series implements Iterable<Vector> {
 
 	public Series1D magnitude() {
 		Series1D magnitude = new Series1D();
-		synchronized (points) {
-			for (Vector u : points)
-				magnitude.add(u.magnitude());
-		}
+		int n = size();
+		for (int i = 0; i < n; i++)
+			magnitude.add(Math.hypot(getX(i), getY(i)));
 		return magnitude;
 	}
 
 	public double length() {
 		double length = 0;
-		Vector p1, p2 = get(0);
 		int n = size();
-		for (int i = 1; i < n; i++) {
-			p1 = p2;
-			p2 = get(i);
-			length += p1.distance(p2);
-		}
+		for (int i = 1; i < n; i++)
+			length += Math.hypot(getX(i) - getX(i - 1), getY(i) - getY(i - 1));
 		return length;
 	}
 
-	public Series2D scale(double scale) {
-		Series2D scaled = new Series2D();
-		for (Vector p : this)
-			scaled.add(p.multiply(scale));
-		return scaled;
+	/**
+	 * @return a live, read-only view of this series multiplied by
+	 *         {@code scale}
+	 */
+	public Series2D scale(final double scale) {
+		return new View(this) {
+			@Override
+			public double getX(int index) {
+				return source.getX(index) * scale;
+			}
+
+			@Override
+			public double getY(int index) {
+				return source.getY(index) * scale;
+			}
+
+			@Override
+			public double getMinX() {
+				return scale >= 0 ? source.getMinX() * scale : source
+						.getMaxX() * scale;
+			}
+
+			@Override
+			public double getMaxX() {
+				return scale >= 0 ? source.getMaxX() * scale : source
+						.getMinX() * scale;
+			}
+
+			@Override
+			public double getMinY() {
+				return scale >= 0 ? source.getMinY() * scale : source
+						.getMaxY() * scale;
+			}
+
+			@Override
+			public double getMaxY() {
+				return scale >= 0 ? source.getMaxY() * scale : source
+						.getMinY() * scale;
+			}
+		};
 	}
 
+	/**
+	 * @return a live, read-only view of the horizontal coordinates
+	 */
 	public Series1D getX() {
-		Series1D x = new Series1D();
-		for (Vector p : this)
-			x.add(p.x);
-		return x;
+		return new ComponentSeries1D(this, true);
 	}
 
+	/**
+	 * @return a live, read-only view of the vertical coordinates
+	 */
 	public Series1D getY() {
-		Series1D y = new Series1D();
-		for (Vector p : this)
-			y.add(p.y);
-		return y;
+		return new ComponentSeries1D(this, false);
 	}
 
 	@Override
 	public Vector getPoint(int i) {
-		return points.get(i);
+		return get(i);
 	}
 
 	@Override
@@ -226,9 +311,87 @@ public class Series2D extends Series implements Iterable<Vector> {
 		return maxY;
 	}
 
+	/**
+	 * @return {@code true} if part of this series lives in a memory-mapped
+	 *         file
+	 */
+	public boolean isSpilled() {
+		return columns != null && columns.isSpilled();
+	}
+
 	@Override
 	public Iterator<Vector> iterator() {
-		return points.iterator();
+		return new Iterator<Vector>() {
+			private int i;
+
+			@Override
+			public boolean hasNext() {
+				return i < size();
+			}
+
+			@Override
+			public Vector next() {
+				if (i >= size())
+					throw new NoSuchElementException();
+				return get(i++);
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * Read-only series computed point by point from another one. Views keep
+	 * no storage and do not notify listeners; listen to the source instead.
+	 */
+	private static abstract class View extends Series2D {
+
+		protected final Series2D source;
+
+		private View(Series2D source) {
+			super((PointColumns) null);
+			this.source = source;
+		}
+
+		@Override
+		public abstract double getX(int index);
+
+		@Override
+		public abstract double getY(int index);
+
+		@Override
+		public int size() {
+			return source.size();
+		}
+
+		@Override
+		public void add(double x, double y) {
+			throw new UnsupportedOperationException("Read-only view");
+		}
+
+		@Override
+		void add(double[] xs, double[] ys) {
+			throw new UnsupportedOperationException("Read-only view");
+		}
+
+		@Override
+		void add(Series2D series) {
+			throw new UnsupportedOperationException("Read-only view");
+		}
+
+		@Override
+		public void set(int index, Vector p) {
+			throw new UnsupportedOperationException("Read-only view");
+		}
+
+		@Override
+		public void clear() {
+			throw new UnsupportedOperationException("Read-only view");
+		}
+
 	}
 
 }
@@ -11,7 +11,6 @@
 package dcc.graphics.series;
 
 import dcc.graphics.image.FilterFactory;
-import dcc.graphics.math.Vector;
 import dcc.graphics.math.async.Operation1D;
 
 public class SmoothedSeries2D extends Series2D implements SmoothedSeries {
@@ -44,9 +43,8 @@ public class SmoothedSeries2D extends Series2D implements SmoothedSeries {
 					double valueX = 0, valueY = 0;
 					for (int k = -r; k <= r; k++) {
 						int index = Math.min(Math.max(i + k, 0), n - 1);
-						Vector point = series.get(index);
-						valueX += filter[k + r] * point.x;
-						valueY += filter[k + r] * point.y;
+						valueX += filter[k + r] * series.getX(index);
+						valueY += filter[k + r] * series.getY(index);
 					}
 					filteredX[i] = valueX;
 					filteredY[i] = valueY;
@@ -60,7 +58,7 @@ public class SmoothedSeries2D extends Series2D implements SmoothedSeries {
 	@Override
 	public void unsmooth() {
 		isSmoothed = false;
-		synchronized (points) {
+		synchronized (this) {
 			clear();
 			add(series);
 		}
@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Daniel Coelho de Castro.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Daniel Coelho de Castro - initial API and implementation
+ ******************************************************************************/
+package dcc.graphics.series;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Delivers notifications to another listener at a limited rate, on a shared
+ * background thread. A notification arriving while one is already scheduled
+ * is absorbed by it.
+ */
+final class ThrottledSeriesListener implements SeriesListener {
+
+	private static final ScheduledExecutorService scheduler = Executors
+			.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "Series notifications");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	private final SeriesListener listener;
+	private final long interval;
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+	private volatile long lastDelivery;
+
+	ThrottledSeriesListener(SeriesListener listener, double rate) {
+		if (!(rate > 0))
+			throw new IllegalArgumentException("Rate must be positive: "
+					+ rate);
+		this.listener = listener;
+		interval = (long) (1e9 / rate);
+		lastDelivery = System.nanoTime() - interval;
+	}
+
+	boolean wraps(SeriesListener listener) {
+		return this.listener == listener;
+	}
+
+	@Override
+	public void onSeriesChanged(final Series series) {
+		if (!scheduled.compareAndSet(false, true))
+			return;
+		long delay = Math.max(0, lastDelivery + interval - System.nanoTime());
+		scheduler.schedule(new Runnable() {
+			@Override
+			public void run() {
+				// Changes from now on need a new delivery
+				scheduled.set(false);
+				lastDelivery = System.nanoTime();
+				listener.onSeriesChanged(series);
+			}
+		}, delay, TimeUnit.NANOSECONDS);
+	}
+
+}
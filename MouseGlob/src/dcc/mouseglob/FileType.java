@@ -45,6 +45,11 @@ public enum FileType {
 	 */
 	MAZE_CSV_FILE("Exported CSV Data", "csv"),
 
+	/**
+	 * Lens remap table stored with an experiment
+	 */
+	REMAP_FILE("Remap Table", "mgr"),
+
 	/**
 	 * Movie to be analyzed
 	 */
@@ -206,7 +206,7 @@ public class MouseGlob extends
 
 	void onClose() {
 		try {
-			cameraManager.stop();
+			cameraManager.close();
 			movieManager.close();
 		} catch (NullPointerException | ModuleNotInitializedException e) {
 			log.warn("Error while closing resources: {}", e.toString());
@@ -16,6 +16,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import dcc.inject.Context;
 import dcc.inject.TypedDependencyGraph;
 import dcc.mouseglob.analysis.Analysis.AnalysisInfo;
 import dcc.mouseglob.analysis.Dataset.Time;
@@ -44,47 +45,62 @@ public class AnalysesManager implements XMLEncodable {
 	private List<Class<? extends Analysis>> orderedAnalyses;
 	private TypedDependencyGraph<Analysis> dependencyGraph;
 	private boolean dirty = true;
+	private Context context = Context.getGlobal();
 
 	private List<AnalysisSelectionListener> listeners;
 
 	@SuppressWarnings("unchecked")
 	public AnalysesManager() {
-		availableAnalyses = new java.util.LinkedHashSet<>();
-		// 1) Discover via ServiceLoader SPI
-		try {
-			java.util.ServiceLoader<dcc.mouseglob.analysis.spi.AnalysisProvider> loader =
-					java.util.ServiceLoader.load(dcc.mouseglob.analysis.spi.AnalysisProvider.class);
-			for (dcc.mouseglob.analysis.spi.AnalysisProvider p : loader) {
-				java.util.Collection<Class<? extends Analysis>> provided = p.getAnalyses();
-				if (provided != null) availableAnalyses.addAll(provided);
-			}
-		} catch (Throwable t) {
-			// ignore and fallback
-		}
-		// 2) Fallback to legacy classpath scanning if nothing found
-		if (availableAnalyses.isEmpty()) {
-			availableAnalyses = ClassCache.getInstance().subclassesWithAnnotation(
-					Analysis.class, AnalysisInfo.class);
-		}
-
-		dependencyGraph = new TypedDependencyGraph<Analysis>(Analysis.class);
-		dependencyGraph.addAll(availableAnalyses);
-
 		listeners = new ArrayList<AnalysisSelectionListener>();
 
+		// The available analyses are only looked for when first needed, as
+		// tracking only needs the required ones and their dependencies
+		TypedDependencyGraph<Analysis> required = new TypedDependencyGraph<Analysis>(
+				Analysis.class);
 		selectedAnalyses = new HashSet<Class<? extends Analysis>>();
-		for (Class<?> analysis : REQUIRED_ANALYSES)
-			select((Class<? extends Analysis>) analysis);
+		for (Class<?> analysis : REQUIRED_ANALYSES) {
+			Class<? extends Analysis> analysisClass = (Class<? extends Analysis>) analysis;
+			required.add(analysisClass);
+			selectedAnalyses.add(analysisClass);
+			selectedAnalyses.addAll(required.getDependencies(analysisClass));
+		}
+	}
+
+	private synchronized TypedDependencyGraph<Analysis> getDependencyGraph() {
+		if (dependencyGraph == null) {
+			availableAnalyses = new java.util.LinkedHashSet<>();
+			// 1) Discover via ServiceLoader SPI
+			try {
+				java.util.ServiceLoader<dcc.mouseglob.analysis.spi.AnalysisProvider> loader =
+						java.util.ServiceLoader.load(dcc.mouseglob.analysis.spi.AnalysisProvider.class);
+				for (dcc.mouseglob.analysis.spi.AnalysisProvider p : loader) {
+					java.util.Collection<Class<? extends Analysis>> provided = p.getAnalyses();
+					if (provided != null) availableAnalyses.addAll(provided);
+				}
+			} catch (Throwable t) {
+				// ignore and fallback
+			}
+			// 2) Fallback to legacy classpath scanning if nothing found
+			if (availableAnalyses.isEmpty()) {
+				availableAnalyses = ClassCache.getInstance().subclassesWithAnnotation(
+						Analysis.class, AnalysisInfo.class);
+			}
+
+			dependencyGraph = new TypedDependencyGraph<Analysis>(Analysis.class);
+			dependencyGraph.addAll(availableAnalyses);
+		}
+		return dependencyGraph;
 	}
 
 	public List<Class<? extends Analysis>> getAvailableAnalyses() {
-		return dependencyGraph.getOrder();
+		return getDependencyGraph().getOrder();
 	}
 
 	public void select(Class<? extends Analysis> analysisClass) {
 		dirty = true;
 		selectedAnalyses.add(analysisClass);
-		selectedAnalyses.addAll(dependencyGraph.getDependencies(analysisClass));
+		selectedAnalyses.addAll(getDependencyGraph().getDependencies(
+				analysisClass));
 
 		for (AnalysisSelectionListener listener : listeners)
 			listener.analysisSelected(analysisClass);
@@ -93,8 +109,8 @@ public class AnalysesManager implements XMLEncodable {
 	public void deselect(Class<? extends Analysis> analysisClass) {
 		dirty = true;
 		selectedAnalyses.remove(analysisClass);
-		selectedAnalyses.removeAll(dependencyGraph
-				.getAllThatDependOn(analysisClass));
+		selectedAnalyses.removeAll(getDependencyGraph().getAllThatDependOn(
+				analysisClass));
 
 		for (AnalysisSelectionListener listener : listeners)
 			listener.analysisDeselected(analysisClass);
@@ -117,7 +133,7 @@ public class AnalysesManager implements XMLEncodable {
 
 	Set<Class<? extends Analysis>> getDependencies(
 			Class<? extends Analysis> clazz) {
-		return dependencyGraph.getDependencies(clazz);
+		return getDependencyGraph().getDependencies(clazz);
 	}
 
 	private void finishSelection() {
@@ -135,9 +151,17 @@ public class AnalysesManager implements XMLEncodable {
 		return orderedAnalyses;
 	}
 
+	/**
+	 * Sets the context whose components the analyses of new datasets are
+	 * injected with, the global context by default.
+	 */
+	public void setContext(Context context) {
+		this.context = context;
+	}
+
 	public Dataset getNewDataset(Tracker tracker) {
 		finishSelection();
-		return new Dataset(tracker, orderedAnalyses);
+		return new Dataset(context, tracker, orderedAnalyses);
 	}
 
 	public void addSelectionListener(AnalysisSelectionListener listener) {
@@ -18,10 +18,13 @@ import java.util.Map;
 import java.util.Set;
 
 import dcc.graphics.plot.oned.Axis;
+import dcc.graphics.series.Series;
 import dcc.graphics.series.Series1D;
+import dcc.graphics.series.Series2D;
 import dcc.inject.Context;
 import dcc.inject.Indexer;
 import dcc.inject.InjectionUtils;
+import dcc.mouseglob.PropertiesManager;
 import dcc.mouseglob.analysis.Analysis.AnalysisInfo;
 import dcc.mouseglob.report.Report;
 import dcc.mouseglob.report.ReportDescriptor;
@@ -29,13 +32,28 @@ import dcc.mouseglob.tracking.Tracker;
 
 public class Dataset implements Iterable<Analysis> {
 
+	/**
+	 * Samples kept on the heap by each 2D analysis before the rest spill to a
+	 * memory-mapped file; 0 keeps everything on the heap.
+	 */
+	private static final String SPILL_THRESHOLD_KEY = "series.spill.threshold";
+	static {
+		Series2D.setSpillThreshold(PropertiesManager.getInstance().getInteger(
+				SPILL_THRESHOLD_KEY, 0));
+	}
+
 	private final Context context;
 	private final Map<Class<? extends Analysis>, Analysis> analyses;
 	private final Time time;
 
 	Dataset(Tracker tracker, List<Class<? extends Analysis>> analysisClasses) {
+		this(Context.getGlobal(), tracker, analysisClasses);
+	}
+
+	Dataset(Context parent, Tracker tracker,
+			List<Class<? extends Analysis>> analysisClasses) {
 		context = new Context();
-		context.merge(Context.getGlobal());
+		context.merge(parent);
 		context.putInstance(tracker);
 		context.inject(Indexer.load(analysisClasses));
 
@@ -44,17 +62,24 @@ public class Dataset implements Iterable<Analysis> {
 			analyses.put(clazz, context.getInstance(clazz));
 		this.analyses = Collections.unmodifiableMap(analyses);
 
-		System.err.println(context);
-
 		tracker.setDataset(this);
 
 		time = require(Time.class);
 	}
 
+	/**
+	 * Records a new frame. Listeners of the series changed by the analyses
+	 * are notified once each, after all analyses have been updated.
+	 */
 	public void update(long time) {
-		this.time.add(time / 1e3);
-		for (Analysis analysis : analyses.values())
-			analysis.update();
+		Series.beginUpdate();
+		try {
+			this.time.add(time / 1e3);
+			for (Analysis analysis : analyses.values())
+				analysis.update();
+		} finally {
+			Series.endUpdate();
+		}
 	}
 
 	@SuppressWarnings("unchecked")
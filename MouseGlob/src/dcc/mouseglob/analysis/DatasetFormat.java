@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Daniel Coelho de Castro.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Daniel Coelho de Castro - initial API and implementation
+ ******************************************************************************/
+package dcc.mouseglob.analysis;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Layout of the binary dataset files written by {@link DatasetWriter} and read
+ * by {@link DatasetReader}.
+ * <p>
+ * A file holds a number of 8-byte columns, the first of which is the time in
+ * seconds. Rows are stored in blocks of at most {@value #BLOCK_ROWS}; within
+ * a block each column is stored on its own, with the bytes of its values
+ * grouped by significance and then deflated, which compresses slowly varying
+ * values well. A footer lists the blocks with their first and last times, so
+ * a reader finds the block of any time by binary search.
+ * 
+ * <pre>
+ * header:  magic, version, block rows, column count, (name, type) per column
+ * blocks:  per column, the deflated bytes of its values
+ * footer:  row count, block count, per block (offset, rows, first time,
+ *          last time, compressed length per column)
+ * trailer: footer offset, magic
+ * </pre>
+ * 
+ * All numbers are little-endian.
+ */
+final class DatasetFormat {
+
+	static final int MAGIC = 0x5344474D; // "MGDS"
+	static final short VERSION = 1;
+	static final int BLOCK_ROWS = 4096;
+	static final int TRAILER_SIZE = 12;
+
+	static final byte DOUBLE = 0;
+	static final byte LONG = 1;
+
+	private DatasetFormat() {
+	}
+
+	/**
+	 * Where a block lies in the file and which times it covers.
+	 */
+	static final class Block {
+		final long offset;
+		final int rows;
+		final double firstTime, lastTime;
+		final int[] lengths;
+
+		Block(long offset, int rows, double firstTime, double lastTime,
+				int[] lengths) {
+			this.offset = offset;
+			this.rows = rows;
+			this.firstTime = firstTime;
+			this.lastTime = lastTime;
+			this.lengths = lengths;
+		}
+
+		long getLength() {
+			long length = 0;
+			for (int l : lengths)
+				length += l;
+			return length;
+		}
+	}
+
+	static ByteBuffer allocate(int capacity) {
+		return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Encodes and compresses the first {@code rows} values of a column, given
+	 * as raw 8-byte values.
+	 */
+	static byte[] compress(long[] values, int rows, Deflater deflater) {
+		// Byte k of every value goes to the k-th eighth of the input
+		byte[] shuffled = new byte[rows * 8];
+		for (int i = 0; i < rows; i++) {
+			long v = values[i];
+			for (int k = 0; k < 8; k++)
+				shuffled[k * rows + i] = (byte) (v >>> (8 * k));
+		}
+
+		deflater.reset();
+		deflater.setInput(shuffled);
+		deflater.finish();
+		byte[] buffer = new byte[shuffled.length / 4 + 64];
+		int length = 0;
+		while (!deflater.finished()) {
+			if (length == buffer.length)
+				buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+			length += deflater.deflate(buffer, length, buffer.length - length);
+		}
+		return Arrays.copyOf(buffer, length);
+	}
+
+	/**
+	 * Reverses {@link #compress}.
+	 */
+	static void decompress(ByteBuffer in, int length, int rows,
+			Inflater inflater, long[] values) throws IOException {
+		byte[] compressed = new byte[length];
+		in.get(compressed);
+		byte[] shuffled = new byte[rows * 8];
+		inflater.reset();
+		inflater.setInput(compressed);
+		try {
+			int n = 0;
+			while (n < shuffled.length && !inflater.finished()) {
+				int read = inflater.inflate(shuffled, n, shuffled.length - n);
+				if (read == 0 && inflater.needsInput())
+					break;
+				n += read;
+			}
+			if (n != shuffled.length)
+				throw new IOException("Truncated dataset block");
+		} catch (DataFormatException e) {
+			throw new IOException("Corrupt dataset block", e);
+		}
+
+		for (int i = 0; i < rows; i++) {
+			long v = 0;
+			for (int k = 0; k < 8; k++)
+				v |= (shuffled[k * rows + i] & 0xFFL) << (8 * k);
+			values[i] = v;
+		}
+	}
+
+}
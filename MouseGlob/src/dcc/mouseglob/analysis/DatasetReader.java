@@ -0,0 +1,268 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Daniel Coelho de Castro.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Daniel Coelho de Castro - initial API and implementation
+ ******************************************************************************/
+package dcc.mouseglob.analysis;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.Inflater;
+
+/**
+ * Reads the binary dataset files written by {@link DatasetWriter}.
+ * <p>
+ * The file is memory-mapped a block at a time, and only the block holding
+ * the requested row is decompressed, so reports can be regenerated and the
+ * timeline scrubbed without loading the whole file. {@link #seek(double)}
+ * finds the frame of a time by binary search, over the block index and then
+ * within the block.
+ */
+public class DatasetReader implements Closeable {
+
+	private final FileChannel channel;
+	private final String[] names;
+	private final byte[] types;
+	private final DatasetFormat.Block[] blocks;
+	/** Index of the first row of each block. */
+	private final long[] firstRows;
+	private final int size;
+
+	private final Inflater inflater = new Inflater();
+	private int current = -1;
+	private ByteBuffer currentData;
+	private long[][] currentValues;
+
+	public DatasetReader(Path file) throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			long fileSize = channel.size();
+			if (fileSize < DatasetFormat.TRAILER_SIZE)
+				throw new IOException("Not a dataset file: " + file);
+			ByteBuffer trailer = map(fileSize - DatasetFormat.TRAILER_SIZE,
+					DatasetFormat.TRAILER_SIZE);
+			long footerOffset = trailer.getLong();
+			if (trailer.getInt() != DatasetFormat.MAGIC || footerOffset < 0
+					|| footerOffset > fileSize - DatasetFormat.TRAILER_SIZE)
+				throw new IOException("Not a dataset file: " + file);
+
+			// The header ends where the first block, or else the footer, starts
+			ByteBuffer footer = map(footerOffset, fileSize - footerOffset
+					- DatasetFormat.TRAILER_SIZE);
+			footer.getLong();
+			long headerEnd = footer.getInt() > 0 ? footer.getLong()
+					: footerOffset;
+			footer.rewind();
+
+			ByteBuffer header = map(0, headerEnd);
+			if (header.getInt() != DatasetFormat.MAGIC)
+				throw new IOException("Not a dataset file: " + file);
+			short version = header.getShort();
+			if (version != DatasetFormat.VERSION)
+				throw new IOException("Unsupported dataset version " + version);
+			header.getInt(); // Rows per block, implied by the footer
+			int columns = header.getInt();
+			names = new String[columns];
+			types = new byte[columns];
+			for (int c = 0; c < columns; c++) {
+				byte[] name = new byte[header.getShort() & 0xFFFF];
+				header.get(name);
+				names[c] = new String(name, StandardCharsets.UTF_8);
+				types[c] = header.get();
+			}
+
+			long rows = footer.getLong();
+			if (rows > Integer.MAX_VALUE)
+				throw new IOException("Too many rows: " + rows);
+			size = (int) rows;
+			blocks = new DatasetFormat.Block[footer.getInt()];
+			firstRows = new long[blocks.length];
+			long row = 0;
+			for (int b = 0; b < blocks.length; b++) {
+				long offset = footer.getLong();
+				int blockRows = footer.getInt();
+				double firstTime = footer.getDouble();
+				double lastTime = footer.getDouble();
+				int[] lengths = new int[columns];
+				for (int c = 0; c < columns; c++)
+					lengths[c] = footer.getInt();
+				blocks[b] = new DatasetFormat.Block(offset, blockRows,
+						firstTime, lastTime, lengths);
+				firstRows[b] = row;
+				row += blockRows;
+			}
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e instanceof IOException ? (IOException) e : new IOException(
+					"Corrupt dataset file: " + file, e);
+		}
+	}
+
+	/**
+	 * @return the number of frames in the file
+	 */
+	public int size() {
+		return size;
+	}
+
+	public int getColumnCount() {
+		return names.length;
+	}
+
+	public String getColumnName(int column) {
+		return names[column];
+	}
+
+	/**
+	 * @return the index of the column with the given name, or {@code -1}
+	 */
+	public int getColumn(String name) {
+		for (int c = 0; c < names.length; c++)
+			if (names[c].equals(name))
+				return c;
+		return -1;
+	}
+
+	/**
+	 * @return whether the column holds integers, such as visit masks, rather
+	 *         than decimal numbers
+	 */
+	public boolean isIntegerColumn(int column) {
+		return types[column] == DatasetFormat.LONG;
+	}
+
+	/**
+	 * @return the time of the given frame, in seconds
+	 */
+	public double getTime(int row) throws IOException {
+		return getDouble(0, row);
+	}
+
+	public synchronized double getDouble(int column, int row)
+			throws IOException {
+		long bits = getRaw(column, row);
+		return types[column] == DatasetFormat.LONG ? bits : Double
+				.longBitsToDouble(bits);
+	}
+
+	public synchronized long getLong(int column, int row) throws IOException {
+		long bits = getRaw(column, row);
+		return types[column] == DatasetFormat.LONG ? bits : (long) Double
+				.longBitsToDouble(bits);
+	}
+
+	/**
+	 * Finds the last frame at or before the given time.
+	 * 
+	 * @param time
+	 *            - the time, in seconds
+	 * @return the index of the frame, or {@code -1} if the time is before the
+	 *         first frame
+	 */
+	public synchronized int seek(double time) throws IOException {
+		// Last block starting at or before the time
+		int lo = 0, hi = blocks.length - 1, block = -1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			if (blocks[mid].firstTime <= time) {
+				block = mid;
+				lo = mid + 1;
+			} else {
+				hi = mid - 1;
+			}
+		}
+		if (block < 0)
+			return -1;
+		if (blocks[block].lastTime <= time)
+			return (int) (firstRows[block] + blocks[block].rows - 1);
+
+		long[] times = load(block, 0);
+		lo = 0;
+		hi = blocks[block].rows - 1;
+		int row = 0;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			if (Double.longBitsToDouble(times[mid]) <= time) {
+				row = mid;
+				lo = mid + 1;
+			} else {
+				hi = mid - 1;
+			}
+		}
+		return (int) (firstRows[block] + row);
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		currentData = null;
+		currentValues = null;
+		inflater.end();
+		channel.close();
+	}
+
+	private long getRaw(int column, int row) throws IOException {
+		if (row < 0 || row >= size)
+			throw new IndexOutOfBoundsException("Row: " + row + ", Size: "
+					+ size);
+		int block = findBlock(row);
+		return load(block, column)[(int) (row - firstRows[block])];
+	}
+
+	private int findBlock(int row) {
+		if (current >= 0 && row >= firstRows[current]
+				&& row < firstRows[current] + blocks[current].rows)
+			return current;
+		int lo = 0, hi = blocks.length - 1;
+		while (lo < hi) {
+			int mid = (lo + hi + 1) >>> 1;
+			if (firstRows[mid] <= row)
+				lo = mid;
+			else
+				hi = mid - 1;
+		}
+		return lo;
+	}
+
+	/**
+	 * @return the decoded values of a column of a block, which stay cached
+	 *         until another block is loaded
+	 */
+	private long[] load(int block, int column) throws IOException {
+		DatasetFormat.Block b = blocks[block];
+		if (block != current) {
+			currentData = map(b.offset, b.getLength());
+			currentValues = new long[names.length][];
+			current = block;
+		}
+		if (currentValues[column] == null) {
+			long offset = 0;
+			for (int c = 0; c < column; c++)
+				offset += b.lengths[c];
+			ByteBuffer data = currentData.duplicate();
+			data.position((int) offset);
+			long[] values = new long[b.rows];
+			DatasetFormat.decompress(data, b.lengths[column], b.rows,
+					inflater, values);
+			currentValues[column] = values;
+		}
+		return currentValues[column];
+	}
+
+	private ByteBuffer map(long position, long length) throws IOException {
+		return channel.map(MapMode.READ_ONLY, position, length).order(
+				ByteOrder.LITTLE_ENDIAN);
+	}
+
+}
@@ -10,16 +10,361 @@
  ******************************************************************************/
 package dcc.mouseglob.analysis;
 
-public class DatasetWriter {
-	
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import dcc.graphics.math.Vector;
+import dcc.graphics.series.Series;
+import dcc.graphics.series.Series1D;
+import dcc.graphics.series.Series2D;
+import dcc.graphics.series.SeriesListener;
+import dcc.mouseglob.analysis.Analysis.AnalysisInfo;
+import dcc.mouseglob.analysis.Dataset.Time;
+import dcc.mouseglob.analysis.analyses.MomentsAnalysis;
+import dcc.mouseglob.visit.VisitAnalysis;
+
+/**
+ * Writes a {@link Dataset} in the binary format described in
+ * {@link DatasetFormat}, to be read back with {@link DatasetReader}.
+ * <p>
+ * Every 1D and 2D series analysis is written as one or two columns, and each
+ * {@link VisitAnalysis} as a column of zone masks. {@link #write(Path)} writes
+ * the frames recorded so far; {@link #start(Path)} also records each new frame
+ * until {@link #stop()}, including the {@link MomentsAnalysis}, which keeps
+ * no history and can only be sampled as it runs.
+ */
+public class DatasetWriter implements SeriesListener {
+	private static final org.slf4j.Logger log = org.slf4j.LoggerFactory
+			.getLogger(DatasetWriter.class);
+
 	private final Dataset dataset;
+	private final Time time;
+
+	private FileChannel channel;
+	private long position;
+	private Column[] columns;
+	private long[][] values;
+	private int rows, written;
+	private final List<DatasetFormat.Block> blocks = new ArrayList<DatasetFormat.Block>();
+	private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
 
 	public DatasetWriter(Dataset dataset) {
 		this.dataset = dataset;
+		time = dataset.require(Time.class);
+	}
+
+	/**
+	 * Writes the frames recorded so far.
+	 */
+	public synchronized void write(Path file) throws IOException {
+		open(file, false);
+		try {
+			appendRecorded();
+		} finally {
+			close();
+		}
+	}
+
+	/**
+	 * Writes the frames recorded so far and keeps recording the new ones
+	 * until {@link #stop()} is called.
+	 */
+	public synchronized void start(Path file) throws IOException {
+		open(file, true);
+		try {
+			appendRecorded();
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+		time.addSeriesListener(this);
+	}
+
+	/**
+	 * Stops recording and completes the file.
+	 */
+	public synchronized void stop() throws IOException {
+		time.removeSeriesListener(this);
+		if (channel != null)
+			close();
+	}
+
+	/**
+	 * @return whether new frames are being recorded
+	 */
+	public synchronized boolean isRecording() {
+		return channel != null;
+	}
+
+	@Override
+	public synchronized void onSeriesChanged(Series series) {
+		if (channel == null)
+			return;
+		try {
+			appendRecorded();
+		} catch (IOException e) {
+			log.error("Could not record dataset", e);
+			time.removeSeriesListener(this);
+			try {
+				channel.close();
+			} catch (IOException ignored) {
+				// Already failing
+			}
+			channel = null;
+		}
 	}
-	
-	public void write() {
-		
+
+	private void open(Path file, boolean live) throws IOException {
+		if (channel != null)
+			throw new IllegalStateException("Already recording");
+
+		columns = getColumns(live);
+		values = new long[columns.length][DatasetFormat.BLOCK_ROWS];
+		rows = written = 0;
+		blocks.clear();
+
+		channel = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		position = 0;
+
+		List<byte[]> names = new ArrayList<byte[]>();
+		int size = 14;
+		for (Column column : columns) {
+			byte[] name = column.name.getBytes(StandardCharsets.UTF_8);
+			names.add(name);
+			size += 3 + name.length;
+		}
+		ByteBuffer header = DatasetFormat.allocate(size);
+		header.putInt(DatasetFormat.MAGIC).putShort(DatasetFormat.VERSION)
+				.putInt(DatasetFormat.BLOCK_ROWS).putInt(columns.length);
+		for (int c = 0; c < columns.length; c++) {
+			header.putShort((short) names.get(c).length).put(names.get(c))
+					.put(columns[c].type);
+		}
+		header.flip();
+		write(header);
+	}
+
+	/**
+	 * Appends the frames recorded since the last call.
+	 */
+	private void appendRecorded() throws IOException {
+		int n = time.size();
+		for (; written < n; written++) {
+			for (int c = 0; c < columns.length; c++)
+				values[c][rows] = columns[c].get(written, n);
+			if (++rows == DatasetFormat.BLOCK_ROWS)
+				writeBlock();
+		}
+	}
+
+	private void writeBlock() throws IOException {
+		int[] lengths = new int[columns.length];
+		long offset = position;
+		for (int c = 0; c < columns.length; c++) {
+			byte[] bytes = DatasetFormat.compress(values[c], rows, deflater);
+			lengths[c] = bytes.length;
+			write(ByteBuffer.wrap(bytes));
+		}
+		blocks.add(new DatasetFormat.Block(offset, rows, Double
+				.longBitsToDouble(values[0][0]), Double
+				.longBitsToDouble(values[0][rows - 1]), lengths));
+		rows = 0;
+	}
+
+	private void close() throws IOException {
+		try {
+			if (rows > 0)
+				writeBlock();
+
+			long footerOffset = position;
+			ByteBuffer footer = DatasetFormat.allocate(12 + blocks.size()
+					* (28 + 4 * columns.length) + DatasetFormat.TRAILER_SIZE);
+			footer.putLong(written).putInt(blocks.size());
+			for (DatasetFormat.Block block : blocks) {
+				footer.putLong(block.offset).putInt(block.rows)
+						.putDouble(block.firstTime).putDouble(block.lastTime);
+				for (int length : block.lengths)
+					footer.putInt(length);
+			}
+			footer.putLong(footerOffset).putInt(DatasetFormat.MAGIC);
+			footer.flip();
+			write(footer);
+		} finally {
+			channel.close();
+			channel = null;
+			values = null;
+		}
+	}
+
+	private void write(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining())
+			position += channel.write(buffer, position);
+	}
+
+	private Column[] getColumns(boolean live) {
+		List<Column> columns = new ArrayList<Column>();
+		columns.add(new Series1DColumn(getName(Time.class), time));
+		for (Analysis analysis : dataset) {
+			String name = getName(analysis.getClass());
+			if (analysis instanceof Time) {
+				continue;
+			} else if (analysis instanceof Series1D) {
+				columns.add(new Series1DColumn(name, (Series1D) analysis));
+			} else if (analysis instanceof Series2D) {
+				columns.add(new Series2DColumn(name + " x",
+						(Series2D) analysis, false));
+				columns.add(new Series2DColumn(name + " y",
+						(Series2D) analysis, true));
+			} else if (analysis instanceof VisitAnalysis) {
+				columns.add(new VisitColumn(name, (VisitAnalysis) analysis));
+			} else if (live && analysis instanceof MomentsAnalysis) {
+				MomentsAnalysis moments = (MomentsAnalysis) analysis;
+				for (int property = 0; property < MomentsColumn.PROPERTIES.length; property++)
+					columns.add(new MomentsColumn(name + " "
+							+ MomentsColumn.PROPERTIES[property], moments,
+							property));
+			}
+		}
+		return columns.toArray(new Column[columns.size()]);
+	}
+
+	private static String getName(Class<?> clazz) {
+		AnalysisInfo info = clazz.getAnnotation(AnalysisInfo.class);
+		return info != null ? info.value() : clazz.getSimpleName();
+	}
+
+	/**
+	 * A column of the file and where its values come from.
+	 */
+	private static abstract class Column {
+		final String name;
+		final byte type;
+
+		Column(String name, byte type) {
+			this.name = name;
+			this.type = type;
+		}
+
+		/**
+		 * @param frame
+		 *            - index of the frame
+		 * @param frames
+		 *            - number of frames recorded so far
+		 * @return the raw bits of the value at the frame
+		 */
+		abstract long get(int frame, int frames);
+
+		/**
+		 * Analyses that started late are aligned on the last frame.
+		 * 
+		 * @return the index of the frame in a history of the given size, or
+		 *         {@code -1} if it is not there
+		 */
+		static int align(int frame, int frames, int size) {
+			int i = frame - (frames - size);
+			return i >= 0 && i < size ? i : -1;
+		}
+	}
+
+	private static final class Series1DColumn extends Column {
+		private final Series1D series;
+
+		Series1DColumn(String name, Series1D series) {
+			super(name, DatasetFormat.DOUBLE);
+			this.series = series;
+		}
+
+		@Override
+		long get(int frame, int frames) {
+			int i = align(frame, frames, series.size());
+			return Double.doubleToRawLongBits(i >= 0 ? series.get(i)
+					: Double.NaN);
+		}
+	}
+
+	private static final class Series2DColumn extends Column {
+		private final Series2D series;
+		private final boolean y;
+
+		Series2DColumn(String name, Series2D series, boolean y) {
+			super(name, DatasetFormat.DOUBLE);
+			this.series = series;
+			this.y = y;
+		}
+
+		@Override
+		long get(int frame, int frames) {
+			int i = align(frame, frames, series.size());
+			double value = i < 0 ? Double.NaN : y ? series.getY(i) : series
+					.getX(i);
+			return Double.doubleToRawLongBits(value);
+		}
+	}
+
+	private static final class VisitColumn extends Column {
+		private final VisitAnalysis visits;
+
+		VisitColumn(String name, VisitAnalysis visits) {
+			super(name, DatasetFormat.LONG);
+			this.visits = visits;
+		}
+
+		@Override
+		long get(int frame, int frames) {
+			int i = align(frame, frames, visits.getFrameCount());
+			return i >= 0 ? visits.getVisitMask(i) : 0;
+		}
+	}
+
+	/**
+	 * Samples the current moments, so only the newest frame gets a value.
+	 */
+	private static final class MomentsColumn extends Column {
+		static final String[] PROPERTIES = { "x", "y", "angle", "length",
+				"width" };
+
+		private final MomentsAnalysis moments;
+		private final int property;
+
+		MomentsColumn(String name, MomentsAnalysis moments, int property) {
+			super(name, DatasetFormat.DOUBLE);
+			this.moments = moments;
+			this.property = property;
+		}
+
+		@Override
+		long get(int frame, int frames) {
+			double value = Double.NaN;
+			Vector mean = moments.getMean();
+			if (frame == frames - 1 && mean != null) {
+				switch (property) {
+				case 0:
+					value = mean.x;
+					break;
+				case 1:
+					value = mean.y;
+					break;
+				case 2:
+					value = moments.getAngle();
+					break;
+				case 3:
+					value = moments.getLength();
+					break;
+				case 4:
+					value = moments.getWidth();
+					break;
+				}
+			}
+			return Double.doubleToRawLongBits(value);
+		}
 	}
 
 }
@@ -31,6 +31,7 @@ public class MomentsAnalysis extends CentralMoments implements Analysis {
 	private Calibration calibration;
 
 	private Vector mean;
+	private Vector pxMean;
 	private Vector majorAxis, minorAxis;
 	private double angle;
 	private double width, length;
@@ -47,13 +48,13 @@ public class MomentsAnalysis extends CentralMoments implements Analysis {
 		double scale = calibration.getScale();
 
 		if (isEmpty()) {
-			double middleX = scale * (map.getWidth() / 2);
-			double middleY = scale * (map.getHeight() / 2);
-			mean = new Vector(middleX, middleY);
+			pxMean = new Vector(map.getWidth() / 2, map.getHeight() / 2);
+			mean = pxMean.multiply(scale);
 			return;
 		}
 
-		mean = super.getMean().multiply(scale);
+		pxMean = super.getMean();
+		mean = pxMean.multiply(scale);
 		angle = getAngle();
 
 		Matrix sigma = getCovarianceMatrix();
@@ -71,6 +72,16 @@ public class MomentsAnalysis extends CentralMoments implements Analysis {
 		return mean;
 	}
 
+	/**
+	 * Gets the mean in pixels of the tracker's window, unscaled, as points of
+	 * the frame must be mapped to the arena as a whole.
+	 * 
+	 * @return the mean, relative to the window's corner
+	 */
+	public Vector getPxMean() {
+		return pxMean;
+	}
+
 	public double getLength() {
 		return length;
 	}
@@ -22,6 +22,12 @@ import dcc.mouseglob.analysis.Analysis.AnalysisInfo;
 import dcc.mouseglob.analysis.Dataset.Time;
 import dcc.mouseglob.calibration.Calibration;
 
+/**
+ * The tracker's position, in centimeters. Positions are found in the frame
+ * and each is mapped to the arena through the calibration as a whole, since
+ * with a lens model the arena is not the frame scaled; the positions in the
+ * frame are kept alongside, for the tracker to follow.
+ */
 @AnalysisInfo("Position")
 public class PositionAnalysis extends Series2D implements Analysis {
 
@@ -31,7 +37,9 @@ public class PositionAnalysis extends Series2D implements Analysis {
 	private Calibration calibration;
 	@Inject
 	private Time time;
+	/** The corner of the tracker's window, in pixels */
 	private Vector corner = Vector.ZERO;
+	private final Series2D px = new Series2D();
 	private double width, height;
 
 	private KalmanVelocity kalmanX;
@@ -40,7 +48,7 @@ public class PositionAnalysis extends Series2D implements Analysis {
 	private Kalman2D kalman;
 
 	public void setCornerPosition(int left, int top) {
-		corner = calibration.pxToCm(new Vector(left, top));
+		corner = new Vector(left, top);
 	}
 
 	public void setBounds(double width, double height) {
@@ -50,12 +58,23 @@ public class PositionAnalysis extends Series2D implements Analysis {
 
 	@Override
 	public void update() {
-		add(corner.add(moments.getMean()));
+		addPx(corner.add(moments.getPxMean()));
+	}
+
+	private void addPx(Vector p) {
+		px.add(p);
+		add(calibration.pxToCm(p));
+	}
+
+	@Override
+	public void clear() {
+		super.clear();
+		px.clear();
 	}
 
 	// Using 2D Kalman filter
 	public void update1() {
-		Vector mean = moments.getMean();
+		Vector mean = moments.getPxMean();
 		if (kalman == null) {
 			double dynaS = 1; // Dynamic process noise variance
 			double measS = 1; // Measurement noise variance
@@ -65,13 +84,13 @@ public class PositionAnalysis extends Series2D implements Analysis {
 		}
 		kalman.predict();
 		Vector p = kalman.correct(mean);
-		add(corner.add(p));
+		addPx(corner.add(p));
 	}
 
 	// Using 2 1D Kalman filters
 	public void update2() {
 		double dt = time.size() > 1 ? time.diff(-1) : 1. / 24;
-		Vector mean = moments.getMean();
+		Vector mean = moments.getPxMean();
 		if (kalmanX == null || kalmanY == null) {
 			double dynaS = 10, measS = 1;
 			kalmanX = new KalmanVelocity(dynaS * dynaS, measS * measS, dt,
@@ -85,7 +104,7 @@ public class PositionAnalysis extends Series2D implements Analysis {
 		kalmanY.predict();
 		double x = kalmanX.correct(mean.x);
 		double y = kalmanY.correct(mean.y);
-		add(corner.add(new Vector(x, y)));
+		addPx(corner.add(new Vector(x, y)));
 	}
 
 	public double getWidth() {
@@ -97,11 +116,11 @@ public class PositionAnalysis extends Series2D implements Analysis {
 	}
 
 	public Series2D getPxTrajectory() {
-		return scale(1 / calibration.getScale());
+		return px;
 	}
 
 	public Vector getPx(int i) {
-		return get(i).multiply(1 / calibration.getScale());
+		return px.get(i);
 	}
 
 	public Axis getXAxis() {
@@ -1,6 +1,7 @@
 package dcc.mouseglob.analysis.spi;
 
 import dcc.mouseglob.analysis.Analysis;
+import dcc.mouseglob.analysis.Dataset;
 import dcc.mouseglob.analysis.analyses.*;
 import dcc.mouseglob.visit.VisitAnalysis;
 
@@ -15,6 +16,7 @@ public final class DefaultAnalysesProvider implements AnalysisProvider {
     @Override
     public Collection<Class<? extends Analysis>> getAnalyses() {
         return Arrays.asList(
+                Dataset.Time.class,
                 MomentsAnalysis.class,
                 PositionAnalysis.class,
                 OrientationAnalysis.class,
@@ -12,6 +12,8 @@ package dcc.mouseglob.calibration;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 
 import processing.core.PApplet;
 import processing.core.PGraphics;
@@ -24,6 +26,9 @@ import dcc.tree.DefaultTreeable;
 
 /**
  * Class that holds information about calibration in centimeters/pixel.
+ * Besides a single scale, a {@link LensModel} fitted from reference points can
+ * correct lens distortion and perspective; points are then mapped through its
+ * {@link RemapTable}.
  * 
  * @author Daniel Coelho de Castro
  */
@@ -33,6 +38,12 @@ public class Calibration extends DefaultTreeable implements Paintable,
 	private Vector p1, p2;
 	private double cm, px;
 	private double scale;
+	private volatile LensModel lens;
+	private volatile RemapTable remap;
+
+	private final List<Vector> imagePoints = new ArrayList<Vector>();
+	private final List<Vector> worldPoints = new ArrayList<Vector>();
+	private boolean referencing;
 
 	private int mouseX, mouseY;
 
@@ -154,6 +165,12 @@ public class Calibration extends DefaultTreeable implements Paintable,
 	 *            - the scale, in cm/px
 	 */
 	public void setScale(double value) {
+		lens = null;
+		remap = null;
+		updateScale(value);
+	}
+
+	private void updateScale(double value) {
 		scale = value;
 		for (CalibrationListener listener : listeners)
 			listener.onCalibrationSet(scale);
@@ -170,10 +187,124 @@ public class Calibration extends DefaultTreeable implements Paintable,
 		return scale;
 	}
 
+	/**
+	 * Determines whether a lens model has been set.
+	 * 
+	 * @return <code>true</code> if points are mapped through a lens model,
+	 *         <code>false</code> if through the scale alone
+	 */
+	public boolean hasLens() {
+		return lens != null;
+	}
+
+	/**
+	 * Gets the lens model.
+	 * 
+	 * @return the model, or <code>null</code> if none was set
+	 */
+	public LensModel getLens() {
+		return lens;
+	}
+
+	/**
+	 * Gets the remap table of the lens model.
+	 * 
+	 * @return the table, or <code>null</code> if there is no lens model or its
+	 *         table has not been computed yet
+	 */
+	public RemapTable getRemap() {
+		return remap;
+	}
+
+	/**
+	 * Sets the lens model, and the scale to its scale at the center of the
+	 * frame.
+	 * 
+	 * @param model
+	 *            - the lens model
+	 * @param table
+	 *            - its remap table, or <code>null</code> to map points through
+	 *            the model until {@link #setRemap(RemapTable)}
+	 */
+	public void setLens(LensModel model, RemapTable table) {
+		lens = model;
+		remap = table;
+		updateScale(model.getScale());
+	}
+
+	/**
+	 * Sets the remap table of the current lens model.
+	 * 
+	 * @param table
+	 *            - a table computed from the current lens model
+	 */
+	public void setRemap(RemapTable table) {
+		if (table.getModel() == lens)
+			remap = table;
+	}
+
+	@Inspectable(value = "Lens error (cm)", format = "%.3f")
+	public double getLensError() {
+		LensModel model = lens;
+		return model != null ? model.getError() : 0;
+	}
+
+	/**
+	 * Adds a reference point for fitting a lens model.
+	 * 
+	 * @param image
+	 *            - the point in the frame, in pixels
+	 * @param world
+	 *            - the same point in the arena, in centimeters
+	 */
+	void addReferencePoint(Vector image, Vector world) {
+		imagePoints.add(image);
+		worldPoints.add(world);
+	}
+
+	void clearReferencePoints() {
+		imagePoints.clear();
+		worldPoints.clear();
+	}
+
+	List<Vector> getImagePoints() {
+		return Collections.unmodifiableList(imagePoints);
+	}
+
+	List<Vector> getWorldPoints() {
+		return Collections.unmodifiableList(worldPoints);
+	}
+
+	void setReferencing(boolean referencing) {
+		this.referencing = referencing;
+	}
+
+	/**
+	 * Fits a lens model to the reference points and sets it, along with its
+	 * remap table.
+	 * 
+	 * @param width
+	 *            - frame width, in pixels
+	 * @param height
+	 *            - frame height, in pixels
+	 * @return the fitted model
+	 * @throws IllegalArgumentException
+	 *             if the reference points cannot be fitted
+	 */
+	LensModel fitLens(int width, int height) {
+		LensModel model = LensModel.fit(imagePoints, worldPoints, width,
+				height);
+		setLens(model, RemapTable.compute(model));
+		return model;
+	}
+
 	void reset() {
 		p1 = p2 = null;
 		cm = px = 0;
 		scale = 0;
+		lens = null;
+		remap = null;
+		clearReferencePoints();
 	}
 
 	void clearPoints() {
@@ -181,10 +312,19 @@ public class Calibration extends DefaultTreeable implements Paintable,
 	}
 
 	public Vector pxToCm(Vector v) {
+		RemapTable table = remap;
+		if (table != null)
+			return table.map(v.x, v.y);
+		LensModel model = lens;
+		if (model != null)
+			return model.toWorld(v.x, v.y);
 		return v.multiply(scale);
 	}
 
 	public Vector cmToPx(Vector v) {
+		LensModel model = lens;
+		if (model != null)
+			return model.toImage(v.x, v.y);
 		return v.multiply(1.0 / scale);
 	}
 
@@ -196,6 +336,8 @@ public class Calibration extends DefaultTreeable implements Paintable,
 	 */
 	@Override
 	public void paint(PGraphics g) {
+		if (referencing)
+			paintReferencePoints(g);
 		if (p1 != null) {
 			g.pushStyle();
 			g.noFill();
@@ -216,6 +358,22 @@ public class Calibration extends DefaultTreeable implements Paintable,
 		}
 	}
 
+	private void paintReferencePoints(PGraphics g) {
+		g.pushStyle();
+		g.textAlign(PApplet.LEFT, PApplet.BOTTOM);
+		for (int i = 0; i < imagePoints.size(); i++) {
+			Vector p = imagePoints.get(i), w = worldPoints.get(i);
+			float x = (float) p.x, y = (float) p.y;
+			g.stroke(255, 255, 0);
+			g.line(x - 5, y, x + 5, y);
+			g.line(x, y - 5, x, y + 5);
+			g.fill(255, 255, 0);
+			g.text(String.format("%d (%.1f, %.1f)", i + 1, w.x, w.y), x + 4,
+					y - 2);
+		}
+		g.popStyle();
+	}
+
 	public void addCalibratrionListener(CalibrationListener listener) {
 		listeners.add(listener);
 	}
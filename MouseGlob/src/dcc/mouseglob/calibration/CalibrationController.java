@@ -10,11 +10,15 @@
  ******************************************************************************/
 package dcc.mouseglob.calibration;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 
+import dcc.graphics.math.Vector;
 import dcc.inject.Inject;
 import dcc.module.AbstractController;
+import dcc.mouseglob.FileType;
 import dcc.mouseglob.applet.CursorListener;
 import dcc.mouseglob.applet.CursorListener.Cursor;
 import dcc.mouseglob.applet.MouseEvent;
@@ -22,6 +26,7 @@ import dcc.mouseglob.applet.MouseListener;
 import dcc.mouseglob.experiment.ExperimentEvent;
 import dcc.mouseglob.experiment.ExperimentEvent.ExperimentEventType;
 import dcc.mouseglob.experiment.ExperimentListener;
+import dcc.mouseglob.maze.BoundariesManager;
 import dcc.mouseglob.movie.MovieEvent;
 import dcc.mouseglob.movie.MovieEvent.MovieEventType;
 import dcc.mouseglob.movie.MovieListener;
@@ -37,15 +42,21 @@ import dcc.xml.XMLProcessor.XMLEncodable;
 public class CalibrationController extends
 		AbstractController<CalibrationModule> implements MouseListener,
 		MovieListener, ExperimentListener, CalibrationListener, XMLEncodable {
+	private static final org.slf4j.Logger log = org.slf4j.LoggerFactory
+			.getLogger(CalibrationController.class);
 
 	private final Calibration model;
 	private final CalibrationView view;
 
+	@Inject
+	private BoundariesManager boundariesManager;
+
 	private final Collection<CursorListener> cursorListeners;
 
 	ToggleAction calibrateAction = new CalibrateAction();
 	TextAction centimetersAction = new CentimetersAction();
 	TextAction pixelsAction = new PixelsAction();
+	ToggleAction referenceAction = new ReferenceAction();
 
 	@Inject
 	CalibrationController(Calibration model, CalibrationView view) {
@@ -56,6 +67,7 @@ public class CalibrationController extends
 		calibrateAction = new CalibrateAction();
 		centimetersAction = new CentimetersAction();
 		pixelsAction = new PixelsAction();
+		referenceAction = new ReferenceAction();
 
 		cursorListeners = new ArrayList<CursorListener>();
 	}
@@ -65,12 +77,79 @@ public class CalibrationController extends
 		view.setScaleValue(value);
 	}
 
+	void setLens(LensModel lens) {
+		model.setLens(lens, null);
+		view.setScaleValue(model.getScale());
+	}
+
+	void addReferencePoint(Vector image, Vector world) {
+		model.addReferencePoint(image, world);
+	}
+
 	void reset() {
 		model.reset();
 	}
 
+	/**
+	 * Fits a lens model to the reference points clicked, if there are enough.
+	 */
+	private void fitLens() {
+		int count = model.getImagePoints().size();
+		if (count == 0)
+			return;
+		if (count < LensModel.MIN_POINTS) {
+			view.showLensError("At least " + LensModel.MIN_POINTS
+					+ " reference points are needed, got " + count + ".");
+			return;
+		}
+		try {
+			LensModel lens = model.fitLens(boundariesManager.getWidth(),
+					boundariesManager.getHeight());
+			log.info("Lens fitted to {} reference points: {}", count, lens);
+		} catch (IllegalArgumentException e) {
+			view.showLensError(e.getMessage());
+		}
+	}
+
+	/**
+	 * Reads the remap table stored with an experiment, computing and storing
+	 * it again if it is missing or was computed from another model.
+	 */
+	private void loadRemap(String experimentFileName) {
+		LensModel lens = model.getLens();
+		if (lens == null || experimentFileName == null)
+			return;
+		File file = new File(
+				FileType.REMAP_FILE.replaceExtension(experimentFileName));
+		try {
+			RemapTable table = RemapTable.read(file, lens);
+			if (table != null) {
+				model.setRemap(table);
+				return;
+			}
+		} catch (IOException e) {
+			log.warn("Could not read remap table {}: {}", file, e.toString());
+		}
+		model.setRemap(RemapTable.compute(lens));
+		saveRemap(experimentFileName);
+	}
+
+	private void saveRemap(String experimentFileName) {
+		RemapTable table = model.getRemap();
+		if (table == null || experimentFileName == null)
+			return;
+		File file = new File(
+				FileType.REMAP_FILE.replaceExtension(experimentFileName));
+		try {
+			table.write(file);
+		} catch (IOException e) {
+			log.warn("Could not write remap table {}: {}", file, e.toString());
+		}
+	}
+
 	private void setCalibrationEnabled(boolean b) {
 		calibrateAction.setEnabled(b);
+		referenceAction.setEnabled(b);
 		pixelsAction.setEnabled(b);
 		centimetersAction.setEnabled(b);
 	}
@@ -94,6 +173,25 @@ public class CalibrationController extends
 		}
 	}
 
+	@SuppressWarnings("serial")
+	private class ReferenceAction extends ToggleAction {
+		public ReferenceAction() {
+			super("Reference points");
+		}
+
+		@Override
+		public void itemStateChanged(boolean state) {
+			if (state) {
+				calibrateAction.setSelected(false);
+				model.clearReferencePoints();
+			} else {
+				fitLens();
+			}
+			model.setReferencing(state);
+			setCursor(state ? Cursor.CROSS : Cursor.ARROW);
+		}
+	}
+
 	@SuppressWarnings("serial")
 	private class PixelsAction extends TextAction {
 		public PixelsAction() {
@@ -137,8 +235,21 @@ public class CalibrationController extends
 		model.setTemporary(x, y);
 	}
 
+	private boolean addReferencePoint(int x, int y) {
+		int index = model.getImagePoints().size() + 1;
+		Vector world = view.askReferencePosition(index);
+		if (world != null)
+			model.addReferencePoint(new Vector(x, y), world);
+		return true;
+	}
+
 	@Override
 	public boolean onMouseEvent(MouseEvent event) {
+		if (referenceAction.isSelected()) {
+			if (event.getType() == MouseEvent.Type.PRESSED)
+				return addReferencePoint(event.getMouseX(), event.getMouseY());
+			return false;
+		}
 		if (!calibrateAction.isSelected())
 			return false;
 		int x = event.getMouseX(), y = event.getMouseY();
@@ -167,6 +278,10 @@ public class CalibrationController extends
 	public void onExperimentEvent(ExperimentEvent event) {
 		if (event.getType() == ExperimentEventType.NEW)
 			reset();
+		else if (event.getType() == ExperimentEventType.SAVE)
+			saveRemap(event.getFileName());
+		else if (event.getType() == ExperimentEventType.LOAD)
+			loadRemap(event.getFileName());
 	}
 
 	public void addCursorListener(CursorListener cursorListener) {
@@ -15,9 +15,11 @@ import java.text.DecimalFormat;
 import java.text.NumberFormat;
 
 import javax.swing.JLabel;
+import javax.swing.JOptionPane;
 import javax.swing.JTextField;
 import javax.swing.JToolBar;
 
+import dcc.graphics.math.Vector;
 import dcc.inject.Inject;
 import dcc.module.AbstractView;
 
@@ -55,6 +57,8 @@ public class CalibrationView extends AbstractView<CalibrationModule> {
 		toolBar.add(new JLabel("Scale: "));
 		toolBar.add(scaleField);
 		toolBar.add(new JLabel(" cm/px"));
+		toolBar.addSeparator();
+		toolBar.add(controller.referenceAction.getToggleButton());
 
 		return toolBar;
 	}
@@ -66,4 +70,36 @@ public class CalibrationView extends AbstractView<CalibrationModule> {
 	void setScaleValue(double value) {
 		setScaleText(FORMAT.format(value));
 	}
+
+	/**
+	 * Asks for the position in the arena of a reference point.
+	 * 
+	 * @param index
+	 *            - the number of the point
+	 * @return the position, in centimeters, or <code>null</code> if none was
+	 *         given
+	 */
+	Vector askReferencePosition(int index) {
+		String message = "Position of point " + index
+				+ " in the arena (x, y in cm):";
+		while (true) {
+			String text = JOptionPane.showInputDialog(null, message,
+					"Reference point", JOptionPane.QUESTION_MESSAGE);
+			if (text == null || text.trim().isEmpty())
+				return null;
+			String[] values = text.trim().split("\\s*[,;\\s]\\s*");
+			try {
+				if (values.length == 2)
+					return new Vector(Double.parseDouble(values[0]),
+							Double.parseDouble(values[1]));
+			} catch (NumberFormatException e) {
+			}
+			message = "Enter two numbers, such as \"12.5, 40\" (x, y in cm):";
+		}
+	}
+
+	void showLensError(String message) {
+		JOptionPane.showMessageDialog(null, message, "Lens calibration",
+				JOptionPane.ERROR_MESSAGE);
+	}
 }
@@ -12,6 +12,7 @@ package dcc.mouseglob.calibration;
 
 import org.w3c.dom.Element;
 
+import dcc.graphics.math.Vector;
 import dcc.xml.XMLDecoder;
 import dcc.xml.XMLNotFoundException;
 import dcc.xml.XMLParseException;
@@ -33,6 +34,39 @@ class CalibrationXMLDecoder extends XMLDecoder {
 		} catch (XMLNotFoundException | XMLParseException e) {
 			e.printStackTrace();
 		}
+
+		for (Element child : getChildren(element)) {
+			try {
+				if (child.getTagName().equals("lens"))
+					controller.setLens(decodeLens(child));
+				else if (child.getTagName().equals("reference"))
+					controller.addReferencePoint(
+							new Vector(getDoubleAttribute(child, "x"),
+									getDoubleAttribute(child, "y")),
+							new Vector(getDoubleAttribute(child, "cmX"),
+									getDoubleAttribute(child, "cmY")));
+			} catch (XMLNotFoundException | XMLParseException
+					| IllegalArgumentException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private static LensModel decodeLens(Element element)
+			throws XMLNotFoundException, XMLParseException {
+		String[] values = getAttribute(element, "homography").trim().split(
+				"\\s+");
+		double[] homography = new double[values.length];
+		try {
+			for (int i = 0; i < values.length; i++)
+				homography[i] = Double.parseDouble(values[i]);
+		} catch (NumberFormatException e) {
+			throw new XMLParseException(getAttribute(element, "homography"));
+		}
+		return new LensModel(getIntAttribute(element, "width"),
+				getIntAttribute(element, "height"), getDoubleAttribute(
+						element, "k1"), getDoubleAttribute(element, "k2"),
+				homography, getDoubleAttribute(element, "error"));
 	}
 
 }
@@ -10,8 +10,11 @@
  ******************************************************************************/
 package dcc.mouseglob.calibration;
 
+import java.util.List;
+
 import org.w3c.dom.Element;
 
+import dcc.graphics.math.Vector;
 import dcc.xml.XMLEncoder;
 import dcc.xml.XMLProcessor;
 
@@ -27,6 +30,35 @@ class CalibrationXMLEncoder extends XMLEncoder {
 	@Override
 	public void encode(Element element) {
 		setAttribute(element, "scale", calibration.getScale());
+
+		LensModel lens = calibration.getLens();
+		if (lens != null) {
+			Element lensElement = createElement("lens");
+			setAttribute(lensElement, "width", lens.getWidth());
+			setAttribute(lensElement, "height", lens.getHeight());
+			setAttribute(lensElement, "k1", lens.getK1());
+			setAttribute(lensElement, "k2", lens.getK2());
+			setAttribute(lensElement, "error", lens.getError());
+			StringBuilder sb = new StringBuilder();
+			for (double v : lens.getHomography()) {
+				if (sb.length() > 0)
+					sb.append(' ');
+				sb.append(v);
+			}
+			setAttribute(lensElement, "homography", sb.toString());
+			element.appendChild(lensElement);
+		}
+
+		List<Vector> image = calibration.getImagePoints();
+		List<Vector> world = calibration.getWorldPoints();
+		for (int i = 0; i < image.size(); i++) {
+			Element pointElement = createElement("reference");
+			setAttribute(pointElement, "x", image.get(i).x);
+			setAttribute(pointElement, "y", image.get(i).y);
+			setAttribute(pointElement, "cmX", world.get(i).x);
+			setAttribute(pointElement, "cmY", world.get(i).y);
+			element.appendChild(pointElement);
+		}
 	}
 
 	@Override
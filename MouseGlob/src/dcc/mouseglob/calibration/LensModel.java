@@ -0,0 +1,528 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Daniel Coelho de Castro.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Daniel Coelho de Castro - initial API and implementation
+ ******************************************************************************/
+package dcc.mouseglob.calibration;
+
+import java.util.List;
+
+import dcc.graphics.math.Vector;
+
+/**
+ * Maps camera pixels to arena centimeters through radial lens distortion,
+ * about the center of the frame, followed by a perspective homography. Fitted
+ * from reference points whose positions in the arena are known, it corrects
+ * the barrel distortion of wide-angle lenses and cameras that are not exactly
+ * overhead.
+ * 
+ * @author Daniel Coelho de Castro
+ */
+public final class LensModel {
+
+	/** Reference points needed to fit the homography alone */
+	public static final int MIN_POINTS = 4;
+	/** Reference points needed to also fit the first distortion coefficient */
+	private static final int MIN_POINTS_K1 = 5;
+	/** Reference points needed to also fit the second distortion coefficient */
+	private static final int MIN_POINTS_K2 = 6;
+
+	private static final double K_RANGE = 0.5;
+	private static final int SEARCH_ITERATIONS = 60;
+	private static final int SIMPLEX_ITERATIONS = 500;
+	private static final double SIMPLEX_STEP = 0.02;
+	private static final double SIMPLEX_TOLERANCE = 1e-10;
+	private static final int INVERSE_ITERATIONS = 20;
+	private static final double GOLDEN = (Math.sqrt(5) - 1) / 2;
+
+	private final int width, height;
+	private final double cx, cy, norm;
+	private final double k1, k2;
+	/** Undistorted pixels to centimeters, row major */
+	private final double[] h;
+	private final double[] inverse;
+	private final double error;
+
+	/**
+	 * @param width
+	 *            - frame width, in pixels
+	 * @param height
+	 *            - frame height, in pixels
+	 * @param k1
+	 *            - second order radial coefficient; positive corrects barrel
+	 *            distortion
+	 * @param k2
+	 *            - fourth order radial coefficient
+	 * @param homography
+	 *            - the 3x3 homography from undistorted pixels to
+	 *            centimeters, row major
+	 * @param error
+	 *            - root mean square error of the fit, in centimeters
+	 * @throws IllegalArgumentException
+	 *             if the frame is smaller than 2x2 or the homography is not
+	 *             an invertible 3x3 matrix
+	 */
+	public LensModel(int width, int height, double k1, double k2,
+			double[] homography, double error) {
+		if (width < 2 || height < 2)
+			throw new IllegalArgumentException("Frame too small: " + width
+					+ "x" + height);
+		if (homography.length != 9)
+			throw new IllegalArgumentException("Homography must be 3x3");
+		this.width = width;
+		this.height = height;
+		cx = width / 2.0;
+		cy = height / 2.0;
+		norm = Math.hypot(width, height) / 2;
+		this.k1 = k1;
+		this.k2 = k2;
+		h = homography.clone();
+		inverse = invert(h);
+		this.error = error;
+	}
+
+	/**
+	 * Fits a model to reference points. Four points fit a homography alone,
+	 * five also fit the main distortion coefficient, and six or more fit both.
+	 * Points spread to the edges of the frame, where distortion is strongest,
+	 * give the best fit.
+	 * 
+	 * @param image
+	 *            - the points in the frame, in pixels
+	 * @param world
+	 *            - the same points in the arena, in centimeters
+	 * @param width
+	 *            - frame width, in pixels
+	 * @param height
+	 *            - frame height, in pixels
+	 * @throws IllegalArgumentException
+	 *             if there are too few points, they are degenerate, such as
+	 *             three of them in a line, or the frame size is unknown
+	 */
+	public static LensModel fit(List<Vector> image, List<Vector> world,
+			int width, int height) {
+		int n = image.size();
+		if (n != world.size())
+			throw new IllegalArgumentException("Got " + n + " image and "
+					+ world.size() + " arena points");
+		if (n < MIN_POINTS)
+			throw new IllegalArgumentException("At least " + MIN_POINTS
+					+ " reference points are needed, got " + n);
+		if (width < 2 || height < 2)
+			throw new IllegalArgumentException("No frame to calibrate");
+		Fit fit = new Fit(image, world, width, height);
+		double k1 = 0, k2 = 0;
+		if (n >= MIN_POINTS_K1) {
+			k1 = fit.searchK1();
+			if (n >= MIN_POINTS_K2) {
+				// Both together from there, as they trade off against each other
+				double[] k = fit.searchK(k1);
+				k1 = k[0];
+				k2 = k[1];
+			}
+		}
+		double[] homography = fit.homography(k1, k2);
+		if (homography == null)
+			throw new IllegalArgumentException(
+					"Reference points are degenerate");
+		return new LensModel(width, height, k1, k2, homography,
+				fit.error(k1, k2));
+	}
+
+	/**
+	 * Removes the lens distortion of a point.
+	 * 
+	 * @param x
+	 *            - horizontal pixel coordinate in the frame
+	 * @param y
+	 *            - vertical pixel coordinate in the frame
+	 * @return the point as an ideal lens would have imaged it, in pixels
+	 */
+	public Vector undistort(double x, double y) {
+		double f = factor(x - cx, y - cy);
+		return new Vector(cx + (x - cx) * f, cy + (y - cy) * f);
+	}
+
+	/**
+	 * Maps a point of the frame to the arena.
+	 * 
+	 * @param x
+	 *            - horizontal pixel coordinate
+	 * @param y
+	 *            - vertical pixel coordinate
+	 * @return the point in the arena, in centimeters
+	 */
+	public Vector toWorld(double x, double y) {
+		double dx = x - cx, dy = y - cy;
+		double f = factor(dx, dy);
+		return project(h, cx + dx * f, cy + dy * f);
+	}
+
+	/**
+	 * Maps a point of the arena to the frame, inverting {@link #toWorld}.
+	 * 
+	 * @param x
+	 *            - horizontal coordinate in centimeters
+	 * @param y
+	 *            - vertical coordinate in centimeters
+	 * @return the point in the frame, in pixels
+	 */
+	public Vector toImage(double x, double y) {
+		Vector u = project(inverse, x, y);
+		double ux = u.x - cx, uy = u.y - cy;
+		// Fixed point iteration: the distorted offset d satisfies d * f(d) = u
+		double dx = ux, dy = uy;
+		for (int i = 0; i < INVERSE_ITERATIONS; i++) {
+			double f = factor(dx, dy);
+			dx = ux / f;
+			dy = uy / f;
+		}
+		return new Vector(cx + dx, cy + dy);
+	}
+
+	/**
+	 * Gets the scale at the center of the frame, for measures that take a
+	 * single scale, such as areas and speeds.
+	 * 
+	 * @return the scale, in cm/px
+	 */
+	public double getScale() {
+		Vector o = toWorld(cx, cy);
+		Vector dx = toWorld(cx + 1, cy).subtract(o);
+		Vector dy = toWorld(cx, cy + 1).subtract(o);
+		return Math.sqrt(Math.abs(dx.cross(dy)));
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public double getK1() {
+		return k1;
+	}
+
+	public double getK2() {
+		return k2;
+	}
+
+	/**
+	 * @return the 3x3 homography from undistorted pixels to centimeters, row
+	 *         major
+	 */
+	public double[] getHomography() {
+		return h.clone();
+	}
+
+	/**
+	 * @return the root mean square error of the fit at the reference points,
+	 *         in centimeters
+	 */
+	public double getError() {
+		return error;
+	}
+
+	/**
+	 * Gets a key that changes with any parameter of the model, to tell whether
+	 * a {@link RemapTable} stored on disk was computed from it.
+	 */
+	long getKey() {
+		long key = 31L * width + height;
+		key = mix(key, k1);
+		key = mix(key, k2);
+		for (double v : h)
+			key = mix(key, v);
+		return key;
+	}
+
+	private static long mix(long key, double value) {
+		long bits = Double.doubleToLongBits(value);
+		key = (key ^ bits) * 0x100000001B3L;
+		return key ^ (key >>> 29);
+	}
+
+	private double factor(double dx, double dy) {
+		return factor(dx, dy, k1, k2);
+	}
+
+	private double factor(double dx, double dy, double k1, double k2) {
+		double r2 = (dx * dx + dy * dy) / (norm * norm);
+		return 1 + r2 * (k1 + r2 * k2);
+	}
+
+	private static Vector project(double[] m, double x, double y) {
+		double w = m[6] * x + m[7] * y + m[8];
+		return new Vector((m[0] * x + m[1] * y + m[2]) / w,
+				(m[3] * x + m[4] * y + m[5]) / w);
+	}
+
+	private static double[] multiply(double[] a, double[] b) {
+		double[] c = new double[9];
+		for (int i = 0; i < 3; i++)
+			for (int j = 0; j < 3; j++)
+				c[3 * i + j] = a[3 * i] * b[j] + a[3 * i + 1] * b[3 + j]
+						+ a[3 * i + 2] * b[6 + j];
+		return c;
+	}
+
+	private static double[] invert(double[] m) {
+		double c00 = m[4] * m[8] - m[5] * m[7];
+		double c01 = m[5] * m[6] - m[3] * m[8];
+		double c02 = m[3] * m[7] - m[4] * m[6];
+		double det = m[0] * c00 + m[1] * c01 + m[2] * c02;
+		if (det == 0)
+			throw new IllegalArgumentException("Homography is singular");
+		return new double[] { c00 / det,
+				(m[2] * m[7] - m[1] * m[8]) / det,
+				(m[1] * m[5] - m[2] * m[4]) / det, c01 / det,
+				(m[0] * m[8] - m[2] * m[6]) / det,
+				(m[2] * m[3] - m[0] * m[5]) / det, c02 / det,
+				(m[1] * m[6] - m[0] * m[7]) / det,
+				(m[0] * m[4] - m[1] * m[3]) / det };
+	}
+
+	@Override
+	public String toString() {
+		return String.format("k1 %.4f, k2 %.4f, %.3f cm/px, error %.3f cm",
+				k1, k2, getScale(), error);
+	}
+
+	/**
+	 * Reference points being fitted. For given distortion coefficients the
+	 * homography is solved linearly; the coefficients are searched for.
+	 */
+	private static final class Fit {
+		private final LensModel unit;
+		private final double[] ix, iy, wx, wy;
+		private final int n;
+
+		Fit(List<Vector> image, List<Vector> world, int width, int height) {
+			unit = new LensModel(width, height, 0, 0, new double[] { 1, 0, 0,
+					0, 1, 0, 0, 0, 1 }, 0);
+			n = image.size();
+			ix = new double[n];
+			iy = new double[n];
+			wx = new double[n];
+			wy = new double[n];
+			for (int i = 0; i < n; i++) {
+				ix[i] = image.get(i).x;
+				iy[i] = image.get(i).y;
+				wx[i] = world.get(i).x;
+				wy[i] = world.get(i).y;
+			}
+		}
+
+		/**
+		 * Golden section search of the first coefficient, without the second.
+		 */
+		double searchK1() {
+			double a = -K_RANGE, b = K_RANGE;
+			for (int i = 0; i < SEARCH_ITERATIONS; i++) {
+				double c = b - GOLDEN * (b - a), d = a + GOLDEN * (b - a);
+				if (error(c, 0) < error(d, 0))
+					b = d;
+				else
+					a = c;
+			}
+			return (a + b) / 2;
+		}
+
+		/**
+		 * Nelder-Mead search of both coefficients, from a first coefficient
+		 * found alone.
+		 */
+		double[] searchK(double k1) {
+			double[][] p = { { k1, 0 }, { k1 + SIMPLEX_STEP, 0 },
+					{ k1, SIMPLEX_STEP } };
+			double[] e = new double[3];
+			for (int i = 0; i < 3; i++)
+				e[i] = error(p[i][0], p[i][1]);
+			for (int it = 0; it < SIMPLEX_ITERATIONS; it++) {
+				// Order best, middle, worst
+				for (int i = 0; i < 2; i++)
+					for (int j = 2; j > i; j--)
+						if (e[j] < e[j - 1]) {
+							double[] q = p[j];
+							p[j] = p[j - 1];
+							p[j - 1] = q;
+							double f = e[j];
+							e[j] = e[j - 1];
+							e[j - 1] = f;
+						}
+				if (e[2] - e[0] < SIMPLEX_TOLERANCE)
+					break;
+				double mx = (p[0][0] + p[1][0]) / 2, my = (p[0][1] + p[1][1]) / 2;
+				double rx = 2 * mx - p[2][0], ry = 2 * my - p[2][1];
+				double er = error(rx, ry);
+				if (er < e[0]) {
+					double ex = 3 * mx - 2 * p[2][0], ey = 3 * my - 2 * p[2][1];
+					double ee = error(ex, ey);
+					if (ee < er)
+						set(p[2], e, 2, ex, ey, ee);
+					else
+						set(p[2], e, 2, rx, ry, er);
+				} else if (er < e[1]) {
+					set(p[2], e, 2, rx, ry, er);
+				} else {
+					double cx = (mx + p[2][0]) / 2, cy = (my + p[2][1]) / 2;
+					double ec = error(cx, cy);
+					if (ec < e[2]) {
+						set(p[2], e, 2, cx, cy, ec);
+					} else {
+						// Shrink towards the best point
+						for (int i = 1; i < 3; i++) {
+							p[i][0] = (p[i][0] + p[0][0]) / 2;
+							p[i][1] = (p[i][1] + p[0][1]) / 2;
+							e[i] = error(p[i][0], p[i][1]);
+						}
+					}
+				}
+			}
+			int best = 0;
+			for (int i = 1; i < 3; i++)
+				if (e[i] < e[best])
+					best = i;
+			return p[best];
+		}
+
+		private static void set(double[] point, double[] errors, int i,
+				double x, double y, double error) {
+			point[0] = x;
+			point[1] = y;
+			errors[i] = error;
+		}
+
+		double error(double k1, double k2) {
+			double[] m = homography(k1, k2);
+			if (m == null)
+				return Double.MAX_VALUE;
+			double sum = 0;
+			for (int i = 0; i < n; i++) {
+				double dx = ix[i] - unit.cx, dy = iy[i] - unit.cy;
+				double f = unit.factor(dx, dy, k1, k2);
+				Vector w = project(m, unit.cx + dx * f, unit.cy + dy * f);
+				double ex = w.x - wx[i], ey = w.y - wy[i];
+				sum += ex * ex + ey * ey;
+			}
+			return Math.sqrt(sum / n);
+		}
+
+		/**
+		 * Solves the homography of the undistorted points by least squares
+		 * (direct linear transform), with both point sets normalized first.
+		 * 
+		 * @return the homography, or <code>null</code> if the points are
+		 *         degenerate
+		 */
+		double[] homography(double k1, double k2) {
+			double[] ux = new double[n], uy = new double[n];
+			for (int i = 0; i < n; i++) {
+				double dx = ix[i] - unit.cx, dy = iy[i] - unit.cy;
+				double f = unit.factor(dx, dy, k1, k2);
+				ux[i] = unit.cx + dx * f;
+				uy[i] = unit.cy + dy * f;
+			}
+			double[] t = normalization(ux, uy);
+			double[] s = normalization(wx, wy);
+			if (t == null || s == null)
+				return null;
+
+			// Normal equations of the 8 unknowns, with h22 = 1
+			double[][] a = new double[8][9];
+			double[] row = new double[9];
+			for (int i = 0; i < n; i++) {
+				double x = t[0] * ux[i] + t[2], y = t[0] * uy[i] + t[5];
+				double u = s[0] * wx[i] + s[2], v = s[0] * wy[i] + s[5];
+				set(row, x, y, 1, 0, 0, 0, -u * x, -u * y, u);
+				accumulate(a, row);
+				set(row, 0, 0, 0, x, y, 1, -v * x, -v * y, v);
+				accumulate(a, row);
+			}
+			double[] p = solve(a);
+			if (p == null)
+				return null;
+			double[] m = { p[0], p[1], p[2], p[3], p[4], p[5], p[6], p[7], 1 };
+			// Undo the normalizations: H = S^-1 * M * T
+			double[] result = multiply(multiply(invert(s), m), t);
+			if (result[8] == 0 || Double.isNaN(result[8]))
+				return null;
+			double scale = 1 / result[8];
+			for (int i = 0; i < 9; i++)
+				result[i] *= scale;
+			return result;
+		}
+
+		private static void set(double[] row, double... values) {
+			System.arraycopy(values, 0, row, 0, values.length);
+		}
+
+		private static void accumulate(double[][] a, double[] row) {
+			for (int i = 0; i < 8; i++)
+				for (int j = 0; j < 9; j++)
+					a[i][j] += row[i] * row[j];
+		}
+
+		/**
+		 * Gaussian elimination with partial pivoting of an augmented system.
+		 */
+		private static double[] solve(double[][] a) {
+			int n = a.length;
+			for (int c = 0; c < n; c++) {
+				int pivot = c;
+				for (int r = c + 1; r < n; r++)
+					if (Math.abs(a[r][c]) > Math.abs(a[pivot][c]))
+						pivot = r;
+				if (Math.abs(a[pivot][c]) < 1e-12)
+					return null;
+				double[] swap = a[c];
+				a[c] = a[pivot];
+				a[pivot] = swap;
+				for (int r = c + 1; r < n; r++) {
+					double f = a[r][c] / a[c][c];
+					for (int k = c; k <= n; k++)
+						a[r][k] -= f * a[c][k];
+				}
+			}
+			double[] x = new double[n];
+			for (int r = n - 1; r >= 0; r--) {
+				double sum = a[r][n];
+				for (int k = r + 1; k < n; k++)
+					sum -= a[r][k] * x[k];
+				x[r] = sum / a[r][r];
+			}
+			return x;
+		}
+
+		/**
+		 * Similarity that moves the points' centroid to the origin and their
+		 * mean distance to it to the square root of 2.
+		 */
+		private static double[] normalization(double[] x, double[] y) {
+			int n = x.length;
+			double mx = 0, my = 0;
+			for (int i = 0; i < n; i++) {
+				mx += x[i];
+				my += y[i];
+			}
+			mx /= n;
+			my /= n;
+			double d = 0;
+			for (int i = 0; i < n; i++)
+				d += Math.hypot(x[i] - mx, y[i] - my);
+			d /= n;
+			if (d == 0)
+				return null;
+			double s = Math.sqrt(2) / d;
+			return new double[] { s, 0, -s * mx, 0, s, -s * my, 0, 0, 1 };
+		}
+	}
+
+}
@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Daniel Coelho de Castro.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Daniel Coelho de Castro - initial API and implementation
+ ******************************************************************************/
+package dcc.mouseglob.calibration;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import dcc.graphics.math.Vector;
+
+/**
+ * The arena position of every pixel of the frame under a {@link LensModel},
+ * in fixed point, so that tracker centroids and zone vertices are rectified
+ * with a lookup and a bilinear interpolation rather than by evaluating the
+ * model. Only points are mapped; frames themselves are left as captured.
+ * 
+ * Tables are stored next to the experiment and reused as long as the model
+ * they were computed from is unchanged.
+ * 
+ * @author Daniel Coelho de Castro
+ */
+public final class RemapTable {
+
+	/** Fractional bits of the stored coordinates: 1/1024 cm */
+	private static final int FRACTION_BITS = 10;
+	private static final double ONE = 1 << FRACTION_BITS;
+	private static final int MAGIC = 0x4D47524D; // "MGRM"
+	private static final int VERSION = 1;
+
+	private final LensModel model;
+	private final int width, height;
+	/** Interleaved x and y of each pixel, row by row */
+	private final int[] table;
+
+	private RemapTable(LensModel model, int[] table) {
+		this.model = model;
+		width = model.getWidth();
+		height = model.getHeight();
+		this.table = table;
+	}
+
+	/**
+	 * Computes the table of a model, over the frame size it was fitted for.
+	 */
+	public static RemapTable compute(LensModel model) {
+		int w = model.getWidth(), h = model.getHeight();
+		int[] table = new int[2 * w * h];
+		int k = 0;
+		for (int y = 0; y < h; y++)
+			for (int x = 0; x < w; x++) {
+				Vector v = model.toWorld(x, y);
+				table[k++] = (int) Math.round(v.x * ONE);
+				table[k++] = (int) Math.round(v.y * ONE);
+			}
+		return new RemapTable(model, table);
+	}
+
+	/**
+	 * Reads a table stored by {@link #write(File)}.
+	 * 
+	 * @return the table, or <code>null</code> if the file does not exist or
+	 *         was computed from another model
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	public static RemapTable read(File file, LensModel model)
+			throws IOException {
+		if (!file.isFile())
+			return null;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(file), 1 << 16))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION
+					|| in.readLong() != model.getKey()
+					|| in.readInt() != model.getWidth()
+					|| in.readInt() != model.getHeight())
+				return null;
+			int[] table = new int[2 * model.getWidth() * model.getHeight()];
+			for (int i = 0; i < table.length; i++)
+				table[i] = in.readInt();
+			return new RemapTable(model, table);
+		}
+	}
+
+	/**
+	 * Writes the table, replacing the file only once it is complete.
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public void write(File file) throws IOException {
+		File partial = new File(file.getPath() + ".part");
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(partial), 1 << 16))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(model.getKey());
+			out.writeInt(width);
+			out.writeInt(height);
+			for (int v : table)
+				out.writeInt(v);
+		}
+		Files.move(partial.toPath(), file.toPath(),
+				StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Maps a point of the frame to the arena, interpolating between the
+	 * pixels around it. Points outside the frame are mapped by the model.
+	 * 
+	 * @param x
+	 *            - horizontal pixel coordinate
+	 * @param y
+	 *            - vertical pixel coordinate
+	 * @return the point in the arena, in centimeters
+	 */
+	public Vector map(double x, double y) {
+		if (!(x >= 0 && y >= 0 && x <= width - 1 && y <= height - 1))
+			return model.toWorld(x, y);
+		int i = Math.min((int) x, width - 2), j = Math.min((int) y, height - 2);
+		double fx = x - i, fy = y - j;
+		int k = 2 * (j * width + i), below = k + 2 * width;
+		double w00 = (1 - fx) * (1 - fy), w10 = fx * (1 - fy);
+		double w01 = (1 - fx) * fy, w11 = fx * fy;
+		return new Vector((w00 * table[k] + w10 * table[k + 2] + w01
+				* table[below] + w11 * table[below + 2])
+				/ ONE, (w00 * table[k + 1] + w10 * table[k + 3] + w01
+				* table[below + 1] + w11 * table[below + 3])
+				/ ONE);
+	}
+
+	public LensModel getModel() {
+		return model;
+	}
+
+}
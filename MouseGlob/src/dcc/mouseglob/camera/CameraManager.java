@@ -27,15 +27,35 @@ import org.bytedeco.javacv.Java2DFrameConverter;
 import org.bytedeco.javacv.OpenCVFrameGrabber;
 
 import processing.core.PImage;
+import dcc.graphics.FrameAdapter;
 import dcc.graphics.PImageAdapter;
 import dcc.graphics.image.Image;
 import dcc.inject.Inject;
+import dcc.mouseglob.PropertiesManager;
 import dcc.mouseglob.applet.MouseGlobApplet;
 import dcc.mouseglob.applet.NewFrameListener;
 import dcc.mouseglob.ui.StatusUI;
 import dcc.util.AveragingStopwatch;
+import dcc.util.LatencyHistogram;
 
 public class CameraManager {
+	/**
+	 * Stages of a frame in low-latency mode, each with its own
+	 * {@link CameraManager#getLatency(Stage) latency histogram}.
+	 */
+	public enum Stage {
+		/** Waiting for the device to deliver the frame */
+		GRAB,
+		/** Converting the native pixels into a ring buffer */
+		CONVERT,
+		/** Waiting for the dispatching thread to take the frame */
+		DISPATCH,
+		/** Listeners, tracking included, handling the frame */
+		TRACK,
+		/** From the frame being grabbed to listeners being done with it */
+		TOTAL
+	}
+
 	public static class DeviceInfo {
 		public final int index;
 		public final String name;
@@ -57,6 +77,13 @@ public class CameraManager {
 	private final AtomicLong droppedFrames = new AtomicLong(0);
 	private int currentDeviceIndex = -1;
 
+	private boolean lowLatency;
+	private boolean latestFrameWins;
+	private int ringSize;
+	/** The camera of the low-latency path, kept after stopping for its metrics */
+	private volatile CameraStream stream;
+	private CameraRig rig;
+
 	private static final int DEFAULT_DEVICE = 0;
 	private static final int DEFAULT_WIDTH = 640;
 	private static final int DEFAULT_HEIGHT = 480;
@@ -70,6 +97,108 @@ public class CameraManager {
 	@Inject
 	CameraManager(MouseGlobApplet applet) {
 		// lazy start
+		PropertiesManager pm = PropertiesManager.getInstance();
+		lowLatency = Boolean.parseBoolean(pm.get("camera.lowLatency", "false"));
+		latestFrameWins = Boolean.parseBoolean(pm.get("camera.ring.latest", "true"));
+		ringSize = Math.max(3, pm.getInteger("camera.ring.size", 4));
+	}
+
+	/**
+	 * Enables or disables the low-latency capture path, from the next
+	 * {@link #start(MouseGlobApplet) start}. Frames are then converted
+	 * straight into a ring of <code>camera.ring.size</code> preallocated
+	 * buffers and handed over to the dispatching thread without locks or
+	 * per-frame allocation, and the latency of each {@link Stage} is
+	 * recorded.
+	 * 
+	 * @param enabled
+	 *            - <code>true</code> to capture through the ring
+	 */
+	public synchronized void setLowLatency(boolean enabled) {
+		lowLatency = enabled;
+	}
+
+	public synchronized boolean isLowLatency() {
+		return lowLatency;
+	}
+
+	/**
+	 * Chooses what the low-latency path does with frames captured faster
+	 * than they are handled, from the next start: either only the newest
+	 * frame is kept, so listeners always see the most recent one, or frames
+	 * queue up in the ring and new ones are dropped when it is full.
+	 * 
+	 * @param enabled
+	 *            - <code>true</code> for the latest frame to win
+	 */
+	public synchronized void setLatestFrameWins(boolean enabled) {
+		latestFrameWins = enabled;
+	}
+
+	public synchronized boolean isLatestFrameWins() {
+		return latestFrameWins;
+	}
+
+	/**
+	 * @return the latency histogram of a stage of the low-latency path, or
+	 *         <code>null</code> before it is first started
+	 */
+	public LatencyHistogram getLatency(Stage stage) {
+		CameraStream s = stream;
+		return s != null ? s.getLatency(stage) : null;
+	}
+
+	public void resetLatency() {
+		for (Stage stage : Stage.values()) {
+			LatencyHistogram histogram = getLatency(stage);
+			if (histogram != null)
+				histogram.reset();
+		}
+	}
+
+	/**
+	 * The cameras captured alongside the main one, such as one per arena of a
+	 * rig. Each {@link CameraStream} captures on its own threads and
+	 * dispatches to its own listeners, which should belong to a tracking
+	 * context of its own; its buffers follow <code>camera.ring.size</code>
+	 * and <code>camera.ring.latest</code>. The rig runs independently of the
+	 * main camera until {@link #close()}, and its combined metrics are shown
+	 * while it runs.
+	 */
+	public synchronized CameraRig getRig() {
+		if (rig == null)
+			rig = new CameraRig(ringSize, latestFrameWins);
+		return rig;
+	}
+
+	/**
+	 * Opens and starts one more camera of the {@link #getRig() rig}.
+	 * 
+	 * @param spec
+	 *            - a device index, or a video file or image directory to
+	 *            replay as a fake device
+	 * @param listeners
+	 *            - receive the camera's frames, on its dispatching thread
+	 * @return the stream
+	 * @throws Exception
+	 *             if the source cannot be opened, in which case the stream
+	 *             is not kept
+	 */
+	public synchronized CameraStream openStream(String id, String spec,
+			NewFrameListener... listeners) throws Exception {
+		CameraRig rig = getRig();
+		CameraStream s = rig.open(id, CameraRig.createSource(spec,
+				DEFAULT_WIDTH, DEFAULT_HEIGHT));
+		for (NewFrameListener listener : listeners)
+			s.addNewFrameListener(listener);
+		try {
+			s.start();
+		} catch (Exception e) {
+			rig.close(s);
+			throw e;
+		}
+		startMetrics();
+		return s;
 	}
 
 	public synchronized void start(final MouseGlobApplet applet) {
@@ -83,10 +212,15 @@ public class CameraManager {
 		}
 		StatusUI.setStatusText("Starting camera (device=" + deviceIndex + ", " + width + "x" + height + ")...");
 		try {
-			grabber = new OpenCVFrameGrabber(deviceIndex);
-			grabber.setImageWidth(width);
-			grabber.setImageHeight(height);
-			grabber.start();
+			if (lowLatency) {
+				startStream(applet, deviceIndex, width, height);
+			} else {
+				stream = null;
+				grabber = new OpenCVFrameGrabber(deviceIndex);
+				grabber.setImageWidth(width);
+				grabber.setImageHeight(height);
+				grabber.start();
+			}
 			running.set(true);
 			currentDeviceIndex = deviceIndex;
 			droppedFrames.set(0);
@@ -101,14 +235,30 @@ public class CameraManager {
 		}
 	}
 
+	private void startStream(final MouseGlobApplet applet, int deviceIndex, int width, int height) throws Exception {
+		stream = new CameraStream("Cam" + deviceIndex, new DeviceSource(deviceIndex, width, height),
+				ringSize, latestFrameWins);
+		stream.setErrorHandler(e -> StatusUI.setErrorText("Camera grab error: " + e.getMessage()));
+		stream.addNewFrameListener(new NewFrameListener() {
+			private boolean dimsNotified;
+
+			@Override
+			public void newFrame(Image frame, long time) {
+				if (!dimsNotified) {
+					applet.setAppletSize(frame.getWidth(), frame.getHeight());
+					dimsNotified = true;
+				}
+				broadcastFrame(frame, time);
+			}
+		});
+		stream.start();
+	}
+
 	public synchronized void stop() {
 		if (!running.get()) return;
 		running.set(false);
 		StatusUI.setStatusText("Stopping camera...");
-		if (scheduler != null) {
-			scheduler.shutdownNow();
-			scheduler = null;
-		}
+		if (rig == null || rig.getRunning() == 0) stopMetrics();
 		if (executor != null) {
 			executor.shutdownNow();
 			executor = null;
@@ -117,7 +267,17 @@ public class CameraManager {
 		StatusUI.setStatusText("Camera stopped.");
 	}
 
+	/**
+	 * Stops the main camera and every camera of the rig.
+	 */
+	public synchronized void close() {
+		stop();
+		if (rig != null) rig.stop();
+		stopMetrics();
+	}
+
 	private void cleanup() {
+		if (stream != null) stream.stop();
 		try { if (grabber != null) grabber.stop(); } catch (Throwable ignored) {}
 		try { if (grabber != null) grabber.release(); } catch (Throwable ignored) {}
 		grabber = null;
@@ -126,6 +286,10 @@ public class CameraManager {
 	}
 
 	private void startThreads(MouseGlobApplet applet) {
+		fpsWatch.tic();
+		startMetrics();
+		// The low-latency path captures on the stream's own threads
+		if (stream != null) return;
 		if (executor == null) executor = Executors.newFixedThreadPool(2, r -> {
 			Thread t = new Thread(r);
 			t.setDaemon(true);
@@ -133,20 +297,53 @@ public class CameraManager {
 		});
 		executor.submit(() -> captureLoop(applet));
 		executor.submit(this::dispatchLoop);
-		fpsWatch.tic();
-		if (scheduler == null) scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+	}
+
+	private void startMetrics() {
+		if (scheduler != null) return;
+		scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
 			Thread t = new Thread(r, "CameraMetrics");
 			t.setDaemon(true);
 			return t;
 		});
-		scheduler.scheduleAtFixedRate(() -> {
-			double fps = lastEffectiveFps;
-			int q = queue.size();
-			long drops = droppedFrames.get();
-			double cpu = dcc.util.SystemMetrics.getProcessCpuLoadPercent();
-			String cpuStr = (cpu >= 0) ? String.format("CPU: %.0f%%", cpu) : "CPU: n/a";
-			StatusUI.setMetricsText(String.format("Cam[%d] ON | FPS: %.1f | Q: %d/%d | drop: %d | %s", currentDeviceIndex, fps, q, QUEUE_CAPACITY, drops, cpuStr));
-		}, 1, 1, TimeUnit.SECONDS);
+		scheduler.scheduleAtFixedRate(() -> StatusUI.setMetricsText(getMetricsText()), 1, 1, TimeUnit.SECONDS);
+	}
+
+	private void stopMetrics() {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+			scheduler = null;
+		}
+	}
+
+	/**
+	 * @return one line of metrics of the main camera, followed by the
+	 *         combined metrics of the rig when it has cameras
+	 */
+	public String getMetricsText() {
+		double cpu = dcc.util.SystemMetrics.getProcessCpuLoadPercent();
+		String cpuStr = (cpu >= 0) ? String.format("CPU: %.0f%%", cpu) : "CPU: n/a";
+		StringBuilder text = new StringBuilder();
+		CameraStream s = stream;
+		if (!running.get()) {
+			text.append("Cam OFF");
+		} else if (s != null) {
+			LatencyHistogram total = s.getLatency(Stage.TOTAL);
+			text.append(String.format("Cam[%d] ON | FPS: %.1f | %s: %d/%d | drop: %d | lat p50/p99: %.1f/%.1f ms",
+					currentDeviceIndex, lastEffectiveFps, s.isLatestFrameWins() ? "latest" : "ring",
+					s.getPending(), s.getSize(), s.getDropped(),
+					total.getPercentile(50), total.getPercentile(99)));
+		} else {
+			text.append(String.format("Cam[%d] ON | FPS: %.1f | Q: %d/%d | drop: %d",
+					currentDeviceIndex, lastEffectiveFps, queue.size(), QUEUE_CAPACITY, droppedFrames.get()));
+		}
+		CameraRig r;
+		synchronized (this) {
+			r = rig;
+		}
+		if (r != null && !r.getStreams().isEmpty())
+			text.append(" | ").append(r.getMetricsText());
+		return text.append(" | ").append(cpuStr).toString();
 	}
 
 	private void captureLoop(MouseGlobApplet applet) {
@@ -155,13 +352,17 @@ public class CameraManager {
 			try {
 				Frame f = grabber.grab();
 				if (f == null) { Thread.sleep(5); continue; }
-				BufferedImage bi = converter.convert(f);
-				if (bi == null) continue;
+				// Copy the grabber's BGR pixels directly; Java2D only for other layouts
+				Image img = FrameAdapter.frameToImage(f, scratchImage);
+				if (img == null) {
+					BufferedImage bi = converter.convert(f);
+					if (bi == null) continue;
+					img = PImageAdapter.bufferedToImage(bi, scratchImage);
+				}
 				if (!dimsNotified) {
-					applet.setAppletSize(bi.getWidth(), bi.getHeight());
+					applet.setAppletSize(img.getWidth(), img.getHeight());
 					dimsNotified = true;
 				}
-				Image img = PImageAdapter.bufferedToImage(bi, scratchImage);
 				scratchImage = img;
 				long t = System.currentTimeMillis();
 				enqueue(new QueuedFrame(img, t));
@@ -195,7 +396,8 @@ public class CameraManager {
 		long dt = fpsWatch.toc();
 		if (dt > 0) lastEffectiveFps = 1_000_000_000.0 / dt;
 		fpsWatch.tic();
-		for (NewFrameListener l : newFrameListeners) l.newFrame(image, timeMs);
+		// Indexed, so that no iterator is allocated per frame
+		for (int i = 0; i < newFrameListeners.size(); i++) newFrameListeners.get(i).newFrame(image, timeMs);
 	}
 
 	public List<DeviceInfo> probeDevices(int maxDevices) {
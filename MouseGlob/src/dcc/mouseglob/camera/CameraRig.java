@@ -0,0 +1,197 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Daniel Coelho de Castro.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Daniel Coelho de Castro - initial API and implementation
+ ******************************************************************************/
+package dcc.mouseglob.camera;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import dcc.mouseglob.camera.CameraManager.Stage;
+
+/**
+ * Several {@link CameraStream}s captured at the same time, such as one camera
+ * per arena of a rig, started and stopped together and reported as one.
+ */
+public class CameraRig {
+	private static final org.slf4j.Logger log = org.slf4j.LoggerFactory
+			.getLogger(CameraRig.class);
+
+	private final List<CameraStream> streams = new ArrayList<CameraStream>();
+	private final int ringSize;
+	private final boolean latestFrameWins;
+
+	/**
+	 * @param ringSize
+	 *            - frame buffers per stream
+	 * @param latestFrameWins
+	 *            - the streams' dispatch policy, see
+	 *            {@link CameraStream#CameraStream(String, FrameSource, int, boolean)}
+	 */
+	public CameraRig(int ringSize, boolean latestFrameWins) {
+		this.ringSize = ringSize;
+		this.latestFrameWins = latestFrameWins;
+	}
+
+	/**
+	 * Makes a source from a specification: a number opens that OpenCV device,
+	 * anything else is a video file or image directory replayed as a fake
+	 * device, looping, at its own frame rate.
+	 * 
+	 * @param spec
+	 *            - a device index or a path
+	 * @param width
+	 *            - requested frame width of devices, in pixels
+	 * @param height
+	 *            - requested frame height of devices, in pixels
+	 */
+	public static FrameSource createSource(String spec, int width, int height) {
+		String s = spec.trim();
+		if (s.matches("\\d+"))
+			return new DeviceSource(Integer.parseInt(s), width, height);
+		return new FileSource(new File(s), 0, true);
+	}
+
+	/**
+	 * Adds a stream, to be started with {@link #start()} or on its own.
+	 * 
+	 * @param id
+	 *            - unique among the rig's streams
+	 * @throws IllegalArgumentException
+	 *             if the id is taken
+	 */
+	public synchronized CameraStream open(String id, FrameSource source) {
+		if (getStream(id) != null)
+			throw new IllegalArgumentException("Duplicate camera stream " + id);
+		CameraStream stream = new CameraStream(id, source, ringSize,
+				latestFrameWins);
+		streams.add(stream);
+		return stream;
+	}
+
+	/**
+	 * Stops a stream and removes it from the rig.
+	 */
+	public synchronized void close(CameraStream stream) {
+		stream.stop();
+		streams.remove(stream);
+	}
+
+	public synchronized CameraStream getStream(String id) {
+		for (CameraStream stream : streams)
+			if (stream.getId().equals(id))
+				return stream;
+		return null;
+	}
+
+	public synchronized List<CameraStream> getStreams() {
+		return Collections.unmodifiableList(new ArrayList<CameraStream>(
+				streams));
+	}
+
+	/**
+	 * Starts every stream that is not running. A stream whose source cannot
+	 * be opened does not keep the others from starting.
+	 * 
+	 * @return the streams that failed to start, with their errors logged
+	 */
+	public synchronized List<CameraStream> start() {
+		List<CameraStream> failed = new ArrayList<CameraStream>();
+		for (CameraStream stream : streams) {
+			if (stream.isRunning())
+				continue;
+			try {
+				stream.start();
+			} catch (Exception e) {
+				log.error("Camera {} ({}) failed to start: {}", stream.getId(),
+						stream.getSource().getName(), e.toString());
+				failed.add(stream);
+			}
+		}
+		return failed;
+	}
+
+	/**
+	 * Stops every stream.
+	 */
+	public synchronized void stop() {
+		for (CameraStream stream : streams)
+			stream.stop();
+	}
+
+	/**
+	 * Waits for every stream to end, as streams of finite sources do.
+	 * 
+	 * @return <code>true</code> if all ended in time
+	 */
+	public boolean awaitTermination(long timeout, TimeUnit unit)
+			throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		for (CameraStream stream : getStreams())
+			if (!stream.awaitTermination(Math.max(0, deadline - System.nanoTime()),
+					TimeUnit.NANOSECONDS))
+				return false;
+		return true;
+	}
+
+	/**
+	 * @return the number of streams running
+	 */
+	public int getRunning() {
+		int running = 0;
+		for (CameraStream stream : getStreams())
+			if (stream.isRunning())
+				running++;
+		return running;
+	}
+
+	/**
+	 * @return frames dropped by all streams
+	 */
+	public long getDropped() {
+		long dropped = 0;
+		for (CameraStream stream : getStreams())
+			dropped += stream.getDropped();
+		return dropped;
+	}
+
+	/**
+	 * @return the worst 99th percentile of the streams' total latency, in
+	 *         milliseconds
+	 */
+	public double getWorstLatency() {
+		double worst = 0;
+		for (CameraStream stream : getStreams())
+			worst = Math.max(worst, stream.getLatency(Stage.TOTAL)
+					.getPercentile(99));
+		return worst;
+	}
+
+	/**
+	 * @return one line of combined metrics: the rate of each stream, the
+	 *         drops of all streams and the worst latency
+	 */
+	public String getMetricsText() {
+		StringBuilder fps = new StringBuilder();
+		List<CameraStream> all = getStreams();
+		for (CameraStream stream : all) {
+			if (fps.length() > 0)
+				fps.append('/');
+			fps.append(String.format(Locale.ROOT, "%.1f", stream.getFps()));
+		}
+		return String.format(Locale.ROOT,
+				"Cams %d/%d ON | FPS: %s | drop: %d | p99: %.1f ms",
+				getRunning(), all.size(), fps, getDropped(), getWorstLatency());
+	}
+
+}
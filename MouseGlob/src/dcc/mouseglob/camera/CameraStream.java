@@ -0,0 +1,315 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Daniel Coelho de Castro.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Daniel Coelho de Castro - initial API and implementation
+ ******************************************************************************/
+package dcc.mouseglob.camera;
+
+import java.io.EOFException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import dcc.graphics.image.Image;
+import dcc.mouseglob.applet.NewFrameListener;
+import dcc.mouseglob.camera.CameraManager.Stage;
+import dcc.util.AveragingStopwatch;
+import dcc.util.LatencyHistogram;
+
+/**
+ * Captures one {@link FrameSource} on a thread of its own and dispatches its
+ * frames to the stream's listeners on a second thread, through a
+ * {@link FrameRing}. Every stream has its own buffers, listeners and metrics,
+ * so that streams running side by side share nothing.
+ */
+public class CameraStream {
+	private static final org.slf4j.Logger log = org.slf4j.LoggerFactory
+			.getLogger(CameraStream.class);
+
+	private static final long TAKE_TIMEOUT = TimeUnit.MILLISECONDS.toNanos(50);
+	private static final long STOP_TIMEOUT = 1000;
+
+	private final String id;
+	private final FrameSource source;
+	private final FrameRing ring;
+	/** Replaced rather than changed, so dispatching needs neither locks nor iterators */
+	private volatile NewFrameListener[] listeners = new NewFrameListener[0];
+	private final LatencyHistogram[] latency = new LatencyHistogram[Stage.values().length];
+	private final AveragingStopwatch fpsWatch = new AveragingStopwatch(60);
+	private volatile Consumer<Throwable> errorHandler;
+
+	private volatile boolean running;
+	private volatile boolean capturing;
+	private Thread captureThread;
+	private Thread dispatchThread;
+	private volatile double fps;
+	private volatile long frames;
+	private volatile Throwable lastError;
+
+	/**
+	 * @param id
+	 *            - names the stream's threads and metrics
+	 * @param size
+	 *            - number of frame buffers
+	 * @param latestFrameWins
+	 *            - <code>true</code> to only ever dispatch the newest frame,
+	 *            <code>false</code> to dispatch frames in order, dropping new
+	 *            ones while every buffer is in use
+	 */
+	public CameraStream(String id, FrameSource source, int size,
+			boolean latestFrameWins) {
+		this.id = id;
+		this.source = source;
+		ring = new FrameRing(size, latestFrameWins ? FrameRing.Policy.LATEST
+				: FrameRing.Policy.QUEUE);
+		for (int i = 0; i < latency.length; i++)
+			latency[i] = new LatencyHistogram();
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public FrameSource getSource() {
+		return source;
+	}
+
+	/**
+	 * Adds a listener, called on the stream's dispatching thread.
+	 */
+	public synchronized void addNewFrameListener(NewFrameListener listener) {
+		NewFrameListener[] added = Arrays.copyOf(listeners, listeners.length + 1);
+		added[listeners.length] = listener;
+		listeners = added;
+	}
+
+	public synchronized void removeNewFrameListener(NewFrameListener listener) {
+		int i = Arrays.asList(listeners).indexOf(listener);
+		if (i < 0)
+			return;
+		NewFrameListener[] removed = new NewFrameListener[listeners.length - 1];
+		System.arraycopy(listeners, 0, removed, 0, i);
+		System.arraycopy(listeners, i + 1, removed, i, removed.length - i);
+		listeners = removed;
+	}
+
+	/**
+	 * Sets what is done with errors grabbing or dispatching frames; by
+	 * default they are logged. Capture goes on after an error.
+	 */
+	public void setErrorHandler(Consumer<Throwable> handler) {
+		errorHandler = handler;
+	}
+
+	/**
+	 * Opens the source and starts capturing.
+	 * 
+	 * @throws Exception
+	 *             if the source cannot be opened
+	 */
+	public synchronized void start() throws Exception {
+		if (running)
+			return;
+		// Close the source of a stream that ended by itself
+		if (captureThread != null)
+			stop();
+		source.start();
+		ring.clear();
+		for (LatencyHistogram histogram : latency)
+			histogram.reset();
+		frames = 0;
+		fps = 0;
+		running = capturing = true;
+		fpsWatch.tic();
+		captureThread = new Thread(this::captureLoop, "Camera " + id + " capture");
+		dispatchThread = new Thread(this::dispatchLoop, "Camera " + id + " dispatch");
+		captureThread.setDaemon(true);
+		dispatchThread.setDaemon(true);
+		dispatchThread.start();
+		captureThread.start();
+	}
+
+	/**
+	 * Stops capturing, waits for a frame being handled to be done with, and
+	 * closes the source. Frames still waiting are not dispatched.
+	 */
+	public synchronized void stop() {
+		if (captureThread == null)
+			return;
+		running = false;
+		join(captureThread);
+		dispatchThread.interrupt();
+		join(dispatchThread);
+		source.stop();
+		ring.clear();
+		captureThread = dispatchThread = null;
+	}
+
+	private static void join(Thread thread) {
+		if (thread == Thread.currentThread())
+			return;
+		try {
+			thread.join(STOP_TIMEOUT);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Waits for a finite source to end and its frames to be dispatched.
+	 * 
+	 * @return <code>true</code> if the stream ended in time
+	 */
+	public boolean awaitTermination(long timeout, TimeUnit unit)
+			throws InterruptedException {
+		Thread thread;
+		synchronized (this) {
+			thread = dispatchThread;
+		}
+		if (thread != null)
+			thread.join(Math.max(1, unit.toMillis(timeout)));
+		return thread == null || !thread.isAlive();
+	}
+
+	/**
+	 * @return <code>true</code> while frames are being captured or dispatched
+	 */
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * @return the latency histogram of a stage of this stream
+	 */
+	public LatencyHistogram getLatency(Stage stage) {
+		return latency[stage.ordinal()];
+	}
+
+	/**
+	 * @return the dispatch rate, in frames per second
+	 */
+	public double getFps() {
+		return fps;
+	}
+
+	/**
+	 * @return the number of frames dispatched since the stream started
+	 */
+	public long getFrames() {
+		return frames;
+	}
+
+	/**
+	 * @return the number of frames dropped since the stream was created
+	 */
+	public long getDropped() {
+		return ring.getMetrics().getDropped();
+	}
+
+	/**
+	 * @return the number of frames waiting to be dispatched
+	 */
+	public int getPending() {
+		return ring.getPending();
+	}
+
+	public int getSize() {
+		return ring.getSize();
+	}
+
+	public boolean isLatestFrameWins() {
+		return ring.getPolicy() == FrameRing.Policy.LATEST;
+	}
+
+	/**
+	 * @return the last error grabbing or dispatching frames, or
+	 *         <code>null</code>
+	 */
+	public Throwable getLastError() {
+		return lastError;
+	}
+
+	private void captureLoop() {
+		LatencyHistogram grab = getLatency(Stage.GRAB), convert = getLatency(Stage.CONVERT);
+		try {
+			while (running) {
+				try {
+					long start = System.nanoTime();
+					if (!source.grab()) { Thread.sleep(5); continue; }
+					long grabbed = System.nanoTime();
+					grab.record(grabbed - start);
+					// A frame without a free buffer is dropped unconverted
+					FrameRing.Slot slot = ring.claim();
+					if (slot == null) continue;
+					Image img = source.convert(slot.getImage());
+					if (img == null) { ring.cancel(slot); continue; }
+					convert.record(System.nanoTime() - grabbed);
+					ring.publish(slot, img, System.currentTimeMillis(), grabbed);
+				} catch (EOFException e) {
+					log.info("Camera {} ({}): {}", id, source.getName(), e.getMessage());
+					break;
+				} catch (InterruptedException e) {
+					break;
+				} catch (Throwable e) {
+					error(e);
+					try { Thread.sleep(100); } catch (InterruptedException ignored) { break; }
+				}
+			}
+		} finally {
+			capturing = false;
+		}
+	}
+
+	private void dispatchLoop() {
+		LatencyHistogram dispatch = getLatency(Stage.DISPATCH), track = getLatency(Stage.TRACK),
+				total = getLatency(Stage.TOTAL);
+		// After the source ends, dispatch what it captured before stopping
+		while ((capturing || ring.getPending() > 0) && !Thread.currentThread().isInterrupted()) {
+			FrameRing.Slot slot = ring.take(TAKE_TIMEOUT);
+			if (slot == null) continue;
+			long taken = System.nanoTime();
+			try {
+				broadcast(slot.getImage(), slot.getTime());
+			} catch (Throwable e) {
+				error(e);
+			} finally {
+				long done = System.nanoTime();
+				dispatch.record(taken - slot.getPublished());
+				track.record(done - taken);
+				total.record(done - slot.getGrabbed());
+				ring.release(slot);
+			}
+		}
+		running = false;
+	}
+
+	private void broadcast(Image image, long time) {
+		long dt = fpsWatch.toc();
+		if (dt > 0) fps = 1_000_000_000.0 / dt;
+		fpsWatch.tic();
+		frames++;
+		for (NewFrameListener listener : listeners)
+			listener.newFrame(image, time);
+	}
+
+	private void error(Throwable e) {
+		lastError = e;
+		Consumer<Throwable> handler = errorHandler;
+		if (handler != null)
+			handler.accept(e);
+		else
+			log.warn("Camera {} ({}): {}", id, source.getName(), e.toString());
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s: %.1f fps, drop %d, p99 %.1f ms", id, fps,
+				getDropped(), getLatency(Stage.TOTAL).getPercentile(99));
+	}
+
+}
@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Daniel Coelho de Castro.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Daniel Coelho de Castro - initial API and implementation
+ ******************************************************************************/
+package dcc.mouseglob.camera;
+
+import java.awt.image.BufferedImage;
+
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.Java2DFrameConverter;
+import org.bytedeco.javacv.OpenCVFrameGrabber;
+
+import dcc.graphics.FrameAdapter;
+import dcc.graphics.PImageAdapter;
+import dcc.graphics.image.Image;
+
+/**
+ * A camera opened through OpenCV.
+ */
+public class DeviceSource implements FrameSource {
+
+	private final int index;
+	private final int width, height;
+	private final Java2DFrameConverter converter = new Java2DFrameConverter();
+	private OpenCVFrameGrabber grabber;
+	private Frame frame;
+
+	/**
+	 * @param index
+	 *            - OpenCV device index
+	 * @param width
+	 *            - requested frame width, in pixels
+	 * @param height
+	 *            - requested frame height, in pixels
+	 */
+	public DeviceSource(int index, int width, int height) {
+		this.index = index;
+		this.width = width;
+		this.height = height;
+	}
+
+	public int getIndex() {
+		return index;
+	}
+
+	@Override
+	public String getName() {
+		return "device " + index;
+	}
+
+	@Override
+	public void start() throws Exception {
+		grabber = new OpenCVFrameGrabber(index);
+		grabber.setImageWidth(width);
+		grabber.setImageHeight(height);
+		try {
+			grabber.start();
+		} catch (Exception e) {
+			stop();
+			throw e;
+		}
+	}
+
+	@Override
+	public boolean grab() throws Exception {
+		frame = grabber.grab();
+		return frame != null;
+	}
+
+	@Override
+	public Image convert(Image destination) {
+		// Copy the grabber's BGR pixels directly; Java2D only for other layouts
+		Image image = FrameAdapter.frameToImage(frame, destination);
+		if (image == null) {
+			BufferedImage bi = converter.convert(frame);
+			if (bi != null)
+				image = PImageAdapter.bufferedToImage(bi, destination);
+		}
+		return image;
+	}
+
+	@Override
+	public void stop() {
+		try { if (grabber != null) grabber.stop(); } catch (Throwable ignored) {}
+		try { if (grabber != null) grabber.release(); } catch (Throwable ignored) {}
+		grabber = null;
+		frame = null;
+	}
+
+}
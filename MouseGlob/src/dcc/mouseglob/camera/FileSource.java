@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Daniel Coelho de Castro.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Daniel Coelho de Castro - initial API and implementation
+ ******************************************************************************/
+package dcc.mouseglob.camera;
+
+import java.awt.image.BufferedImage;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.imageio.ImageIO;
+
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.Java2DFrameConverter;
+
+import dcc.graphics.FrameAdapter;
+import dcc.graphics.PImageAdapter;
+import dcc.graphics.image.Image;
+
+/**
+ * A fake camera that replays a video file, or a directory of numbered
+ * images, at a fixed frame rate, so that capture and tracking can be run and
+ * tested without the devices. Frames are delivered in real time, as a camera
+ * would: a slow consumer makes frames drop rather than the file slow down.
+ */
+public class FileSource implements FrameSource {
+
+	private static final double DEFAULT_IMAGE_RATE = 30;
+
+	private final File file;
+	private final double frameRate;
+	private final boolean loop;
+
+	private FFmpegFrameGrabber grabber;
+	private final Java2DFrameConverter converter = new Java2DFrameConverter();
+	private Frame frame;
+	private File[] images;
+	private BufferedImage image;
+	private int next;
+	private long period;
+	private long deadline;
+
+	/**
+	 * @param file
+	 *            - a video file, or a directory whose images are played in
+	 *            name order
+	 * @param frameRate
+	 *            - frames per second; 0 to use the video's own rate (30 for
+	 *            images), negative to deliver frames as fast as they are
+	 *            grabbed
+	 * @param loop
+	 *            - <code>true</code> to start again after the last frame,
+	 *            <code>false</code> to end there
+	 */
+	public FileSource(File file, double frameRate, boolean loop) {
+		this.file = file;
+		this.frameRate = frameRate;
+		this.loop = loop;
+	}
+
+	@Override
+	public String getName() {
+		return file.getName();
+	}
+
+	@Override
+	public void start() throws Exception {
+		double rate = frameRate;
+		if (file.isDirectory()) {
+			images = listImages(file);
+			if (images.length == 0)
+				throw new IOException("No images in " + file);
+			next = 0;
+			if (rate == 0)
+				rate = DEFAULT_IMAGE_RATE;
+		} else {
+			grabber = new FFmpegFrameGrabber(file);
+			grabber.start();
+			if (rate == 0)
+				rate = grabber.getFrameRate() > 0 ? grabber.getFrameRate()
+						: DEFAULT_IMAGE_RATE;
+		}
+		period = rate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / rate) : 0;
+		deadline = System.nanoTime();
+	}
+
+	@Override
+	public boolean grab() throws Exception {
+		pace();
+		if (images != null)
+			readImage();
+		else
+			decodeFrame();
+		return true;
+	}
+
+	@Override
+	public Image convert(Image destination) {
+		if (image != null)
+			return PImageAdapter.bufferedToImage(image, destination);
+		Image converted = FrameAdapter.frameToImage(frame, destination);
+		if (converted == null) {
+			BufferedImage bi = converter.convert(frame);
+			if (bi != null)
+				converted = PImageAdapter.bufferedToImage(bi, destination);
+		}
+		return converted;
+	}
+
+	/**
+	 * Waits until the next frame is due, as a camera delivering at the frame
+	 * rate would. Frames missed while the caller was busy are not caught up.
+	 */
+	private void pace() {
+		if (period == 0)
+			return;
+		long now = System.nanoTime();
+		if (deadline - now > 0) {
+			LockSupport.parkNanos(this, deadline - now);
+			deadline += period;
+		} else {
+			deadline = now + period;
+		}
+	}
+
+	private void readImage() throws IOException {
+		if (next == images.length) {
+			if (!loop)
+				throw new EOFException(file + " has ended");
+			next = 0;
+		}
+		File f = images[next++];
+		image = ImageIO.read(f);
+		if (image == null)
+			throw new IOException("Unreadable image " + f);
+	}
+
+	private void decodeFrame() throws Exception {
+		frame = grabber.grabImage();
+		if (frame == null) {
+			if (!loop)
+				throw new EOFException(file + " has ended");
+			grabber.setTimestamp(0);
+			frame = grabber.grabImage();
+			if (frame == null)
+				throw new EOFException(file + " has no frames");
+		}
+	}
+
+	@Override
+	public void stop() {
+		try { if (grabber != null) grabber.stop(); } catch (Throwable ignored) {}
+		try { if (grabber != null) grabber.release(); } catch (Throwable ignored) {}
+		grabber = null;
+		frame = null;
+		images = null;
+		image = null;
+	}
+
+	private static File[] listImages(File directory) {
+		List<File> images = new ArrayList<File>();
+		File[] files = directory.listFiles();
+		if (files != null) {
+			Arrays.sort(files);
+			for (File f : files) {
+				String name = f.getName().toLowerCase(Locale.ROOT);
+				if (f.isFile() && (name.endsWith(".png") || name.endsWith(".jpg")
+						|| name.endsWith(".jpeg") || name.endsWith(".bmp")))
+					images.add(f);
+			}
+		}
+		return images.toArray(new File[images.size()]);
+	}
+
+}
@@ -0,0 +1,250 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Daniel Coelho de Castro.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Daniel Coelho de Castro - initial API and implementation
+ ******************************************************************************/
+package dcc.mouseglob.camera;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import dcc.graphics.image.Image;
+import dcc.util.FrameMetrics;
+import dcc.util.SPSCQueue;
+
+/**
+ * Hands captured frames over from the capture thread to the dispatching
+ * thread through a fixed ring of image buffers, so that no memory is
+ * allocated per frame once every buffer has been filled. Each buffer is owned
+ * by one side at a time: the capture thread {@link #claim()}s one, converts a
+ * frame into it and {@link #publish(Slot, Image, long, long)}es it; the
+ * dispatching thread {@link #take(long)}s it and {@link #release(Slot)}s it
+ * once listeners have seen the frame.
+ */
+final class FrameRing {
+
+	/**
+	 * What happens to frames the dispatching thread has not taken yet.
+	 */
+	enum Policy {
+		/**
+		 * Frames are dispatched in order; when every buffer is in use, new
+		 * frames are dropped.
+		 */
+		QUEUE,
+		/**
+		 * Only the newest frame waits; publishing a frame drops the one still
+		 * waiting, so the dispatched frame is never older than one capture.
+		 */
+		LATEST
+	}
+
+	/**
+	 * A pooled frame buffer.
+	 */
+	static final class Slot {
+		private Image image;
+		private long time;
+		private long grabbed;
+		private long published;
+
+		/**
+		 * @return the image last converted into this buffer, to be reused, or
+		 *         <code>null</code>
+		 */
+		Image getImage() {
+			return image;
+		}
+
+		/**
+		 * @return the frame time, in milliseconds
+		 */
+		long getTime() {
+			return time;
+		}
+
+		/**
+		 * @return when the frame was grabbed, as {@link System#nanoTime()}
+		 */
+		long getGrabbed() {
+			return grabbed;
+		}
+
+		/**
+		 * @return when the frame was published, as {@link System#nanoTime()}
+		 */
+		long getPublished() {
+			return published;
+		}
+	}
+
+	private final Policy policy;
+	private final int size;
+	/** Published frames, in order; {@link Policy#QUEUE} only */
+	private final SPSCQueue<Slot> queue;
+	/** The newest published frame; {@link Policy#LATEST} only */
+	private final AtomicReference<Slot> latest = new AtomicReference<>();
+	/** Released buffers, from the dispatching to the capture thread */
+	private final SPSCQueue<Slot> free;
+	/** A buffer the capture thread got back without it being dispatched */
+	private Slot spare;
+	private final FrameMetrics metrics = new FrameMetrics();
+
+	private volatile Thread consumer;
+	private volatile boolean waiting;
+
+	/**
+	 * @param size
+	 *            - number of buffers; {@link Policy#LATEST} needs at least
+	 *            three, one for each thread and one waiting
+	 */
+	FrameRing(int size, Policy policy) {
+		if (size < (policy == Policy.LATEST ? 3 : 2))
+			throw new IllegalArgumentException("Too few buffers for "
+					+ policy + ": " + size);
+		this.size = size;
+		this.policy = policy;
+		queue = new SPSCQueue<Slot>(size);
+		free = new SPSCQueue<Slot>(size);
+		for (int i = 0; i < size; i++)
+			free.offer(new Slot());
+	}
+
+	Policy getPolicy() {
+		return policy;
+	}
+
+	int getSize() {
+		return size;
+	}
+
+	/**
+	 * @return the number of frames waiting to be dispatched
+	 */
+	int getPending() {
+		return policy == Policy.QUEUE ? queue.size()
+				: latest.get() != null ? 1 : 0;
+	}
+
+	FrameMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Takes a free buffer to convert a frame into; capture thread only.
+	 * 
+	 * @return the buffer, or <code>null</code> if all are in use, in which case
+	 *         the frame is counted as dropped
+	 */
+	Slot claim() {
+		Slot slot = spare;
+		if (slot != null) {
+			spare = null;
+			return slot;
+		}
+		slot = free.poll();
+		if (slot == null)
+			metrics.dropped();
+		return slot;
+	}
+
+	/**
+	 * Passes a converted frame on; capture thread only.
+	 * 
+	 * @param slot
+	 *            - buffer from {@link #claim()}
+	 * @param image
+	 *            - the frame, converted into the buffer's image when possible
+	 * @param time
+	 *            - the frame time, in milliseconds
+	 * @param grabbed
+	 *            - when the frame was grabbed, as {@link System#nanoTime()}
+	 */
+	void publish(Slot slot, Image image, long time, long grabbed) {
+		slot.image = image;
+		slot.time = time;
+		slot.grabbed = grabbed;
+		slot.published = System.nanoTime();
+		if (policy == Policy.QUEUE) {
+			// Never fails: there are no more buffers than queue entries
+			queue.offer(slot);
+			metrics.published(queue.size());
+		} else {
+			Slot previous = latest.getAndSet(slot);
+			if (previous != null) {
+				metrics.dropped();
+				spare = previous;
+			}
+			metrics.published(1);
+		}
+		if (waiting)
+			LockSupport.unpark(consumer);
+	}
+
+	/**
+	 * Gives back a claimed buffer without publishing it; capture thread only.
+	 */
+	void cancel(Slot slot) {
+		spare = slot;
+	}
+
+	/**
+	 * Waits for a frame to dispatch; dispatching thread only.
+	 * 
+	 * @param timeout
+	 *            - longest wait, in nanoseconds
+	 * @return the frame, to be {@link #release(Slot) released}, or
+	 *         <code>null</code> if none was published in time or the thread
+	 *         was interrupted
+	 */
+	Slot take(long timeout) {
+		consumer = Thread.currentThread();
+		long deadline = System.nanoTime() + timeout;
+		while (true) {
+			Slot slot = policy == Policy.QUEUE ? queue.poll() : latest
+					.getAndSet(null);
+			if (slot != null) {
+				metrics.consumed(System.nanoTime() - slot.published);
+				return slot;
+			}
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0 || Thread.currentThread().isInterrupted())
+				return null;
+			waiting = true;
+			// Check again, or a frame published before the flag was seen waits
+			if (getPending() == 0)
+				LockSupport.parkNanos(this, remaining);
+			waiting = false;
+		}
+	}
+
+	/**
+	 * Returns a dispatched buffer to the ring; dispatching thread only.
+	 */
+	void release(Slot slot) {
+		free.offer(slot);
+	}
+
+	/**
+	 * Releases the frames still waiting without dispatching them; only while
+	 * no thread is using this ring.
+	 */
+	void clear() {
+		Slot slot;
+		while ((slot = queue.poll()) != null)
+			free.offer(slot);
+		slot = latest.getAndSet(null);
+		if (slot != null)
+			free.offer(slot);
+		if (spare != null) {
+			free.offer(spare);
+			spare = null;
+		}
+	}
+
+}
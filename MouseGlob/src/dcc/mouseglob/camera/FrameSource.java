@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Daniel Coelho de Castro.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Daniel Coelho de Castro - initial API and implementation
+ ******************************************************************************/
+package dcc.mouseglob.camera;
+
+import dcc.graphics.image.Image;
+
+/**
+ * A device frames are captured from, such as a camera, or a file standing in
+ * for one. A source is only used by its stream's capture thread.
+ */
+public interface FrameSource {
+
+	/**
+	 * @return a short description, for status and error messages
+	 */
+	String getName();
+
+	/**
+	 * Opens the device.
+	 * 
+	 * @throws Exception
+	 *             if it cannot be opened
+	 */
+	void start() throws Exception;
+
+	/**
+	 * Waits for the next frame. Frames are grabbed even when there is nowhere
+	 * to convert them to, so that the device never queues stale frames.
+	 * 
+	 * @return <code>true</code> if a frame was grabbed, <code>false</code> if
+	 *         the device had none
+	 * @throws java.io.EOFException
+	 *             once a finite source has no more frames
+	 * @throws Exception
+	 *             if the frame could not be grabbed
+	 */
+	boolean grab() throws Exception;
+
+	/**
+	 * Converts the last grabbed frame.
+	 * 
+	 * @param destination
+	 *            - image to convert into when its buffer can be reused, or
+	 *            <code>null</code>
+	 * @return the frame, or <code>null</code> if it could not be converted
+	 * @throws Exception
+	 *             if the frame could not be read
+	 */
+	Image convert(Image destination) throws Exception;
+
+	/**
+	 * Closes the device; errors are ignored.
+	 */
+	void stop();
+
+}
@@ -1,22 +1,30 @@
 package dcc.mouseglob.cli;
 
+import dcc.graphics.FrameAdapter;
 import dcc.graphics.PImageAdapter;
+import dcc.graphics.image.GrayscaleImage;
 import dcc.graphics.image.Image;
 import dcc.inject.Context;
-import dcc.mouseglob.PropertiesManager;
 import dcc.mouseglob.maze.BoundariesManager;
 import dcc.mouseglob.maze.BoundaryMask;
+import dcc.mouseglob.maze.BoundaryXMLCodec;
+import dcc.mouseglob.maze.ZoneXMLCodec;
+import dcc.mouseglob.maze.ZonesManager;
 import dcc.mouseglob.tracking.Tracker;
 import dcc.mouseglob.tracking.TrackingManager;
+import dcc.xml.XMLDecoder;
+import dcc.xml.XMLReader;
 import org.bytedeco.javacv.FFmpegFrameGrabber;
 import org.bytedeco.javacv.Frame;
 import org.bytedeco.javacv.Java2DFrameConverter;
+import org.w3c.dom.Element;
 
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.Locale;
 
 /**
@@ -31,11 +39,24 @@ public final class BatchProcessor {
     private final Context context;
     private final TrackingManager trackingManager;
     private final BoundariesManager boundariesManager;
+    private final ZonesManager zonesManager;
+    private int queueDepth;
+    private boolean trackerAdded;
+    private long frameCount;
 
     public BatchProcessor(Context context) {
         this.context = context;
         this.trackingManager = context.getInstance(TrackingManager.class);
         this.boundariesManager = context.getInstance(BoundariesManager.class);
+        this.zonesManager = context.contains(ZonesManager.class) ? context.getInstance(ZonesManager.class) : null;
+    }
+
+    /**
+     * Selects the staged loop (decode, convert, track and output on separate threads)
+     * with the given queue depth between stages; 0 keeps the single-threaded loop.
+     */
+    public void setQueueDepth(int queueDepth) {
+        this.queueDepth = Math.max(0, queueDepth);
     }
 
     public void run(String inputVideo,
@@ -43,9 +64,25 @@ public final class BatchProcessor {
                     OutputFormat fmt,
                     Path pipelineFile,
                     Integer trackerSize) throws Exception {
+        configure(pipelineFile, trackerSize);
+
+        Path target = outputPath(outputFile, fmt);
+        Files.createDirectories(target.toAbsolutePath().getParent());
+        // Write beside the target and move into place, so a complete output file means a finished run
+        Path partial = target.resolveSibling(target.getFileName() + ".part");
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(partial))) {
+            if (fmt == OutputFormat.CSV) writeCsvHeader(out);
+            processVideo(inputVideo, out, fmt);
+            if (out.checkError()) throw new IOException("Failed writing " + partial);
+        }
+        Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Loads a pipeline and sets the tracker size, when given. */
+    void configure(Path pipelineFile, Integer trackerSize) {
         if (pipelineFile != null) {
-            PropertiesManager.getInstance().set("tracking.pipeline.file", pipelineFile.toString());
-            PropertiesManager.getInstance().set("tracking.pipeline.enabled", "true");
+            // Per-manager, so concurrent batch jobs can run different pipelines
+            trackingManager.loadPipeline(pipelineFile.toString());
         }
         if (trackerSize != null && trackerSize > 0) {
             // best-effort: public API only exposes getTrackerSize; set via controller normally
@@ -57,22 +94,47 @@ public final class BatchProcessor {
                 log.warn("Could not set tracker size via reflection; using default.");
             }
         }
+    }
 
-        Files.createDirectories(outputFile.getParent() == null ? Path.of(".") : outputFile.getParent());
-        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(coerceExt(outputFile, fmt)))) {
-            if (fmt == OutputFormat.CSV) writeCsvHeader(out);
-            processVideo(inputVideo, out, fmt);
-        }
+    /**
+     * Adds the boundaries of a maze file (as saved by the maze editor) to this
+     * processor's boundaries manager, and its zones to the zones manager when the
+     * context has one.
+     */
+    public void loadMaze(Path mazeFile) throws IOException {
+        new XMLReader(mazeFile.toString()).read(new XMLDecoder() {
+            @Override
+            public void decode(Element root) {
+                BoundaryXMLCodec codec = new BoundaryXMLCodec(this);
+                for (Element boundary : getChildren(getChild(root, "boundaries")))
+                    boundariesManager.add(codec.decode(boundary));
+                if (zonesManager == null) return;
+                ZoneXMLCodec zoneCodec = new ZoneXMLCodec(this);
+                for (Element zone : getChildren(getChild(root, "zones")))
+                    zonesManager.add(zoneCodec.decode(zone));
+            }
+        });
+        log.info("Loaded {} boundaries from {}", boundariesManager.getBoundaries().size(), mazeFile);
     }
 
-    private static Path coerceExt(Path file, OutputFormat fmt) {
+    /** Number of frames tracked by the last {@link #run}. */
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    TrackingManager getTrackingManager() {
+        return trackingManager;
+    }
+
+    /** The file {@link #run} writes for the given output path and format. */
+    static Path outputPath(Path file, OutputFormat fmt) {
         String s = file.toString();
         String ext = (fmt == OutputFormat.CSV ? ".csv" : ".ndjson");
         if (!s.toLowerCase(Locale.ROOT).endsWith(ext)) return file.resolveSibling(s + ext);
         return file;
     }
 
-    private void writeCsvHeader(PrintWriter out) {
+    static void writeCsvHeader(PrintWriter out) {
         out.println("t_ms,x_px,y_px");
     }
 
@@ -80,44 +142,39 @@ public final class BatchProcessor {
         log.info("Starting headless processing of {}", inputVideo);
         try (FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(inputVideo)) {
             grabber.start();
-            Java2DFrameConverter conv = new Java2DFrameConverter();
-            Image scratch = null;
-            boolean trackerAdded = false;
-            long lastTs = -1L;
-            while (true) {
-                Frame f = grabber.grabImage();
-                if (f == null) break; // EOF
-                BufferedImage bi = conv.convert(f);
-                if (bi == null) continue;
-                long tMs = Math.max(0L, grabber.getTimestamp() / 1000L);
-                if (tMs == lastTs) tMs++; // enforce monotonic
-                lastTs = tMs;
-
-                // Convert and dispatch to domain components (no UI)
-                Image img = PImageAdapter.bufferedToImage(bi, scratch);
-                scratch = img;
-                // Boundaries may need video size to initialize masks
-                boundariesManager.newFrame(img, tMs);
-
-                // Add a default tracker at first frame center
-                if (!trackerAdded) {
-                    int cx = bi.getWidth() / 2;
-                    int cy = bi.getHeight() / 2;
-                    BoundaryMask mask = boundariesManager.getMask(cx, cy);
-                    Tracker tracker = new Tracker(cx, cy, trackingManager.getTrackerSize(), mask);
-                    tracker.setName("tracker-1");
-                    trackingManager.add(tracker);
-                    trackerAdded = true;
-                }
+            // Tracking only reads luminance unless a pipeline stage asks for colour
+            boolean grayscale = trackingManager.acceptsGrayscaleFrames();
+            if (queueDepth > 0) {
+                StagedFrameLoop<TrackedFrame> loop = new StagedFrameLoop<>(queueDepth, this::trackFrame,
+                        frame -> writeLine(out, fmt, frame));
+                loop.setGrayscale(grayscale);
+                loop.run(grabber);
+            } else {
+                Java2DFrameConverter conv = new Java2DFrameConverter();
+                Image scratch = null;
+                long lastTs = -1L;
+                while (true) {
+                    Frame f = grabber.grabImage();
+                    if (f == null) break; // EOF
+                    // Copy the decoder's pixels directly when possible; Java2D conversion otherwise
+                    Image img = grayscale ? FrameAdapter.frameToGrayscale(f, (GrayscaleImage) scratch)
+                            : FrameAdapter.frameToImage(f, scratch);
+                    if (img == null) {
+                        BufferedImage bi = conv.convert(f);
+                        if (bi == null) continue;
+                        img = PImageAdapter.bufferedToImage(bi, grayscale ? null : scratch);
+                        if (grayscale) {
+                            Image color = img;
+                            img = color.luminance((GrayscaleImage) scratch);
+                            color.release();
+                        }
+                    }
+                    scratch = img;
+                    long tMs = nextTimestamp(grabber.getTimestamp(), lastTs);
+                    lastTs = tMs;
 
-                // Run tracking for this frame
-                trackingManager.newFrame(img, tMs);
-
-                // For simplicity, output the first tracker's position each frame
-                if (fmt == OutputFormat.CSV) {
-                    writeCsvLine(out, tMs);
-                } else {
-                    writeNdjsonLine(out, tMs);
+                    // Dispatch to domain components (no UI)
+                    writeLine(out, fmt, trackFrame(img, tMs));
                 }
             }
             grabber.stop();
@@ -125,21 +182,66 @@ public final class BatchProcessor {
         log.info("Headless processing done.");
     }
 
-    private void writeCsvLine(PrintWriter out, long tMs) {
-        Tracker tr = firstTracker();
-        if (tr == null) return;
-        dcc.graphics.math.Vector p = tr.getPosition();
-        out.printf(Locale.ROOT, "%d,%.2f,%.2f%n", tMs, p.x, p.y);
+    /**
+     * Converts a grabber timestamp to milliseconds, moved past the previous frame's when
+     * it does not follow it, so that frame times are strictly increasing.
+     *
+     * @param timestampUs grabber timestamp, in microseconds
+     * @param lastTs      time of the previous frame, in milliseconds, or -1 for the first
+     */
+    static long nextTimestamp(long timestampUs, long lastTs) {
+        long tMs = Math.max(0L, timestampUs / 1000L);
+        return tMs <= lastTs ? lastTs + 1 : tMs;
     }
 
-    private void writeNdjsonLine(PrintWriter out, long tMs) {
+    /**
+     * Runs tracking for one frame and snapshots the first tracker's position, so the
+     * result can be written after the tracker has moved on to later frames.
+     */
+    TrackedFrame trackFrame(Image img, long tMs) {
+        frameCount++;
+        // Boundaries may need video size to initialize masks
+        boundariesManager.newFrame(img, tMs);
+
+        // Add a default tracker at first frame center
+        if (!trackerAdded) {
+            int cx = img.getWidth() / 2;
+            int cy = img.getHeight() / 2;
+            BoundaryMask mask = boundariesManager.getMask(cx, cy);
+            Tracker tracker = new Tracker(cx, cy, trackingManager.getTrackerSize(), mask);
+            tracker.setName("tracker-1");
+            trackingManager.add(tracker);
+            trackerAdded = true;
+        }
+
+        // Run tracking for this frame
+        trackingManager.newFrame(img, tMs);
+
+        // For simplicity, output the first tracker's position each frame
         Tracker tr = firstTracker();
-        if (tr == null) return;
+        if (tr == null) return null;
         dcc.graphics.math.Vector p = tr.getPosition();
+        return new TrackedFrame(tMs, tr.getName() == null ? "tracker-1" : tr.getName(), p.x, p.y);
+    }
+
+    static void writeLine(PrintWriter out, OutputFormat fmt, TrackedFrame frame) {
+        if (frame == null) return;
+        if (fmt == OutputFormat.CSV) {
+            writeCsvLine(out, frame);
+        } else {
+            writeNdjsonLine(out, frame);
+        }
+    }
+
+    private static void writeCsvLine(PrintWriter out, TrackedFrame frame) {
+        out.printf(Locale.ROOT, "%d,%.2f,%.2f%n", frame.tMs, frame.x, frame.y);
+    }
+
+    private static void writeNdjsonLine(PrintWriter out, TrackedFrame frame) {
         // Minimal NDJSON per frame
         String json = String.format(Locale.ROOT,
                 "{\"type\":\"frame\",\"t_ms\":%d,\"trackers\":[{\"name\":\"%s\",\"x_px\":%.2f,\"y_px\":%.2f}]}",
-                tMs, tr.getName() == null ? "tracker-1" : tr.getName(), p.x, p.y);
+                frame.tMs, frame.name, frame.x, frame.y);
         out.println(json);
     }
 
@@ -147,4 +249,18 @@ public final class BatchProcessor {
         java.util.List<Tracker> list = trackingManager.getTrackers();
         return list.isEmpty() ? null : list.get(0);
     }
+
+    /** Immutable per-frame tracker snapshot passed to the output stage. */
+    static final class TrackedFrame {
+        final long tMs;
+        final String name;
+        final double x, y;
+
+        TrackedFrame(long tMs, String name, double x, double y) {
+            this.tMs = tMs;
+            this.name = name;
+            this.x = x;
+            this.y = y;
+        }
+    }
 }
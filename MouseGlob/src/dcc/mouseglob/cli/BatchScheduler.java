@@ -0,0 +1,288 @@
+package dcc.mouseglob.cli;
+
+import dcc.inject.Context;
+import dcc.inject.Indexer;
+import dcc.mouseglob.FileType;
+import dcc.mouseglob.analysis.AnalysesManager;
+import dcc.mouseglob.cli.BatchProcessor.OutputFormat;
+import dcc.mouseglob.maze.BoundariesManager;
+import dcc.mouseglob.tracking.TrackingManager;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Runs many headless tracking jobs in one JVM.
+ *
+ * Each job gets its own injected {@link Context}, so trackers, boundaries and pipelines
+ * are never shared between videos. Jobs whose output file already exists are skipped,
+ * which makes an interrupted batch resumable: {@link BatchProcessor} only moves an
+ * output into place once the whole video has been processed.
+ *
+ * Jobs come either from a directory of videos, with optional per-video sidecar files
+ * ({@code trial.pipeline.json}, {@code trial.mgz}), or from a manifest with one job per
+ * line:
+ * <pre>
+ * # video, pipeline, maze, tracker size (all but the video optional)
+ * trial01.mp4, pipelines/dark.json, mazes/plus.mgz, 24
+ * trial02.mp4
+ * </pre>
+ * Relative paths in a manifest are resolved against the manifest's directory.
+ *
+ * Outputs are named after their videos. Videos that would share an output, such as
+ * {@code day1/trial.mp4} and {@code day2/trial.mp4}, are told apart by their directory
+ * and then by their extension; a video listed twice is rejected.
+ */
+final class BatchScheduler {
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(BatchScheduler.class);
+
+    /** One video and the configuration it should be tracked with. */
+    static final class Job {
+        final Path input;
+        final Path pipeline;
+        final Path maze;
+        final Integer trackerSize;
+        /** Output file name, without extension; unique among the jobs of a listing */
+        String name;
+
+        Job(Path input, Path pipeline, Path maze, Integer trackerSize) {
+            this.input = input;
+            this.pipeline = pipeline;
+            this.maze = maze;
+            this.trackerSize = trackerSize;
+            this.name = stripExtension(input);
+        }
+    }
+
+    /** Runs one job into its output file; the video tracker, or a fake one in tests. */
+    interface JobRunner {
+        void run(Job job, Path output) throws Exception;
+    }
+
+    private static String stripExtension(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    private final Path outputDir;
+    private final OutputFormat fmt;
+    private final int concurrency;
+    private int queueDepth;
+
+    BatchScheduler(Path outputDir, OutputFormat fmt, int concurrency) {
+        this.outputDir = outputDir;
+        this.fmt = fmt;
+        this.concurrency = Math.max(1, concurrency);
+    }
+
+    /** Queue depth for each job's staged frame loop; 0 runs each job single-threaded. */
+    void setQueueDepth(int queueDepth) {
+        this.queueDepth = queueDepth;
+    }
+
+    /**
+     * Lists the jobs for a manifest file or a directory of videos. Pipeline, maze and
+     * tracker size fall back to the given defaults when a job does not name its own.
+     */
+    static List<Job> listJobs(Path source, Path defaultPipeline, Path defaultMaze, Integer defaultTrackerSize)
+            throws IOException {
+        boolean directory = Files.isDirectory(source);
+        List<Job> jobs = directory
+                ? scanDirectory(source, defaultPipeline, defaultMaze, defaultTrackerSize)
+                : readManifest(source, defaultPipeline, defaultMaze, defaultTrackerSize);
+        nameOutputs(jobs, directory ? source : source.toAbsolutePath().getParent());
+        return jobs;
+    }
+
+    /**
+     * Gives every job an output name of its own. Jobs whose videos share a base name are
+     * named after their path under {@code base} instead, then after that path and their
+     * extension, and numbered as a last resort; output names differing only in case are
+     * taken to collide, as they would on some file systems.
+     *
+     * @throws IOException if two jobs are for the same video
+     */
+    static void nameOutputs(List<Job> jobs, Path base) throws IOException {
+        Map<Path, Job> videos = new HashMap<>();
+        for (Job job : jobs) {
+            Job other = videos.putIfAbsent(job.input.toAbsolutePath().normalize(), job);
+            if (other != null) throw new IOException("Video listed twice: " + job.input);
+        }
+        Path root = base.toAbsolutePath().normalize();
+        for (int level = 1; level <= 3; level++) {
+            Map<String, List<Job>> byName = new HashMap<>();
+            for (Job job : jobs)
+                byName.computeIfAbsent(job.name.toLowerCase(Locale.ROOT), k -> new ArrayList<>()).add(job);
+            boolean collided = false;
+            for (List<Job> same : byName.values()) {
+                if (same.size() < 2) continue;
+                collided = true;
+                for (int i = 0; i < same.size(); i++) {
+                    Job job = same.get(i);
+                    String name = level == 3 ? job.name + "-" + (i + 1) : outputName(job.input, root, level == 2);
+                    log.warn("Output name {} is shared by several videos; {} is written to {}", job.name,
+                            job.input, name);
+                    job.name = name;
+                }
+            }
+            if (!collided) return;
+        }
+    }
+
+    /** The video's path under the root, with its extension if asked, as a file name. */
+    private static String outputName(Path video, Path root, boolean withExtension) {
+        Path file = video.toAbsolutePath().normalize();
+        Path relative = file.startsWith(root) ? root.relativize(file) : file.subpath(0, file.getNameCount());
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < relative.getNameCount() - 1; i++)
+            name.append(relative.getName(i)).append('_');
+        name.append(withExtension ? video.getFileName().toString().replace('.', '_') : stripExtension(video));
+        return name.toString();
+    }
+
+    private static List<Job> scanDirectory(Path dir, Path defaultPipeline, Path defaultMaze, Integer defaultTrackerSize)
+            throws IOException {
+        List<Job> jobs = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.filter(Files::isRegularFile)
+                    .filter(f -> FileType.MOVIE_FILE.validateExtension(f.getFileName().toString()))
+                    .sorted()
+                    .forEach(video -> {
+                        Path pipeline = dir.resolve(stripExtension(video) + ".pipeline.json");
+                        Path maze = dir.resolve(FileType.MAZE_FILE.replaceExtension(video.getFileName().toString()));
+                        jobs.add(new Job(video,
+                                Files.isRegularFile(pipeline) ? pipeline : defaultPipeline,
+                                Files.isRegularFile(maze) ? maze : defaultMaze,
+                                defaultTrackerSize));
+                    });
+        }
+        return jobs;
+    }
+
+    private static List<Job> readManifest(Path manifest, Path defaultPipeline, Path defaultMaze,
+                                          Integer defaultTrackerSize) throws IOException {
+        Path base = manifest.toAbsolutePath().getParent();
+        List<Job> jobs = new ArrayList<>();
+        try (BufferedReader in = Files.newBufferedReader(manifest)) {
+            String line;
+            int lineNo = 0;
+            while ((line = in.readLine()) != null) {
+                lineNo++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] cols = line.split("\\s*[,\\t]\\s*");
+                try {
+                    jobs.add(new Job(base.resolve(cols[0]),
+                            column(cols, 1) != null ? base.resolve(cols[1]) : defaultPipeline,
+                            column(cols, 2) != null ? base.resolve(cols[2]) : defaultMaze,
+                            column(cols, 3) != null ? Integer.valueOf(cols[3]) : defaultTrackerSize));
+                } catch (NumberFormatException e) {
+                    throw new IOException(manifest + ":" + lineNo + ": invalid tracker size '" + cols[3] + "'");
+                }
+            }
+        }
+        return jobs;
+    }
+
+    private static String column(String[] cols, int i) {
+        return i < cols.length && !cols[i].isEmpty() ? cols[i] : null;
+    }
+
+    /**
+     * Runs the jobs on a fixed pool of worker threads and waits for all of them.
+     *
+     * @return the number of jobs that failed
+     */
+    int run(List<Job> jobs) throws InterruptedException {
+        return run(jobs, this::runJob);
+    }
+
+    int run(List<Job> jobs, JobRunner runner) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency, r -> {
+            Thread t = new Thread(r);
+            t.setName("batch-job-" + t.threadId());
+            return t;
+        });
+        AtomicInteger done = new AtomicInteger();
+        AtomicInteger skipped = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        long start = System.nanoTime();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (Job job : jobs) {
+                futures.add(executor.submit(() -> {
+                    Path output = BatchProcessor.outputPath(outputDir.resolve(job.name), fmt);
+                    if (Files.exists(output)) {
+                        log.info("Skipping {}: {} already exists", job.input, output);
+                        skipped.incrementAndGet();
+                        return;
+                    }
+                    try {
+                        runner.run(job, output);
+                        done.incrementAndGet();
+                    } catch (Throwable t) {
+                        failed.incrementAndGet();
+                        log.error("Job {} failed: {}", job.input, t.toString(), t);
+                    }
+                }));
+            }
+            for (Future<?> f : futures) {
+                try {
+                    f.get();
+                } catch (ExecutionException e) {
+                    // already logged by the job
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        log.info(String.format(Locale.ROOT, "Batch finished in %.1f s: %d done, %d skipped, %d failed (%d concurrent jobs)",
+                seconds, done.get(), skipped.get(), failed.get(), concurrency));
+        return failed.get();
+    }
+
+    private void runJob(Job job, Path output) throws Exception {
+        BatchProcessor proc = new BatchProcessor(newContext());
+        proc.setQueueDepth(queueDepth);
+        if (job.maze != null) proc.loadMaze(job.maze);
+
+        long start = System.nanoTime();
+        proc.run(job.input.toString(), output, fmt, job.pipeline, job.trackerSize);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long frames = proc.getFrameCount();
+        log.info(String.format(Locale.ROOT, "Job %s: %d frames in %.1f s (%.1f fps) -> %s",
+                job.input.getFileName(), frames, seconds, frames / Math.max(seconds, 1e-9), output));
+    }
+
+    private static Context newContext() {
+        return newContext(TrackingManager.class, BoundariesManager.class);
+    }
+
+    /** Wires a context of its own for the given components and their dependencies. */
+    static Context newContext(Class<?>... components) {
+        // Component constructors read shared properties and resources, so wire one context at a time
+        synchronized (BatchScheduler.class) {
+            Context ctx = new Context();
+            ctx.inject(Indexer.load(components));
+            // Analyses of this job's trackers see its calibration, not the global one
+            if (ctx.contains(AnalysesManager.class))
+                ctx.getInstance(AnalysesManager.class).setContext(ctx);
+            return ctx;
+        }
+    }
+}
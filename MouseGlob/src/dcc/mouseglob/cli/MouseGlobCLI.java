@@ -1,24 +1,39 @@
 package dcc.mouseglob.cli;
 
 import dcc.inject.Context;
-import dcc.inject.Indexer;
 import dcc.mouseglob.PropertiesManager;
 import dcc.mouseglob.cli.BatchProcessor.OutputFormat;
 import dcc.mouseglob.maze.BoundariesManager;
 import dcc.mouseglob.tracking.TrackingManager;
 
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
  * Command-line entry point to run MouseGlob in headless/batch mode.
  *
  * Usage:
- *   java -cp ... dcc.mouseglob.cli.MouseGlobCLI --input video.mp4 --output out.csv [--ndjson] [--pipeline path.json] [--tracker-size 20]
+ *   java -cp ... dcc.mouseglob.cli.MouseGlobCLI --input video.mp4 --output out.csv [--ndjson] [--pipeline path.json] [--maze maze.mgz] [--tracker-size 20] [--pipelined [--queue-depth 4]] [--roi]
+ *   java -cp ... dcc.mouseglob.cli.MouseGlobCLI --batch videos/|manifest.txt --output outdir/ [--jobs 4] [same options as above]
+ *   java -cp ... dcc.mouseglob.cli.MouseGlobCLI --cameras 0,1,2,3 --output outdir/ [--mazes a.mgz,b.mgz,c.mgz,d.mgz] [--duration 3600] [--threads 4] [same options as above]
  *
  * Notes:
  * - No UI is created. Domain logic is wired via the custom DI Context.
+ * - --pipelined runs decode, conversion, tracking and output on separate threads with
+ *   bounded queues of --queue-depth frames between them (default 4). Output order is unchanged.
+ * - --roi processes only the region around the trackers, with a full-frame pass every
+ *   tracking.roi.fullFrameInterval frames (see TrackingManager#setRoiProcessing).
+ * - --batch runs every video of a directory or manifest (see {@link BatchScheduler}), --jobs at a
+ *   time, each with its own Context. --output is then a directory, and videos whose output already
+ *   exists are skipped, so rerunning an interrupted batch resumes it.
+ * - --cameras tracks several cameras at once (see {@link RigProcessor}), each with its own Context
+ *   and output file cam1, cam2, ... in the --output directory. A camera is a device index, or a
+ *   video file or image directory replayed as a fake device. --mazes gives each camera its own
+ *   maze, in the same order; --maze is used for the others. The rig runs for --duration seconds,
+ *   or until interrupted.
  */
 public final class MouseGlobCLI {
     private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(MouseGlobCLI.class);
@@ -26,18 +41,52 @@ public final class MouseGlobCLI {
     public static void main(String[] args) {
         try {
             Map<String,String> opts = parse(args);
-            String in = req(opts, "--input");
             String out = req(opts, "--output");
             OutputFormat fmt = opts.containsKey("--ndjson") ? OutputFormat.NDJSON : OutputFormat.CSV;
             Path pipeline = opts.containsKey("--pipeline") ? Path.of(opts.get("--pipeline")) : null;
+            Path maze = opts.containsKey("--maze") ? Path.of(opts.get("--maze")) : null;
             Integer trackerSize = opts.containsKey("--tracker-size") ? Integer.parseInt(opts.get("--tracker-size")) : null;
+            int queueDepth = opts.containsKey("--pipelined") ? Integer.parseInt(opts.getOrDefault("--queue-depth", "4")) : 0;
+            // Read by TrackingManager when a context is wired
+            if (opts.containsKey("--roi")) PropertiesManager.getInstance().set("tracking.roi.enabled", "true");
+
+            if (opts.containsKey("--cameras")) {
+                String[] specs = req(opts, "--cameras").split(",");
+                String[] mazes = opts.containsKey("--mazes") ? opts.get("--mazes").split(",") : new String[0];
+                List<RigProcessor.Camera> cameras = new ArrayList<>();
+                for (int i = 0; i < specs.length; i++)
+                    cameras.add(new RigProcessor.Camera("cam" + (i + 1), specs[i].trim(),
+                            i < mazes.length && !mazes[i].trim().isEmpty() ? Path.of(mazes[i].trim()) : maze));
+                RigProcessor rig = new RigProcessor(Path.of(out), fmt);
+                rig.configure(pipeline, trackerSize);
+                if (opts.containsKey("--duration")) rig.setDuration(Long.parseLong(opts.get("--duration")));
+                if (opts.containsKey("--threads")) rig.setThreads(Integer.parseInt(opts.get("--threads")));
+                int failed = rig.run(cameras);
+                if (failed > 0) log.warn("{} of {} cameras failed to start", failed, cameras.size());
+                log.info("Done.");
+                return;
+            }
+
+            if (opts.containsKey("--batch")) {
+                List<BatchScheduler.Job> jobs = BatchScheduler.listJobs(Path.of(req(opts, "--batch")), pipeline, maze, trackerSize);
+                int concurrency = Integer.parseInt(opts.getOrDefault("--jobs",
+                        String.valueOf(Runtime.getRuntime().availableProcessors())));
+                BatchScheduler scheduler = new BatchScheduler(Path.of(out), fmt, concurrency);
+                scheduler.setQueueDepth(queueDepth);
+                int failed = scheduler.run(jobs);
+                if (failed > 0) throw new IllegalStateException(failed + " of " + jobs.size() + " batch jobs failed");
+                log.info("Done.");
+                return;
+            }
+
+            String in = req(opts, "--input");
 
             // Wire minimal domain graph into a local context (no UI)
-            Context ctx = new Context();
-            // Ensure field/method injections are applied to these classes and their dependencies
-            ctx.inject(Indexer.load(TrackingManager.class, BoundariesManager.class));
+            Context ctx = BatchScheduler.newContext(TrackingManager.class, BoundariesManager.class);
 
             BatchProcessor proc = new BatchProcessor(ctx);
+            proc.setQueueDepth(queueDepth);
+            if (maze != null) proc.loadMaze(maze);
             proc.run(in, Path.of(out), fmt, pipeline, trackerSize);
             log.info("Done.");
         } catch (Throwable t) {
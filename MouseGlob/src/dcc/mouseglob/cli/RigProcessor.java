@@ -0,0 +1,224 @@
+package dcc.mouseglob.cli;
+
+import dcc.mouseglob.PropertiesManager;
+import dcc.mouseglob.camera.CameraRig;
+import dcc.mouseglob.camera.CameraStream;
+import dcc.mouseglob.cli.BatchProcessor.OutputFormat;
+import dcc.mouseglob.maze.BoundariesManager;
+import dcc.mouseglob.maze.ZonesManager;
+import dcc.mouseglob.tracking.TrackingManager;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks several cameras at once in one JVM, such as the four arenas of a rig.
+ *
+ * Each camera is a {@link CameraStream} of one {@link CameraRig}, capturing and dispatching on
+ * threads of its own, and tracked by a {@link BatchProcessor} with its own injected context
+ * (tracking, boundaries and zones) and its own output file, {@code <id>.csv} or
+ * {@code <id>.ndjson}. With {@code tracking.parallel.enabled}, the trackers of all cameras
+ * update on one worker pool sized to the cores rather than a pool per camera; image operations
+ * always run on the shared fork/join pool. Times are milliseconds since the rig started, the
+ * same clock for every camera.
+ *
+ * Cameras are device indices, or video files and image directories replayed as fake devices
+ * at their own frame rate. The rig runs for a given duration, until every camera has ended
+ * (fake devices that do not loop) or until the JVM is asked to shut down; outputs are moved
+ * into place when it stops, as {@link BatchProcessor} does.
+ */
+final class RigProcessor {
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(RigProcessor.class);
+
+    private static final long METRICS_PERIOD_S = 5;
+
+    /** One camera of the rig and the maze of its arena. */
+    static final class Camera {
+        final String id;
+        final String spec;
+        final Path maze;
+
+        Camera(String id, String spec, Path maze) {
+            this.id = id;
+            this.spec = spec;
+            this.maze = maze;
+        }
+    }
+
+    /** A camera being tracked, and where its output goes. */
+    private static final class Arena {
+        final Camera camera;
+        final BatchProcessor processor;
+        final Path target;
+        final Path partial;
+        final PrintWriter out;
+
+        Arena(Camera camera, BatchProcessor processor, Path target, PrintWriter out) {
+            this.camera = camera;
+            this.processor = processor;
+            this.target = target;
+            this.partial = partial(target);
+            this.out = out;
+        }
+    }
+
+    private final Path outputDir;
+    private final OutputFormat fmt;
+    private final CameraRig rig;
+    private final List<Arena> arenas = new ArrayList<>();
+    private Path pipeline;
+    private Integer trackerSize;
+    private long durationMs;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private boolean finished;
+
+    RigProcessor(Path outputDir, OutputFormat fmt) {
+        this.outputDir = outputDir;
+        this.fmt = fmt;
+        PropertiesManager pm = PropertiesManager.getInstance();
+        rig = new CameraRig(Math.max(3, pm.getInteger("camera.ring.size", 4)),
+                Boolean.parseBoolean(pm.get("camera.ring.latest", "true")));
+    }
+
+    /** Pipeline and tracker size for every camera; {@code null} keeps the defaults. */
+    void configure(Path pipeline, Integer trackerSize) {
+        this.pipeline = pipeline;
+        this.trackerSize = trackerSize;
+    }
+
+    /** How long to run, in seconds; 0 runs until every camera ends or the JVM shuts down. */
+    void setDuration(long seconds) {
+        this.durationMs = TimeUnit.SECONDS.toMillis(Math.max(0, seconds));
+    }
+
+    /** Threads of the tracker pool shared by all cameras; defaults to the number of cores. */
+    void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Opens the cameras, tracks them until the rig stops, and writes one output per camera.
+     *
+     * @return the number of cameras that failed to start
+     */
+    int run(List<Camera> cameras) throws Exception {
+        AtomicInteger trackerThreads = new AtomicInteger();
+        ExecutorService trackers = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "rig-tracker-" + trackerThreads.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        ScheduledExecutorService metrics = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "rig-metrics");
+            t.setDaemon(true);
+            return t;
+        });
+        Thread hook = new Thread(this::finish, "rig-shutdown");
+        try {
+            final long start = System.currentTimeMillis();
+            for (Camera camera : cameras) open(camera, trackers, start);
+            Runtime.getRuntime().addShutdownHook(hook);
+
+            List<CameraStream> failed = rig.start();
+            for (CameraStream stream : failed) discard(stream.getId());
+            if (failed.size() == cameras.size()) throw new IOException("No camera could be started");
+            log.info("Rig started: {} of {} cameras", cameras.size() - failed.size(), cameras.size());
+            metrics.scheduleAtFixedRate(() -> log.info(rig.getMetricsText()),
+                    METRICS_PERIOD_S, METRICS_PERIOD_S, TimeUnit.SECONDS);
+
+            if (durationMs > 0) {
+                rig.awaitTermination(durationMs, TimeUnit.MILLISECONDS);
+            } else {
+                while (!rig.awaitTermination(1, TimeUnit.SECONDS)) {
+                    // until every camera ends, or the shutdown hook stops them
+                }
+            }
+            return failed.size();
+        } finally {
+            metrics.shutdownNow();
+            finish();
+            trackers.shutdownNow();
+            try {
+                Runtime.getRuntime().removeShutdownHook(hook);
+            } catch (IllegalStateException | IllegalArgumentException e) {
+                // shutting down, or never added
+            }
+        }
+    }
+
+    private void open(Camera camera, ExecutorService trackers, long start) throws IOException {
+        BatchProcessor proc = new BatchProcessor(BatchScheduler.newContext(
+                TrackingManager.class, BoundariesManager.class, ZonesManager.class));
+        proc.configure(pipeline, trackerSize);
+        proc.getTrackingManager().setTrackerExecutor(trackers);
+        if (camera.maze != null) proc.loadMaze(camera.maze);
+
+        Path target = BatchProcessor.outputPath(outputDir.resolve(camera.id), fmt);
+        Files.createDirectories(target.toAbsolutePath().getParent());
+        PrintWriter out = new PrintWriter(Files.newBufferedWriter(partial(target)));
+        if (fmt == OutputFormat.CSV) BatchProcessor.writeCsvHeader(out);
+        Arena arena = new Arena(camera, proc, target, out);
+        synchronized (arenas) {
+            arenas.add(arena);
+        }
+
+        CameraStream stream = rig.open(camera.id, CameraRig.createSource(camera.spec, 640, 480));
+        // Called on the camera's own dispatching thread, so each output has a single writer
+        stream.addNewFrameListener((image, time) ->
+                BatchProcessor.writeLine(out, fmt, proc.trackFrame(image, time - start)));
+    }
+
+    /** Drops the output of a camera that did not start, so it is not mistaken for a finished one. */
+    private void discard(String id) {
+        synchronized (arenas) {
+            for (Arena arena : arenas) {
+                if (!arena.camera.id.equals(id)) continue;
+                arenas.remove(arena);
+                arena.out.close();
+                try {
+                    Files.deleteIfExists(arena.partial);
+                } catch (IOException e) {
+                    log.warn("Could not delete {}: {}", arena.partial, e.toString());
+                }
+                return;
+            }
+        }
+    }
+
+    /** Stops the cameras and moves the outputs into place; runs once. */
+    private void finish() {
+        synchronized (arenas) {
+            if (finished) return;
+            finished = true;
+            rig.stop();
+            for (Arena arena : arenas) {
+                arena.out.close();
+                try {
+                    if (arena.out.checkError()) throw new IOException("Failed writing " + arena.partial);
+                    Files.move(arena.partial, arena.target, StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                    log.info(String.format(Locale.ROOT, "Camera %s (%s): %d frames -> %s", arena.camera.id,
+                            arena.camera.spec, arena.processor.getFrameCount(), arena.target));
+                } catch (IOException e) {
+                    log.error("Camera {}: {}", arena.camera.id, e.toString());
+                }
+            }
+            log.info("Rig stopped: {}", rig.getMetricsText());
+        }
+    }
+
+    private static Path partial(Path target) {
+        return target.resolveSibling(target.getFileName() + ".part");
+    }
+}
@@ -0,0 +1,259 @@
+package dcc.mouseglob.cli;
+
+import dcc.graphics.FrameAdapter;
+import dcc.graphics.PImageAdapter;
+import dcc.graphics.image.GrayscaleImage;
+import dcc.graphics.image.Image;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.Java2DFrameConverter;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Staged variant of the headless frame loop.
+ *
+ * Decoding, pixel conversion, tracking and output each run on their own thread and
+ * hand frames over through bounded queues of depth {@code depth}. A slow stage makes
+ * the stages upstream of it block (backpressure) instead of buffering without limit.
+ * Every stage is a single thread draining a FIFO queue, so frames reach the output
+ * in decode order.
+ *
+ * Buffers are recycled: converted {@link Image}s take their pixels from
+ * {@code IntegerArrayPool} and return them once the tracking stage is done with the frame.
+ * The grabber reuses its pixel buffer on every grab, so BGR24/GRAY8 frames are copied into
+ * an Image by the decode stage itself (see {@link FrameAdapter}); other layouts go through a
+ * fixed ring of {@code Java2DFrameConverter} slots and are converted by the convert stage.
+ *
+ * @param <T> per-frame result handed from the tracking stage to the output stage
+ */
+final class StagedFrameLoop<T> {
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(StagedFrameLoop.class);
+
+    /** Tracking stage callback; runs on a single thread, once per frame, in order. */
+    interface FrameHandler<T> {
+        T process(Image frame, long tMs) throws Exception;
+    }
+
+    /** Decode stage input: the video grabber, or a fake one in tests. */
+    interface FrameSource {
+        /** @return the next frame, or null at end of stream */
+        Frame grab() throws Exception;
+
+        /** @return timestamp of the last grabbed frame, in microseconds */
+        long getTimestamp();
+    }
+
+    private static final class Slot {
+        final Java2DFrameConverter converter = new Java2DFrameConverter();
+        Image frame;
+        BufferedImage image;
+        long tMs;
+    }
+
+    private static final class Converted {
+        final Image image;
+        final long tMs;
+
+        Converted(Image image, long tMs) {
+            this.image = image;
+            this.tMs = tMs;
+        }
+    }
+
+    private static final Slot END_OF_STREAM = new Slot();
+    private static final Converted END_OF_FRAMES = new Converted(null, -1L);
+    private static final Object END_OF_RESULTS = new Object();
+
+    private final int depth;
+    private final FrameHandler<T> handler;
+    private final Consumer<T> output;
+    private boolean grayscale;
+
+    private final BlockingQueue<Slot> freeSlots;
+    private final BlockingQueue<Slot> decoded;
+    private final BlockingQueue<Converted> converted;
+    private final BlockingQueue<Object> results;
+
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final List<Thread> threads = new ArrayList<>();
+    private volatile Thread consumer;
+
+    StagedFrameLoop(int depth, FrameHandler<T> handler, Consumer<T> output) {
+        this.depth = Math.max(1, depth);
+        this.handler = handler;
+        this.output = output;
+        // One extra slot for the frame being converted, so the decoder can run a full queue ahead
+        this.freeSlots = new ArrayBlockingQueue<>(this.depth + 1);
+        for (int i = 0; i < this.depth + 1; i++) freeSlots.add(new Slot());
+        this.decoded = new ArrayBlockingQueue<>(this.depth + 1);
+        this.converted = new ArrayBlockingQueue<>(this.depth + 1);
+        this.results = new ArrayBlockingQueue<>(this.depth + 1);
+    }
+
+    /** Decode frames straight to luminance; the handler then receives GrayscaleImages. */
+    void setGrayscale(boolean grayscale) {
+        this.grayscale = grayscale;
+    }
+
+    /**
+     * Runs all stages until the grabber reaches end of stream. The output stage runs on
+     * the calling thread. The first failure in any stage stops the others and is rethrown.
+     */
+    void run(FFmpegFrameGrabber grabber) throws Exception {
+        run(new FrameSource() {
+            @Override
+            public Frame grab() throws Exception {
+                return grabber.grabImage();
+            }
+
+            @Override
+            public long getTimestamp() {
+                return grabber.getTimestamp();
+            }
+        });
+    }
+
+    void run(FrameSource source) throws Exception {
+        consumer = Thread.currentThread();
+        start("decode", () -> decode(source));
+        start("convert", this::convert);
+        start("track", this::track);
+        try {
+            consume();
+        } catch (Throwable t) {
+            fail(t);
+        }
+        // A failure may interrupt this thread after the output stage is done
+        Thread.interrupted();
+        for (Thread t : threads) t.join();
+        consumer = null;
+
+        Throwable t = failure.get();
+        if (t instanceof Exception) throw (Exception) t;
+        if (t instanceof Error) throw (Error) t;
+        if (t != null) throw new RuntimeException(t);
+    }
+
+    private void decode(FrameSource source) throws Exception {
+        long lastTs = -1L;
+        try {
+            while (true) {
+                Frame f = source.grab();
+                if (f == null) break; // EOF
+                Slot slot = freeSlots.take();
+                slot.frame = grayscale ? FrameAdapter.frameToGrayscale(f, null) : FrameAdapter.frameToImage(f, null);
+                // The converter keeps its own BufferedImage, so the slot owns it until released
+                slot.image = slot.frame == null ? slot.converter.convert(f) : null;
+                if (slot.frame == null && slot.image == null) {
+                    freeSlots.put(slot);
+                    continue;
+                }
+                lastTs = BatchProcessor.nextTimestamp(source.getTimestamp(), lastTs);
+                slot.tMs = lastTs;
+                decoded.put(slot);
+            }
+        } finally {
+            finish(decoded, END_OF_STREAM);
+        }
+    }
+
+    private void convert() throws Exception {
+        try {
+            while (true) {
+                Slot slot = decoded.take();
+                if (slot == END_OF_STREAM) break;
+                Image image = slot.frame != null ? slot.frame : toImage(slot.image);
+                long tMs = slot.tMs;
+                slot.frame = null;
+                freeSlots.put(slot);
+                converted.put(new Converted(image, tMs));
+            }
+        } finally {
+            finish(converted, END_OF_FRAMES);
+        }
+    }
+
+    private Image toImage(BufferedImage bi) {
+        Image image = PImageAdapter.bufferedToImage(bi, null);
+        if (!grayscale) return image;
+        GrayscaleImage gray = image.luminance(null);
+        image.release();
+        return gray;
+    }
+
+    private void track() throws Exception {
+        Image previous = null;
+        try {
+            while (true) {
+                Converted frame = converted.take();
+                if (frame == END_OF_FRAMES) break;
+                T result = handler.process(frame.image, frame.tMs);
+                // The tracking manager holds on to the last frame, so recycle one frame late
+                if (previous != null) previous.release();
+                previous = frame.image;
+                if (result != null) results.put(result);
+            }
+        } finally {
+            finish(results, END_OF_RESULTS);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void consume() throws InterruptedException {
+        long frames = 0;
+        long start = System.nanoTime();
+        while (true) {
+            Object result = results.take();
+            if (result == END_OF_RESULTS) break;
+            output.accept((T) result);
+            frames++;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        log.info("Staged loop wrote {} frames in {} s ({} fps, queue depth {})", frames,
+                String.format("%.1f", seconds), String.format("%.1f", frames / Math.max(seconds, 1e-9)), depth);
+    }
+
+    /**
+     * Signals end of stream downstream, unless the loop is already being torn down: then
+     * the downstream stages are interrupted rather than waited for.
+     */
+    private <E> void finish(BlockingQueue<E> queue, E marker) throws InterruptedException {
+        if (failure.get() == null) queue.put(marker);
+    }
+
+    private interface StageBody {
+        void run() throws Exception;
+    }
+
+    private void start(String name, StageBody body) {
+        Thread t = new Thread(() -> {
+            try {
+                body.run();
+            } catch (InterruptedException e) {
+                // interrupted because another stage failed
+            } catch (Throwable e) {
+                fail(e);
+            }
+        }, "batch-" + name);
+        t.setDaemon(true);
+        threads.add(t);
+        t.start();
+    }
+
+    private void fail(Throwable t) {
+        if (failure.compareAndSet(null, t)) {
+            log.error("Staged frame loop failed: {}", t.toString());
+            for (Thread thread : threads) thread.interrupt();
+            // The output stage waits for results that will not come
+            Thread output = consumer;
+            if (output != null && output != Thread.currentThread()) output.interrupt();
+        }
+    }
+}
@@ -15,6 +15,7 @@ import java.awt.Dimension;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.swing.BorderFactory;
 import javax.swing.Box;
@@ -27,6 +28,7 @@ public class Inspector {
 	private List<OrderedInspector> propertyInspectors;
 	private List<Inspector> parents;
 	private JPanel panel;
+	private final AtomicBoolean changed = new AtomicBoolean();
 
 	protected Inspector(String name) {
 		this.name = name;
@@ -58,20 +60,47 @@ public class Inspector {
 			}
 
 			panel.add(Box.createVerticalGlue());
-			update();
+			changed.set(false);
+			refresh();
+		} else if (changed.getAndSet(false)) {
+			refresh();
 		}
 		return panel;
 	}
 
+	/**
+	 * Marks this inspector and the ones it was merged into as changed. May be
+	 * called from any thread, as often as the inspected object changes: the
+	 * displayed values are only refreshed later on the event dispatch thread,
+	 * by the {@link InspectorRefresher}, and only while they are showing.
+	 */
 	public void update() {
-		for (OrderedInspector o : propertyInspectors)
-			o.inspector.update();
-		panel = getPanel();
-		panel.invalidate();
+		if (changed.compareAndSet(false, true))
+			InspectorRefresher.getInstance().changed(this);
 		for (Inspector parent : parents)
 			parent.update();
 	}
 
+	/**
+	 * Refreshes the displayed values if this inspector has changed and is
+	 * showing; otherwise it stays marked until its panel is shown.
+	 */
+	final void refreshIfShowing() {
+		if (isShowing() && changed.getAndSet(false))
+			refresh();
+	}
+
+	boolean isShowing() {
+		return panel != null && panel.isShowing();
+	}
+
+	private void refresh() {
+		for (OrderedInspector o : propertyInspectors)
+			o.inspector.update();
+		panel.revalidate();
+		panel.repaint();
+	}
+
 	public final void add(PropertyInspector<?> p) {
 		add(p, Integer.MAX_VALUE);
 	}
@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Daniel Coelho de Castro.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Daniel Coelho de Castro - initial API and implementation
+ ******************************************************************************/
+package dcc.mouseglob.inspector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.SwingUtilities;
+
+import dcc.mouseglob.PropertiesManager;
+
+/**
+ * Refreshes changed inspectors on the event dispatch thread at a bounded
+ * rate. {@link Inspector#update()} only marks an inspector as changed, from
+ * whichever thread it is called; all inspectors changed since the last refresh
+ * are then refreshed in a single task, at most
+ * <code>inspector.refresh.rate</code> times per second. Inspectors that are
+ * not showing are skipped and stay marked, so that they are refreshed when
+ * their panel is shown.
+ */
+final class InspectorRefresher {
+
+	private static final String RATE_KEY = "inspector.refresh.rate";
+	private static final int DEFAULT_RATE = 10;
+
+	private static InspectorRefresher instance;
+
+	static synchronized InspectorRefresher getInstance() {
+		if (instance == null)
+			instance = new InspectorRefresher(PropertiesManager.getInstance()
+					.getInteger(RATE_KEY, DEFAULT_RATE));
+		return instance;
+	}
+
+	private final long period;
+	private final Queue<Inspector> changed;
+	private final AtomicBoolean scheduled;
+	private final ScheduledExecutorService timer;
+	private final Runnable refreshTask;
+	private volatile long lastRefresh;
+	private volatile long refreshes;
+
+	/**
+	 * @param rate
+	 *            - maximum number of refreshes per second
+	 */
+	InspectorRefresher(int rate) {
+		period = TimeUnit.SECONDS.toNanos(1) / Math.max(1, rate);
+		changed = new ConcurrentLinkedQueue<Inspector>();
+		scheduled = new AtomicBoolean();
+		timer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "InspectorRefresher");
+			t.setDaemon(true);
+			return t;
+		});
+		refreshTask = new Runnable() {
+			@Override
+			public void run() {
+				refresh();
+			}
+		};
+		lastRefresh = System.nanoTime() - period;
+	}
+
+	/**
+	 * Queues an inspector that has just been marked as changed, and schedules
+	 * a refresh unless one is pending.
+	 */
+	void changed(Inspector inspector) {
+		changed.add(inspector);
+		schedule();
+	}
+
+	private void schedule() {
+		if (scheduled.compareAndSet(false, true)) {
+			long delay = Math.max(0, lastRefresh + period - System.nanoTime());
+			timer.schedule(new Runnable() {
+				@Override
+				public void run() {
+					SwingUtilities.invokeLater(refreshTask);
+				}
+			}, delay, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	private void refresh() {
+		lastRefresh = System.nanoTime();
+		// Only the inspectors queued so far: those changed again while being
+		// refreshed are queued anew and left to the next refresh
+		List<Inspector> inspectors = new ArrayList<Inspector>();
+		Inspector inspector;
+		while ((inspector = changed.poll()) != null)
+			inspectors.add(inspector);
+		for (Inspector i : inspectors)
+			i.refreshIfShowing();
+		refreshes++;
+
+		// Inspectors queued while this refresh was pending did not schedule
+		// another one
+		scheduled.set(false);
+		if (!changed.isEmpty())
+			schedule();
+	}
+
+	/**
+	 * @return whether a refresh is scheduled or running
+	 */
+	boolean isPending() {
+		return scheduled.get();
+	}
+
+	/**
+	 * @return the number of refresh tasks run so far
+	 */
+	long getRefreshCount() {
+		return refreshes;
+	}
+
+}
@@ -17,6 +17,7 @@ import dcc.graphics.Box;
 import dcc.graphics.Color;
 import dcc.graphics.binary.BinaryMask2D;
 import dcc.graphics.image.BinaryImage;
+import dcc.graphics.image.PackedBinaryImage;
 import dcc.graphics.math.async.Operation2D;
 import dcc.mouseglob.inspector.PropertyCollectionInspector;
 import dcc.mouseglob.inspector.PropertyInspector;
@@ -28,6 +29,7 @@ public class BoundaryMask implements BoundaryListener, BinaryMask2D {
 
 	private final List<Boundary> boundaries;
 	private boolean[][] maskArray;
+	private PackedBinaryImage packedMask;
 
 	private int positiveCount, negativeCount;
 	private int width, height;
@@ -123,6 +125,14 @@ public class BoundaryMask implements BoundaryListener, BinaryMask2D {
 				maskArray[i][j] = get(i, j);
 			}
 		}.execute();
+
+		if (packedMask == null)
+			packedMask = new PackedBinaryImage(width, height);
+		else
+			packedMask.setSize(width, height);
+		for (int j = 0; j < height; j++)
+			for (int i = 0; i < width; i++)
+				packedMask.set(i, j, maskArray[i][j]);
 	}
 
 	public void apply(final BinaryImage image, Box.Int bounds) {
@@ -140,6 +150,10 @@ public class BoundaryMask implements BoundaryListener, BinaryMask2D {
 		}.execute();
 	}
 
+	public void apply(PackedBinaryImage image, Box.Int bounds) {
+		image.and(packedMask, bounds.left, bounds.top);
+	}
+
 	public PropertyInspector<?> getInspector() {
 		return new PropertyCollectionInspector<List<Boundary>, Boundary>(
 				"Boundaries") {
@@ -84,6 +84,13 @@ public class Zone extends LabelableObject implements Region, EditableTreeable {
 		trackersInside--;
 	}
 
+	/**
+	 * @return the number of trackers inside this zone
+	 */
+	public int getTrackersInside() {
+		return trackersInside;
+	}
+
 	@Override
 	public TreeNode getNode() {
 		return node;
@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Daniel Coelho de Castro.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ *
+ * Contributors:
+ *     Daniel Coelho de Castro - initial API and implementation
+ ******************************************************************************/
+package dcc.mouseglob.maze;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import dcc.graphics.Box;
+import dcc.graphics.math.Vector;
+import dcc.mouseglob.shape.Shape;
+
+/**
+ * Uniform grid over the zones, answering which zones contain a point without
+ * testing each of them.
+ * <p>
+ * Each cell lists the zones that cover it entirely, which need no test, and
+ * the zones whose outline crosses it, which are tested exactly. A query
+ * therefore costs a cell lookup plus a test for the few outlines through that
+ * cell, whatever the number of zones, and gives the same answer as
+ * {@link Zone#contains(double, double)}.
+ *
+ * @see ZonesManager#getIndex()
+ */
+public final class ZoneIndex {
+
+	/**
+	 * Maximum number of cells along each side of the grid.
+	 */
+	private static final int MAX_CELLS = 128;
+	private static final Zone[] NONE = new Zone[0];
+
+	private final Zone[] zones;
+	private final int[] modificationCounts;
+
+	private final double left, top, cellSize;
+	private final int columns, rows;
+	private final Zone[][] inside, crossing;
+
+	ZoneIndex(List<Zone> zoneList) {
+		zones = zoneList.toArray(new Zone[zoneList.size()]);
+		modificationCounts = new int[zones.length];
+
+		Box bounds = null;
+		for (int i = 0; i < zones.length; i++) {
+			Shape shape = zones[i].getShape();
+			modificationCounts[i] = shape.getModificationCount();
+			Box b = shape.getBounds();
+			if (b != null)
+				bounds = bounds == null ? b : bounds.growToFit(b);
+		}
+
+		if (bounds == null) {
+			left = top = 0;
+			cellSize = 1;
+			columns = rows = 0;
+			inside = crossing = new Zone[0][];
+			return;
+		}
+
+		left = bounds.left;
+		top = bounds.top;
+		cellSize = Math.max(1, Math.max(bounds.width, bounds.height)
+				/ MAX_CELLS);
+		columns = (int) (bounds.width / cellSize) + 1;
+		rows = (int) (bounds.height / cellSize) + 1;
+
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		List<Zone>[] insideLists = new List[columns * rows];
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		List<Zone>[] crossingLists = new List[columns * rows];
+		// Cells are tested slightly enlarged, so that rounding in the lookup
+		// never puts a point into a cell it lies just outside of
+		double margin = cellSize * 1e-6;
+		for (Zone zone : zones) {
+			Shape shape = zone.getShape();
+			Box b = shape.getBounds();
+			if (b == null)
+				continue;
+			int c0 = column(b.left), c1 = column(b.right);
+			int r0 = row(b.top), r1 = row(b.bottom);
+			for (int r = r0; r <= r1; r++) {
+				double y0 = top + r * cellSize, y1 = y0 + cellSize;
+				for (int c = c0; c <= c1; c++) {
+					double x0 = left + c * cellSize, x1 = x0 + cellSize;
+					int cell = r * columns + c;
+					if (shape.crosses(x0 - margin, y0 - margin, x1 + margin, y1
+							+ margin))
+						crossingLists[cell] = add(crossingLists[cell], zone);
+					else if (shape.contains((x0 + x1) / 2, (y0 + y1) / 2))
+						insideLists[cell] = add(insideLists[cell], zone);
+				}
+			}
+		}
+
+		inside = new Zone[columns * rows][];
+		crossing = new Zone[columns * rows][];
+		for (int cell = 0; cell < inside.length; cell++) {
+			inside[cell] = toArray(insideLists[cell]);
+			crossing[cell] = toArray(crossingLists[cell]);
+		}
+	}
+
+	/**
+	 * Finds all zones containing the given point.
+	 *
+	 * @param p
+	 *            - the point
+	 * @param result
+	 *            - list to be cleared and filled with the zones
+	 * @return the list
+	 */
+	public List<Zone> find(Vector p, List<Zone> result) {
+		return find(p.x, p.y, result);
+	}
+
+	/**
+	 * Finds all zones containing the given point.
+	 *
+	 * @param x
+	 *            - horizontal coordinate of the point
+	 * @param y
+	 *            - vertical coordinate of the point
+	 * @param result
+	 *            - list to be cleared and filled with the zones
+	 * @return the list
+	 */
+	public List<Zone> find(double x, double y, List<Zone> result) {
+		result.clear();
+		int c = column(x), r = row(y);
+		if (c < 0 || c >= columns || r < 0 || r >= rows)
+			return result;
+
+		int cell = r * columns + c;
+		for (Zone zone : inside[cell])
+			result.add(zone);
+		for (Zone zone : crossing[cell])
+			if (zone.contains(x, y))
+				result.add(zone);
+		return result;
+	}
+
+	/**
+	 * @return the number of zones in this index
+	 */
+	public int size() {
+		return zones.length;
+	}
+
+	/**
+	 * Determines whether any zone was edited since this index was built.
+	 */
+	boolean isStale() {
+		for (int i = 0; i < zones.length; i++)
+			if (zones[i].getShape().getModificationCount() != modificationCounts[i])
+				return true;
+		return false;
+	}
+
+	private int column(double x) {
+		double c = Math.floor((x - left) / cellSize);
+		return c >= 0 && c < columns ? (int) c : -1;
+	}
+
+	private int row(double y) {
+		double r = Math.floor((y - top) / cellSize);
+		return r >= 0 && r < rows ? (int) r : -1;
+	}
+
+	private static List<Zone> add(List<Zone> list, Zone zone) {
+		if (list == null)
+			list = new ArrayList<Zone>(2);
+		list.add(zone);
+		return list;
+	}
+
+	private static Zone[] toArray(List<Zone> list) {
+		return list == null ? NONE : list.toArray(new Zone[list.size()]);
+	}
+
+}
@@ -32,6 +32,9 @@ public final class ZonesManager extends DefaultTreeable implements
 
 	private ArrayList<ZoneListener> listeners;
 
+	private ZoneIndex index;
+	private boolean indexValid;
+
 	ZonesManager() {
 		super("Zones", "/resource/zones16.png");
 
@@ -48,6 +51,7 @@ public final class ZonesManager extends DefaultTreeable implements
 	public void add(Zone z) {
 		synchronized (zones) {
 			zones.add(z);
+			indexValid = false;
 		}
 
 		if (z.getName() == null)
@@ -75,6 +79,7 @@ public final class ZonesManager extends DefaultTreeable implements
 
 		synchronized (zones) {
 			zones.remove(z);
+			indexValid = false;
 		}
 
 		if (z.getShape() instanceof Polygon)
@@ -86,6 +91,7 @@ public final class ZonesManager extends DefaultTreeable implements
 	public void clear() {
 		synchronized (zones) {
 			zones.clear();
+			indexValid = false;
 		}
 		polygonCount = 0;
 		circleCount = 0;
@@ -113,6 +119,22 @@ public final class ZonesManager extends DefaultTreeable implements
 		return zones;
 	}
 
+	/**
+	 * Gets a spatial index of the zones, rebuilt whenever a zone is added,
+	 * removed or edited.
+	 * 
+	 * @return the index
+	 */
+	public ZoneIndex getIndex() {
+		synchronized (zones) {
+			if (!indexValid || index.isStale()) {
+				index = new ZoneIndex(zones);
+				indexValid = true;
+			}
+			return index;
+		}
+	}
+
 	public boolean isEmpty() {
 		return zones.isEmpty();
 	}
@@ -16,7 +16,9 @@ import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.List;
 
+import dcc.graphics.math.Vector;
 import dcc.mouseglob.MouseGlob;
+import dcc.mouseglob.calibration.Calibration;
 import dcc.mouseglob.labelable.Point;
 import dcc.mouseglob.maze.Region;
 import dcc.mouseglob.shape.Circle;
@@ -35,7 +37,7 @@ class MazeCSVWriter {
 	private List<Region> zones;
 	private List<Region> boundaries;
 	private List<Region> regions;
-	private double scale = 0;
+	private Calibration calibration;
 
 	/**
 	 * Constructor for the <code>MazeCSVWriter</code> class.
@@ -57,8 +59,12 @@ class MazeCSVWriter {
 		this.boundaries = new ArrayList<Region>(boundaries);
 	}
 
-	void setScale(double scale) {
-		this.scale = scale;
+	/**
+	 * Sets the calibration through which vertices are written in centimeters,
+	 * including its lens correction if any.
+	 */
+	void setCalibration(Calibration calibration) {
+		this.calibration = calibration.hasScale() ? calibration : null;
 	}
 
 	/**
@@ -68,8 +74,9 @@ class MazeCSVWriter {
 	void writeHeader(int width, int height) {
 		writer.println(MouseGlob.HEADER);
 		writer.println("Size," + width + "x" + height);
-		if (scale != 0)
-			writer.println("Scale," + FORMAT.format(scale) + ",cm/px");
+		if (calibration != null)
+			writer.println("Scale," + FORMAT.format(calibration.getScale())
+					+ ",cm/px");
 
 		for (Region region : zones)
 			writer.print("Zone," + region.getName() + ",");
@@ -118,9 +125,10 @@ class MazeCSVWriter {
 	}
 
 	private void appendPoint(Point p, StringBuilder sb) {
-		if (scale != 0) {
-			sb.append(FORMAT.format(p.x * scale)).append(',');
-			sb.append(FORMAT.format(p.y * scale)).append(',');
+		if (calibration != null) {
+			Vector cm = calibration.pxToCm(new Vector(p.x, p.y));
+			sb.append(FORMAT.format(cm.x)).append(',');
+			sb.append(FORMAT.format(cm.y)).append(',');
 		} else {
 			sb.append(FORMAT.format(p.x)).append(',');
 			sb.append(FORMAT.format(p.y)).append(',');
@@ -94,7 +94,7 @@ public class MazeIOManager implements XMLEncodable {
 		MazeCSVWriter writer = new MazeCSVWriter(csvFileName);
 		writer.setZones(zonesManager.getZones());
 		writer.setBoundaries(boundariesManager.getBoundaries());
-		writer.setScale(calibrationModel.getScale());
+		writer.setCalibration(calibrationModel);
 		writer.writeHeader(boundariesManager.getWidth(),
 				boundariesManager.getHeight());
 		writer.writeFile();
@@ -10,91 +10,165 @@
  ******************************************************************************/
 package dcc.mouseglob.movie;
 
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
-import processing.core.PImage;
+import dcc.graphics.image.Image;
 import dcc.mouseglob.movie.speed.SpeedBalancer;
+import dcc.util.FrameMetrics;
+import dcc.util.SPSCQueue;
 
+/**
+ * Hands decoded frames over from the decoder thread to the thread that
+ * broadcasts them, through a fixed pool of image buffers. Each buffer is owned
+ * by one side at a time: the decoder {@link #claim()}s a free one, decodes
+ * into it and {@link #publish(Slot, Image, long)}es it, and the broadcasting
+ * thread releases it back to the pool once listeners have seen the frame.
+ * When every buffer is in use the new frame is dropped, so a buffer is never
+ * written while it is being read.
+ */
 class FrameQueue implements Runnable {
 
-	private class Frame {
-		private PImage frame;
+	/**
+	 * A pooled frame buffer.
+	 */
+	static final class Slot {
+		private Image image;
 		private long time;
+		private long published;
 
-		private Frame(PImage frame, long time) {
-			this.frame = frame;
-			this.time = time;
+		/**
+		 * @return the image last decoded into this buffer, to be reused, or
+		 *         <code>null</code>
+		 */
+		Image getImage() {
+			return image;
 		}
 	}
 
-	private static final int QUEUE_CAPACITY = 20;
+	private static final int QUEUE_CAPACITY = 16;
+	private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
 
 	private final MovieManager movieManager;
-	private BlockingQueue<Frame> queue;
+	/** Published frames, from the decoder to the broadcasting thread */
+	private final SPSCQueue<Slot> queue;
+	/** Released buffers, from the broadcasting thread to the decoder */
+	private final SPSCQueue<Slot> free;
+	/** A claimed buffer the decoder gave back without publishing it */
+	private Slot spare;
 	private long prevTime;
-	private Frame[] buffer;
-	private int index = 0;
-	private float currentSpeed;
+	private volatile float currentSpeed;
 	private SpeedBalancer speedBalancer;
-	private final AtomicLong drops = new AtomicLong(0);
+	private final FrameMetrics metrics = new FrameMetrics();
+
+	private volatile Thread consumer;
+	private volatile boolean waiting;
 
 	FrameQueue(MovieManager movieManager) {
 		this.movieManager = movieManager;
-		queue = new LinkedBlockingQueue<Frame>(QUEUE_CAPACITY);
-		buffer = new Frame[QUEUE_CAPACITY];
+		queue = new SPSCQueue<Slot>(QUEUE_CAPACITY);
+		free = new SPSCQueue<Slot>(QUEUE_CAPACITY);
+		for (int i = 0; i < QUEUE_CAPACITY; i++)
+			free.offer(new Slot());
 		speedBalancer = SpeedBalancer.ADAPTIVE;
 	}
 
-	void add(PImage frame, long time) {
-		if (time == prevTime)
+	/**
+	 * Takes a free buffer to decode a frame into; decoder thread only.
+	 * 
+	 * @return the buffer, or <code>null</code> if all are in use, in which case
+	 *         the frame is counted as dropped
+	 */
+	Slot claim() {
+		Slot slot = spare;
+		if (slot != null) {
+			spare = null;
+			return slot;
+		}
+		slot = free.poll();
+		if (slot == null)
+			metrics.dropped();
+		return slot;
+	}
+
+	/**
+	 * Queues a decoded frame; decoder thread only. Frames with the same time
+	 * as the previous one are not queued again.
+	 * 
+	 * @param slot
+	 *            - buffer from {@link #claim()}
+	 * @param image
+	 *            - the frame, decoded into the buffer's image when possible
+	 */
+	void publish(Slot slot, Image image, long time) {
+		if (time == prevTime || image == null) {
+			cancel(slot);
 			return;
-		// System.out.println(movieManager.stopwatch.toc() + "\tFrame added ("
-		// + (queue.size() + 1) + "): " + time + " ms");
-		speedBalancer.update(currentSpeed, queue.size());
-		int w = frame.width;
-		int h = frame.height;
-		if (buffer[index] == null)
-			buffer[index] = new Frame(new PImage(w, h), time);
-		buffer[index].frame.copy(frame, 0, 0, w, h, 0, 0, w, h);
-		buffer[index].time = time;
-		if (!queue.offer(buffer[index])) {
-			Frame removed = queue.poll();
-			if (removed != null) drops.incrementAndGet();
-			queue.offer(buffer[index]);
 		}
-		index = (index + 1) % buffer.length;
+		speedBalancer.update(currentSpeed, queue.size());
+		slot.image = image;
+		slot.time = time;
+		slot.published = System.nanoTime();
+		// Never fails: there are no more buffers than queue entries
+		queue.offer(slot);
+		metrics.published(queue.size());
 		prevTime = time;
+		if (waiting)
+			LockSupport.unpark(consumer);
+	}
+
+	/**
+	 * Gives back a claimed buffer without publishing it; decoder thread only.
+	 */
+	void cancel(Slot slot) {
+		spare = slot;
 	}
 
 	@Override
 	public void run() {
-		while (true) {
-			try {
-				if (speedBalancer.hasSpeedChanged()) {
-					currentSpeed = speedBalancer.getSpeed();
-					// System.out
-					// .println("Setting speed to " + currentSpeed + "x");
-					movieManager.setSpeed(currentSpeed);
-				}
-				Frame frame = queue.poll(100, TimeUnit.MILLISECONDS);
-				if (frame != null) {
-					movieManager.broadcastFrame(frame.frame, frame.time);
-				}
-			} catch (InterruptedException e) {
-				return; // allow shutdown
+		consumer = Thread.currentThread();
+		while (!Thread.currentThread().isInterrupted()) {
+			if (speedBalancer.hasSpeedChanged()) {
+				currentSpeed = speedBalancer.getSpeed();
+				movieManager.setSpeed(currentSpeed);
+			}
+			Slot slot = queue.poll();
+			if (slot == null) {
+				waiting = true;
+				// Check again, or a frame published before the flag was seen waits
+				if (queue.isEmpty())
+					LockSupport.parkNanos(this, IDLE_NANOS);
+				waiting = false;
+				continue;
 			}
+			broadcast(slot);
 		}
 	}
 
+	private void broadcast(Slot slot) {
+		metrics.consumed(System.nanoTime() - slot.published);
+		try {
+			movieManager.broadcastFrame(slot.image, slot.time);
+		} finally {
+			free.offer(slot);
+		}
+	}
+
+	/**
+	 * Releases the frames still queued without broadcasting them; only while
+	 * no thread is running this queue.
+	 */
+	void clear() {
+		Slot slot;
+		while ((slot = queue.poll()) != null)
+			free.offer(slot);
+	}
+
 	@SuppressWarnings("unused")
 	private void flush() {
-		Frame frame;
-		while ((frame = queue.poll()) != null) {
-			this.movieManager.broadcastFrame(frame.frame, frame.time);
-		}
+		Slot slot;
+		while ((slot = queue.poll()) != null)
+			broadcast(slot);
 	}
 
 	class QueueMonitor {
@@ -107,7 +181,11 @@ class FrameQueue implements Runnable {
 		}
 
 		long getDrops() {
-			return drops.get();
+			return metrics.getDropped();
+		}
+
+		FrameMetrics getMetrics() {
+			return metrics;
 		}
 	}
 }
@@ -24,6 +24,7 @@ import org.bytedeco.javacv.Java2DFrameConverter;
 
 import processing.core.PApplet;
 import processing.core.PImage;
+import dcc.graphics.FrameAdapter;
 import dcc.graphics.PImageAdapter;
 import dcc.graphics.image.Image;
 import dcc.inject.Inject;
@@ -66,6 +67,14 @@ public final class MovieManager {
 
 	final Stopwatch stopwatch;
 
+	/**
+	 * Creates a manager with no applet to open movies in, which only queues
+	 * and broadcasts the frames it is given, as in tests.
+	 */
+	MovieManager() {
+		this(null);
+	}
+
 	@Inject
 	MovieManager(PApplet parent) {
 		this.parent = parent;
@@ -114,9 +123,10 @@ public final class MovieManager {
 			double target = 0.0;
 			try { if (movie != null && movie.grabber != null) target = Math.max(0.0, movie.grabber.getFrameRate()); } catch (Throwable ignored) {}
 			long drops = qm.getDrops();
+			double latency = qm.getMetrics().getLatency();
 			double cpu = dcc.util.SystemMetrics.getProcessCpuLoadPercent();
 			String cpuStr = (cpu >= 0) ? String.format("CPU: %.0f%%", cpu) : "CPU: n/a";
-			StatusUI.setMetricsText(String.format("Movie FPS: %.1f/%.1f | Q: %d | drop: %d | %s", lastEffectiveFps, target, qm.getSize(), drops, cpuStr));
+			StatusUI.setMetricsText(String.format("Movie FPS: %.1f/%.1f | Q: %d | drop: %d | lat: %.1f ms | %s", lastEffectiveFps, target, qm.getSize(), drops, latency, cpuStr));
 		}, 1, 1, TimeUnit.SECONDS);
 
 		this.movieName = movieName;
@@ -154,10 +164,6 @@ public final class MovieManager {
 		notifyMovieListeners(new MovieEvent(MovieEventType.LOAD, sizeImage, movieName));
 	}
 
-	void broadcastFrame(PImage frame, long time) {
-		broadcastFrame(PImageAdapter.pImageToImage(frame), time);
-	}
-	
 	void broadcastFrame(Image image, long time) {
 		long dt = stopwatch.toc();
 		if (dt > 0) lastEffectiveFps = 1_000_000_000.0 / dt;
@@ -185,7 +191,14 @@ public final class MovieManager {
 		}
 		if (workerExecService != null) {
 			workerExecService.shutdownNow();
+			try {
+				// The queue must not have two consumers
+				workerExecService.awaitTermination(1, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
 			workerExecService = null;
+			frameQueue.clear();
 		}
 	}
 
@@ -279,7 +292,8 @@ public final class MovieManager {
 	}
 
 	void setSpeed(float speed) {
-		movie.speed(speed);
+		if (movie != null)
+			movie.speed(speed);
 	}
 
 	public String getMovieName() {
@@ -413,21 +427,30 @@ public final class MovieManager {
 							pause();
 							continue;
 						}
-						BufferedImage bi = converter.convert(frame);
-						if (bi == null) continue;
-						if (!firstDimsNotified && bi.getWidth() > 0 && bi.getHeight() > 0) {
+						if (frame.image == null || frame.imageWidth <= 0 || frame.imageHeight <= 0) continue;
+						if (!firstDimsNotified) {
 							firstDimsNotified = true;
 							if (loadingStarted && !loadingFinished) finishLoading();
 						}
 						lastTimestampUs = grabber.getTimestamp();
 						long timeMs = lastTimestampUs / 1000L;
 						if (status == PlaybackStatus.FAST_FORWARDING && frameQueue != null) {
-							PImage pimg = toPImage(bi);
-							frameQueue.add(pimg, timeMs);
+							// Decode straight into a pooled buffer; none free means a drop
+							FrameQueue.Slot slot = frameQueue.claim();
+							if (slot != null) {
+								Image img = null;
+								try {
+									img = toImage(frame, slot.getImage());
+								} finally {
+									frameQueue.publish(slot, img, timeMs);
+								}
+							}
 						} else if (status != PlaybackStatus.JUMPING) {
-							Image img = PImageAdapter.bufferedToImage(bi, scratchImage);
-							scratchImage = img;
-							broadcastFrame(img, timeMs);
+							Image img = toImage(frame, scratchImage);
+							if (img != null) {
+								scratchImage = img;
+								broadcastFrame(img, timeMs);
+							}
 						}
 						// Basic pacing in PLAYING
 						if (status == PlaybackStatus.PLAYING) {
@@ -455,11 +478,10 @@ public final class MovieManager {
 			try {
 				Frame frame = grabber.grabImage();
 				if (frame != null) {
-					BufferedImage bi = converter.convert(frame);
-					if (bi != null) {
+					Image img = toImage(frame, null);
+					if (img != null) {
 						lastTimestampUs = grabber.getTimestamp();
-						PImage pimg = toPImage(bi);
-						broadcastFrame(pimg, lastTimestampUs / 1000L);
+						broadcastFrame(img, lastTimestampUs / 1000L);
 					}
 				}
 			} catch (Exception e) {
@@ -498,22 +520,19 @@ public final class MovieManager {
 			}
 		}
 
+		/**
+		 * Copies the decoder's pixels straight into an image when their layout
+		 * allows it, going through Java2D only for other pixel formats.
+		 */
+		private Image toImage(Frame frame, Image reuse) {
+			Image img = FrameAdapter.frameToImage(frame, reuse);
+			if (img != null) return img;
+			BufferedImage bi = converter.convert(frame);
+			return bi == null ? null : PImageAdapter.bufferedToImage(bi, reuse);
+		}
+
 		float time() { return lastTimestampUs / 1_000_000f; }
 		float duration() { return durationSec; }
 	}
 
-	private static PImage toPImage(BufferedImage src) {
-		BufferedImage bi;
-		if (src.getType() != BufferedImage.TYPE_INT_ARGB) {
-			bi = new BufferedImage(src.getWidth(), src.getHeight(), BufferedImage.TYPE_INT_ARGB);
-			bi.getGraphics().drawImage(src, 0, 0, null);
-		} else {
-			bi = src;
-		}
-		PImage p = new PImage(bi.getWidth(), bi.getHeight(), PImage.ARGB);
-		p.loadPixels();
-		bi.getRGB(0, 0, bi.getWidth(), bi.getHeight(), p.pixels, 0, bi.getWidth());
-		p.updatePixels();
-		return p;
-	}
 }
@@ -19,6 +19,7 @@ import java.awt.event.ComponentEvent;
 import javax.swing.JPanel;
 
 import processing.core.PApplet;
+import dcc.graphics.math.ScalarMap;
 import dcc.mouseglob.FileType;
 import dcc.mouseglob.ui.FileChooser;
 import dcc.ui.Action;
@@ -66,6 +67,14 @@ public class AppletReport extends Report {
 		applet.stop();
 	}
 
+	/**
+	 * @return the map exported by "Export CSV...", or {@code null} if this
+	 *         report has none
+	 */
+	protected ScalarMap getExportMap() {
+		return null;
+	}
+
 	private class ResizeListener extends ComponentAdapter {
 
 		@Override
@@ -105,14 +114,18 @@ public class AppletReport extends Report {
 		}
 		@Override
 		public void actionPerformed() {
-			if (!(AppletReport.this instanceof SeriesReport)) {
-				JOptionPane.showMessageDialog(null, "CSV export is available for series reports only.", "Export CSV", JOptionPane.INFORMATION_MESSAGE);
+			ScalarMap map = getExportMap();
+			if (!(AppletReport.this instanceof SeriesReport) && map == null) {
+				JOptionPane.showMessageDialog(null, "CSV export is available for series and map reports only.", "Export CSV", JOptionPane.INFORMATION_MESSAGE);
 				return;
 			}
 			String fileName = fileChooser.save();
 			if (fileName != null) {
 				try {
-					ReportExportUtil.exportSeriesToCSV((SeriesReport) AppletReport.this, Paths.get(fileName));
+					if (map != null)
+						ReportExportUtil.exportMapToCSV(map, Paths.get(fileName));
+					else
+						ReportExportUtil.exportSeriesToCSV((SeriesReport) AppletReport.this, Paths.get(fileName));
 					JOptionPane.showMessageDialog(null, "Report exported to CSV.", "Export CSV", JOptionPane.INFORMATION_MESSAGE);
 				} catch (Exception ex) {
 					JOptionPane.showMessageDialog(null, "Failed to export CSV: " + ex.getMessage(), "Export CSV", JOptionPane.ERROR_MESSAGE);
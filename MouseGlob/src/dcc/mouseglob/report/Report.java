@@ -21,6 +21,11 @@ import javax.swing.JPanel;
 
 public abstract class Report {
 
+	/**
+	 * Maximum rate, in Hz, at which reports follow the series they show.
+	 */
+	protected static final double REFRESH_RATE = 10;
+
 	private static JFrame parent;
 
 	public static void setParent(JFrame parent) {
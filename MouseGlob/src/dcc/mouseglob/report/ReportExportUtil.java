@@ -1,5 +1,6 @@
 package dcc.mouseglob.report;
 
+import dcc.graphics.math.ScalarMap;
 import dcc.graphics.plot.oned.SeriesPlot;
 import dcc.graphics.series.Series;
 import dcc.graphics.math.Vector;
@@ -54,4 +55,23 @@ public final class ReportExportUtil {
         }
     }
 
+    /**
+     * Writes the cells of a map as (x, y, value) records, skipping cells that are zero.
+     */
+    public static void exportMapToCSV(ScalarMap map, Path file) throws IOException {
+        if (!FileType.REPORT_CSV.validateExtension(file.toString())) {
+            file = file.resolveSibling(FileType.REPORT_CSV.appendExtension(file.toString()));
+        }
+        try (Writer w = new OutputStreamWriter(Files.newOutputStream(file));
+             CSVPrinter csv = new CSVPrinter(w, CSVFormat.DEFAULT)) {
+            csv.printRecord("x", "y", "value");
+            synchronized (map) {
+                double[][] values = map.getValues();
+                for (int y = 0; y < map.getHeight(); y++)
+                    for (int x = 0; x < map.getWidth(); x++)
+                        if (values[x][y] != 0) csv.printRecord(x, y, values[x][y]);
+            }
+        }
+    }
+
 }
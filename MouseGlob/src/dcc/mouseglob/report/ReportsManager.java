@@ -35,20 +35,29 @@ public class ReportsManager {
 
 	@Inject
 	public ReportsManager(AnalysesManager analysesManager) {
-		ClassCache classCache = ClassCache.getInstance();
-		availableReports = new HashSet<ReportDescriptor>();
-		for (Class<? extends Report> reportClass : classCache
-				.subclassesWithAnnotation(Report.class, ReportInfo.class))
-			availableReports.add(new ReportDescriptor(reportClass));
-		availableReports = Collections.unmodifiableSet(availableReports);
-
 		this.analysesManager = analysesManager;
-		updateEnabledReports();
-
 		selectedReports = new HashSet<ReportDescriptor>();
 	}
 
+	/**
+	 * Looks for the reports when first needed, so that their classes are only
+	 * loaded if reports are shown.
+	 */
+	private synchronized Set<ReportDescriptor> getAvailableReports() {
+		if (availableReports == null) {
+			ClassCache classCache = ClassCache.getInstance();
+			Set<ReportDescriptor> reports = new HashSet<ReportDescriptor>();
+			for (Class<? extends Report> reportClass : classCache
+					.subclassesWithAnnotation(Report.class, ReportInfo.class))
+				reports.add(new ReportDescriptor(reportClass));
+			availableReports = Collections.unmodifiableSet(reports);
+		}
+		return availableReports;
+	}
+
 	Set<ReportDescriptor> getEnabledReports() {
+		if (enabledReports == null)
+			updateEnabledReports();
 		return enabledReports;
 	}
 
@@ -80,8 +89,8 @@ public class ReportsManager {
 		List<Class<? extends Analysis>> analyses = analysesManager
 				.getAnalyses();
 		Context context = Context.getGlobal();
-		enabledReports = new HashSet<ReportDescriptor>();
-		for (ReportDescriptor descriptor : availableReports) {
+		Set<ReportDescriptor> enabledReports = new HashSet<ReportDescriptor>();
+		for (ReportDescriptor descriptor : getAvailableReports()) {
 			Set<Class<?>> dependencies = InjectionUtils
 					.getAllDependencies(descriptor.getReportClass());
 			boolean dependenciesAvailable = true;
@@ -103,11 +112,12 @@ public class ReportsManager {
 				enabledReports.add(descriptor);
 			}
 		}
-		enabledReports = Collections.unmodifiableSet(enabledReports);
+		this.enabledReports = Collections.unmodifiableSet(enabledReports);
 	}
 
 	public List<ReportDescriptor> getDescriptors() {
-		List<ReportDescriptor> descriptors = new ArrayList<>(enabledReports);
+		List<ReportDescriptor> descriptors = new ArrayList<>(
+				getEnabledReports());
 		Collections.sort(descriptors);
 		return descriptors;
 	}
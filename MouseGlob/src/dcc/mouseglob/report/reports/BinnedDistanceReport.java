@@ -55,7 +55,7 @@ public class BinnedDistanceReport extends PlotReport<BarPlot> implements
 				distance.getAxis()));
 		this.time = time;
 		this.distance = distance;
-		time.addSeriesListener(this);
+		time.addSeriesListener(this, REFRESH_RATE);
 
 		binFrom = new Series1D();
 		binTo = new Series1D();
@@ -12,6 +12,8 @@ package dcc.mouseglob.report.reports;
 
 import java.awt.BorderLayout;
 import java.awt.Dimension;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
@@ -19,7 +21,11 @@ import javax.swing.JDialog;
 import javax.swing.JLabel;
 import javax.swing.JSlider;
 
-import dcc.graphics.math.HeatMap;
+import dcc.graphics.Box;
+import dcc.graphics.binary.MaskRuns;
+import dcc.graphics.math.OccupancyMap;
+import dcc.graphics.math.ScalarMap;
+import dcc.graphics.math.ScaleSpace;
 import dcc.graphics.math.Vector;
 import dcc.graphics.plot.ColorBar;
 import dcc.graphics.plot.ColorMap;
@@ -28,7 +34,6 @@ import dcc.graphics.plot.oned.Axis;
 import dcc.graphics.plot.oned.Log1pAxis;
 import dcc.graphics.plot.twod.ScalarPlot2D;
 import dcc.graphics.series.Series;
-import dcc.graphics.series.Series2D;
 import dcc.graphics.series.SeriesListener;
 import dcc.inject.Inject;
 import dcc.mouseglob.analysis.Dataset.Time;
@@ -38,7 +43,9 @@ import dcc.mouseglob.applet.DefaultApplet;
 import dcc.mouseglob.applet.MouseEvent;
 import dcc.mouseglob.applet.MouseListener;
 import dcc.mouseglob.calibration.Calibration;
+import dcc.mouseglob.calibration.LensModel;
 import dcc.mouseglob.maze.BoundariesManager;
+import dcc.mouseglob.maze.Zone;
 import dcc.mouseglob.maze.ZonesManager;
 import dcc.mouseglob.report.AppletReport;
 import dcc.mouseglob.report.DisplayAction;
@@ -67,12 +74,20 @@ public class HeatMapReport extends AppletReport implements MouseListener,
 	private final Time time;
 	private final PositionAnalysis position;
 	private final Calibration calibration;
+	private final ZonesManager zonesManager;
+	private final Map<Zone, ZoneRuns> zoneRuns = new WeakHashMap<Zone, ZoneRuns>();
+
+	private final OccupancyMap occupancy;
+	private ScaleSpace levels;
+	private double scale;
+	private LensModel lens;
+	/** Number of trajectory points already in the occupancy map. */
+	private int accumulated = 1;
+	private ScalarMap displayed;
 
-	private final HeatMap[] heatMaps;
 	private final ColorBar colorBar;
 	private final ScalarPlot2D plot;
 	private final DefaultApplet applet;
-	private final boolean[] dirty;
 
 	private final Axis presenceAxis = Axis.autoscalingMax(0, 1)
 			.setLabel("Presence").setFormat("%.3g");
@@ -118,19 +133,18 @@ public class HeatMapReport extends AppletReport implements MouseListener,
 		this.position = position;
 		this.time = time;
 		this.calibration = calibration;
+		this.zonesManager = zonesManager;
 
-		position.addSeriesListener(this);
+		occupancy = new OccupancyMap((int) position.getWidth(),
+				(int) position.getHeight());
+		accumulate();
+		position.addSeriesListener(this, REFRESH_RATE);
 
-		heatMaps = new HeatMap[MAX_LEVEL + 1];
 		colorBar = plot.getColorBar();
 		applet.addPaintable(plot);
 		applet.addPaintable(colorBar.getRenderer(width, 0, 10, height));
 		applet.noLoop();
 
-		dirty = new boolean[MAX_LEVEL + 1];
-		for (int i = 0; i < dirty.length; i++)
-			dirty[i] = true;
-
 		DisplayAction displayBoundariesAction = new DisplayAction(
 				"Display Boundaries", plot, boundariesManager.getRenderer());
 		DisplayAction displayZonesAction = new DisplayAction("Display Zones",
@@ -147,38 +161,63 @@ public class HeatMapReport extends AppletReport implements MouseListener,
 	}
 
 	private void update(int level, boolean log) {
-		if (dirty[level]) {
-			if (heatMaps[level] != null)
-				heatMaps[level].release();
-			heatMaps[level] = calculate(SIGMAS[level] / calibration.getScale());
-			dirty[level] = false;
-		}
+		accumulate();
+		displayed = levels.getLevel(level);
 		plot.setAxis(log ? logPresenceAxis : presenceAxis);
 		colorBar.setAxis(log ? logPresenceAxis : presenceAxis);
-		plot.setValues(heatMaps[level].getValues());
+		plot.setValues(displayed.getValues());
 		applet.redraw();
 	}
 
-	private HeatMap calculate(double sigma) {
-		if (position.isEmpty())
-			return null;
-		HeatMap heatMap = new HeatMap((int) position.getWidth(),
-				(int) position.getHeight(), sigma);
-		int size = Math.min(position.size(), time.size());
-		Series2D pxPosition = position.getPxTrajectory();
-		double scale = calibration.getScale();
-		for (int i = 1; i < size; i++) {
-			Vector p1 = pxPosition.get(i - 1);
-			Vector p2 = pxPosition.get(i);
-			double dt = time.diff(i) * 1000;
-			double n = p1.distance(p2) + 1;
-			for (int j = 0; j < n - 1; j++) {
-				double k = j / n;
-				Vector p = p1.lerp(p2, k);
-				heatMap.increment((int) p.x, (int) p.y, dt / (n * scale));
+	/**
+	 * Adds the trajectory points recorded since the last call to the
+	 * occupancy map, in image pixels so that it lines up with the boundaries
+	 * and zones. Everything is accumulated again only if the calibration has
+	 * changed.
+	 */
+	private void accumulate() {
+		synchronized (occupancy) {
+			double scale = calibration.getScale();
+			LensModel lens = calibration.getLens();
+			if (levels == null || scale != this.scale || lens != this.lens) {
+				if (levels != null)
+					levels.release();
+				double[] sigmas = new double[SIGMAS.length];
+				for (int level = 0; level < sigmas.length; level++)
+					sigmas[level] = SIGMAS[level] / scale;
+				levels = new ScaleSpace(occupancy, sigmas);
+				occupancy.reset();
+				accumulated = 1;
+				this.scale = scale;
+				this.lens = lens;
+			}
+
+			int size = Math.min(position.getPxTrajectory().size(), time.size());
+			if (size <= accumulated)
+				return;
+			Vector p1 = position.getPx(accumulated - 1);
+			for (int i = accumulated; i < size; i++) {
+				Vector p2 = position.getPx(i);
+				double dt = time.diff(i) * 1000;
+				occupancy.addSegment(p1, p2, dt / scale);
+				p1 = p2;
 			}
+			accumulated = size;
+			levels.invalidate();
 		}
-		return heatMap;
+	}
+
+	/**
+	 * @return the time spent at each pixel, without any blur, up to the last
+	 *         refresh of this report
+	 */
+	public ScalarMap getOccupancy() {
+		return occupancy;
+	}
+
+	@Override
+	protected ScalarMap getExportMap() {
+		return getOccupancy();
 	}
 
 	private SliderAction resolutionAction = new SliderAction(
@@ -195,8 +234,6 @@ public class HeatMapReport extends AppletReport implements MouseListener,
 	private ToggleAction logAction = new ToggleAction("Log-scale") {
 		@Override
 		public void itemStateChanged(boolean state) {
-			for (int i = 0; i < dirty.length; i++)
-				dirty[i] = true;
 			update();
 		}
 	};
@@ -240,10 +277,11 @@ public class HeatMapReport extends AppletReport implements MouseListener,
 	public boolean onMouseEvent(MouseEvent event) {
 		Probe probe = plot.probe(event.getMouseX(), event.getMouseY());
 		if (probe != null) {
-			double scale = calibration.getScale();
-			double x = probe.getXValue() * scale;
-			double y = probe.getYValue() * scale;
-			statusLabel.setText(String.format("%.2f, %.2f", x, y));
+			Vector cm = calibration.pxToCm(new Vector(probe.getXValue(),
+					probe.getYValue()));
+			String zone = describeZone(probe.getXValue(), probe.getYValue());
+			statusLabel.setText(String.format("%.2f, %.2f", cm.x, cm.y)
+					+ (zone != null ? " - " + zone : ""));
 			if (!isMouseInside)
 				applet.setCursor(Cursor.CROSS);
 			isMouseInside = true;
@@ -256,15 +294,65 @@ public class HeatMapReport extends AppletReport implements MouseListener,
 		return false;
 	}
 
+	/**
+	 * @return the name of the zone under the given pixel and its share of the
+	 *         total presence, or {@code null} if there is none
+	 */
+	private String describeZone(double x, double y) {
+		ScalarMap heatMap = displayed;
+		if (heatMap == null)
+			return null;
+		Zone zone = null;
+		synchronized (zonesManager.getZones()) {
+			for (Zone z : zonesManager.getZones())
+				if (z.contains(x, y)) {
+					zone = z;
+					break;
+				}
+		}
+		if (zone == null)
+			return null;
+
+		int width = heatMap.getWidth(), height = heatMap.getHeight();
+		ZoneRuns runs = zoneRuns.get(zone);
+		String coordinates = zone.getShape().getCoordinates();
+		if (runs == null || runs.width != width || runs.height != height
+				|| !runs.coordinates.equals(coordinates)) {
+			runs = new ZoneRuns(zone, coordinates, width, height);
+			zoneRuns.put(zone, runs);
+		}
+
+		double total = heatMap.getSum(Box.fromSize(width, height));
+		double share = total > 0 ? heatMap.getSum(runs.runs) / total : 0;
+		return String.format("%s: %.1f%%", zone.getName(), 100 * share);
+	}
+
+	/**
+	 * Pixels of a zone, kept until its shape or the map size changes.
+	 */
+	private static class ZoneRuns {
+		private final String coordinates;
+		private final int width, height;
+		private final MaskRuns runs;
+
+		private ZoneRuns(Zone zone, String coordinates, int width, int height) {
+			this.coordinates = coordinates;
+			this.width = width;
+			this.height = height;
+			runs = new MaskRuns(zone, Box.fromSize(width, height).toInt());
+		}
+	}
+
 	@Override
 	public void onSeriesChanged(Series series) {
-		for (int i = 0; i < dirty.length; i++)
-			dirty[i] = true;
+		accumulate();
 	}
 
 	@Override
 	public void onClose() {
 		position.removeSeriesListener(this);
+		levels.release();
+		occupancy.release();
 	}
 
 }
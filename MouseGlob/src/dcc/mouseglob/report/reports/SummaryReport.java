@@ -30,7 +30,7 @@ public class SummaryReport extends TextReport implements SeriesListener {
 	public SummaryReport(DistanceAnalysis distance, Time time) {
 		this.distance = distance;
 		this.time = time;
-		time.addSeriesListener(this);
+		time.addSeriesListener(this, REFRESH_RATE);
 		update();
 	}
 
@@ -11,6 +11,7 @@
 package dcc.mouseglob.shape;
 
 import processing.core.PGraphics;
+import dcc.graphics.Box;
 import dcc.graphics.math.Vector;
 import dcc.mouseglob.inspector.Inspectable;
 import dcc.mouseglob.inspector.Inspector;
@@ -89,6 +90,7 @@ public class Circle extends Shape {
 		center.x = (anchor.x + x) / 2;
 		center.y = (anchor.y + y) / 2;
 		radius = anchor.distance(x, y) / 2;
+		modified();
 	}
 
 	/**
@@ -108,6 +110,7 @@ public class Circle extends Shape {
 	 */
 	void setRadius(Point p) {
 		radius = center.distance(p);
+		modified();
 	}
 
 	/**
@@ -161,6 +164,24 @@ public class Circle extends Shape {
 		return center.distance(x, y) <= radius;
 	}
 
+	@Override
+	public Box getBounds() {
+		return exists() ? Box.fromRadius(center.x, center.y, radius) : null;
+	}
+
+	@Override
+	public boolean crosses(double left, double top, double right,
+			double bottom) {
+		// The circle touches the rectangle unless it is nearer than its
+		// closest point or farther than its farthest corner
+		double nx = Math.min(Math.max(center.x, left), right);
+		double ny = Math.min(Math.max(center.y, top), bottom);
+		double fx = center.x - left > right - center.x ? left : right;
+		double fy = center.y - top > bottom - center.y ? top : bottom;
+		return center.distance(nx, ny) <= radius
+				&& radius <= center.distance(fx, fy);
+	}
+
 	@Override
 	public String getCoordinates() {
 		return "circle\t" + center.x + "\t" + center.y + "\t" + radius;
@@ -67,6 +67,7 @@ public class CircleDrawer extends ShapeDrawer<Circle> {
 		if (isMovingPoint()) {
 			pointBeingMoved.x = x;
 			pointBeingMoved.y = y;
+			shapeBeingEdited.modified();
 
 			String name = x + ", " + y;
 			if (!pointBeingMoved.equals(shapeBeingEdited.getCenter())) {
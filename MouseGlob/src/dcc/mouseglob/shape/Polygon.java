@@ -15,6 +15,7 @@ import java.util.List;
 
 import processing.core.PConstants;
 import processing.core.PGraphics;
+import dcc.graphics.Box;
 import dcc.graphics.math.Vector;
 import dcc.mouseglob.inspector.Inspector;
 import dcc.mouseglob.inspector.PropertyCollectionInspector;
@@ -54,6 +55,7 @@ public class Polygon extends Shape {
 	public void addVertex(double x, double y) {
 		vertices.add(new Point(x, y));
 		vertexCount++;
+		modified();
 	}
 
 	/**
@@ -113,6 +115,65 @@ public class Polygon extends Shape {
 		return oddNodes;
 	}
 
+	@Override
+	public Box getBounds() {
+		if (!exists())
+			return null;
+
+		double left = Double.MAX_VALUE, right = -Double.MAX_VALUE;
+		double top = Double.MAX_VALUE, bottom = -Double.MAX_VALUE;
+		for (Point vertex : vertices) {
+			left = Math.min(left, vertex.x);
+			right = Math.max(right, vertex.x);
+			top = Math.min(top, vertex.y);
+			bottom = Math.max(bottom, vertex.y);
+		}
+		return Box.fromCorners(left, top, right, bottom);
+	}
+
+	@Override
+	public boolean crosses(double left, double top, double right,
+			double bottom) {
+		int j = vertexCount - 1;
+		for (int i = 0; i < vertexCount; i++) {
+			Point v1 = vertices.get(i);
+			Point v2 = vertices.get(j);
+			if (edgeTouches(v1.x, v1.y, v2.x, v2.y, left, top, right, bottom))
+				return true;
+			j = i;
+		}
+		return false;
+	}
+
+	/**
+	 * Liang-Barsky clipping of the segment against the closed rectangle.
+	 */
+	private static boolean edgeTouches(double x1, double y1, double x2,
+			double y2, double left, double top, double right, double bottom) {
+		double dx = x2 - x1, dy = y2 - y1;
+		double[] p = { -dx, dx, -dy, dy };
+		double[] q = { x1 - left, right - x1, y1 - top, bottom - y1 };
+		double t0 = 0, t1 = 1;
+		for (int k = 0; k < 4; k++) {
+			if (p[k] == 0) {
+				if (q[k] < 0)
+					return false;
+			} else {
+				double t = q[k] / p[k];
+				if (p[k] < 0) {
+					if (t > t1)
+						return false;
+					t0 = Math.max(t0, t);
+				} else {
+					if (t < t0)
+						return false;
+					t1 = Math.min(t1, t);
+				}
+			}
+		}
+		return true;
+	}
+
 	/**
 	 * Gets the vertex with the given index.
 	 * 
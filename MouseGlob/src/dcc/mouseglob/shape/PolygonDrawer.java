@@ -71,6 +71,7 @@ public class PolygonDrawer extends ShapeDrawer<Polygon> {
 			pointBeingMoved.x = x;
 			pointBeingMoved.y = y;
 			pointBeingMoved.setName(x + ", " + y);
+			shapeBeingEdited.modified();
 			shapeBeingEdited.updateInspector();
 
 			return true;
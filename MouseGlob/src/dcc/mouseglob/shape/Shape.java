@@ -10,6 +10,7 @@
  ******************************************************************************/
 package dcc.mouseglob.shape;
 
+import dcc.graphics.Box;
 import dcc.graphics.Paintable;
 import dcc.graphics.binary.BinaryMask2D;
 import dcc.graphics.math.Vector;
@@ -26,6 +27,7 @@ public abstract class Shape implements Paintable, InspectableObject,
 		BinaryMask2D {
 
 	private Inspector inspector;
+	private int modificationCount;
 
 	/**
 	 * Determines whether this is a valid shape or not.
@@ -63,6 +65,38 @@ public abstract class Shape implements Paintable, InspectableObject,
 		return contains(i, j);
 	}
 
+	/**
+	 * Gets the smallest axis-aligned box containing this <code>Shape</code>.
+	 * 
+	 * @return the box, or <code>null</code> if this is not a valid shape
+	 */
+	public abstract Box getBounds();
+
+	/**
+	 * Determines whether the outline of this <code>Shape</code> touches the
+	 * given closed rectangle. If it doesn't, the rectangle lies either
+	 * entirely inside or entirely outside the <code>Shape</code>.
+	 * 
+	 * @return true if the outline touches the rectangle, false otherwise
+	 */
+	public abstract boolean crosses(double left, double top, double right,
+			double bottom);
+
+	/**
+	 * Gets a counter which changes every time this <code>Shape</code> is
+	 * edited, so that anything derived from its geometry can tell when to be
+	 * recomputed.
+	 * 
+	 * @return the modification count
+	 */
+	public final int getModificationCount() {
+		return modificationCount;
+	}
+
+	final void modified() {
+		modificationCount++;
+	}
+
 	/**
 	 * Gets a formatted string corresponding to the shape's information. This
 	 * function should be used to save the shapes to a file.
@@ -0,0 +1,174 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Daniel Coelho de Castro.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Daniel Coelho de Castro - initial API and implementation
+ ******************************************************************************/
+package dcc.mouseglob.tracking;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import dcc.util.SPSCQueue;
+
+/**
+ * Runs the trackers' analyses on a dedicated thread, fed by the tracking
+ * thread with the {@link TrackerFrame}s it produces. Frames are analysed in
+ * the order they were tracked. The queue is bounded, so analysis lags behind
+ * tracking by at most its capacity: when it is full, the tracking thread waits
+ * rather than drop a frame, and the wait is counted as a stall.
+ */
+final class AnalysisStage implements Runnable {
+
+	private static final org.slf4j.Logger log = org.slf4j.LoggerFactory
+			.getLogger(AnalysisStage.class);
+	private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+	private static final long FULL_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+	private final SPSCQueue<Job> queue;
+	private final Thread thread;
+	private volatile boolean running = true;
+	private volatile boolean waiting;
+
+	/** Written by the tracking thread only */
+	private long submitted;
+	private volatile long stalls;
+	/** Written by the analysis thread only */
+	private volatile long analysed;
+	private volatile long lastLag;
+	private volatile long maxLag;
+
+	private static final class Job {
+		final Tracker tracker;
+		final TrackerFrame frame;
+
+		Job(Tracker tracker, TrackerFrame frame) {
+			this.tracker = tracker;
+			this.frame = frame;
+		}
+	}
+
+	/**
+	 * @param capacity
+	 *            - maximum number of frames waiting for analysis
+	 */
+	AnalysisStage(int capacity) {
+		queue = new SPSCQueue<Job>(capacity);
+		thread = new Thread(this, "Analysis");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Queues a frame for analysis; must only be called from the tracking
+	 * thread.
+	 */
+	void submit(Tracker tracker, TrackerFrame frame) {
+		Job job = new Job(tracker, frame);
+		if (!queue.offer(job)) {
+			stalls++;
+			do {
+				wake();
+				LockSupport.parkNanos(FULL_NANOS);
+			} while (!queue.offer(job) && thread.isAlive());
+		}
+		submitted++;
+		wake();
+	}
+
+	private void wake() {
+		if (waiting)
+			LockSupport.unpark(thread);
+	}
+
+	/**
+	 * Waits until every submitted frame has been analysed; must only be
+	 * called from the tracking thread.
+	 */
+	void drain() {
+		while (analysed < submitted && thread.isAlive()) {
+			wake();
+			LockSupport.parkNanos(FULL_NANOS);
+		}
+	}
+
+	/**
+	 * Analyses the remaining frames and stops the analysis thread.
+	 */
+	void stop() {
+		drain();
+		running = false;
+		LockSupport.unpark(thread);
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public void run() {
+		while (true) {
+			Job job = queue.poll();
+			if (job == null) {
+				if (!running)
+					return;
+				waiting = true;
+				// Check again, or an offer made before the flag was seen is missed
+				if (queue.isEmpty() && running)
+					LockSupport.parkNanos(this, IDLE_NANOS);
+				waiting = false;
+				continue;
+			}
+			try {
+				job.tracker.analyse(job.frame);
+			} catch (RuntimeException e) {
+				log.error("Analysis of tracker {} failed at {} ms",
+						job.tracker.getName(), job.frame.getTime(), e);
+			}
+			long lag = System.nanoTime() - job.frame.getCreated();
+			lastLag = lag;
+			if (lag > maxLag)
+				maxLag = lag;
+			analysed++;
+		}
+	}
+
+	/**
+	 * @return the number of frames waiting for analysis
+	 */
+	int getPending() {
+		return queue.size();
+	}
+
+	int getCapacity() {
+		return queue.capacity();
+	}
+
+	/**
+	 * @return how long the last analysed frame waited since it was tracked,
+	 *         analysis included, in milliseconds
+	 */
+	double getLastLag() {
+		return lastLag / 1e6;
+	}
+
+	/**
+	 * @return the longest lag so far, in milliseconds
+	 */
+	double getMaxLag() {
+		return maxLag / 1e6;
+	}
+
+	/**
+	 * @return how many times tracking had to wait for a full queue
+	 */
+	long getStalls() {
+		return stalls;
+	}
+
+}
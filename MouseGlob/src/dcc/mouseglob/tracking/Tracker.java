@@ -14,6 +14,7 @@ import processing.core.PGraphics;
 import dcc.graphics.Box;
 import dcc.graphics.Color;
 import dcc.graphics.image.BinaryImage;
+import dcc.graphics.image.PackedBinaryImage;
 import dcc.graphics.image.StructuringElementFactory;
 import dcc.graphics.math.ScalarMap;
 import dcc.graphics.math.Vector;
@@ -33,6 +34,7 @@ import dcc.mouseglob.inspector.PropertyInspector;
 import dcc.mouseglob.labelable.LabelableObject;
 import dcc.mouseglob.labelable.Style;
 import dcc.mouseglob.maze.BoundaryMask;
+import dcc.util.SPSCQueue;
 import dcc.tree.TreeNode;
 import dcc.tree.Treeable;
 
@@ -44,6 +46,7 @@ import dcc.tree.Treeable;
 public class Tracker extends LabelableObject implements Treeable,
 		InspectableObject {
 	private static final int[][] DISK = StructuringElementFactory.disk(2);
+	private static final int FREE_MAPS = 256;
 
 	@Inspectable(value = "Tracker X", format = "%.1f px", order = 1)
 	private double x;
@@ -54,12 +57,20 @@ public class Tracker extends LabelableObject implements Treeable,
 	private int size;
 	private boolean hasData;
 
-	private BinaryImage buffer;
+	private PackedBinaryImage crop;
+	private PackedBinaryImage buffer;
 	private ScalarMap cleanMap;
 	private ScalarMap blurredMap;
 
 	private Blur blur;
 
+	private boolean asyncAnalysis;
+	private volatile TrackerFrame frame;
+	/** Maps of analysed frames, returned by the analysis thread */
+	private SPSCQueue<ScalarMap> freeMaps;
+	/** Held while the current frame changes or its map is copied */
+	private final Object frameLock = new Object();
+
 	private Dataset dataset;
 	private MomentsAnalysis moments;
 	private PositionAnalysis position;
@@ -101,6 +112,18 @@ public class Tracker extends LabelableObject implements Treeable,
 		mouseModel = dataset.require(MouseModel.class);
 	}
 
+	/**
+	 * Sets whether this tracker's analyses run on another thread, after
+	 * {@link #track(BinaryImage, long)} has returned. The tracker then follows
+	 * the centroid of its map itself, which is where the position analysis
+	 * would have put it, and each frame gets a copy of the map.
+	 */
+	void setAsyncAnalysis(boolean async) {
+		asyncAnalysis = async;
+		if (async && freeMaps == null)
+			freeMaps = new SPSCQueue<ScalarMap>(FREE_MAPS);
+	}
+
 	/**
 	 * Calculates the new position of this tracker, based on the given image.
 	 * 
@@ -108,40 +131,142 @@ public class Tracker extends LabelableObject implements Treeable,
 	 *            - image to track
 	 */
 	void update(BinaryImage image, long time) {
+		analyse(track(image, time));
+	}
+
+	/**
+	 * Crops and cleans the glob map of this tracker's window. Unless analysis
+	 * is asynchronous, the tracker only moves once the frame is analysed.
+	 * 
+	 * @param image
+	 *            - image to track
+	 * @return the frame to analyse
+	 */
+	TrackerFrame track(BinaryImage image, long time) {
 		Box imageBox = image.getBox();
 		Box.Int trackerBox = getBox().clamp(imageBox).toInt();
-		image = image.get(trackerBox);
+		crop = PackedBinaryImage.pack(image, trackerBox, crop);
 
-		boundaryMask.apply(image, trackerBox);
-		buffer = image.open(DISK, buffer);
+		boundaryMask.apply(crop, trackerBox);
+		buffer = crop.open(DISK, buffer);
 		cleanMap.set(buffer);
 		blurredMap = blur.calculate(cleanMap, true);
 
-		position.setBounds(imageBox.width, imageBox.height);
-		position.setCornerPosition(trackerBox.left, trackerBox.top);
-		dataset.update(time);
+		ScalarMap map = blurredMap;
+		if (asyncAnalysis) {
+			map = freeMaps.poll();
+			if (map == null)
+				map = new ScalarMap(blurredMap.getWidth(),
+						blurredMap.getHeight());
+			map.copy(blurredMap);
+		}
+		TrackerFrame frame = new TrackerFrame(time, map, asyncAnalysis,
+				trackerBox.left, trackerBox.top, imageBox.width,
+				imageBox.height, center);
+
+		if (asyncAnalysis)
+			follow(frame);
+		return frame;
+	}
+
+	/**
+	 * Runs this tracker's analyses on a frame, in tracking order.
+	 */
+	void analyse(TrackerFrame frame) {
+		synchronized (frameLock) {
+			TrackerFrame previous = this.frame;
+			this.frame = frame;
+			// The previous map may have been painted until now
+			if (previous != null && previous.isDetached())
+				freeMaps.offer(previous.getMap());
+		}
+
+		position.setBounds(frame.getImageWidth(), frame.getImageHeight());
+		position.setCornerPosition(frame.getLeft(), frame.getTop());
+		dataset.update(frame.getTime());
 		hasData = true;
 
-		if (moments.isEmpty()) {
+		if (!asyncAnalysis) {
+			if (moments.isEmpty()) {
+				isTracking = false;
+				return;
+			}
+			isTracking = true;
+
+			center = position.getPx(-1);
+			x = center.x;
+			y = center.y;
+		}
+
+		if (inspector != null)
+			inspector.update();
+	}
+
+	/**
+	 * Moves to the centroid of the frame's map, as the moments and position
+	 * analyses would.
+	 */
+	private void follow(TrackerFrame frame) {
+		ScalarMap map = frame.getMap();
+		double sum = 0, sumX = 0, sumY = 0;
+		for (int i = 0; i < map.getWidth(); i++) {
+			for (int j = 0; j < map.getHeight(); j++) {
+				double value = map.get(i, j);
+				sum += value;
+				sumX += value * i;
+				sumY += value * j;
+			}
+		}
+		if (sum == 0) {
 			isTracking = false;
 			return;
 		}
 		isTracking = true;
 
-		center = position.getPx(-1);
+		center = new Vector(frame.getLeft() + sumX / sum, frame.getTop()
+				+ sumY / sum);
 		x = center.x;
 		y = center.y;
-
-		if (inspector != null)
-			inspector.update();
 	}
 
 	public boolean hasData() {
 		return hasData;
 	}
 
+	/**
+	 * Gets the map of the frame being analysed, for the analyses. With
+	 * asynchronous analysis the map is recycled once the next frame is
+	 * analysed, so it must not be kept or read from other threads; see
+	 * {@link #copyMap(ScalarMap)}.
+	 */
 	public ScalarMap getMap() {
-		return blurredMap;// cleanMap;
+		TrackerFrame frame = this.frame;
+		return frame != null ? frame.getMap() : blurredMap;// cleanMap;
+	}
+
+	/**
+	 * Copies the map of the last analysed frame, which is not recycled while
+	 * being copied, for display from any thread.
+	 * 
+	 * @param destination
+	 *            - the map to copy to, or <code>null</code> for a new one
+	 * @return the copy
+	 */
+	public ScalarMap copyMap(ScalarMap destination) {
+		synchronized (frameLock) {
+			ScalarMap map = getMap();
+			if (destination == null)
+				destination = new ScalarMap(map.getWidth(), map.getHeight());
+			destination.copy(map);
+			return destination;
+		}
+	}
+
+	/**
+	 * @return the frame being analysed, or last analysed
+	 */
+	public TrackerFrame getFrame() {
+		return frame;
 	}
 
 	@Override
@@ -153,6 +278,16 @@ public class Tracker extends LabelableObject implements Treeable,
 		return center;
 	}
 
+	/**
+	 * Gets the position of this tracker before the frame being analysed,
+	 * which is what analyses see as the current position whether or not they
+	 * run on the tracking thread.
+	 */
+	public Vector getAnalysedPosition() {
+		TrackerFrame frame = this.frame;
+		return frame != null ? frame.getPosition() : center;
+	}
+
 	public int getSize() {
 		return size;
 	}
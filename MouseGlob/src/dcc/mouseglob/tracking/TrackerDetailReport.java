@@ -42,6 +42,8 @@ public class TrackerDetailReport extends AppletReport {
 
 		static final int SIZE = 300;
 		private final ScalarPlot2D detailPlot;
+		/** The tracker's map, copied as its own may be recycled meanwhile */
+		private ScalarMap map;
 
 		private TrackerDetailApplet() {
 			super.setSize(SIZE, SIZE);
@@ -70,7 +72,7 @@ public class TrackerDetailReport extends AppletReport {
 			int size = 2 * radius + 1;
 			float scale = (float) SIZE / size;
 
-			ScalarMap map = tracker.getMap();
+			map = tracker.copyMap(map);
 			int mapWidth = map.getWidth();
 			int mapHeight = map.getHeight();
 
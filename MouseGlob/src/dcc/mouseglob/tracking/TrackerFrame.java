@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Daniel Coelho de Castro.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Daniel Coelho de Castro - initial API and implementation
+ ******************************************************************************/
+package dcc.mouseglob.tracking;
+
+import dcc.graphics.math.ScalarMap;
+import dcc.graphics.math.Vector;
+
+/**
+ * What a {@link Tracker} saw in one frame: everything its analyses read, so
+ * that they can run after the tracker has moved on to later frames.
+ * <p>
+ * The map is owned by the frame and must not be modified; when analysis runs
+ * asynchronously it is a copy, recycled once the frame has been analysed.
+ */
+public final class TrackerFrame {
+
+	private final long time;
+	private final ScalarMap map;
+	private final int left, top;
+	private final double imageWidth, imageHeight;
+	private final Vector position;
+	private final boolean detached;
+	private final long created;
+
+	TrackerFrame(long time, ScalarMap map, boolean detached, int left,
+			int top, double imageWidth, double imageHeight,
+			Vector position) {
+		this.time = time;
+		this.map = map;
+		this.detached = detached;
+		this.left = left;
+		this.top = top;
+		this.imageWidth = imageWidth;
+		this.imageHeight = imageHeight;
+		this.position = position;
+		created = System.nanoTime();
+	}
+
+	/**
+	 * @return the frame time, in milliseconds
+	 */
+	public long getTime() {
+		return time;
+	}
+
+	/**
+	 * @return the blurred glob map inside the tracker window
+	 */
+	public ScalarMap getMap() {
+		return map;
+	}
+
+	/**
+	 * @return the horizontal coordinate of the window's corner, in pixels
+	 */
+	public int getLeft() {
+		return left;
+	}
+
+	/**
+	 * @return the vertical coordinate of the window's corner, in pixels
+	 */
+	public int getTop() {
+		return top;
+	}
+
+	public double getImageWidth() {
+		return imageWidth;
+	}
+
+	public double getImageHeight() {
+		return imageHeight;
+	}
+
+	/**
+	 * @return the tracker position before this frame, in pixels
+	 */
+	public Vector getPosition() {
+		return position;
+	}
+
+	/**
+	 * @return <code>true</code> if the map is a copy the tracker can reuse
+	 *         once the frame has been analysed
+	 */
+	boolean isDetached() {
+		return detached;
+	}
+
+	/**
+	 * @return the {@link System#nanoTime()} at which the frame was tracked
+	 */
+	long getCreated() {
+		return created;
+	}
+
+}
@@ -12,8 +12,17 @@ package dcc.mouseglob.tracking;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import processing.core.PGraphics;
+import dcc.graphics.Box;
+import dcc.graphics.Color;
 import dcc.graphics.Paintable;
 import dcc.graphics.image.BinaryImage;
 import dcc.graphics.image.GrayscaleImage;
@@ -93,6 +102,7 @@ public final class TrackingManager extends DefaultTreeable implements
 
 	private Image cleanImage;
 	private GrayscaleImage grayscaleImage;
+	private boolean grayscaleIsFrame;
 	private GrayscaleImage differenceImage;
 	private GrayscaleImage backgroundImage;
 	private BinaryImage thresholdedImage;
@@ -114,6 +124,27 @@ public final class TrackingManager extends DefaultTreeable implements
 	private FramePipeline pipeline;
 	private boolean pipelineEnabled;
 
+	private boolean parallelUpdate;
+	private int parallelThreads;
+	private ExecutorService trackerExecutor;
+	private boolean sharedExecutor;
+
+	private boolean asyncAnalysis;
+	private int analysisCapacity;
+	private AnalysisStage analysisStage;
+
+	private boolean roiProcessing;
+	private int roiMargin;
+	private int roiFullFrameInterval;
+	private int framesSinceFullPass;
+	private int roiTrackerCount;
+	private Box.Int lastRegion;
+	private Image regionImage;
+	private GrayscaleImage regionGrayscale;
+	private GrayscaleImage regionDifference;
+	private GrayscaleImage regionBackground;
+	private BinaryImage regionThresholded;
+
 	@Inject
 	private AnalysesManager analysisManager;
 	@Inject
@@ -153,19 +184,195 @@ public final class TrackingManager extends DefaultTreeable implements
 
 		addTrackingListener(controller);
 		initPipeline();
+		initParallelUpdate();
+		initAsyncAnalysis();
+		initRoiProcessing();
 	}
 
-	private void initPipeline() {
-		try {
-			PropertiesManager pm = PropertiesManager.getInstance();
-			String enabled = pm.get("tracking.pipeline.enabled", "true");
-			pipelineEnabled = Boolean.parseBoolean(enabled);
-			if (!pipelineEnabled) {
-				log.info("Tracking pipeline disabled via properties.");
-				pipeline = null;
+	private void initRoiProcessing() {
+		PropertiesManager pm = PropertiesManager.getInstance();
+		roiProcessing = Boolean.parseBoolean(pm.get("tracking.roi.enabled",
+				"false"));
+		roiMargin = pm.getInteger("tracking.roi.margin", 16);
+		roiFullFrameInterval = pm.getInteger("tracking.roi.fullFrameInterval",
+				30);
+	}
+
+	/**
+	 * Enables or disables region-of-interest processing. When enabled, frames
+	 * are converted, background-subtracted and thresholded only inside the
+	 * bounding box of all trackers grown by a margin, which should exceed the
+	 * largest filter or structuring element radius of the pipeline so that
+	 * the tracker windows see the same pixels as in a full pass. Every
+	 * <code>tracking.roi.fullFrameInterval</code> frames, and whenever the
+	 * trackers or the frame size change, the whole frame is processed again,
+	 * refreshing the background model and the displayed images everywhere.
+	 * 
+	 * @param enabled
+	 *            - <code>true</code> to process only the trackers' region
+	 */
+	public void setRoiProcessing(boolean enabled) {
+		roiProcessing = enabled;
+		framesSinceFullPass = Integer.MAX_VALUE;
+	}
+
+	public boolean isRoiProcessing() {
+		return roiProcessing;
+	}
+
+	private void initParallelUpdate() {
+		PropertiesManager pm = PropertiesManager.getInstance();
+		parallelUpdate = Boolean.parseBoolean(pm.get(
+				"tracking.parallel.enabled", "false"));
+		parallelThreads = pm.getInteger("tracking.parallel.threads", Runtime
+				.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Enables or disables cropping and cleaning the trackers' windows
+	 * concurrently. Each tracker owns its crop, mask and map buffers, so this
+	 * stage shares nothing but the (read-only) thresholded frame. Analyses
+	 * are still run one tracker at a time, as trackers in the same zone share
+	 * its occupancy and inspectors are not thread-safe.
+	 * 
+	 * @param enabled
+	 *            - <code>true</code> to update trackers on a worker pool
+	 */
+	public void setParallelUpdate(boolean enabled) {
+		parallelUpdate = enabled;
+		if (!enabled && trackerExecutor != null && !sharedExecutor) {
+			trackerExecutor.shutdown();
+			trackerExecutor = null;
+		}
+	}
+
+	/**
+	 * Updates the trackers in parallel on a pool shared with other managers,
+	 * such as those of the other cameras of a rig, instead of a pool of this
+	 * manager's own. The pool is not shut down by this manager.
+	 * 
+	 * @param executor
+	 *            - the shared pool, or <code>null</code> to go back to a pool
+	 *            of <code>tracking.parallel.threads</code> threads
+	 */
+	public void setTrackerExecutor(ExecutorService executor) {
+		if (trackerExecutor != null && !sharedExecutor)
+			trackerExecutor.shutdown();
+		trackerExecutor = executor;
+		sharedExecutor = executor != null;
+	}
+
+	public boolean isParallelUpdate() {
+		return parallelUpdate;
+	}
+
+	private void initAsyncAnalysis() {
+		PropertiesManager pm = PropertiesManager.getInstance();
+		analysisCapacity = pm.getInteger("tracking.analysis.queue", 64);
+		setAsyncAnalysis(Boolean.parseBoolean(pm.get(
+				"tracking.analysis.async", "false")));
+	}
+
+	/**
+	 * Enables or disables running the trackers' analyses on a dedicated
+	 * thread. Tracking then only crops and cleans each tracker's map, and
+	 * hands a {@link TrackerFrame} over to the analysis thread, which may lag
+	 * behind by up to <code>tracking.analysis.queue</code> frames; beyond
+	 * that, tracking waits for it. Trackers follow the centroid of their map
+	 * instead of the position analysis, which gives the same position.
+	 * Disabling waits for pending frames to be analysed.
+	 * 
+	 * @param enabled
+	 *            - <code>true</code> to analyse asynchronously
+	 */
+	public void setAsyncAnalysis(boolean enabled) {
+		synchronized (trackers) {
+			if (enabled == (analysisStage != null))
 				return;
+			asyncAnalysis = enabled;
+			if (enabled) {
+				analysisStage = new AnalysisStage(analysisCapacity);
+			} else {
+				analysisStage.stop();
+				log.info("Analysis stage stopped; max lag {} ms, {} stalls",
+						analysisStage.getMaxLag(), analysisStage.getStalls());
+				analysisStage = null;
 			}
-			String path = pm.get("tracking.pipeline.file", "/resource/pipelines/default.json");
+			for (Tracker tracker : trackers)
+				tracker.setAsyncAnalysis(enabled);
+		}
+	}
+
+	public boolean isAsyncAnalysis() {
+		return asyncAnalysis;
+	}
+
+	/**
+	 * Waits until the trackers' analyses have caught up with tracking, for
+	 * instance before reading their datasets.
+	 */
+	public void waitForAnalysis() {
+		synchronized (trackers) {
+			if (analysisStage != null)
+				analysisStage.drain();
+		}
+	}
+
+	/**
+	 * @return the number of tracker frames waiting for analysis
+	 */
+	public int getAnalysisBacklog() {
+		AnalysisStage stage = analysisStage;
+		return stage != null ? stage.getPending() : 0;
+	}
+
+	/**
+	 * @return how long the last analysed frame waited since it was tracked,
+	 *         in milliseconds, or 0 if analysis is synchronous
+	 */
+	public double getAnalysisLag() {
+		AnalysisStage stage = analysisStage;
+		return stage != null ? stage.getLastLag() : 0;
+	}
+
+	/**
+	 * @return the longest analysis lag so far, in milliseconds
+	 */
+	public double getMaxAnalysisLag() {
+		AnalysisStage stage = analysisStage;
+		return stage != null ? stage.getMaxLag() : 0;
+	}
+
+	/**
+	 * @return how many times tracking waited for the analysis thread
+	 */
+	public long getAnalysisStalls() {
+		AnalysisStage stage = analysisStage;
+		return stage != null ? stage.getStalls() : 0;
+	}
+
+	private void initPipeline() {
+		PropertiesManager pm = PropertiesManager.getInstance();
+		String enabled = pm.get("tracking.pipeline.enabled", "true");
+		pipelineEnabled = Boolean.parseBoolean(enabled);
+		if (!pipelineEnabled) {
+			log.info("Tracking pipeline disabled via properties.");
+			pipeline = null;
+			return;
+		}
+		loadPipeline(pm.get("tracking.pipeline.file", "/resource/pipelines/default.json"));
+	}
+
+	/**
+	 * Replaces this manager's tracking pipeline with the one described by the
+	 * given JSON file, without touching the shared properties. Batch jobs use
+	 * this to run different pipelines side by side.
+	 * 
+	 * @param path
+	 *            - classpath resource or filesystem path of the pipeline
+	 */
+	public void loadPipeline(String path) {
+		try {
 			FramePipeline p = null;
 			if (path != null) {
 				// Try as classpath resource first
@@ -175,6 +382,7 @@ public final class TrackingManager extends DefaultTreeable implements
 				if (p == null) p = JsonPipelineLoader.loadFromFile(path);
 			}
 			pipeline = p;
+			pipelineEnabled = true;
 			if (pipeline != null) log.info("Loaded tracking pipeline ({} stages) from {}", pipeline.getStages().size(), path);
 			else log.info("No pipeline configuration found (path={}). Using legacy processing.", path);
 		} catch (Throwable t) {
@@ -184,6 +392,17 @@ public final class TrackingManager extends DefaultTreeable implements
 		}
 	}
 
+	/**
+	 * Determines whether frames may be handed over as {@link GrayscaleImage}s
+	 * holding luminance instead of colour images, which lets decoders skip
+	 * the colour conversion. Only the displayed clean image loses its colour.
+	 * 
+	 * @return <code>true</code> if tracking only ever reads luminance
+	 */
+	public boolean acceptsGrayscaleFrames() {
+		return pipeline == null || !pipelineEnabled || !pipeline.needsColor();
+	}
+
 	/**
 	 * Determines whether there are any trackers.
 	 * 
@@ -207,6 +426,7 @@ public final class TrackingManager extends DefaultTreeable implements
 			tracker.setName(Integer.toString(trackerCount));
 
 		analysisManager.getNewDataset(tracker);
+		tracker.setAsyncAnalysis(asyncAnalysis);
 		TreeNode trackerNode = tracker.getNode();
 		reportsManager.updateEnabledReports();
 		for (ReportDescriptor descriptor : reportsManager.getDescriptors()) {
@@ -374,11 +594,26 @@ public final class TrackingManager extends DefaultTreeable implements
 	@Override
 	public void newFrame(Image frame, long time) {
 		cleanImage = frame;
-		globImage = process(cleanImage);
+		Box.Int region = roiProcessing ? getRegionOfInterest(frame) : null;
+		if (region == null) {
+			globImage = process(cleanImage);
+			lastRegion = frame.getBox().toInt();
+			framesSinceFullPass = 0;
+		} else {
+			globImage = processRegion(cleanImage, region);
+			lastRegion = region;
+			framesSinceFullPass++;
+		}
 
 		synchronized (trackers) {
-			for (Tracker tracker : trackers)
-				tracker.update(globImage, time);
+			if (parallelUpdate && trackers.size() > 1) {
+				// Interrupted: no tracker analysed this frame, so nobody is told
+				if (!updateInParallel(globImage, time))
+					return;
+			} else {
+				for (Tracker tracker : trackers)
+					analyse(tracker, tracker.track(globImage, time));
+			}
 		}
 
 		if (imageType == ImageType.CLEAN) {
@@ -390,6 +625,70 @@ public final class TrackingManager extends DefaultTreeable implements
 		}
 	}
 
+	private void analyse(Tracker tracker, TrackerFrame frame) {
+		if (analysisStage != null)
+			analysisStage.submit(tracker, frame);
+		else
+			tracker.analyse(frame);
+	}
+
+	/**
+	 * Tracks every tracker on the worker pool, then analyses the frames in
+	 * tracker order on the calling thread, or hands them over to the analysis
+	 * thread, so that listeners only ever see complete frames. The first
+	 * failure is rethrown on the calling thread.
+	 * 
+	 * @return <code>false</code> if the calling thread was interrupted before
+	 *         every tracker was tracked, in which case no frame is analysed
+	 *         and the interrupt flag is set again
+	 */
+	private boolean updateInParallel(final BinaryImage image, final long time) {
+		if (trackerExecutor == null)
+			trackerExecutor = Executors.newFixedThreadPool(
+					Math.max(1, parallelThreads), new TrackerThreadFactory());
+
+		List<Callable<TrackerFrame>> tasks = new ArrayList<Callable<TrackerFrame>>(
+				trackers.size());
+		for (final Tracker tracker : trackers)
+			tasks.add(new Callable<TrackerFrame>() {
+				@Override
+				public TrackerFrame call() {
+					return tracker.track(image, time);
+				}
+			});
+
+		List<TrackerFrame> frames = new ArrayList<TrackerFrame>(
+				trackers.size());
+		try {
+			for (Future<TrackerFrame> result : trackerExecutor
+					.invokeAll(tasks))
+				frames.add(result.get());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Tracker update failed", e.getCause());
+		}
+
+		for (int i = 0; i < frames.size(); i++)
+			analyse(trackers.get(i), frames.get(i));
+		return true;
+	}
+
+	private static class TrackerThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "tracker-update-"
+					+ count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+
+	}
+
 	public void addNewFrameListener(NewFrameListener listener) {
 		newFramelisteners.add(listener);
 	}
@@ -400,13 +699,23 @@ public final class TrackingManager extends DefaultTreeable implements
 			dcc.mouseglob.tracking.pipeline.PipelineContext ctx = pipeline.run(image, backgroundImage);
 			// Update internal references for UI/consumers
 			grayscaleImage = ctx.gray;
+			grayscaleIsFrame = ctx.gray == image;
 			backgroundImage = ctx.background;
 			if (ctx.mask != null) thresholdedImage = ctx.mask;
 			if (thresholdedImage != null) return thresholdedImage;
 			// Fallback to legacy if pipeline did not produce a mask
 		}
 		
-		grayscaleImage = image.luminance(grayscaleImage);
+		if (image instanceof GrayscaleImage) {
+			// Decoded straight to luminance (see acceptsGrayscaleFrames)
+			grayscaleImage = (GrayscaleImage) image;
+			grayscaleIsFrame = true;
+		} else {
+			// Never write into a previous frame's buffer
+			grayscaleImage = image.luminance(grayscaleIsFrame ? null
+					: grayscaleImage);
+			grayscaleIsFrame = false;
+		}
 		
 		if (trackingMode == TrackingMode.DIFFERENCE) {
 			differenceImage = grayscaleImage.subtract(backgroundImage,
@@ -424,6 +733,107 @@ public final class TrackingManager extends DefaultTreeable implements
 		return thresholdedImage;
 	}
 
+	/**
+	 * Determines the part of the frame the trackers will read this frame.
+	 * 
+	 * @return the trackers' bounding box grown by the margin, or
+	 *         <code>null</code> if the whole frame should be processed
+	 */
+	private Box.Int getRegionOfInterest(Image frame) {
+		synchronized (trackers) {
+			int count = trackers.size();
+			boolean changed = count != roiTrackerCount;
+			roiTrackerCount = count;
+			if (count == 0 || changed
+					|| framesSinceFullPass >= roiFullFrameInterval
+					|| thresholdedImage == null
+					|| !thresholdedImage.dimensionsMatch(frame)
+					|| backgroundImage != null
+					&& !backgroundImage.dimensionsMatch(frame)
+					|| backgroundImage == null
+					&& trackingMode == TrackingMode.DIFFERENCE)
+				return null;
+
+			Box box = null;
+			for (Tracker tracker : trackers) {
+				Box b = Box.fromRadius(tracker.getPosition(), tracker.getSize()
+						+ roiMargin);
+				box = box == null ? b : box.growToFit(b);
+			}
+			Box.Int region = box.clamp(frame.getBox()).toInt();
+
+			// Cropping only pays off while the region is a small part of the frame
+			long area = (long) (region.width + 1) * (region.height + 1);
+			if (2 * area > (long) frame.getWidth() * frame.getHeight())
+				return null;
+			return region;
+		}
+	}
+
+	/**
+	 * Runs the same processing as {@link #process(Image)} on a region of the
+	 * frame only, and writes the result into the full-frame mask, which is
+	 * blank outside the region.
+	 */
+	private BinaryImage processRegion(Image frame, Box.Int region) {
+		regionImage = crop(frame, region, regionImage);
+		regionBackground = backgroundImage == null ? null : backgroundImage
+				.copy(regionBackground, region.left, region.top, region.right,
+						region.bottom);
+
+		BinaryImage mask = null;
+		if (pipeline != null && pipelineEnabled) {
+			dcc.mouseglob.tracking.pipeline.PipelineContext ctx = pipeline.run(regionImage, regionBackground);
+			mask = ctx.mask;
+			// A running background is updated in place; keep the full-frame model in step
+			if (ctx.background != null && backgroundImage != null)
+				backgroundImage.paste(ctx.background, region.left, region.top);
+		}
+
+		if (mask == null) {
+			GrayscaleImage gray;
+			if (regionImage instanceof GrayscaleImage) {
+				gray = (GrayscaleImage) regionImage;
+			} else {
+				regionGrayscale = regionImage.luminance(regionGrayscale);
+				gray = regionGrayscale;
+			}
+
+			if (trackingMode == TrackingMode.DIFFERENCE) {
+				regionDifference = gray.subtract(regionBackground,
+						regionDifference);
+				gray = regionDifference;
+				if (differenceImage != null
+						&& differenceImage.dimensionsMatch(frame))
+					differenceImage.paste(regionDifference, region.left,
+							region.top);
+			}
+
+			if (thresholdMode == ThresholdMode.LIGHT)
+				regionThresholded = gray.threshold(threshold,
+						regionThresholded);
+			else
+				regionThresholded = gray.inverseThreshold(threshold,
+						regionThresholded);
+			mask = regionThresholded;
+		}
+
+		thresholdedImage.fill(lastRegion, Color.BLACK);
+		thresholdedImage.paste(mask, region.left, region.top);
+		return thresholdedImage;
+	}
+
+	private static Image crop(Image frame, Box.Int region, Image destination) {
+		if (frame instanceof GrayscaleImage)
+			return ((GrayscaleImage) frame).copy(
+					destination instanceof GrayscaleImage ? (GrayscaleImage) destination
+							: null, region.left, region.top, region.right,
+					region.bottom);
+		return frame.copy(destination instanceof GrayscaleImage ? null
+				: destination, region.left, region.top, region.right,
+				region.bottom);
+	}
+
 	GrayscaleImage getBackground() {
 		return backgroundImage;
 	}
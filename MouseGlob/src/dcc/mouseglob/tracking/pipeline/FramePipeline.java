@@ -5,24 +5,53 @@ import java.util.List;
 
 import dcc.graphics.image.GrayscaleImage;
 import dcc.graphics.image.Image;
+import dcc.mouseglob.tracking.pipeline.stages.FusedBackgroundStage;
 
 /**
  * A simple sequential frame processing pipeline.
+ *
+ * Runs of per-pixel stages are executed as a single fused sweep where possible
+ * (see {@link FusedBackgroundStage}); the results are the same as running the
+ * configured stages one by one.
  */
 public final class FramePipeline {
     private final List<Stage> stages = new ArrayList<>();
+    private List<Stage> plan;
+    private boolean fusion = true;
 
     public FramePipeline add(Stage stage) {
-        if (stage != null) stages.add(stage);
+        if (stage != null) {
+            stages.add(stage);
+            plan = null;
+        }
         return this;
     }
 
+    /** Enables or disables fusing stages into single sweeps (enabled by default). */
+    public void setFusion(boolean enabled) {
+        fusion = enabled;
+        plan = null;
+    }
+
     public List<Stage> getStages() { return stages; }
 
+    /** Whether any stage reads colour; if not, frames may be decoded straight to luminance. */
+    public boolean needsColor() {
+        for (Stage s : stages) if (s.needsColor()) return true;
+        return false;
+    }
+
     public PipelineContext run(Image input, GrayscaleImage background) {
         PipelineContext ctx = new PipelineContext(input);
         ctx.background = background;
-        for (Stage s : stages) s.apply(ctx);
+        // A grayscale frame already holds the luminance the stages would compute
+        if (input instanceof GrayscaleImage) ctx.gray = (GrayscaleImage) input;
+        for (Stage s : plan()) s.apply(ctx);
         return ctx;
     }
+
+    private List<Stage> plan() {
+        if (plan == null) plan = fusion ? FusedBackgroundStage.fuse(stages) : stages;
+        return plan;
+    }
 }
@@ -9,7 +9,8 @@ import dcc.graphics.image.Image;
  * Implementations read and write fields in the PipelineContext.
  *
  * Contract:
- * - ctx.input: input ARGB image for the current frame (never null).
+ * - ctx.input: input ARGB image for the current frame (never null). It may already be a
+ *   GrayscaleImage holding luminance when no stage {@link #needsColor() needs colour}.
  * - ctx.gray: may be null initially; stages may produce/update it.
  * - ctx.background: optional grayscale background; stages may read/update it.
  * - ctx.work: optional scratch grayscale buffer.
@@ -18,6 +19,11 @@ import dcc.graphics.image.Image;
 public interface Stage {
     void apply(PipelineContext ctx);
 
+    /** Whether this stage reads colour from ctx.input rather than only its luminance. */
+    default boolean needsColor() {
+        return false;
+    }
+
     /** Utility marker to indicate a Stage can be configured from JSON */
     interface ConfigurableStage extends Stage {
         void configure(java.util.Map<String,Object> params);
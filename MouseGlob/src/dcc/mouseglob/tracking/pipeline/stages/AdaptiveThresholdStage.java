@@ -1,22 +1,26 @@
 package dcc.mouseglob.tracking.pipeline.stages;
 
-import dcc.graphics.Color;
-import dcc.graphics.image.BinaryImage;
-import dcc.graphics.image.GrayscaleImage;
+import dcc.graphics.image.IntegralImage;
 import dcc.mouseglob.tracking.pipeline.PipelineContext;
 import dcc.mouseglob.tracking.pipeline.Stage;
 
 import java.util.Map;
 
 /**
- * Thresholding stage supporting global and adaptive-mean methods.
+ * Thresholding stage supporting global, adaptive-mean and Sauvola methods.
+ *
+ * Adaptive methods read window statistics from an integral image, so their cost does
+ * not depend on the window size. The integral image is reused between frames, so a
+ * stage instance must not run on several frames at once.
  *
  * Params:
- * - mode: "global" (default) or "adaptiveMean"
+ * - mode: "global" (default), "adaptiveMean" or "sauvola" (case-insensitive)
  * - threshold: integer [0..255] used in global mode (default 128)
  * - dark: boolean when true selects dark-on-light threshold (default false => light-on-dark)
- * - blockSize: odd window size for adaptive mean (default 15)
- * - c: constant subtracted from mean in adaptive method (default 5)
+ * - blockSize: odd window size for adaptive methods (default 15)
+ * - c: margin over the window mean in adaptive-mean mode (default 5)
+ * - k: Sauvola sensitivity (default 0.34)
+ * - r: Sauvola dynamic range of the standard deviation (default 128)
  */
 public final class AdaptiveThresholdStage implements Stage.ConfigurableStage {
     private String mode = "global";
@@ -24,6 +28,9 @@ public final class AdaptiveThresholdStage implements Stage.ConfigurableStage {
     private boolean dark = false;
     private int blockSize = 15;
     private int c = 5;
+    private double k = 0.34;
+    private double r = 128;
+    private IntegralImage integral;
 
     @Override
     public void configure(Map<String, Object> params) {
@@ -33,25 +40,32 @@ public final class AdaptiveThresholdStage implements Stage.ConfigurableStage {
         Object d = params.get("dark"); if (d instanceof Boolean) dark = (Boolean)d;
         Object bs = params.get("blockSize"); if (bs instanceof Number) blockSize = Math.max(3, ((Number)bs).intValue() | 1);
         Object cc = params.get("c"); if (cc instanceof Number) c = ((Number)cc).intValue();
+        Object kk = params.get("k"); if (kk instanceof Number) k = ((Number)kk).doubleValue();
+        Object rr = params.get("r"); if (rr instanceof Number) r = ((Number)rr).doubleValue();
+    }
+
+    /** Whether {@link #apply} compares each pixel against a fixed threshold. */
+    boolean isGlobal() {
+        return !"adaptivemean".equals(mode) && !"sauvola".equals(mode);
+    }
+
+    int getThreshold() {
+        return threshold;
+    }
+
+    boolean isDark() {
+        return dark;
     }
 
     @Override
     public void apply(PipelineContext ctx) {
         if (ctx.gray == null) ctx.gray = ctx.input.luminance(ctx.gray);
-        if ("adaptiveMean".equals(mode)) {
-            // approximate local mean by gaussian blur with sigma ~ blockSize/6
-            double sigma = Math.max(1.0, blockSize / 6.0);
-            ctx.work = ctx.gray.blur(sigma, ctx.work);
-            if (ctx.mask == null) ctx.mask = new BinaryImage(ctx.gray.getWidth(), ctx.gray.getHeight());
-            int[] g = ctx.gray.getPixels();
-            int[] m = ctx.work.getPixels();
-            int[] out = ctx.mask.getPixels();
-            for (int i = 0; i < out.length; i++) {
-                int gv = Color.r(g[i]);
-                int mv = Color.r(m[i]) + c;
-                boolean isFg = dark ? (gv < mv) : (gv > mv);
-                out[i] = isFg ? Color.WHITE : Color.BLACK;
-            }
+        if ("adaptivemean".equals(mode)) {
+            if (integral == null || integral.hasSquares()) integral = new IntegralImage(false);
+            ctx.mask = ctx.gray.meanThreshold(blockSize, c, dark, integral, ctx.mask);
+        } else if ("sauvola".equals(mode)) {
+            if (integral == null || !integral.hasSquares()) integral = new IntegralImage(true);
+            ctx.mask = ctx.gray.sauvolaThreshold(blockSize, k, r, dark, integral, ctx.mask);
         } else {
             // global threshold
             if (dark) ctx.mask = ctx.gray.inverseThreshold(threshold, ctx.mask);
@@ -32,6 +32,15 @@ public final class BackgroundSubtractStage implements Stage.ConfigurableStage {
         if (a instanceof Number) alpha = Math.max(0.0, Math.min(1.0, ((Number) a).doubleValue()));
     }
 
+    /** Whether {@link #apply} blends each frame into an existing background. */
+    boolean updatesBackground() {
+        return "running".equals(mode) && alpha > 0.0;
+    }
+
+    double getAlpha() {
+        return alpha;
+    }
+
     @Override
     public void apply(PipelineContext ctx) {
         if (ctx.gray == null) ctx.gray = ctx.input.luminance(ctx.gray);
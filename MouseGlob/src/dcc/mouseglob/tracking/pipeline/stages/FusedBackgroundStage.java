@@ -0,0 +1,116 @@
+package dcc.mouseglob.tracking.pipeline.stages;
+
+import dcc.graphics.Color;
+import dcc.graphics.image.BinaryImage;
+import dcc.graphics.image.GrayscaleImage;
+import dcc.graphics.image.Image;
+import dcc.graphics.math.async.Operation1D;
+import dcc.mouseglob.tracking.pipeline.PipelineContext;
+import dcc.mouseglob.tracking.pipeline.Stage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Grayscale conversion, background subtraction and global thresholding in one sweep.
+ *
+ * Each input pixel is read once: its luminance is written, the background is seeded or
+ * blended (running mode) and the global mask pixel is set in the same pass, instead of
+ * one full-frame loop per stage. The context ends up exactly as if the fused stages had
+ * run one after another. An adaptive threshold needs a blurred copy of the whole frame,
+ * so it still runs as its own pass after the sweep.
+ */
+public final class FusedBackgroundStage implements Stage {
+    private final BackgroundSubtractStage background;
+    private final AdaptiveThresholdStage threshold;
+
+    private FusedBackgroundStage(BackgroundSubtractStage background, AdaptiveThresholdStage threshold) {
+        this.background = background;
+        this.threshold = threshold;
+    }
+
+    /**
+     * Replaces each fusable run of stages (an optional grayscale stage, a background stage
+     * and an optional threshold stage, at the start of the pipeline or right after a
+     * grayscale stage) by a single fused stage. Other stages are kept as they are.
+     */
+    public static List<Stage> fuse(List<Stage> stages) {
+        List<Stage> plan = new ArrayList<>(stages.size());
+        int i = 0;
+        while (i < stages.size()) {
+            int j = i;
+            if (stages.get(j) instanceof GrayscaleStage) j++;
+            boolean fusable = j < stages.size() && stages.get(j) instanceof BackgroundSubtractStage
+                    && (j > i || i == 0);
+            if (!fusable) {
+                plan.add(stages.get(i++));
+                continue;
+            }
+            BackgroundSubtractStage bg = (BackgroundSubtractStage) stages.get(j++);
+            AdaptiveThresholdStage th = null;
+            if (j < stages.size() && stages.get(j) instanceof AdaptiveThresholdStage)
+                th = (AdaptiveThresholdStage) stages.get(j++);
+            plan.add(new FusedBackgroundStage(bg, th));
+            i = j;
+        }
+        return plan;
+    }
+
+    @Override
+    public void apply(PipelineContext ctx) {
+        final Image input = ctx.input;
+        final int width = input.getWidth(), height = input.getHeight();
+
+        // Reuse a luminance frame as the pipeline does; otherwise compute luminance in the sweep
+        final boolean convert = ctx.gray == null;
+        final GrayscaleImage grayImage = convert ? new GrayscaleImage(width, height) : ctx.gray;
+        // A first frame becomes the background, as BackgroundSubtractStage copies it
+        final boolean fresh = ctx.background == null;
+        final GrayscaleImage bgImage = fresh ? new GrayscaleImage(width, height) : ctx.background;
+        final boolean global = threshold != null && threshold.isGlobal();
+        final BinaryImage maskImage = global ? new BinaryImage(width, height) : null;
+
+        final int[] in = input.getPixels(), gray = grayImage.getPixels(), bg = bgImage.getPixels();
+        final int[] mask = global ? maskImage.getPixels() : null;
+        final boolean update = !fresh && background.updatesBackground();
+        final double alpha = background.getAlpha();
+        final int level = global ? threshold.getThreshold() : 0;
+        final boolean dark = global && threshold.isDark();
+
+        new Operation1D(height) {
+            @Override
+            protected void compute(int y) {
+                int end = (y + 1) * width;
+                for (int i = y * width; i < end; i++) {
+                    int g;
+                    if (convert) {
+                        int l = Color.luma(in[i]);
+                        gray[i] = l;
+                        g = Color.r(l);
+                    } else {
+                        g = Color.r(gray[i]);
+                    }
+                    if (fresh) {
+                        bg[i] = gray[i];
+                    } else if (update) {
+                        // Same rounding as BackgroundSubtractStage, so results stay bit-identical
+                        int b = Color.r(bg[i]);
+                        int nb = (int) Math.round(b + alpha * (g - b));
+                        if (nb < 0) nb = 0; else if (nb > 255) nb = 255;
+                        bg[i] = Color.rgb(nb, nb, nb);
+                    }
+                    if (mask != null)
+                        mask[i] = (dark ? g < level : g >= level) ? Color.WHITE : Color.BLACK;
+                }
+            }
+        }.execute();
+
+        // GrayscaleImage.subtract hands back the receiver (Image.operate returns this), so the
+        // unfused stages leave the luminance in gray and work and threshold that; keep it so
+        ctx.background = bgImage;
+        ctx.gray = grayImage;
+        ctx.work = grayImage;
+        if (global) ctx.mask = maskImage;
+        else if (threshold != null) threshold.apply(ctx);
+    }
+}
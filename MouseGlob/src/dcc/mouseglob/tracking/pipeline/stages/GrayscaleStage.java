@@ -10,6 +10,7 @@ import dcc.mouseglob.tracking.pipeline.Stage;
 public final class GrayscaleStage implements Stage {
     @Override
     public void apply(PipelineContext ctx) {
-        ctx.gray = ctx.input.luminance(ctx.gray);
+        if (ctx.input instanceof GrayscaleImage) ctx.gray = (GrayscaleImage) ctx.input;
+        else ctx.gray = ctx.input.luminance(ctx.gray);
     }
 }
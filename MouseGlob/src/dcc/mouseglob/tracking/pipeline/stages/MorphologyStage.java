@@ -1,13 +1,14 @@
 package dcc.mouseglob.tracking.pipeline.stages;
 
-import dcc.graphics.image.BinaryImage;
+import dcc.graphics.image.PackedBinaryImage;
 import dcc.mouseglob.tracking.pipeline.PipelineContext;
 import dcc.mouseglob.tracking.pipeline.Stage;
 
 import java.util.Map;
 
 /**
- * Morphological operation on the binary mask.
+ * Morphological operation on the binary mask. The operation runs on a
+ * bit-packed copy of the mask, which is then expanded back into ctx.mask.
  *
  * Params:
  * - operation: "open" (default), "close", "erode", "dilate"
@@ -16,6 +17,8 @@ import java.util.Map;
 public final class MorphologyStage implements Stage.ConfigurableStage {
     private String operation = "open";
     private int size = 3;
+    private PackedBinaryImage packed;
+    private PackedBinaryImage result;
 
     private static int[][] kernel(int n) {
         int[][] k = new int[n][n];
@@ -42,21 +45,22 @@ public final class MorphologyStage implements Stage.ConfigurableStage {
     public void apply(PipelineContext ctx) {
         if (ctx.mask == null) return; // nothing to do
         int[][] el = kernel(size);
-        BinaryImage out = ctx.mask; // in-place writing is fine as API returns destination
+        packed = ctx.mask.pack(packed);
         switch (operation) {
             case "erode":
-                ctx.mask = ctx.mask.erode(el, out);
+                result = packed.erode(el, result);
                 break;
             case "dilate":
-                ctx.mask = ctx.mask.dilate(el, out);
+                result = packed.dilate(el, result);
                 break;
             case "close":
-                ctx.mask = ctx.mask.close(el, out);
+                result = packed.close(el, result);
                 break;
             case "open":
             default:
-                ctx.mask = ctx.mask.open(el, out);
+                result = packed.open(el, result);
                 break;
         }
+        ctx.mask = result.unpack(ctx.mask);
     }
 }
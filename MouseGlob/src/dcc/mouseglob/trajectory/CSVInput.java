@@ -0,0 +1,315 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Daniel Coelho de Castro.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Daniel Coelho de Castro - initial API and implementation
+ ******************************************************************************/
+package dcc.mouseglob.trajectory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.InputMismatchException;
+import java.util.List;
+
+/**
+ * Reads a CSV file line by line and field by field, parsing numbers straight
+ * from the bytes of a memory-mapped window.
+ * <p>
+ * Only a window of the file is mapped at a time, and slid forward as lines
+ * are read, so files of any size are read in bounded memory. Fields may be
+ * quoted; inside quotes a comma is read as a decimal separator, as written by
+ * {@link java.text.DecimalFormat} under some locales.
+ */
+final class CSVInput implements Closeable {
+
+	/** Largest window mapped at once, which bounds the length of a line. */
+	private static final int WINDOW_SIZE = 1 << 26;
+	private static final double[] POWERS_OF_TEN = new double[23];
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++)
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+	}
+
+	private final FileChannel channel;
+	private final long size;
+	private final int windowSize;
+
+	private MappedByteBuffer window;
+	private long windowStart;
+	private int windowLength;
+
+	/** Start of the next field, end of the current line, in the window. */
+	private int position, lineEnd = -1;
+	private boolean terminated;
+	private int lineNumber;
+
+	CSVInput(Path path) throws IOException {
+		this(path, WINDOW_SIZE);
+	}
+
+	CSVInput(Path path, int windowSize) throws IOException {
+		channel = FileChannel.open(path, StandardOpenOption.READ);
+		size = channel.size();
+		this.windowSize = windowSize;
+	}
+
+	/**
+	 * Moves to the next line.
+	 * 
+	 * @return {@code false} at the end of the file
+	 */
+	boolean nextLine() throws IOException {
+		int start = lineEnd < 0 ? 0 : lineEnd + (terminated ? 1 : 0);
+		if (windowStart + start >= size)
+			return false;
+		lineNumber++;
+
+		int end = find(start);
+		if (end < 0) {
+			// The line runs past the window: slide it to the line start
+			map(windowStart + start);
+			start = 0;
+			end = find(start);
+			if (end < 0)
+				throw new IOException("Line " + lineNumber
+						+ " is longer than " + windowSize + " bytes");
+		}
+		position = start;
+		lineEnd = end;
+		terminated = end < windowLength;
+		return true;
+	}
+
+	/**
+	 * @return whether the current line ends with a line break, rather than
+	 *         with the file, as the last line of a file being written might
+	 */
+	boolean isTerminated() {
+		return terminated;
+	}
+
+	/**
+	 * @return whether the current line has more fields
+	 */
+	boolean hasField() {
+		return position <= lineEnd && !isBlank();
+	}
+
+	/**
+	 * @return whether the rest of the current line is empty
+	 */
+	boolean isBlank() {
+		for (int i = position; i < lineEnd; i++) {
+			byte b = window.get(i);
+			if (b != ' ' && b != '\r' && b != '\t')
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return the number of remaining fields on the current line, without
+	 *         consuming them
+	 */
+	int countFields() {
+		if (position > lineEnd)
+			return 0;
+		int count = 1;
+		boolean quoted = false;
+		for (int i = position; i < lineEnd; i++) {
+			byte b = window.get(i);
+			if (b == '"')
+				quoted = !quoted;
+			else if (b == ',' && !quoted)
+				count++;
+		}
+		return count;
+	}
+
+	String text() {
+		int start = fieldStart(), end = fieldEnd(start);
+		byte[] bytes = new byte[end - start];
+		for (int i = 0; i < bytes.length; i++)
+			bytes[i] = window.get(start + i);
+		next(end);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return the remaining fields of the current line
+	 */
+	List<String> texts() {
+		List<String> fields = new ArrayList<String>();
+		while (hasField())
+			fields.add(text());
+		return fields;
+	}
+
+	void skip() {
+		int start = fieldStart();
+		next(fieldEnd(start));
+	}
+
+	long integer() {
+		int start = fieldStart(), limit = fieldEnd(start);
+		int end = trim(start, limit);
+		int i = start;
+		boolean negative = false;
+		if (i < end && (window.get(i) == '-' || window.get(i) == '+'))
+			negative = window.get(i++) == '-';
+		long value = 0;
+		if (i == end || end - i > 18) {
+			try {
+				value = Long.parseLong(string(start, end));
+			} catch (NumberFormatException e) {
+				throw mismatch("integer", start, end);
+			}
+		} else {
+			for (; i < end; i++) {
+				int digit = window.get(i) - '0';
+				if (digit < 0 || digit > 9)
+					throw mismatch("integer", start, end);
+				value = 10 * value + digit;
+			}
+			if (negative)
+				value = -value;
+		}
+		next(limit);
+		return value;
+	}
+
+	double decimal() {
+		int start = fieldStart(), limit = fieldEnd(start);
+		int end = trim(start, limit);
+		int i = start;
+		boolean negative = false;
+		if (i < end && (window.get(i) == '-' || window.get(i) == '+'))
+			negative = window.get(i++) == '-';
+
+		long mantissa = 0;
+		int digits = 0, decimals = 0;
+		boolean point = false, exact = i < end;
+		for (; i < end && exact; i++) {
+			byte b = window.get(i);
+			if (b >= '0' && b <= '9') {
+				mantissa = 10 * mantissa + (b - '0');
+				if (mantissa != 0)
+					digits++;
+				if (point)
+					decimals++;
+			} else if ((b == '.' || b == ',') && !point) {
+				point = true;
+			} else {
+				exact = false;
+			}
+		}
+
+		double value;
+		if (exact && digits <= 15 && decimals < POWERS_OF_TEN.length) {
+			// Both operands are exact, so the quotient is correctly rounded
+			value = mantissa / POWERS_OF_TEN[decimals];
+			if (negative)
+				value = -value;
+		} else {
+			try {
+				value = Double.parseDouble(string(start, end).replace(',', '.'));
+			} catch (NumberFormatException e) {
+				throw mismatch("number", start, end);
+			}
+		}
+		next(limit);
+		return value;
+	}
+
+	int getLineNumber() {
+		return lineNumber;
+	}
+
+	@Override
+	public void close() throws IOException {
+		window = null;
+		channel.close();
+	}
+
+	/**
+	 * @return the index of the line break from {@code start} in the window,
+	 *         the window length if the file ends first, or {@code -1} if the
+	 *         window ends first
+	 */
+	private int find(int start) throws IOException {
+		if (window == null)
+			map(0);
+		for (int i = start; i < windowLength; i++)
+			if (window.get(i) == '\n')
+				return i;
+		return windowStart + windowLength == size ? windowLength : -1;
+	}
+
+	private void map(long start) throws IOException {
+		windowStart = start;
+		windowLength = (int) Math.min(windowSize, size - start);
+		window = channel.map(MapMode.READ_ONLY, start, windowLength);
+	}
+
+	/** Skips the opening quote of the field, if any. */
+	private int fieldStart() {
+		if (position > lineEnd)
+			throw new InputMismatchException("Missing field on line "
+					+ lineNumber);
+		return position < lineEnd && window.get(position) == '"' ? position + 1
+				: position;
+	}
+
+	/** Finds the closing quote or separator of the field. */
+	private int fieldEnd(int start) {
+		boolean quoted = start > position;
+		for (int i = start; i < lineEnd; i++) {
+			byte b = window.get(i);
+			if (quoted ? b == '"' : b == ',')
+				return i;
+		}
+		return lineEnd > start && window.get(lineEnd - 1) == '\r' ? lineEnd - 1
+				: lineEnd;
+	}
+
+	/** Moves past the closing quote and separator of a field. */
+	private void next(int end) {
+		if (end < lineEnd && window.get(end) == '"')
+			end++;
+		while (end < lineEnd && window.get(end) != ',')
+			end++;
+		position = end + 1;
+	}
+
+	private int trim(int start, int end) {
+		while (end > start && window.get(end - 1) == ' ')
+			end--;
+		return end;
+	}
+
+	private String string(int start, int end) {
+		byte[] bytes = new byte[end - start];
+		for (int i = 0; i < bytes.length; i++)
+			bytes[i] = window.get(start + i);
+		return new String(bytes, StandardCharsets.US_ASCII).trim();
+	}
+
+	private InputMismatchException mismatch(String expected, int start,
+			int end) {
+		return new InputMismatchException("Expected " + expected + " but found \""
+				+ string(start, end) + "\" on line " + lineNumber);
+	}
+
+}
@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Daniel Coelho de Castro.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Daniel Coelho de Castro - initial API and implementation
+ ******************************************************************************/
+package dcc.mouseglob.trajectory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Buffered CSV output that formats numbers straight into bytes, without the
+ * intermediate strings and locale lookups of {@link java.text.DecimalFormat}.
+ * <p>
+ * Decimal numbers are written in fixed point with a dot as the decimal
+ * separator, trailing zeros removed and, like the previous
+ * {@code "###.##"} pattern, between quotes.
+ */
+final class CSVOutput {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+	/** Largest magnitude written in fixed point; beyond it, plain doubles. */
+	private static final double FIXED_LIMIT = 1e15;
+	private static final long[] POWERS_OF_TEN = { 1, 10, 100, 1000, 10000,
+			100000, 1000000, 10000000, 100000000 };
+
+	private final OutputStream out;
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private final byte[] digits = new byte[20];
+	private int position;
+
+	CSVOutput(OutputStream out) {
+		this.out = out;
+	}
+
+	CSVOutput separator() throws IOException {
+		return write((byte) ',');
+	}
+
+	CSVOutput newLine() throws IOException {
+		return write((byte) '\n');
+	}
+
+	CSVOutput text(String s) throws IOException {
+		int n = s.length();
+		for (int i = 0; i < n; i++)
+			if (s.charAt(i) >= 0x80)
+				return bytes(s.getBytes(StandardCharsets.UTF_8));
+		for (int i = 0; i < n; i++)
+			write((byte) s.charAt(i));
+		return this;
+	}
+
+	CSVOutput number(long value) throws IOException {
+		if (value < 0) {
+			if (value == Long.MIN_VALUE)
+				return text(Long.toString(value));
+			write((byte) '-');
+			value = -value;
+		}
+		return digits(value, 1);
+	}
+
+	/**
+	 * Writes a number between quotes, rounded to the given number of decimal
+	 * places.
+	 * 
+	 * @param value
+	 *            - the number
+	 * @param decimals
+	 *            - decimal places, at most 8
+	 */
+	CSVOutput fixed(double value, int decimals) throws IOException {
+		write((byte) '"');
+		long scale = POWERS_OF_TEN[decimals];
+		if (Double.isNaN(value) || Math.abs(value) * scale >= FIXED_LIMIT) {
+			text(Double.toString(value));
+		} else {
+			long scaled = Math.round(Math.abs(value) * scale);
+			if (value < 0 && scaled != 0)
+				write((byte) '-');
+			long integer = scaled / scale;
+			long fraction = scaled % scale;
+			digits(integer, 1);
+			if (fraction != 0) {
+				while (fraction % 10 == 0) {
+					fraction /= 10;
+					decimals--;
+				}
+				write((byte) '.');
+				digits(fraction, decimals);
+			}
+		}
+		return write((byte) '"');
+	}
+
+	void flush() throws IOException {
+		out.write(buffer, 0, position);
+		position = 0;
+		out.flush();
+	}
+
+	void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Writes a non-negative number with at least the given number of digits,
+	 * padding with leading zeros.
+	 */
+	private CSVOutput digits(long value, int minDigits) throws IOException {
+		int n = 0;
+		do {
+			digits[n++] = (byte) ('0' + value % 10);
+			value /= 10;
+		} while (value != 0);
+		while (n < minDigits)
+			digits[n++] = '0';
+		while (n > 0)
+			write(digits[--n]);
+		return this;
+	}
+
+	private CSVOutput bytes(byte[] bytes) throws IOException {
+		for (byte b : bytes)
+			write(b);
+		return this;
+	}
+
+	private CSVOutput write(byte b) throws IOException {
+		if (position == buffer.length) {
+			out.write(buffer, 0, position);
+			position = 0;
+		}
+		buffer[position++] = b;
+		return this;
+	}
+
+}
@@ -11,6 +11,7 @@
 package dcc.mouseglob.trajectory;
 
 import java.io.FileNotFoundException;
+import java.io.IOException;
 
 import javax.swing.JOptionPane;
 
@@ -55,7 +56,7 @@ public class TrajectoriesIOController extends
 			try {
 				manager.analyze(state);
 				recordAction.setEnabled(!state);
-			} catch (FileNotFoundException e) {
+			} catch (IOException e) {
 				analyzeAction.setSelected(false);
 				e.printStackTrace();
 				JOptionPane.showMessageDialog(null, e.getMessage(),
@@ -11,6 +11,7 @@
 package dcc.mouseglob.trajectory;
 
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 
@@ -86,7 +87,7 @@ public class TrajectoriesIOManager implements NewFrameListener, Paintable {
 			writer.writeLine(time);
 	}
 
-	void analyze(boolean b) throws FileNotFoundException {
+	void analyze(boolean b) throws IOException {
 		if (b) {
 			reader = new TrajectoryReader(trajectoriesName);
 			reader.parse();
@@ -71,17 +71,16 @@ public class Trajectory extends LabelableObject implements Iterable<Vector> {
 	 */
 	public void addPoint(double x, double y, long t) {
 		synchronized (points) {
-			Vector p = new Vector(x, y);
-			if (!points.isEmpty()) {
-				Vector last = points.get(points.size() - 1);
-				totalDistance += p.distance(last);
-			}
+			int n = points.size();
+			if (n > 0)
+				totalDistance += Math.hypot(x - points.getX(n - 1), y
+						- points.getY(n - 1));
 			totalTime = t;
-			points.add(p);
+			points.add(x, y);
 
 			if (labelPosition == null
-					|| p.x + p.y < labelPosition.x + labelPosition.y) {
-				labelPosition = p;
+					|| x + y < labelPosition.x + labelPosition.y) {
+				labelPosition = new Vector(x, y);
 			}
 		}
 	}
@@ -10,23 +10,50 @@
  ******************************************************************************/
 package dcc.mouseglob.trajectory;
 
-import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.InputMismatchException;
 import java.util.List;
-import java.util.Scanner;
 
 /**
+ * Reads trajectories files, as written by {@link TrajectoryWriter}.
+ * <p>
+ * The file is parsed from a sliding memory-mapped window by {@link CSVInput}.
+ * {@link #parse()} collects the points into {@link Trajectory} objects, while
+ * {@link #read(PointListener)} streams them to the caller, for files whose
+ * points would not fit in memory.
+ * 
  * @author Daniel Coelho de Castro
  */
 public class TrajectoryReader {
-	private static final String SEPARATOR = "\"?,\"?";
-	private Scanner scanner;
+
+	/**
+	 * Receives the points of a trajectories file as they are read.
+	 */
+	public interface PointListener {
+		/**
+		 * @param trajectory
+		 *            - index of the trajectory in {@link #getNames()}
+		 * @param time
+		 *            - time of the point, in ms from the start
+		 * @param x
+		 *            - horizontal coordinate, in px
+		 * @param y
+		 *            - vertical coordinate, in px
+		 */
+		void point(int trajectory, long time, double x, double y);
+	}
+
+	private final Path path;
 	private int numColumns;
 
 	private double scale;
 	private long time;
+	private List<String> names;
 	private List<Trajectory> trajectories;
 
 	/**
@@ -37,27 +64,73 @@ public class TrajectoryReader {
 	 * @throws FileNotFoundException
 	 */
 	public TrajectoryReader(String filename) throws FileNotFoundException {
-		scanner = new Scanner(new File(filename));
-		scanner.useDelimiter(SEPARATOR);
+		path = Paths.get(filename);
+		if (!Files.isRegularFile(path))
+			throw new FileNotFoundException(filename);
 	}
 
 	/**
 	 * Reads and parses the content of the coordinates file. Should be called
 	 * right after the constructor.
 	 * 
+	 * @throws IOException
 	 * @throws InputMismatchException
 	 */
-	public void parse() throws InputMismatchException {
-		scanner.nextLine(); // Skip header line
-		scanner.nextLine(); // Skip size line
-		numColumns = 2 + scanner.nextInt();
-		scanner.nextLine();
+	public void parse() throws IOException, InputMismatchException {
+		final List<Trajectory> trajectories = new ArrayList<Trajectory>();
+		read(new PointListener() {
+			@Override
+			public void point(int trajectory, long time, double x, double y) {
+				while (trajectories.size() <= trajectory) {
+					Trajectory t = new Trajectory();
+					t.setName(names.get(trajectories.size()));
+					trajectories.add(t);
+				}
+				trajectories.get(trajectory).addPoint(x, y, time);
+			}
+		});
+		for (int i = trajectories.size(); i < names.size(); i++) {
+			Trajectory t = new Trajectory();
+			t.setName(names.get(i));
+			trajectories.add(t);
+		}
+		this.trajectories = trajectories;
+	}
 
-		scanner.next(); // Skip "Scale" text
-		scale = scanner.nextFloat();
-		scanner.nextLine(); // Skip remainder of scale line
+	/**
+	 * Reads the coordinates file, passing each point to the listener instead
+	 * of keeping it.
+	 * 
+	 * @throws IOException
+	 * @throws InputMismatchException
+	 */
+	public void read(PointListener listener) throws IOException,
+			InputMismatchException {
+		try (CSVInput input = new CSVInput(path)) {
+			readHeader(input);
 
-		createTrajectories();
+			int n = names.size();
+			int skip = numColumns - 2;
+			time = 0;
+			while (input.nextLine()) {
+				if (input.isBlank())
+					continue;
+				// A recording still in progress may end with a partial line
+				if (!input.isTerminated() && !isComplete(input, n, skip))
+					break;
+				time = input.integer();
+				for (int i = 0; i < n; i++) {
+					double x = input.decimal();
+					double y = input.decimal();
+					if (scale != 0)
+						listener.point(i, time, x / scale, y / scale);
+					else
+						listener.point(i, time, x, y);
+					for (int s = 0; s < skip; s++)
+						input.skip();
+				}
+			}
+		}
 	}
 
 	/**
@@ -78,6 +151,15 @@ public class TrajectoryReader {
 		return time;
 	}
 
+	/**
+	 * Gets the names of the trajectories in the file.
+	 * 
+	 * @return the names, in the order of the columns
+	 */
+	public List<String> getNames() {
+		return names;
+	}
+
 	/**
 	 * Gets the trajectories acquired from the file.
 	 * 
@@ -87,34 +169,42 @@ public class TrajectoryReader {
 		return trajectories;
 	}
 
-	private void createTrajectories() throws InputMismatchException {
-		String[] tableLine = scanner.nextLine().split(SEPARATOR);
-		trajectories = new ArrayList<Trajectory>();
-		time = 0;
+	private void readHeader(CSVInput input) throws IOException {
+		nextHeaderLine(input); // Skip header line
+		nextHeaderLine(input); // Skip size line
+		nextHeaderLine(input);
+		numColumns = 2 + (int) input.integer();
 
-		int n = (tableLine.length - 1) / numColumns;
+		nextHeaderLine(input);
+		input.skip(); // Skip "Scale" text
+		scale = input.decimal();
+
+		nextHeaderLine(input);
+		readTableHeader(input.texts());
+	}
+
+	private static void nextHeaderLine(CSVInput input) throws IOException {
+		if (!input.nextLine())
+			throw new InputMismatchException("Incomplete header on line "
+					+ input.getLineNumber());
+	}
+
+	private void readTableHeader(List<String> tableLine) {
+		names = new ArrayList<String>();
+		int n = (tableLine.size() - 1) / numColumns;
 		for (int i = 0; i < n; i++) {
-			String s = tableLine[1 + i * numColumns];
-			Trajectory temp = new Trajectory();
-			temp.setName(s.substring(0, s.lastIndexOf(" x")));
-			trajectories.add(temp);
+			String s = tableLine.get(1 + i * numColumns);
+			names.add(s.substring(0, s.lastIndexOf(" x")));
 		}
+	}
 
-		int skip = numColumns - 2;
-
-		while (scanner.hasNextLine()) {
-			time = scanner.nextLong();
-			for (Trajectory trajectory : trajectories) {
-				double x = scanner.nextDouble();
-				double y = scanner.nextDouble();
-				if (scale != 0) {
-					trajectory.addPoint(x / scale, y / scale, time);
-				} else
-					trajectory.addPoint(x, y, time);
-				for (int s = 0; s < skip; s++)
-					scanner.next();
-			}
-			scanner.nextLine();
-		}
+	/**
+	 * Determines whether the current line has all the columns, including the
+	 * final key events column, without consuming any of them.
+	 */
+	private static boolean isComplete(CSVInput input, int trajectories,
+			int skip) {
+		return input.countFields() > 1 + trajectories * (2 + skip);
 	}
+
 }
@@ -11,30 +11,54 @@
 package dcc.mouseglob.trajectory;
 
 import java.io.FileNotFoundException;
-import java.io.PrintWriter;
-import java.text.DecimalFormat;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import dcc.graphics.math.Vector;
 import dcc.mouseglob.MouseGlob;
 import dcc.mouseglob.calibration.Calibration;
 import dcc.mouseglob.calibration.CalibrationModule;
 import dcc.mouseglob.maze.Zone;
+import dcc.mouseglob.maze.ZoneIndex;
 import dcc.mouseglob.maze.ZonesManager;
 import dcc.mouseglob.tracking.Tracker;
 import dcc.mouseglob.tracking.TrackingManager;
 
 /**
+ * Writes the trajectories file.
+ * <p>
+ * The frame thread only samples the trackers into a pooled row; a background
+ * thread formats the rows and writes them through a buffer, so a slow disk
+ * holds up tracking only once {@value #QUEUE_SIZE} rows are pending.
+ * 
  * @author Daniel Coelho de Castro
  */
 class TrajectoryWriter {
-	static final DecimalFormat FORMAT = (DecimalFormat) DecimalFormat
-			.getInstance();
-	static {
-		FORMAT.applyPattern("\"###.##\"");
-	}
-	private static final String SEPARATOR = ",";
+	private static final org.slf4j.Logger log = org.slf4j.LoggerFactory
+			.getLogger(TrajectoryWriter.class);
+
+	/** Decimal places of the coordinates, in cm. */
+	static final int DECIMALS = 2;
+	/** Decimal places of the scale, in cm/px. */
+	static final int SCALE_DECIMALS = 6;
+	private static final int QUEUE_SIZE = 256;
+	/** Longest time rows stay in the buffer before being flushed, in ms. */
+	private static final long FLUSH_INTERVAL = 1000;
 
-	private PrintWriter writer;
+	private static final Row END = new Row();
+
+	private final CSVOutput out;
+	private final BlockingQueue<Row> rows = new ArrayBlockingQueue<Row>(
+			QUEUE_SIZE);
+	private final BlockingQueue<Row> free = new ArrayBlockingQueue<Row>(
+			QUEUE_SIZE);
+	private final Thread thread;
+	private IOException error;
 
 	private long initialTime;
 	private long previousTime;
@@ -42,6 +66,7 @@ class TrajectoryWriter {
 	private TrackingManager trackingManager;
 	private ZonesManager zonesManager;
 	private Calibration calibration;
+	private final List<Zone> zonesInside = new ArrayList<Zone>();
 
 	/**
 	 * Constructor for the <code>CoordinatesWriter</code> class.
@@ -54,7 +79,14 @@ class TrajectoryWriter {
 			ZonesManager zonesManager) throws FileNotFoundException {
 		this.trackingManager = trackingManager;
 		this.zonesManager = zonesManager;
-		writer = new PrintWriter(filename);
+		out = new CSVOutput(new FileOutputStream(filename));
+		thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				writeRows();
+			}
+		}, "Trajectory writer");
+		thread.setDaemon(true);
 	}
 
 	/**
@@ -64,38 +96,43 @@ class TrajectoryWriter {
 	 */
 	void writeHeader(int width, int height) {
 		previousTime = initialTime = -1;
-		writer.println(MouseGlob.HEADER);
-
-		writer.println("Size" + SEPARATOR + width + "x" + height);
-		writer.println(zonesManager.getZoneCount() + SEPARATOR + "Zones");
 		calibration = CalibrationModule.getInstance().getModel();
-		double scale = calibration.getScale();
-		writer.println("Scale" + SEPARATOR + FORMAT.format(scale) + SEPARATOR
-				+ "cm/px");
-		writeTableHeader();
+		try {
+			out.text(MouseGlob.HEADER).newLine();
+			out.text("Size").separator().number(width).text("x")
+					.number(height).newLine();
+			out.number(zonesManager.getZoneCount()).separator().text("Zones")
+					.newLine();
+			out.text("Scale").separator()
+					.fixed(calibration.getScale(), SCALE_DECIMALS).separator()
+					.text("cm/px").newLine();
+			writeTableHeader();
+		} catch (IOException e) {
+			error = e;
+		}
+		thread.start();
 	}
 
 	/**
 	 * Writes the table header
 	 */
-	void writeTableHeader() {
-		writer.print("Time");
+	private void writeTableHeader() throws IOException {
+		out.text("Time");
 
 		for (Tracker tracker : trackingManager.getTrackers()) {
-			writer.print(SEPARATOR + tracker.getName() + " x" + SEPARATOR
-					+ tracker.getName() + " y");
+			out.separator().text(tracker.getName() + " x").separator()
+					.text(tracker.getName() + " y");
 
 			for (Zone zone : zonesManager.getZones())
-				writer.print(SEPARATOR + zone.getName());
+				out.separator().text(zone.getName());
 		}
 
-		writer.println();
+		out.newLine();
 	}
 
 	/**
-	 * Writes a line to the file containing the tracking time, pressed keys,
-	 * and, for each tracker, its position and the time of permanence inside
-	 * each zone.
+	 * Queues a line containing the tracking time, pressed keys, and, for each
+	 * tracker, its position and the time of permanence inside each zone.
 	 * 
 	 * @param time
 	 *            - the time which corresponds to this set of coordinates
@@ -105,35 +142,121 @@ class TrajectoryWriter {
 		if (initialTime == -1)
 			previousTime = initialTime = time;
 
-		StringBuilder line = new StringBuilder();
-		line.append(time - initialTime);
+		Row row = free.poll();
+		if (row == null)
+			row = new Row();
+		row.time = time - initialTime;
+		row.dt = time - previousTime;
 
-		long dt = time - previousTime;
-
-		for (Tracker t : trackingManager.getTrackers()) {
-			Vector positionPx = t.getPosition();
+		List<Tracker> trackers = trackingManager.getTrackers();
+		List<Zone> zones = zonesManager.getZones();
+		ZoneIndex index = zonesManager.getIndex();
+		row.resize(trackers.size(), zones.size());
+		int t = 0;
+		for (Tracker tracker : trackers) {
+			Vector positionPx = tracker.getPosition();
 			Vector positionCm = calibration.pxToCm(positionPx);
-			line.append(SEPARATOR).append(FORMAT.format(positionCm.x));
-			line.append(SEPARATOR).append(FORMAT.format(positionCm.y));
+			row.positions[2 * t] = positionCm.x;
+			row.positions[2 * t + 1] = positionCm.y;
 
-			for (Zone z : zonesManager.getZones())
-				line.append(SEPARATOR).append(z.contains(positionPx) ? dt : 0);
+			index.find(positionPx, zonesInside);
+			int z = t * row.zones;
+			for (Zone zone : zones)
+				row.inside[z++] = zonesInside.contains(zone);
+			t++;
 		}
+		row.keys = MouseGlob.keyEvent.getModel().getClassesDescriptions();
 
-		line.append(SEPARATOR).append(
-				MouseGlob.keyEvent.getModel().getClassesDescriptions());
-
-		writer.println(line.toString());
+		try {
+			rows.put(row);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
 
 		previousTime = time;
 	}
 
 	/**
-	 * Flushes and closes the file.
+	 * Writes the pending lines, then flushes and closes the file.
 	 */
 	void close() {
-		writer.flush();
-		writer.close();
+		boolean interrupted = false;
+		while (true) {
+			try {
+				if (thread.isAlive()) {
+					rows.put(END);
+					thread.join();
+				}
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		try {
+			out.close();
+		} catch (IOException e) {
+			if (error == null)
+				error = e;
+		}
+		if (error != null)
+			log.error("Could not write trajectories", error);
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	private void writeRows() {
+		try {
+			while (true) {
+				Row row = rows.poll(FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+				if (row == END)
+					return;
+				if (error != null)
+					continue;
+				try {
+					if (row == null) {
+						out.flush();
+					} else {
+						write(row);
+						free.offer(row);
+					}
+				} catch (IOException e) {
+					error = e;
+				}
+			}
+		} catch (InterruptedException e) {
+			// Closing
+		}
+	}
+
+	private void write(Row row) throws IOException {
+		out.number(row.time);
+		for (int t = 0; t < row.trackers; t++) {
+			out.separator().fixed(row.positions[2 * t], DECIMALS);
+			out.separator().fixed(row.positions[2 * t + 1], DECIMALS);
+			for (int z = t * row.zones; z < (t + 1) * row.zones; z++)
+				out.separator().number(row.inside[z] ? row.dt : 0);
+		}
+		out.separator().text(row.keys).newLine();
+	}
+
+	/**
+	 * One line of the file, as sampled on the frame thread.
+	 */
+	private static final class Row {
+		long time, dt;
+		int trackers, zones;
+		double[] positions = new double[0];
+		boolean[] inside = new boolean[0];
+		String keys;
+
+		void resize(int trackers, int zones) {
+			this.trackers = trackers;
+			this.zones = zones;
+			if (positions.length < 2 * trackers)
+				positions = new double[2 * trackers];
+			if (inside.length < trackers * zones)
+				inside = new boolean[trackers * zones];
+		}
 	}
 
 }
@@ -33,7 +33,7 @@ public class EventDurationStatisticsReport extends TextReport implements
 		this.eventManager = eventManager;
 		this.distance = distance;
 		if (time != null) {
-			time.addSeriesListener(this);
+			time.addSeriesListener(this, REFRESH_RATE);
 			update(time.getMs(-1));
 		}
 	}
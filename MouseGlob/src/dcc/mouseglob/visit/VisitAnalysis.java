@@ -12,7 +12,9 @@ package dcc.mouseglob.visit;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import dcc.event.EventManager.TimedEventManager;
 import dcc.event.FilteredTimedEventClass;
@@ -42,9 +44,14 @@ public class VisitAnalysis implements Analysis,
 	private static final int DEFAULT_THRESHOLD = 2000;
 
 	private final Time time;
+	private final Tracker tracker;
+	private final ZonesManager zonesManager;
+	private final List<Zone> zonesInside, zonesFound;
 	private final List<VisitEventClass> visitClasses, visitSequence;
+	private final Map<Zone, VisitEventClass> visitsByZone;
 	private final List<VisitListener> listeners;
 
+	private int frames;
 	private boolean isStartingVisit = true;
 	private VisitEventClass startingVisit = null;
 
@@ -53,12 +60,18 @@ public class VisitAnalysis implements Analysis,
 		int threshold = PropertiesManager.getInstance().getInteger(
 				THRESHOLD_KEY, DEFAULT_THRESHOLD);
 		this.time = time;
+		this.tracker = tracker;
+		this.zonesManager = zonesManager;
+		zonesInside = new ArrayList<Zone>();
+		zonesFound = new ArrayList<Zone>();
 		visitClasses = new ArrayList<VisitEventClass>();
+		visitsByZone = new HashMap<Zone, VisitEventClass>();
 		for (Zone zone : zonesManager.getZones()) {
 			VisitEventClass eventClass = new VisitEventClass(zone, tracker,
 					threshold);
 			eventClass.addListener(this);
 			visitClasses.add(eventClass);
+			visitsByZone.put(zone, eventClass);
 		}
 		visitSequence = new ArrayList<VisitEventClass>();
 		listeners = new ArrayList<VisitListener>();
@@ -67,11 +80,38 @@ public class VisitAnalysis implements Analysis,
 	@Override
 	public void update() {
 		long currentTime = time.getMs(-1);
-		for (VisitEventClass visitClass : visitClasses)
-			visitClass.update(currentTime);
+		zonesManager.getIndex().find(tracker.getAnalysedPosition(), zonesFound);
+		VisitEventClass.update(visitsByZone, zonesInside, zonesFound, frames,
+				currentTime);
+		frames++;
 		isStartingVisit = false;
 	}
 
+	/**
+	 * @return the number of frames analysed
+	 */
+	public int getFrameCount() {
+		return frames;
+	}
+
+	/**
+	 * Gets the zones the tracker was in at a given frame, as a bit mask over
+	 * the zones of {@link #getEventClasses()}; only the first 64 zones are
+	 * included.
+	 * 
+	 * @param frame
+	 *            - index of the frame
+	 * @return the mask
+	 */
+	public long getVisitMask(int frame) {
+		long mask = 0;
+		int n = Math.min(visitClasses.size(), Long.SIZE);
+		for (int i = 0; i < n; i++)
+			if (visitClasses.get(i).getMask().get(frame))
+				mask |= 1L << i;
+		return mask;
+	}
+
 	@Override
 	public List<VisitEventClass> getEventClasses() {
 		return Collections.unmodifiableList(visitClasses);
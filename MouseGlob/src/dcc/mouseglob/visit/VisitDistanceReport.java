@@ -30,7 +30,7 @@ public class VisitDistanceReport extends TextReport implements SeriesListener {
 			DistanceAnalysis distance) {
 		this.visitAnalysis = visitAnalysis;
 		this.distance = distance;
-		distance.addSeriesListener(this);
+		distance.addSeriesListener(this, REFRESH_RATE);
 		update();
 	}
 
@@ -31,7 +31,7 @@ public class VisitDurationStatisticsReport extends TextReport implements
 	public VisitDurationStatisticsReport(Time time, VisitAnalysis visitAnalysis) {
 		this.time = time;
 		this.visitAnalysis = visitAnalysis;
-		time.addSeriesListener(this);
+		time.addSeriesListener(this, REFRESH_RATE);
 		update(time.getMs(-1));
 	}
 
@@ -10,9 +10,13 @@
  ******************************************************************************/
 package dcc.mouseglob.visit;
 
+import java.util.List;
+import java.util.Map;
+
 import dcc.event.FilteredTimedEventClass;
 import dcc.graphics.binary.BinaryMask1D;
 import dcc.graphics.binary.BinarySeries;
+import dcc.graphics.binary.DefaultBinaryMask1D;
 import dcc.mouseglob.inspector.InspectableObject;
 import dcc.mouseglob.inspector.Inspector;
 import dcc.mouseglob.inspector.PropertyInspector;
@@ -28,6 +32,7 @@ class VisitEventClass extends FilteredTimedEventClass implements Treeable,
 	private final Zone zone;
 	private final Tracker tracker;
 	private final BinarySeries mask;
+	private final BinaryMask1D maskView;
 
 	private final TreeNode node;
 	private final VisitEventClassInspector inspector;
@@ -38,6 +43,12 @@ class VisitEventClass extends FilteredTimedEventClass implements Treeable,
 		tracker = t;
 
 		mask = new BinarySeries();
+		maskView = new DefaultBinaryMask1D() {
+			@Override
+			public boolean get(int i) {
+				return i < mask.size() ? mask.get(i) : isActive();
+			}
+		};
 
 		node = new TreeNode(this, getDescription(), getIconPath(z));
 		inspector = new VisitEventClassInspector();
@@ -51,9 +62,47 @@ class VisitEventClass extends FilteredTimedEventClass implements Treeable,
 		return tracker;
 	}
 
-	void update(long time) {
-		boolean isInside = zone.contains(tracker.getPosition());
+	/**
+	 * Updates the visits of a tracker to the zones it is now in, touching only
+	 * the visits to those zones and to the zones it has just left. The masks
+	 * of the other visits are filled in when they are next updated.
+	 * 
+	 * @param visits
+	 *            - the tracker's visits, by zone
+	 * @param wasInside
+	 *            - the zones the tracker was in, updated to those it is in
+	 * @param isInside
+	 *            - the zones the tracker is in
+	 * @param frame
+	 *            - index of the frame
+	 * @param time
+	 *            - time of the frame
+	 */
+	static void update(Map<Zone, VisitEventClass> visits,
+			List<Zone> wasInside, List<Zone> isInside, int frame, long time) {
+		for (Zone zone : wasInside) {
+			VisitEventClass visit = visits.get(zone);
+			if (visit != null && !isInside.contains(zone))
+				visit.update(frame, time, false);
+		}
+		for (Zone zone : isInside) {
+			VisitEventClass visit = visits.get(zone);
+			if (visit != null)
+				visit.update(frame, time, true);
+		}
+		wasInside.clear();
+		wasInside.addAll(isInside);
+	}
+
+	/**
+	 * Records whether the tracker is inside the zone at a frame, starting or
+	 * ending a visit if that changed.
+	 */
+	private void update(int frame, long time, boolean isInside) {
 		boolean wasInside = isActive();
+		// Frames skipped since the last update kept its state
+		if (mask.size() < frame)
+			mask.add(wasInside, frame - mask.size());
 		if (isInside) {
 			if (!wasInside) {
 				start(time);
@@ -78,8 +127,12 @@ class VisitEventClass extends FilteredTimedEventClass implements Treeable,
 		return zone.getName();
 	}
 
+	/**
+	 * @return whether the tracker was in the zone at each frame; frames after
+	 *         the last update keep its state
+	 */
 	public BinaryMask1D getMask() {
-		return mask;
+		return maskView;
 	}
 
 	@Override
@@ -11,8 +11,10 @@
 package dcc.mouseglob.visit;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import dcc.event.FilteredTimedEventClass;
 import dcc.event.TimedEvent;
@@ -24,6 +26,7 @@ import dcc.inject.Inject;
 import dcc.mouseglob.applet.NewFrameListener;
 import dcc.mouseglob.maze.Zone;
 import dcc.mouseglob.maze.ZoneEvent;
+import dcc.mouseglob.maze.ZoneIndex;
 import dcc.mouseglob.maze.ZoneListener;
 import dcc.mouseglob.maze.ZonesManager;
 import dcc.mouseglob.tracking.Tracker;
@@ -43,6 +46,13 @@ public final class VisitEventManager extends DefaultTreeable implements
 		FilteredTimedEventListener, TimedEventManager<VisitEventClass> {
 
 	private final List<VisitEventClass> visitClasses, sequence;
+	/**
+	 * Zones containing each tracker in the current frame.
+	 */
+	private final Map<Tracker, List<Zone>> zonesByTracker;
+	private final Map<Tracker, Map<Zone, VisitEventClass>> visitsByTracker;
+	private final List<Zone> zonesFound;
+	private int frames;
 
 	@Inject
 	private ZonesManager zonesManager;
@@ -58,6 +68,9 @@ public final class VisitEventManager extends DefaultTreeable implements
 		super("Visit Events", "/resource/zoneEvent16.png");
 		visitClasses = new ArrayList<VisitEventClass>();
 		sequence = new ArrayList<VisitEventClass>();
+		zonesByTracker = new HashMap<Tracker, List<Zone>>();
+		visitsByTracker = new HashMap<Tracker, Map<Zone, VisitEventClass>>();
+		zonesFound = new ArrayList<Zone>();
 
 		node = getNode();
 	}
@@ -66,6 +79,12 @@ public final class VisitEventManager extends DefaultTreeable implements
 		VisitEventClass vec = new VisitEventClass(z, t, 0);
 		visitClasses.add(vec);
 		node.add(vec);
+		Map<Zone, VisitEventClass> visits = visitsByTracker.get(t);
+		if (visits == null) {
+			visits = new HashMap<Zone, VisitEventClass>();
+			visitsByTracker.put(t, visits);
+		}
+		visits.put(z, vec);
 	}
 
 	/**
@@ -168,6 +187,8 @@ public final class VisitEventManager extends DefaultTreeable implements
 	}
 
 	private synchronized void trackerRemoved(Tracker t) {
+		zonesByTracker.remove(t);
+		visitsByTracker.remove(t);
 		Iterator<VisitEventClass> it = visitClasses.iterator();
 
 		while (it.hasNext()) {
@@ -185,6 +206,10 @@ public final class VisitEventManager extends DefaultTreeable implements
 	}
 
 	private synchronized void zoneRemoved(Zone z) {
+		for (Map<Zone, VisitEventClass> visits : visitsByTracker.values())
+			visits.remove(z);
+		for (List<Zone> zones : zonesByTracker.values())
+			zones.remove(z);
 		Iterator<VisitEventClass> it = visitClasses.iterator();
 
 		while (it.hasNext()) {
@@ -198,8 +223,26 @@ public final class VisitEventManager extends DefaultTreeable implements
 
 	@Override
 	public synchronized void newFrame(Image frame, long time) {
-		for (VisitEventClass visitClass : visitClasses)
-			visitClass.update(time);
+		int frameIndex = frames++;
+		if (visitClasses.isEmpty())
+			return;
+
+		// One index lookup per tracker instead of a test per zone, and only
+		// the visits to the zones it is in or has just left are updated
+		ZoneIndex index = zonesManager.getIndex();
+		for (Tracker t : trackingManager.getTrackers()) {
+			Map<Zone, VisitEventClass> visits = visitsByTracker.get(t);
+			if (visits == null)
+				continue;
+			List<Zone> zones = zonesByTracker.get(t);
+			if (zones == null) {
+				zones = new ArrayList<Zone>();
+				zonesByTracker.put(t, zones);
+			}
+			index.find(t.getPosition(), zonesFound);
+			VisitEventClass.update(visits, zones, zonesFound, frameIndex,
+					time);
+		}
 	}
 
 	@Override
@@ -232,6 +275,8 @@ public final class VisitEventManager extends DefaultTreeable implements
 
 		case ZONES_CLEARED:
 			visitClasses.clear();
+			visitsByTracker.clear();
+			zonesByTracker.clear();
 			break;
 		}
 	}
@@ -29,7 +29,7 @@ public class VisitTimelineReport extends EventTimelineReport implements
 		this.time = time;
 		getPlot().setMinTime(time.getMs(0));
 		getPlot().setMaxTime(time.getMs(-1));
-		time.addSeriesListener(this);
+		time.addSeriesListener(this, REFRESH_RATE);
 	}
 
 	@Override
@@ -22,7 +22,11 @@ public class Tree extends AbstractModule<TreeManager, TreeUI, TreeController> {
 		instance = this;
 	}
 
+	/**
+	 * @return the manager of the tree, or <code>null</code> if no tree has
+	 *         been built, as when tracking without a window
+	 */
 	public static TreeManager getManager() {
-		return instance.getModel();
+		return instance == null ? null : instance.getModel();
 	}
 }
@@ -14,45 +14,112 @@ import java.io.File;
 import java.lang.annotation.Annotation;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 
+import dcc.inject.InjectionIndex;
+
+/**
+ * Finds the application's classes, and those of external modules under
+ * <code>ext</code>, by superclass or annotation. Only the classes found are
+ * loaded, and none is initialised until it is used.
+ * <p>
+ * The application's classes are looked up in the {@link InjectionIndex}
+ * generated when they were compiled, which records their annotations; only
+ * external modules, which the processor never saw, are scanned, into a
+ * {@link ClassIndex} of their class file headers cached on disk. Without a
+ * generated index, as when running classes compiled without the processor,
+ * the application's classes are scanned too.
+ */
 public class ClassCache {
 
+	private static final String INDEX_FILE_KEY = "classcache.index";
+
 	private static ClassCache instance;
 
-	public static ClassCache getInstance() {
+	public static synchronized ClassCache getInstance() {
 		if (instance == null)
 			instance = new ClassCache();
 		return instance;
 	}
 
-	private final Set<Class<?>> loadedClasses;
+	private final Set<String> compiled;
+	private final ClassIndex index;
 	private final Map<String, Class<?>> forName;
 
 	private ClassCache() {
-		loadedClasses = new CacheLoader().load();
+		String projectRoot = System.getProperty("user.dir");
+		File bin = new File(projectRoot, "bin");
+		File ext = new File(projectRoot, "ext");
+
+		compiled = InjectionIndex.getIndexedClasses();
+		index = new ClassIndex(getIndexFile());
+		if (compiled.isEmpty()) {
+			if (bin.exists())
+				index.add(bin, true);
+			else
+				index.add(new File(projectRoot), false);
+		}
+
+		if (ext.exists())
+			index.add(ext, true);
+		index.save();
 
 		forName = new HashMap<String, Class<?>>();
-		for (Class<?> clazz : loadedClasses)
-			forName.put(clazz.getName(), clazz);
 	}
 
+	private static File getIndexFile() {
+		String path = System.getProperty(INDEX_FILE_KEY);
+		if (path != null)
+			return path.isEmpty() ? null : new File(path);
+		return new File(new File(System.getProperty("user.home"),
+				".mouseglob"), "class-index.bin");
+	}
+
+	/**
+	 * Loads every known class; prefer the more specific queries, which only
+	 * load the classes they return.
+	 */
 	public Set<Class<?>> getAll() {
-		return new HashSet<>(loadedClasses);
+		Set<String> names = new LinkedHashSet<String>(compiled);
+		names.addAll(index.getNames());
+		return load(names);
+	}
+
+	public synchronized Class<?> forName(String className) {
+		Class<?> clazz = forName.get(className);
+		if (clazz == null && !forName.containsKey(className)) {
+			clazz = compiled.contains(className) ? loadCompiled(className)
+					: index.load(className);
+			forName.put(className, clazz);
+		}
+		return clazz;
 	}
 
-	public Class<?> forName(String className) {
-		return forName.get(className);
+	private static Class<?> loadCompiled(String className) {
+		try {
+			return Class.forName(className, false,
+					ClassCache.class.getClassLoader());
+		} catch (ClassNotFoundException | LinkageError e) {
+			return null;
+		}
 	}
 
 	public <T> Class<? extends T> forName(String className, Class<T> superclass) {
 		return forName(className).asSubclass(superclass);
 	}
 
+	/**
+	 * The generated index does not record superclasses, so this loads every
+	 * application class; external modules are still filtered by their
+	 * headers.
+	 */
 	public <T> Set<Class<? extends T>> subclasses(Class<T> superclass) {
+		Set<String> names = new LinkedHashSet<String>(compiled);
+		names.addAll(index.getSubtypes(superclass.getName()));
 		Set<Class<? extends T>> subclasses = new HashSet<>();
-		for (Class<?> clazz : loadedClasses)
+		for (Class<?> clazz : load(names))
 			if (superclass.isAssignableFrom(clazz))
 				subclasses.add(clazz.asSubclass(superclass));
 		return subclasses;
@@ -60,48 +127,46 @@ public class ClassCache {
 
 	public Set<Class<?>> withAnnotation(Class<? extends Annotation> annotation) {
 		Set<Class<?>> subclasses = new HashSet<>();
-		for (Class<?> clazz : loadedClasses)
+		for (Class<?> clazz : load(annotated(annotation)))
 			if (clazz.isAnnotationPresent(annotation))
 				subclasses.add(clazz);
 		return subclasses;
 	}
 
+	/**
+	 * The annotation must be one the injection index processor is asked to
+	 * record for the application's classes to be found.
+	 */
 	public <T> Set<Class<? extends T>> subclassesWithAnnotation(
 			Class<T> superclass, Class<? extends Annotation> annotation) {
+		Set<String> names = index.getAnnotated(annotation);
+		names.retainAll(index.getSubtypes(superclass.getName()));
+		names.addAll(InjectionIndex.getClassesAnnotatedWith(annotation
+				.getCanonicalName()));
 		Set<Class<? extends T>> subclasses = new HashSet<>();
-		for (Class<?> clazz : loadedClasses)
+		for (Class<?> clazz : load(names))
 			if (superclass.isAssignableFrom(clazz)
 					&& clazz.isAnnotationPresent(annotation))
 				subclasses.add(clazz.asSubclass(superclass));
 		return subclasses;
 	}
 
-	private class CacheLoader {
-
-		private final Set<Class<?>> loadedClasses = new HashSet<Class<?>>();
-
-		private Set<Class<?>> load() {
-			String projectRoot = System.getProperty("user.dir");
-			File bin = new File(projectRoot, "bin");
-			File ext = new File(projectRoot, "ext");
-
-			if (bin.exists())
-				loadFrom(bin, true);
-			else
-				loadFrom(new File(projectRoot), false);
-
-			if (ext.exists())
-				loadFrom(ext, true);
-
-			return loadedClasses;
-		}
+	private Set<String> annotated(Class<? extends Annotation> annotation) {
+		Set<String> names = new LinkedHashSet<String>(
+				index.getAnnotated(annotation));
+		names.addAll(InjectionIndex.getClassesAnnotatedWith(annotation
+				.getCanonicalName()));
+		return names;
+	}
 
-		private void loadFrom(File path, boolean recursive) {
-			ExternalClassLoader loader = new ExternalClassLoader(path,
-					recursive);
-			loadedClasses.addAll(loader.loadClasses());
+	private Set<Class<?>> load(Set<String> names) {
+		Set<Class<?>> classes = new HashSet<Class<?>>();
+		for (String name : names) {
+			Class<?> clazz = forName(name);
+			if (clazz != null)
+				classes.add(clazz);
 		}
-
+		return classes;
 	}
 
 }
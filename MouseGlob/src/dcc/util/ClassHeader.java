@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Daniel Coelho de Castro.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Daniel Coelho de Castro - initial API and implementation
+ ******************************************************************************/
+package dcc.util;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What a class file says about its class without the class being loaded: its
+ * name, superclass, interfaces and the runtime-visible annotations on the
+ * class itself. Names are binary names, as returned by {@link Class#getName()}.
+ */
+public final class ClassHeader {
+
+	private static final int MAGIC = 0xCAFEBABE;
+	private static final String ANNOTATIONS = "RuntimeVisibleAnnotations";
+
+	private final String name;
+	private final String superName;
+	private final List<String> interfaces;
+	private final List<String> annotations;
+
+	ClassHeader(String name, String superName, List<String> interfaces,
+			List<String> annotations) {
+		this.name = name;
+		this.superName = superName;
+		this.interfaces = interfaces;
+		this.annotations = annotations;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the superclass name, or <code>null</code> for
+	 *         {@link Object} and module descriptors
+	 */
+	public String getSuperName() {
+		return superName;
+	}
+
+	public List<String> getInterfaces() {
+		return interfaces;
+	}
+
+	public List<String> getAnnotations() {
+		return annotations;
+	}
+
+	@Override
+	public String toString() {
+		return name + " extends " + superName + " implements " + interfaces
+				+ " " + annotations;
+	}
+
+	/**
+	 * Reads the header of a class file, skipping the fields and methods.
+	 * 
+	 * @throws IOException
+	 *             if the stream is not a class file
+	 */
+	public static ClassHeader read(InputStream stream) throws IOException {
+		DataInputStream in = new DataInputStream(stream);
+		if (in.readInt() != MAGIC)
+			throw new IOException("Not a class file");
+		in.readUnsignedShort(); // minor version
+		in.readUnsignedShort(); // major version
+
+		// Only the UTF-8 and class entries of the constant pool are kept
+		int count = in.readUnsignedShort();
+		String[] utf8 = new String[count];
+		int[] classes = new int[count];
+		for (int i = 1; i < count; i++) {
+			int tag = in.readUnsignedByte();
+			switch (tag) {
+			case 1: // Utf8, in the same modified encoding as readUTF
+				utf8[i] = in.readUTF();
+				break;
+			case 7: // Class
+				classes[i] = in.readUnsignedShort();
+				break;
+			case 8: // String
+			case 16: // MethodType
+			case 19: // Module
+			case 20: // Package
+				in.skipBytes(2);
+				break;
+			case 15: // MethodHandle
+				in.skipBytes(3);
+				break;
+			case 3: // Integer
+			case 4: // Float
+			case 9: // Fieldref
+			case 10: // Methodref
+			case 11: // InterfaceMethodref
+			case 12: // NameAndType
+			case 17: // Dynamic
+			case 18: // InvokeDynamic
+				in.skipBytes(4);
+				break;
+			case 5: // Long
+			case 6: // Double
+				in.skipBytes(8);
+				i++; // takes two entries
+				break;
+			default:
+				throw new IOException("Unknown constant pool tag " + tag);
+			}
+		}
+
+		in.readUnsignedShort(); // access flags
+		String name = className(utf8, classes, in.readUnsignedShort());
+		String superName = className(utf8, classes, in.readUnsignedShort());
+		int n = in.readUnsignedShort();
+		List<String> interfaces = new ArrayList<String>(n);
+		for (int i = 0; i < n; i++)
+			interfaces.add(className(utf8, classes, in.readUnsignedShort()));
+
+		skipMembers(in); // fields
+		skipMembers(in); // methods
+
+		List<String> annotations = Collections.emptyList();
+		n = in.readUnsignedShort();
+		for (int i = 0; i < n; i++) {
+			String attribute = utf8[in.readUnsignedShort()];
+			int length = in.readInt();
+			if (ANNOTATIONS.equals(attribute)) {
+				int m = in.readUnsignedShort();
+				annotations = new ArrayList<String>(m);
+				for (int j = 0; j < m; j++) {
+					annotations.add(descriptorToName(utf8[in
+							.readUnsignedShort()]));
+					skipElementValuePairs(in);
+				}
+				break;
+			}
+			skipFully(in, length);
+		}
+
+		return new ClassHeader(name, superName,
+				Collections.unmodifiableList(interfaces),
+				Collections.unmodifiableList(annotations));
+	}
+
+	private static String className(String[] utf8, int[] classes, int index) {
+		if (index == 0)
+			return null;
+		return utf8[classes[index]].replace('/', '.');
+	}
+
+	/**
+	 * Converts a field descriptor such as <code>Ldcc/Foo$Bar;</code> to the
+	 * binary name <code>dcc.Foo$Bar</code>.
+	 */
+	private static String descriptorToName(String descriptor) {
+		return descriptor.substring(1, descriptor.length() - 1).replace('/',
+				'.');
+	}
+
+	private static void skipMembers(DataInput in) throws IOException {
+		int count = in.readUnsignedShort();
+		for (int i = 0; i < count; i++) {
+			in.skipBytes(6); // access flags, name, descriptor
+			int attributes = in.readUnsignedShort();
+			for (int j = 0; j < attributes; j++) {
+				in.skipBytes(2);
+				skipFully(in, in.readInt());
+			}
+		}
+	}
+
+	/**
+	 * Skips the element values of an annotation whose type has been read.
+	 */
+	private static void skipElementValuePairs(DataInput in) throws IOException {
+		int pairs = in.readUnsignedShort();
+		for (int i = 0; i < pairs; i++) {
+			in.skipBytes(2); // element name
+			skipElementValue(in);
+		}
+	}
+
+	private static void skipElementValue(DataInput in) throws IOException {
+		int tag = in.readUnsignedByte();
+		switch (tag) {
+		case 'e': // enum: type and constant names
+			in.skipBytes(4);
+			break;
+		case '@': // nested annotation
+			in.skipBytes(2);
+			skipElementValuePairs(in);
+			break;
+		case '[':
+			int values = in.readUnsignedShort();
+			for (int i = 0; i < values; i++)
+				skipElementValue(in);
+			break;
+		default: // constant or class
+			in.skipBytes(2);
+		}
+	}
+
+	private static void skipFully(DataInput in, int length) throws IOException {
+		while (length > 0) {
+			int skipped = in.skipBytes(length);
+			if (skipped <= 0)
+				throw new IOException("Truncated class file");
+			length -= skipped;
+		}
+	}
+
+}
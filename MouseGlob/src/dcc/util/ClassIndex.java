@@ -0,0 +1,556 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Daniel Coelho de Castro.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Daniel Coelho de Castro - initial API and implementation
+ ******************************************************************************/
+package dcc.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
+import java.lang.annotation.Inherited;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * An index of the class files under some directories and JAR files, built
+ * from their headers only, so that classes can be found by superclass,
+ * interface or annotation without loading any of them. Classes are loaded,
+ * without being initialised, only when asked for.
+ * <p>
+ * Each JAR, and the loose class files of each directory, is a source of the
+ * index. The headers of a source are cached on disk, and only read again when
+ * its fingerprint changes: the modification time of a directory together with
+ * a hash of its class files' names, sizes and modification times, or a hash
+ * of the names, sizes and CRCs of a JAR's class file entries, so that a JAR
+ * copied or rebuilt with the same content is not read again. The cache file
+ * may be shared by several projects, whose sources are kept when saving.
+ */
+public final class ClassIndex {
+
+	private static final org.slf4j.Logger log = org.slf4j.LoggerFactory
+			.getLogger(ClassIndex.class);
+	private static final int MAGIC = 0x58444943; // "CIDX"
+	private static final int VERSION = 2;
+
+	private final File cacheFile;
+	private final Map<String, Source> cached;
+	private final List<Source> sources;
+	private final Map<String, ClassHeader> headers;
+	private final Map<String, Source> sourceOf;
+	private boolean changed;
+
+	/**
+	 * @param cacheFile
+	 *            - where the index is cached, or <code>null</code> not to
+	 *            cache it
+	 */
+	public ClassIndex(File cacheFile) {
+		this.cacheFile = cacheFile;
+		cached = readCache(cacheFile);
+		sources = new ArrayList<Source>();
+		headers = new LinkedHashMap<String, ClassHeader>();
+		sourceOf = new HashMap<String, Source>();
+	}
+
+	/**
+	 * Indexes the class files and JAR files under a directory, or a single JAR
+	 * file.
+	 * 
+	 * @param recursive
+	 *            - whether to look into subdirectories; when not, class files
+	 *            must be in the default package
+	 */
+	public void add(File root, boolean recursive) {
+		if (root.isFile()) {
+			if (root.getName().endsWith(".jar"))
+				addSource(root, false, true);
+			return;
+		}
+		addSource(root, recursive, false);
+		for (File jar : findJars(root, recursive, new ArrayList<File>()))
+			addSource(jar, false, true);
+	}
+
+	private void addSource(File file, boolean recursive, boolean jar) {
+		String key = file.getAbsolutePath() + (recursive ? "/**" : "");
+		long modified = jar ? 0 : lastModified(file, recursive);
+		long hash = jar ? hashJar(file) : hash(file, recursive);
+
+		Source source = cached.get(key);
+		if (source == null || source.modified != modified
+				|| source.hash != hash) {
+			source = new Source(key, file, modified, hash);
+			try {
+				if (jar)
+					readJar(source);
+				else
+					readDirectory(source, file, recursive);
+			} catch (IOException e) {
+				log.warn("Could not index {}: {}", file, e.toString());
+			}
+			changed = true;
+			log.debug("Indexed {} ({} classes)", file, source.headers.size());
+		} else {
+			source.root = file;
+		}
+		sources.add(source);
+		for (ClassHeader header : source.headers) {
+			// Same precedence as the legacy scan: first source wins
+			if (!headers.containsKey(header.getName())) {
+				headers.put(header.getName(), header);
+				sourceOf.put(header.getName(), source);
+			}
+		}
+	}
+
+	/**
+	 * Writes the index to its cache file if any source was read again. The
+	 * sources cached by other indices, such as those of other projects, are
+	 * kept unless they no longer exist.
+	 */
+	public void save() {
+		if (cacheFile == null || !changed)
+			return;
+		// Read again, as another process may have saved since
+		Map<String, Source> merged = new LinkedHashMap<String, Source>();
+		for (Source source : readCache(cacheFile).values())
+			if (source.getFile().exists())
+				merged.put(source.key, source);
+		for (Source source : sources)
+			merged.put(source.key, source);
+		try {
+			File parent = cacheFile.getAbsoluteFile().getParentFile();
+			if (parent != null)
+				Files.createDirectories(parent.toPath());
+			File temp = new File(cacheFile.getPath() + ".tmp");
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(temp)));
+			try {
+				writeCache(out, merged.values());
+			} finally {
+				out.close();
+			}
+			Files.move(temp.toPath(), cacheFile.toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+			changed = false;
+		} catch (IOException e) {
+			log.warn("Could not save class index to {}: {}", cacheFile,
+					e.toString());
+		}
+	}
+
+	/**
+	 * @return the names of all indexed classes
+	 */
+	public Set<String> getNames() {
+		return Collections.unmodifiableSet(headers.keySet());
+	}
+
+	/**
+	 * @return the header of an indexed class, or <code>null</code>
+	 */
+	public ClassHeader get(String name) {
+		return headers.get(name);
+	}
+
+	/**
+	 * Finds the indexed classes that may be assignable to a type, the type
+	 * itself included. Those whose ancestry leaves the index through a class
+	 * outside the platform are included too, as they cannot be ruled out.
+	 */
+	public Set<String> getSubtypes(String type) {
+		Map<String, Boolean> memo = new HashMap<String, Boolean>();
+		Set<String> subtypes = new LinkedHashSet<String>();
+		for (String name : headers.keySet())
+			if (isSubtype(name, type, memo))
+				subtypes.add(name);
+		return subtypes;
+	}
+
+	private boolean isSubtype(String name, String type, Map<String, Boolean> memo) {
+		if (name.equals(type))
+			return true;
+		Boolean known = memo.get(name);
+		if (known != null)
+			return known;
+		ClassHeader header = headers.get(name);
+		boolean result;
+		if (header == null) {
+			result = !isPlatform(name);
+		} else {
+			memo.put(name, false); // guards against cycles in broken input
+			result = header.getSuperName() != null
+					&& isSubtype(header.getSuperName(), type, memo);
+			for (String i : header.getInterfaces())
+				result = result || isSubtype(i, type, memo);
+		}
+		memo.put(name, result);
+		return result;
+	}
+
+	private static boolean isPlatform(String name) {
+		return name.startsWith("java.") || name.startsWith("javax.")
+				|| name.startsWith("jdk.") || name.startsWith("sun.");
+	}
+
+	/**
+	 * Finds the indexed classes carrying an annotation, including those that
+	 * inherit it from an indexed superclass when it is {@link Inherited}.
+	 */
+	public Set<String> getAnnotated(Class<? extends Annotation> annotation) {
+		String type = annotation.getName();
+		boolean inherited = annotation.isAnnotationPresent(Inherited.class);
+		Set<String> annotated = new LinkedHashSet<String>();
+		for (ClassHeader header : headers.values()) {
+			for (ClassHeader h = header; h != null; h = inherited
+					&& h.getSuperName() != null ? headers.get(h.getSuperName())
+					: null) {
+				if (h.getAnnotations().contains(type)) {
+					annotated.add(header.getName());
+					break;
+				}
+			}
+		}
+		return annotated;
+	}
+
+	/**
+	 * Loads an indexed class, without initialising it, from the source it was
+	 * indexed in.
+	 * 
+	 * @return the class, or <code>null</code> if it is not indexed or cannot
+	 *         be loaded
+	 */
+	public Class<?> load(String name) {
+		Source source = sourceOf.get(name);
+		if (source == null)
+			return null;
+		try {
+			return Class.forName(name, false, source.getClassLoader());
+		} catch (ClassNotFoundException e) {
+			log.warn("Indexed class {} not found", name, e);
+		} catch (LinkageError e) {
+			log.warn("Indexed class {} could not be loaded", name, e);
+		}
+		return null;
+	}
+
+	/**
+	 * Loads indexed classes, without initialising them, skipping those that
+	 * cannot be loaded.
+	 */
+	public Set<Class<?>> load(Collection<String> names) {
+		Set<Class<?>> classes = new LinkedHashSet<Class<?>>();
+		for (String name : names) {
+			Class<?> clazz = load(name);
+			if (clazz != null)
+				classes.add(clazz);
+		}
+		return classes;
+	}
+
+	private static final class Source {
+		final String key;
+		final long modified;
+		final long hash;
+		final List<ClassHeader> headers = new ArrayList<ClassHeader>();
+		File root;
+		private ClassLoader classLoader;
+
+		Source(String key, File root, long modified, long hash) {
+			this.key = key;
+			this.root = root;
+			this.modified = modified;
+			this.hash = hash;
+		}
+
+		/**
+		 * @return the directory or JAR file this source was read from, as
+		 *         named by its key
+		 */
+		File getFile() {
+			return new File(key.endsWith("/**") ? key.substring(0,
+					key.length() - 3) : key);
+		}
+
+		synchronized ClassLoader getClassLoader() {
+			if (classLoader == null) {
+				try {
+					classLoader = new URLClassLoader(new URL[] { root.toURI()
+							.toURL() });
+				} catch (MalformedURLException e) {
+					throw new RuntimeException(e); // Shouldn't happen
+				}
+			}
+			return classLoader;
+		}
+	}
+
+	private static void readJar(Source source) throws IOException {
+		JarFile jar = new JarFile(source.root);
+		try {
+			for (JarEntry entry : Collections.list(jar.entries())) {
+				if (!isClassFile(entry.getName()))
+					continue;
+				InputStream in = new BufferedInputStream(
+						jar.getInputStream(entry));
+				try {
+					source.headers.add(ClassHeader.read(in));
+				} catch (IOException e) {
+					log.warn("Skipping {}!{}: {}", source.root,
+							entry.getName(), e.toString());
+				} finally {
+					in.close();
+				}
+			}
+		} finally {
+			jar.close();
+		}
+	}
+
+	private static void readDirectory(Source source, File dir,
+			boolean recursive) throws IOException {
+		File[] files = dir.listFiles();
+		if (files == null)
+			return;
+		for (File file : files) {
+			if (file.isDirectory()) {
+				if (recursive)
+					readDirectory(source, file, true);
+			} else if (isClassFile(file.getName())) {
+				InputStream in = new BufferedInputStream(new FileInputStream(
+						file));
+				try {
+					source.headers.add(ClassHeader.read(in));
+				} catch (IOException e) {
+					log.warn("Skipping {}: {}", file, e.toString());
+				} finally {
+					in.close();
+				}
+			}
+		}
+	}
+
+	private static boolean isClassFile(String name) {
+		return name.endsWith(".class") && !name.endsWith("module-info.class")
+				&& !name.endsWith("package-info.class");
+	}
+
+	private static List<File> findJars(File dir, boolean recursive,
+			List<File> jars) {
+		File[] files = dir.listFiles();
+		if (files != null)
+			for (File file : files)
+				if (file.isDirectory()) {
+					if (recursive)
+						findJars(file, true, jars);
+				} else if (file.getName().endsWith(".jar")) {
+					jars.add(file);
+				}
+		return jars;
+	}
+
+	/**
+	 * @return the latest modification time of a directory and of the class
+	 *         files in it
+	 */
+	private static long lastModified(File dir, boolean recursive) {
+		long modified = dir.lastModified();
+		File[] files = dir.listFiles();
+		if (files != null)
+			for (File file : files)
+				if (file.isDirectory()) {
+					if (recursive)
+						modified = Math.max(modified,
+								lastModified(file, true));
+				} else if (isClassFile(file.getName())) {
+					modified = Math.max(modified, file.lastModified());
+				}
+		return modified;
+	}
+
+	/**
+	 * Hashes the paths, sizes and modification times of the class files in a
+	 * directory, which changes whenever a class is added, removed or rebuilt.
+	 */
+	private static long hash(File dir, boolean recursive) {
+		long hash = 0xcbf29ce484222325L; // FNV-1a
+		File[] files = dir.listFiles();
+		if (files == null)
+			return hash;
+		// Directory listings come in no particular order
+		Arrays.sort(files);
+		for (File file : files) {
+			long h;
+			if (file.isDirectory()) {
+				if (!recursive)
+					continue;
+				h = hash(file, true);
+			} else if (isClassFile(file.getName())) {
+				h = file.getName().hashCode() * 31L + file.length();
+				h = h * 31 + file.lastModified();
+			} else {
+				continue;
+			}
+			hash = mix(hash, h);
+			hash ^= file.getName().hashCode();
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	/**
+	 * Hashes the names, sizes and CRCs of the class files in a JAR, read from
+	 * its central directory, which only changes with its content.
+	 */
+	private static long hashJar(File file) {
+		long hash = 0;
+		try {
+			JarFile jar = new JarFile(file);
+			try {
+				for (JarEntry entry : Collections.list(jar.entries())) {
+					if (!isClassFile(entry.getName()))
+						continue;
+					long h = entry.getName().hashCode() * 31L
+							+ entry.getSize();
+					// Summed, as entries come in the order they were written
+					hash += mix(0xcbf29ce484222325L, h * 31 + entry.getCrc());
+				}
+			} finally {
+				jar.close();
+			}
+		} catch (IOException e) {
+			// Read again, and the failure reported, by readJar
+			return file.length();
+		}
+		return hash;
+	}
+
+	/**
+	 * Mixes a value into an FNV-1a hash, one byte at a time.
+	 */
+	private static long mix(long hash, long value) {
+		for (int i = 0; i < 8; i++) {
+			hash ^= (value >>> (8 * i)) & 0xff;
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	private static void writeCache(DataOutputStream out,
+			Collection<Source> sources) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(sources.size());
+		for (Source source : sources) {
+			out.writeUTF(source.key);
+			out.writeLong(source.modified);
+			out.writeLong(source.hash);
+			out.writeInt(source.headers.size());
+			for (ClassHeader header : source.headers) {
+				out.writeUTF(header.getName());
+				out.writeUTF(header.getSuperName() != null ? header
+						.getSuperName() : "");
+				writeNames(out, header.getInterfaces());
+				writeNames(out, header.getAnnotations());
+			}
+		}
+	}
+
+	private static void writeNames(DataOutputStream out, List<String> names)
+			throws IOException {
+		out.writeShort(names.size());
+		for (String name : names)
+			out.writeUTF(name);
+	}
+
+	private static Map<String, Source> readCache(File cacheFile) {
+		Map<String, Source> cached = new HashMap<String, Source>();
+		if (cacheFile == null || !cacheFile.isFile())
+			return cached;
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(cacheFile)));
+			try {
+				if (in.readInt() != MAGIC || in.readInt() != VERSION)
+					return cached;
+				int sources = in.readInt();
+				for (int s = 0; s < sources; s++) {
+					Source source = new Source(in.readUTF(), null,
+							in.readLong(), in.readLong());
+					int count = in.readInt();
+					for (int i = 0; i < count; i++) {
+						String name = in.readUTF();
+						String superName = in.readUTF();
+						source.headers.add(new ClassHeader(name, superName
+								.isEmpty() ? null : superName, readNames(in),
+								readNames(in)));
+					}
+					cached.put(source.key, source);
+				}
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			log.warn("Ignoring class index cache {}: {}", cacheFile,
+					e.toString());
+			cached.clear();
+		}
+		return cached;
+	}
+
+	private static List<String> readNames(DataInputStream in)
+			throws IOException {
+		int n = in.readUnsignedShort();
+		if (n == 0)
+			return Collections.emptyList();
+		List<String> names = new ArrayList<String>(n);
+		for (int i = 0; i < n; i++)
+			names.add(in.readUTF());
+		return Collections.unmodifiableList(names);
+	}
+
+	/**
+	 * @return the keys of the sources found in the cache file
+	 */
+	Set<String> getCachedKeys() {
+		return Collections.unmodifiableSet(cached.keySet());
+	}
+
+	/**
+	 * @return whether any source was read from class files rather than from
+	 *         the cache
+	 */
+	boolean isChanged() {
+		return changed;
+	}
+
+}
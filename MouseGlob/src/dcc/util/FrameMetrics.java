@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Daniel Coelho de Castro.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Daniel Coelho de Castro - initial API and implementation
+ ******************************************************************************/
+package dcc.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters for frames handed over from one thread to another: how many were
+ * passed on or dropped, how long they waited, and how full the handoff was.
+ * Updates are cheap enough for every frame; reads may come from any thread.
+ */
+public class FrameMetrics {
+
+	private final AtomicLong published = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong consumed = new AtomicLong();
+
+	private final AtomicLong latencyTotal = new AtomicLong();
+	private volatile long latencyLast;
+	private volatile long latencyMax;
+
+	private final AtomicLong occupancyTotal = new AtomicLong();
+	private volatile int occupancyMax;
+
+	/**
+	 * Records a frame passed on to the consumer.
+	 * 
+	 * @param occupancy
+	 *            - frames waiting, this one included
+	 */
+	public void published(int occupancy) {
+		published.incrementAndGet();
+		occupancyTotal.addAndGet(occupancy);
+		if (occupancy > occupancyMax)
+			occupancyMax = occupancy;
+	}
+
+	/**
+	 * Records a frame that could not be passed on.
+	 */
+	public void dropped() {
+		dropped.incrementAndGet();
+	}
+
+	/**
+	 * Records a frame taken by the consumer.
+	 * 
+	 * @param latency
+	 *            - time since it was published, in nanoseconds
+	 */
+	public void consumed(long latency) {
+		consumed.incrementAndGet();
+		latencyTotal.addAndGet(latency);
+		latencyLast = latency;
+		if (latency > latencyMax)
+			latencyMax = latency;
+	}
+
+	public long getPublished() {
+		return published.get();
+	}
+
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	public long getConsumed() {
+		return consumed.get();
+	}
+
+	/**
+	 * @return the latency of the last frame consumed, in milliseconds
+	 */
+	public double getLatency() {
+		return latencyLast / 1e6;
+	}
+
+	/**
+	 * @return the mean latency, in milliseconds
+	 */
+	public double getMeanLatency() {
+		long n = consumed.get();
+		return n == 0 ? 0 : latencyTotal.get() / 1e6 / n;
+	}
+
+	/**
+	 * @return the longest latency, in milliseconds
+	 */
+	public double getMaxLatency() {
+		return latencyMax / 1e6;
+	}
+
+	/**
+	 * @return the mean number of frames waiting when one was published
+	 */
+	public double getMeanOccupancy() {
+		long n = published.get();
+		return n == 0 ? 0 : (double) occupancyTotal.get() / n;
+	}
+
+	public int getMaxOccupancy() {
+		return occupancyMax;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("published %d, dropped %d, latency %.1f ms "
+				+ "(mean %.1f, max %.1f), occupancy mean %.1f, max %d",
+				getPublished(), getDropped(), getLatency(), getMeanLatency(),
+				getMaxLatency(), getMeanOccupancy(), getMaxOccupancy());
+	}
+
+}
@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Daniel Coelho de Castro.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Daniel Coelho de Castro - initial API and implementation
+ ******************************************************************************/
+package dcc.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations with logarithmic buckets, for percentiles of
+ * per-frame latencies. Durations are counted in microseconds, exactly below
+ * 8&nbsp;&micro;s and within 1/8 of their value above, up to about 2 hours;
+ * longer durations share the last bucket.
+ * Recording does not allocate or lock; reads may come from any thread and
+ * see a consistent enough snapshot for display.
+ */
+public class LatencyHistogram {
+
+	/** Buckets per power of two */
+	private static final int SUB_BUCKETS = 8;
+	private static final int SUB_BITS = 3;
+	private static final int MAX_EXPONENT = 32;
+	private static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2)
+			* SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong total = new AtomicLong();
+	private volatile long max;
+
+	/**
+	 * Records a duration.
+	 * 
+	 * @param nanos
+	 *            - the duration, in nanoseconds; negative values count as zero
+	 */
+	public void record(long nanos) {
+		if (nanos < 0)
+			nanos = 0;
+		counts.incrementAndGet(bucket(nanos / 1000));
+		count.incrementAndGet();
+		total.addAndGet(nanos);
+		if (nanos > max)
+			max = nanos;
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * @return the mean duration, in milliseconds
+	 */
+	public double getMean() {
+		long n = count.get();
+		return n == 0 ? 0 : total.get() / 1e6 / n;
+	}
+
+	/**
+	 * @return the longest duration, in milliseconds
+	 */
+	public double getMax() {
+		return max / 1e6;
+	}
+
+	/**
+	 * Estimates a percentile from the buckets.
+	 * 
+	 * @param percentile
+	 *            - between 0 and 100
+	 * @return the upper bound of the bucket holding the percentile, but no
+	 *         more than the longest duration, in milliseconds; 0 if nothing
+	 *         was recorded
+	 */
+	public double getPercentile(double percentile) {
+		long n = 0;
+		long[] snapshot = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++)
+			n += snapshot[i] = counts.get(i);
+		if (n == 0)
+			return 0;
+		long rank = Math.max(1, (long) Math.ceil(n
+				* Math.min(100, Math.max(0, percentile)) / 100));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= rank)
+				// The last bucket is unbounded
+				return i == BUCKETS - 1 ? getMax() : Math.min(
+						upperBound(i) / 1e3, getMax());
+		}
+		return getMax();
+	}
+
+	/**
+	 * Forgets everything recorded so far. Durations recorded concurrently
+	 * may be partly kept.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++)
+			counts.set(i, 0);
+		count.set(0);
+		total.set(0);
+		max = 0;
+	}
+
+	private static int bucket(long micros) {
+		if (micros < SUB_BUCKETS)
+			return (int) micros;
+		int exponent = 63 - Long.numberOfLeadingZeros(micros);
+		if (exponent > MAX_EXPONENT)
+			return BUCKETS - 1;
+		int sub = (int) (micros >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * @return the largest duration in a bucket, in microseconds
+	 */
+	private static long upperBound(int bucket) {
+		if (bucket < SUB_BUCKETS)
+			return bucket;
+		int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+		long sub = SUB_BUCKETS + bucket % SUB_BUCKETS;
+		return ((sub + 1) << (exponent - SUB_BITS)) - 1;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("n %d, p50 %.2f ms, p99 %.2f ms, max %.2f ms",
+				getCount(), getPercentile(50), getPercentile(99), getMax());
+	}
+
+}
@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Daniel Coelho de Castro.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/gpl.html
+ * 
+ * Contributors:
+ *     Daniel Coelho de Castro - initial API and implementation
+ ******************************************************************************/
+package dcc.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, lock-free queue for exactly one producer thread and one consumer
+ * thread. Each side only ever writes its own index, published with an ordered
+ * store, and keeps a cached copy of the other side's index so that it reads
+ * the shared counter only when the queue looks full or empty.
+ * 
+ * @param <E>
+ *            - element type
+ */
+public class SPSCQueue<E> {
+
+	private final Object[] buffer;
+	private final int mask;
+
+	/** Next slot to read; written by the consumer only */
+	private final AtomicLong head = new AtomicLong();
+	/** Next slot to write; written by the producer only */
+	private final AtomicLong tail = new AtomicLong();
+
+	/** Producer's copy of the head */
+	private long headCache;
+	/** Consumer's copy of the tail */
+	private long tailCache;
+
+	/**
+	 * @param capacity
+	 *            - minimum capacity, rounded up to a power of two
+	 */
+	public SPSCQueue(int capacity) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("Capacity must be positive: "
+					+ capacity);
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity)
+			size <<= 1;
+		buffer = new Object[size];
+		mask = size - 1;
+	}
+
+	/**
+	 * Adds an element; must only be called from the producer thread.
+	 * 
+	 * @return <code>false</code> if the queue is full
+	 */
+	public boolean offer(E element) {
+		if (element == null)
+			throw new NullPointerException();
+		long t = tail.get();
+		if (t - headCache >= buffer.length) {
+			headCache = head.get();
+			if (t - headCache >= buffer.length)
+				return false;
+		}
+		buffer[(int) t & mask] = element;
+		tail.lazySet(t + 1);
+		return true;
+	}
+
+	/**
+	 * Removes the oldest element; must only be called from the consumer
+	 * thread.
+	 * 
+	 * @return the element, or <code>null</code> if the queue is empty
+	 */
+	@SuppressWarnings("unchecked")
+	public E poll() {
+		long h = head.get();
+		if (h >= tailCache) {
+			tailCache = tail.get();
+			if (h >= tailCache)
+				return null;
+		}
+		int index = (int) h & mask;
+		E element = (E) buffer[index];
+		buffer[index] = null;
+		head.lazySet(h + 1);
+		return element;
+	}
+
+	/**
+	 * Reads the oldest element without removing it; must only be called from
+	 * the consumer thread.
+	 */
+	@SuppressWarnings("unchecked")
+	public E peek() {
+		long h = head.get();
+		if (h >= tailCache) {
+			tailCache = tail.get();
+			if (h >= tailCache)
+				return null;
+		}
+		return (E) buffer[(int) h & mask];
+	}
+
+	/**
+	 * @return the number of elements, which is only a snapshot when called
+	 *         while either side is active
+	 */
+	public int size() {
+		long h = head.get();
+		return (int) Math.max(0, tail.get() - h);
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	public int capacity() {
+		return buffer.length;
+	}
+
+}
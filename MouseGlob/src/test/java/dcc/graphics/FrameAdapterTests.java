@@ -0,0 +1,86 @@
+package dcc.graphics;
+
+import dcc.graphics.image.GrayscaleImage;
+import dcc.graphics.image.Image;
+import org.bytedeco.javacv.Frame;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks the direct Frame-to-Image conversion against the per-pixel colour helpers.
+ * No external test framework required; run main() to execute checks.
+ */
+public class FrameAdapterTests {
+
+    public static void main(String[] args) {
+        boolean ok = true;
+        try {
+            ok &= bgrMatchesColorRgb();
+            ok &= grayscaleMatchesLuminance();
+            ok &= gray8Frames();
+            ok &= reusesDestination();
+        } catch (Throwable t) {
+            System.out.println("[DEBUG_LOG] FrameAdapter tests FAILED: " + t);
+            t.printStackTrace();
+            System.exit(1);
+        }
+        System.out.println("[DEBUG_LOG] FrameAdapter tests " + (ok ? "OK" : "FAILED"));
+    }
+
+    static boolean bgrMatchesColorRgb() {
+        Frame f = random(37, 21, 3, 1);
+        Image img = FrameAdapter.frameToImage(f, null);
+        ByteBuffer buf = (ByteBuffer) f.image[0];
+        for (int y = 0; y < f.imageHeight; y++)
+            for (int x = 0; x < f.imageWidth; x++) {
+                int s = y * f.imageStride + 3 * x;
+                int expected = Color.rgb(buf.get(s + 2) & 0xff, buf.get(s + 1) & 0xff, buf.get(s) & 0xff);
+                if (img.get(x, y) != expected) throw new AssertionError("bgr mismatch at (" + x + ", " + y + ")");
+            }
+        return true;
+    }
+
+    static boolean grayscaleMatchesLuminance() {
+        Frame f = random(64, 48, 3, 2);
+        GrayscaleImage expected = FrameAdapter.frameToImage(f, null).luminance(null);
+        GrayscaleImage direct = FrameAdapter.frameToGrayscale(f, null);
+        if (!Arrays.equals(expected.getPixels(), direct.getPixels())) throw new AssertionError("luminance mismatch");
+        // luminance of a luminance frame is the identity, so trackers see the same values either way
+        if (!Arrays.equals(direct.getPixels(), direct.luminance(null).getPixels()))
+            throw new AssertionError("luminance not idempotent");
+        return true;
+    }
+
+    static boolean gray8Frames() {
+        Frame f = random(19, 7, 1, 3);
+        Image img = FrameAdapter.frameToImage(f, null);
+        GrayscaleImage gray = FrameAdapter.frameToGrayscale(f, null);
+        ByteBuffer buf = (ByteBuffer) f.image[0];
+        for (int y = 0; y < f.imageHeight; y++)
+            for (int x = 0; x < f.imageWidth; x++) {
+                int expected = Color.gray(buf.get(y * f.imageStride + x) & 0xff);
+                if (img.get(x, y) != expected || gray.get(x, y) != expected)
+                    throw new AssertionError("gray8 mismatch at (" + x + ", " + y + ")");
+            }
+        return true;
+    }
+
+    static boolean reusesDestination() {
+        Image dst = new Image(10, 10);
+        Image out = FrameAdapter.frameToImage(random(20, 5, 3, 4), dst);
+        if (out != dst || out.getWidth() != 20 || out.getHeight() != 5) throw new AssertionError("destination not reused");
+        if (FrameAdapter.frameToImage(new Frame(), dst) != null) throw new AssertionError("unsupported frame converted");
+        return true;
+    }
+
+    // --- helpers ---
+    private static Frame random(int w, int h, int channels, long seed) {
+        Frame f = new Frame(w, h, Frame.DEPTH_UBYTE, channels);
+        ByteBuffer buf = (ByteBuffer) f.image[0];
+        Random rnd = new Random(seed);
+        for (int i = 0; i < buf.capacity(); i++) buf.put(i, (byte) rnd.nextInt(256));
+        return f;
+    }
+}
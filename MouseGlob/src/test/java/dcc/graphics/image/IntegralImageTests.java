@@ -0,0 +1,204 @@
+package dcc.graphics.image;
+
+import dcc.graphics.Box;
+import dcc.graphics.Color;
+import dcc.graphics.binary.BinaryMask2D;
+import dcc.graphics.binary.MaskRuns;
+import dcc.graphics.math.HeatMap;
+import dcc.graphics.math.ScalarMap;
+import dcc.graphics.math.SummedAreaTable;
+
+import java.util.Random;
+
+/**
+ * Checks integral-image sums and the thresholds built on them against direct
+ * window scans. No external test framework required; run main() to execute checks.
+ */
+public class IntegralImageTests {
+
+    public static void main(String[] args) {
+        boolean ok = true;
+        try {
+            ok &= integralSumsMatchDirectSums();
+            ok &= meanThresholdMatchesWindowScan();
+            ok &= sauvolaMatchesWindowScan();
+            ok &= summedAreaTableMatchesMap();
+            ok &= boxSumsFollowChanges();
+            ok &= maskRunsSumMaskedValues();
+        } catch (Throwable t) {
+            System.out.println("[DEBUG_LOG] IntegralImage tests FAILED: " + t);
+            t.printStackTrace();
+            System.exit(1);
+        }
+        System.out.println("[DEBUG_LOG] IntegralImage tests " + (ok ? "OK" : "FAILED"));
+    }
+
+    static boolean integralSumsMatchDirectSums() {
+        GrayscaleImage gray = noise(53, 41, 1);
+        IntegralImage integral = new IntegralImage(true).compute(gray);
+        Random rnd = new Random(2);
+        for (int n = 0; n < 500; n++) {
+            int x0 = rnd.nextInt(53), x1 = x0 + 1 + rnd.nextInt(53 - x0);
+            int y0 = rnd.nextInt(41), y1 = y0 + 1 + rnd.nextInt(41 - y0);
+            long sum = 0, squares = 0;
+            for (int y = y0; y < y1; y++)
+                for (int x = x0; x < x1; x++) {
+                    int g = gray.get(x, y) & 0xff;
+                    sum += g;
+                    squares += g * g;
+                }
+            if (integral.getSum(x0, y0, x1, y1) != sum) throw new AssertionError("sum mismatch");
+            if (integral.getSumOfSquares(x0, y0, x1, y1) != squares) throw new AssertionError("square sum mismatch");
+        }
+
+        // Reused across a size change
+        GrayscaleImage small = noise(7, 9, 3);
+        integral.compute(small);
+        long sum = 0;
+        for (int p : small.getPixels()) sum += p & 0xff;
+        if (integral.getSum(0, 0, 7, 9) != sum) throw new AssertionError("stale table after resize");
+        return true;
+    }
+
+    static boolean meanThresholdMatchesWindowScan() {
+        GrayscaleImage gray = noise(64, 48, 4);
+        for (boolean inverse : new boolean[] {false, true}) {
+            BinaryImage fast = gray.meanThreshold(9, 5, inverse, new IntegralImage(false), null);
+            for (int y = 0; y < 48; y++)
+                for (int x = 0; x < 64; x++) {
+                    long[] w = window(gray, x, y, 4);
+                    double mean = (double) w[0] / w[2];
+                    int g = gray.get(x, y) & 0xff;
+                    boolean expected = inverse ? g < mean - 5 : g > mean + 5;
+                    if ((fast.get(x, y) == Color.WHITE) != expected)
+                        throw new AssertionError("mean threshold mismatch at (" + x + ", " + y + ")");
+                }
+        }
+        return true;
+    }
+
+    static boolean sauvolaMatchesWindowScan() {
+        GrayscaleImage gray = noise(64, 48, 5);
+        double k = 0.34, r = 128;
+        for (boolean inverse : new boolean[] {false, true}) {
+            BinaryImage fast = gray.sauvolaThreshold(15, k, r, inverse, null, null);
+            for (int y = 0; y < 48; y++)
+                for (int x = 0; x < 64; x++) {
+                    long[] w = window(gray, x, y, 7);
+                    double area = w[2], mean = w[0] / area;
+                    double s = Math.sqrt(Math.max(0, w[1] / area - mean * mean));
+                    int g = gray.get(x, y) & 0xff;
+                    boolean expected = inverse ? g < mean * (1 + k * (s / r - 1))
+                            : 255 - g < (255 - mean) * (1 + k * (s / r - 1));
+                    if ((fast.get(x, y) == Color.WHITE) != expected)
+                        throw new AssertionError("Sauvola mismatch at (" + x + ", " + y + ")");
+                }
+        }
+        try {
+            gray.sauvolaThreshold(15, k, r, false, new IntegralImage(false), null);
+            throw new AssertionError("missing squares not rejected");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+        return true;
+    }
+
+    static boolean summedAreaTableMatchesMap() {
+        ScalarMap map = randomMap(30, 20, 6);
+        map.getValues()[3][4] = Double.NaN;
+        SummedAreaTable table = new SummedAreaTable(true).compute(map);
+        Random rnd = new Random(7);
+        for (int n = 0; n < 300; n++) {
+            int x0 = rnd.nextInt(40) - 5, x1 = x0 + rnd.nextInt(40);
+            int y0 = rnd.nextInt(30) - 5, y1 = y0 + rnd.nextInt(30);
+            double sum = 0, squares = 0;
+            int area = 0;
+            for (int x = Math.max(0, x0); x < Math.min(30, x1); x++)
+                for (int y = Math.max(0, y0); y < Math.min(20, y1); y++) {
+                    double v = map.getValues()[x][y];
+                    area++;
+                    if (v != v) continue;
+                    sum += v;
+                    squares += v * v;
+                }
+            if (Math.abs(table.getSum(x0, y0, x1, y1) - sum) > 1e-9) throw new AssertionError("table sum mismatch");
+            if (Math.abs(table.getSumOfSquares(x0, y0, x1, y1) - squares) > 1e-9)
+                throw new AssertionError("table square sum mismatch");
+            if (table.area(x0, y0, x1, y1) != area) throw new AssertionError("area mismatch");
+        }
+        return true;
+    }
+
+    static boolean boxSumsFollowChanges() {
+        HeatMap map = new HeatMap(40, 30, 1.5);
+        map.increment(10, 10, 2.0);
+        Box box = Box.fromCorners(5, 5, 15, 15);
+        double before = map.getSum(box);
+        if (Math.abs(before - direct(map, 5, 5, 15, 15)) > 1e-9) throw new AssertionError("box sum mismatch");
+        map.increment(12, 12, 3.0);
+        if (Math.abs(map.getSum(box) - direct(map, 5, 5, 15, 15)) > 1e-9) throw new AssertionError("stale box sum");
+        map.reset();
+        if (map.getSum(box) != 0) throw new AssertionError("stale box sum after reset");
+        return true;
+    }
+
+    static boolean maskRunsSumMaskedValues() {
+        final ScalarMap map = randomMap(50, 40, 8);
+        BinaryMask2D disc = new BinaryMask2D() {
+            @Override
+            public boolean get(int i, int j) {
+                return (i - 20) * (i - 20) + (j - 18) * (j - 18) < 120 || (i > 40 && j < 5);
+            }
+        };
+        MaskRuns runs = new MaskRuns(disc, Box.fromSize(50, 40).toInt());
+        double sum = 0;
+        int area = 0;
+        for (int x = 0; x < 50; x++)
+            for (int y = 0; y < 40; y++)
+                if (disc.get(x, y)) {
+                    sum += map.getValues()[x][y];
+                    area++;
+                }
+        if (runs.getArea() != area) throw new AssertionError("mask area mismatch");
+        if (Math.abs(map.getSum(runs) - sum) > 1e-9) throw new AssertionError("masked sum mismatch");
+        return true;
+    }
+
+    // --- helpers ---
+    private static GrayscaleImage noise(int w, int h, long seed) {
+        Random rnd = new Random(seed);
+        GrayscaleImage gray = new GrayscaleImage(w, h);
+        for (int y = 0; y < h; y++)
+            for (int x = 0; x < w; x++) gray.set(x, y, Color.gray(rnd.nextInt(256)));
+        return gray;
+    }
+
+    private static ScalarMap randomMap(int w, int h, long seed) {
+        Random rnd = new Random(seed);
+        ScalarMap map = new ScalarMap(w, h);
+        for (double[] column : map.getValues())
+            for (int y = 0; y < column.length; y++) column[y] = rnd.nextDouble();
+        map.modified();
+        return map;
+    }
+
+    /** Sum, sum of squares and area of the window of radius r around (x, y), cut at the borders. */
+    private static long[] window(GrayscaleImage gray, int x, int y, int r) {
+        long sum = 0, squares = 0, area = 0;
+        for (int j = Math.max(0, y - r); j < Math.min(gray.getHeight(), y + r + 1); j++)
+            for (int i = Math.max(0, x - r); i < Math.min(gray.getWidth(), x + r + 1); i++) {
+                int g = gray.get(i, j) & 0xff;
+                sum += g;
+                squares += g * g;
+                area++;
+            }
+        return new long[] {sum, squares, area};
+    }
+
+    private static double direct(ScalarMap map, int x0, int y0, int x1, int y1) {
+        double sum = 0;
+        for (int x = x0; x < x1; x++)
+            for (int y = y0; y < y1; y++) sum += map.getValues()[x][y];
+        return sum;
+    }
+}
@@ -0,0 +1,94 @@
+package dcc.graphics.image;
+
+import dcc.graphics.Box;
+import dcc.graphics.Color;
+
+import java.util.Random;
+
+/**
+ * Checks that the bit-packed binary image agrees with the int-backed one.
+ * No external test framework required; run main() to execute checks.
+ */
+public class PackedBinaryImageTests {
+
+    public static void main(String[] args) {
+        boolean ok = true;
+        try {
+            ok &= packRoundTrip();
+            ok &= morphologyMatchesIntBacked();
+            ok &= logicalOpsMatchIntBacked();
+            ok &= cropMatchesGet();
+        } catch (Throwable t) {
+            System.out.println("[DEBUG_LOG] PackedBinaryImage tests FAILED: " + t);
+            t.printStackTrace();
+            System.exit(1);
+        }
+        System.out.println("[DEBUG_LOG] PackedBinaryImage tests " + (ok ? "OK" : "FAILED"));
+    }
+
+    static boolean packRoundTrip() {
+        BinaryImage image = random(131, 47, 1);
+        PackedBinaryImage packed = image.pack(null);
+        BinaryImage back = packed.unpack(null);
+        assertSame(image, back, 0, 0, "pack/unpack");
+        int white = 0;
+        for (int p : image.getPixels()) if (p == Color.WHITE) white++;
+        if (packed.count() != white) throw new AssertionError("count=" + packed.count() + " expected " + white);
+        return true;
+    }
+
+    static boolean morphologyMatchesIntBacked() {
+        int[][][] elements = {
+                StructuringElementFactory.disk(2),
+                StructuringElementFactory.rectangle(3, 3),
+                StructuringElementFactory.rectangle(7, 3),
+        };
+        for (int[][] el : elements) {
+            BinaryImage image = random(200, 90, 2);
+            PackedBinaryImage packed = image.pack(null);
+            int rw = (el[0].length - 1) / 2, rh = (el.length - 1) / 2;
+            assertSame(image.dilate(el, new BinaryImage(200, 90)), packed.dilate(el, null).unpack(null), rw, rh, "dilate");
+            assertSame(image.erode(el, new BinaryImage(200, 90)), packed.erode(el, null).unpack(null), rw, rh, "erode");
+        }
+        return true;
+    }
+
+    static boolean logicalOpsMatchIntBacked() {
+        BinaryImage a = random(100, 33, 3), b = random(100, 33, 4);
+        PackedBinaryImage pa = a.pack(null), pb = b.pack(null);
+        BinaryImage and = new BinaryImage(100, 33), or = new BinaryImage(100, 33), xor = new BinaryImage(100, 33);
+        a.and(b, and); a.or(b, or); a.xor(b, xor);
+        assertSame(and, pa.and(pb, null).unpack(null), 0, 0, "and");
+        assertSame(or, pa.or(pb, null).unpack(null), 0, 0, "or");
+        assertSame(xor, pa.xor(pb, null).unpack(null), 0, 0, "xor");
+        if (pa.invert(null).count() != 100 * 33 - pa.count()) throw new AssertionError("invert");
+        return true;
+    }
+
+    static boolean cropMatchesGet() {
+        BinaryImage image = random(150, 80, 5);
+        Box.Int box = Box.fromCorners(37, 11, 119, 70).toInt();
+        BinaryImage expected = image.get(box);
+        assertSame(expected, PackedBinaryImage.pack(image, box, null).unpack(null), 0, 0, "pack(box)");
+        assertSame(expected, image.pack(null).get(box).unpack(null), 0, 0, "get(box)");
+        return true;
+    }
+
+    // --- helpers ---
+    private static BinaryImage random(int w, int h, long seed) {
+        Random rnd = new Random(seed);
+        BinaryImage image = new BinaryImage(w, h);
+        int[] p = image.getPixels();
+        for (int i = 0; i < p.length; i++) p[i] = rnd.nextInt(3) == 0 ? Color.WHITE : Color.BLACK;
+        return image;
+    }
+
+    private static void assertSame(BinaryImage expected, BinaryImage actual, int bx, int by, String what) {
+        if (expected.getWidth() != actual.getWidth() || expected.getHeight() != actual.getHeight())
+            throw new AssertionError(what + ": size mismatch");
+        for (int y = by; y < expected.getHeight() - by; y++)
+            for (int x = bx; x < expected.getWidth() - bx; x++)
+                if (expected.checkPixel(x, y) != actual.checkPixel(x, y))
+                    throw new AssertionError(what + ": mismatch at (" + x + ", " + y + ")");
+    }
+}
@@ -0,0 +1,169 @@
+package dcc.graphics.image;
+
+import dcc.graphics.Color;
+import dcc.graphics.math.ScalarMap;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks the separable blur against a direct double-precision convolution with
+ * repeated edges. No external test framework required; run main() to execute checks.
+ */
+public class SeparableFilterTests {
+
+    public static void main(String[] args) {
+        boolean ok = true;
+        try {
+            ok &= grayMatchesReference();
+            ok &= colorMatchesReference();
+            ok &= inPlaceMatchesOutOfPlace();
+            ok &= scalarMapMatchesReference();
+            ok &= boxApproximatesGaussian();
+            ok &= preservesConstantImages();
+        } catch (Throwable t) {
+            System.out.println("[DEBUG_LOG] SeparableFilter tests FAILED: " + t);
+            t.printStackTrace();
+            System.exit(1);
+        }
+        System.out.println("[DEBUG_LOG] SeparableFilter tests " + (ok ? "OK" : "FAILED"));
+    }
+
+    static boolean grayMatchesReference() {
+        for (double sigma : new double[] {0.8, 1.5, 2.5, 4.0}) {
+            GrayscaleImage gray = noise(101, 67, 1).luminance(null);
+            GrayscaleImage blurred = gray.blur(sigma, null);
+            double[][] expected = reference(channel(gray, 0), FilterFactory.gaussian(sigma));
+            int worst = maxError(blurred, 0, expected);
+            if (worst > 1) throw new AssertionError("sigma " + sigma + ": gray error " + worst);
+            if ((blurred.get(5, 5) & 0xff000000) != 0xff000000) throw new AssertionError("alpha lost");
+        }
+        return true;
+    }
+
+    static boolean colorMatchesReference() {
+        Image img = noise(64, 45, 2);
+        Image blurred = img.blur(2.0, null);
+        double[] kernel = FilterFactory.gaussian(2.0);
+        for (int shift = 0; shift <= 16; shift += 8) {
+            int worst = maxError(blurred, shift, reference(channel(img, shift), kernel));
+            if (worst > 1) throw new AssertionError("channel " + shift + ": error " + worst);
+        }
+        return true;
+    }
+
+    static boolean inPlaceMatchesOutOfPlace() {
+        for (double sigma : new double[] {1.5, 7.0}) {
+            GrayscaleImage gray = noise(80, 50, 3).luminance(null);
+            int[] expected = gray.blur(sigma, null).getPixels().clone();
+            if (gray.blur(sigma, gray) != gray) throw new AssertionError("destination not used");
+            if (!Arrays.equals(expected, gray.getPixels())) throw new AssertionError("in-place blur differs, sigma " + sigma);
+
+            Image img = noise(80, 50, 4);
+            int[] expectedColor = img.blur(sigma, null).getPixels().clone();
+            img.blur(sigma, img);
+            if (!Arrays.equals(expectedColor, img.getPixels())) throw new AssertionError("in-place colour blur differs");
+        }
+        return true;
+    }
+
+    static boolean scalarMapMatchesReference() {
+        Random rnd = new Random(5);
+        ScalarMap map = new ScalarMap(37, 53);
+        double[][] v = map.getValues();
+        for (double[] column : v)
+            for (int y = 0; y < column.length; y++) column[y] = rnd.nextDouble();
+        double[][] expected = transpose(reference(transpose(v), FilterFactory.gaussian(2.0)));
+        double[][] actual = map.blur(2.0).getValues();
+        for (int x = 0; x < v.length; x++)
+            for (int y = 0; y < v[0].length; y++)
+                if (Math.abs(actual[x][y] - expected[x][y]) > 1e-9)
+                    throw new AssertionError("map mismatch at (" + x + ", " + y + ")");
+        return true;
+    }
+
+    static boolean boxApproximatesGaussian() {
+        double sigma = 8.0;
+        if (!SeparableFilter.gaussian(sigma).isBoxApproximation()) throw new AssertionError("box blur not selected");
+        if (SeparableFilter.gaussian(SeparableFilter.BOX_SIGMA).isBoxApproximation())
+            throw new AssertionError("box blur selected for small sigma");
+
+        // A bright square on a dark background: the box result must stay close to the true Gaussian
+        GrayscaleImage gray = new GrayscaleImage(120, 90);
+        for (int y = 0; y < 90; y++)
+            for (int x = 0; x < 120; x++) gray.set(x, y, Color.gray(x > 40 && x < 80 && y > 30 && y < 60 ? 200 : 20));
+        GrayscaleImage blurred = gray.blur(sigma, null);
+        int worst = maxError(blurred, 0, reference(channel(gray, 0), FilterFactory.gaussian(sigma)));
+        if (worst > 6) throw new AssertionError("box approximation error " + worst);
+
+        ScalarMap map = new ScalarMap(gray);
+        double[][] expected = transpose(reference(transpose(map.getValues()), FilterFactory.gaussian(sigma)));
+        double[][] actual = map.blur(sigma).getValues();
+        for (int x = 0; x < 120; x++)
+            for (int y = 0; y < 90; y++)
+                if (Math.abs(actual[x][y] - expected[x][y]) > 0.03)
+                    throw new AssertionError("map box approximation error at (" + x + ", " + y + ")");
+        return true;
+    }
+
+    static boolean preservesConstantImages() {
+        for (double sigma : new double[] {1.0, 3.0, 12.0}) {
+            GrayscaleImage gray = new GrayscaleImage(50, 40);
+            Arrays.fill(gray.getPixels(), Color.gray(137));
+            GrayscaleImage blurred = gray.blur(sigma, null);
+            for (int p : blurred.getPixels())
+                if (p != Color.gray(137)) throw new AssertionError("constant image changed, sigma " + sigma);
+        }
+        return true;
+    }
+
+    // --- helpers ---
+    private static Image noise(int w, int h, long seed) {
+        Random rnd = new Random(seed);
+        Image img = new Image(w, h);
+        for (int i = 0; i < w * h; i++) img.getPixels()[i] = Color.rgb(rnd.nextInt(256), rnd.nextInt(256), rnd.nextInt(256));
+        return img;
+    }
+
+    /** Channel values as [row][column]. */
+    private static double[][] channel(Image img, int shift) {
+        double[][] c = new double[img.getHeight()][img.getWidth()];
+        for (int y = 0; y < img.getHeight(); y++)
+            for (int x = 0; x < img.getWidth(); x++) c[y][x] = (img.get(x, y) >> shift) & 0xff;
+        return c;
+    }
+
+    /** Separable convolution of [row][column] values, repeating edge values. */
+    private static double[][] reference(double[][] in, double[] k) {
+        int h = in.length, w = in[0].length, r = k.length / 2;
+        double[][] tmp = new double[h][w], out = new double[h][w];
+        for (int y = 0; y < h; y++)
+            for (int x = 0; x < w; x++)
+                for (int i = 0; i < k.length; i++) tmp[y][x] += k[i] * in[y][clamp(x + i - r, w - 1)];
+        for (int y = 0; y < h; y++)
+            for (int x = 0; x < w; x++)
+                for (int i = 0; i < k.length; i++) out[y][x] += k[i] * tmp[clamp(y + i - r, h - 1)][x];
+        return out;
+    }
+
+    private static int maxError(Image img, int shift, double[][] expected) {
+        int worst = 0;
+        for (int y = 0; y < img.getHeight(); y++)
+            for (int x = 0; x < img.getWidth(); x++) {
+                int v = (img.get(x, y) >> shift) & 0xff;
+                worst = Math.max(worst, (int) Math.ceil(Math.abs(v - expected[y][x]) - 0.5));
+            }
+        return worst;
+    }
+
+    private static double[][] transpose(double[][] m) {
+        double[][] t = new double[m[0].length][m.length];
+        for (int i = 0; i < m.length; i++)
+            for (int j = 0; j < m[0].length; j++) t[j][i] = m[i][j];
+        return t;
+    }
+
+    private static int clamp(int i, int max) {
+        return Math.max(0, Math.min(max, i));
+    }
+}
@@ -0,0 +1,96 @@
+package dcc.graphics.math;
+
+import java.util.Random;
+
+/**
+ * Checks that the occupancy map accumulates incrementally and that the scale
+ * space levels match blurring the map directly. No external test framework
+ * required; run main() to execute checks.
+ */
+public class ScaleSpaceTests {
+
+    private static final double[] SIGMAS = {0.5, 0.71, 1, 1.41, 2, 2.83, 4, 5.66};
+
+    public static void main(String[] args) {
+        boolean ok = true;
+        try {
+            ok &= incrementalMatchesOneShot();
+            ok &= levelsMatchDirectBlur();
+            ok &= levelsAreLazyAndFollowChanges();
+        } catch (Throwable t) {
+            System.out.println("[DEBUG_LOG] ScaleSpace tests FAILED: " + t);
+            t.printStackTrace();
+            System.exit(1);
+        }
+        System.out.println("[DEBUG_LOG] ScaleSpace tests " + (ok ? "OK" : "FAILED"));
+    }
+
+    static boolean incrementalMatchesOneShot() {
+        Vector[] path = randomWalk(2000, 1);
+        OccupancyMap oneShot = new OccupancyMap(120, 90);
+        for (int i = 1; i < path.length; i++) oneShot.addSegment(path[i - 1], path[i], 1);
+        OccupancyMap incremental = new OccupancyMap(120, 90);
+        for (int i = 1; i < path.length; i++) {
+            incremental.addSegment(path[i - 1], path[i], 1);
+            if (i % 100 == 0) incremental.getSum();
+        }
+        assertClose(oneShot, incremental, 1e-9, "incremental");
+        if (Math.abs(oneShot.getSum() - incremental.getSum()) > 1e-6) throw new AssertionError("total presence");
+        return true;
+    }
+
+    static boolean levelsMatchDirectBlur() {
+        OccupancyMap map = walkMap(3);
+        ScaleSpace space = new ScaleSpace(map, SIGMAS);
+        int[] order = {3, 7, 0, 5, 6, 1, 2, 4};
+        for (int level : order) {
+            ScalarMap expected = map.blur(SIGMAS[level]);
+            assertClose(expected, space.getLevel(level), 1e-12, "level " + level);
+        }
+        return true;
+    }
+
+    static boolean levelsAreLazyAndFollowChanges() {
+        OccupancyMap map = walkMap(4);
+        ScaleSpace space = new ScaleSpace(map, SIGMAS);
+        ScalarMap level = space.getLevel(2);
+        double[][] values = level.getValues();
+        if (space.getLevel(2) != level) throw new AssertionError("valid level recomputed into a new map");
+        double before = level.getSum();
+        map.addSegment(new Vector(10, 10), new Vector(60, 10), 1000);
+        if (level.getSum() != before) throw new AssertionError("level changed before invalidate");
+        space.invalidate();
+        if (space.getLevel(2).getValues() != values) throw new AssertionError("level storage not reused");
+        if (!(level.getSum() > before + 900)) throw new AssertionError("level not recomputed: " + level.getSum());
+        return true;
+    }
+
+    // --- helpers ---
+    private static OccupancyMap walkMap(long seed) {
+        OccupancyMap map = new OccupancyMap(100, 80);
+        Vector[] path = randomWalk(3000, seed);
+        for (int i = 1; i < path.length; i++) map.addSegment(path[i - 1], path[i], 1);
+        return map;
+    }
+
+    private static Vector[] randomWalk(int n, long seed) {
+        Random rnd = new Random(seed);
+        Vector[] path = new Vector[n];
+        double x = 50, y = 40;
+        for (int i = 0; i < n; i++) {
+            x = Math.max(0, Math.min(99.9, x + rnd.nextGaussian() * 3));
+            y = Math.max(0, Math.min(79.9, y + rnd.nextGaussian() * 3));
+            path[i] = new Vector(x, y);
+        }
+        return path;
+    }
+
+    private static void assertClose(ScalarMap expected, ScalarMap actual, double tolerance, String what) {
+        for (int x = 0; x < expected.getWidth(); x++)
+            for (int y = 0; y < expected.getHeight(); y++) {
+                double e = expected.getValues()[x][y], a = actual.getValues()[x][y];
+                if (Math.abs(e - a) > tolerance)
+                    throw new AssertionError(what + " differs at (" + x + ", " + y + "): " + e + " vs " + a);
+            }
+    }
+}
@@ -0,0 +1,129 @@
+package dcc.graphics.series;
+
+import dcc.graphics.math.Vector;
+
+/**
+ * Checks the columnar Series2D storage, its views and the mapped spill. No external
+ * test framework required; run main() to execute checks.
+ */
+public class Series2DTests {
+
+    public static void main(String[] args) {
+        boolean ok = true;
+        try {
+            ok &= storesPointsAndBounds();
+            ok &= viewsFollowSource();
+            ok &= viewsAreReadOnly();
+            ok &= notifiesListeners();
+            ok &= spillsToMappedFile();
+        } catch (Throwable t) {
+            System.out.println("[DEBUG_LOG] Series2D tests FAILED: " + t);
+            t.printStackTrace();
+            System.exit(1);
+        }
+        System.out.println("[DEBUG_LOG] Series2D tests " + (ok ? "OK" : "FAILED"));
+    }
+
+    static boolean storesPointsAndBounds() {
+        Series2D s = new Series2D();
+        for (int i = 0; i < 5000; i++) s.add(i * 0.5, -i);
+        if (s.size() != 5000) throw new AssertionError("size " + s.size());
+        if (s.getX(1234) != 617 || s.getY(1234) != -1234) throw new AssertionError("wrong point");
+        if (!s.get(-1).equals(new Vector(2499.5, -4999))) throw new AssertionError("wrong last point");
+        if (s.get(-5001) != null) throw new AssertionError("negative index past the start");
+        if (s.getMinX() != 0 || s.getMaxX() != 2499.5 || s.getMinY() != -4999 || s.getMaxY() != 0)
+            throw new AssertionError("wrong bounds");
+        Vector mid = s.get(10.5);
+        if (mid.x != 5.25 || mid.y != -10.5) throw new AssertionError("wrong interpolation");
+        s.set(3, new Vector(7, 8));
+        if (s.getX(3) != 7 || s.getY(3) != 8) throw new AssertionError("set ignored");
+        int n = 0;
+        for (Vector p : s) n++;
+        if (n != 5000) throw new AssertionError("iterator visited " + n);
+        try {
+            s.getX(5000);
+            throw new AssertionError("read past the end");
+        } catch (IndexOutOfBoundsException expected) {
+            // expected
+        }
+        s.clear();
+        if (!s.isEmpty()) throw new AssertionError("not cleared");
+        return true;
+    }
+
+    static boolean viewsFollowSource() {
+        Series2D s = new Series2D();
+        Series2D scaled = s.scale(-2);
+        Series1D x = s.getX(), y = s.getY();
+        s.add(1, 10);
+        s.add(3, 30);
+        if (scaled.size() != 2 || scaled.getX(1) != -6 || scaled.getY(0) != -20) throw new AssertionError("scaled view");
+        if (scaled.getMinX() != -6 || scaled.getMaxX() != -2) throw new AssertionError("scaled bounds");
+        if (x.get(1) != 3 || y.get(-1) != 30 || x.size() != 2) throw new AssertionError("component view");
+        if (y.getMinY() != 10 || y.getMaxY() != 30) throw new AssertionError("component bounds");
+        if (x.sum() != 4 || y.getStatistics().getMean() != 20) throw new AssertionError("component arithmetic");
+        if (Math.abs(s.length() - Math.hypot(2, 20)) > 1e-12) throw new AssertionError("length");
+        if (Math.abs(scaled.length() - 2 * s.length()) > 1e-12) throw new AssertionError("scaled length");
+        Series1D copy = new Series1D();
+        copy.add(x);
+        if (copy.size() != 2 || copy.get(1) != 3) throw new AssertionError("copy from view");
+        return true;
+    }
+
+    static boolean viewsAreReadOnly() {
+        Series2D s = new Series2D();
+        s.add(1, 1);
+        Runnable[] writes = {
+            () -> s.scale(2).add(1, 2),
+            () -> s.scale(2).add(new Vector(1, 2)),
+            () -> s.scale(2).clear(),
+            () -> s.getX().add(1),
+            () -> s.getY().set(0, 1),
+        };
+        for (Runnable write : writes) {
+            try {
+                write.run();
+                throw new AssertionError("view accepted a write");
+            } catch (UnsupportedOperationException expected) {
+                // expected
+            }
+        }
+        return true;
+    }
+
+    static boolean notifiesListeners() {
+        Series2D s = new Series2D();
+        final int[] changes = new int[2];
+        s.addSeriesListener(series -> changes[0]++);
+        s.addBoundsListener(series -> changes[1]++);
+        s.add(0, 0);
+        s.add(1, 1);
+        s.add(0.5, 0.5);
+        if (changes[0] != 3) throw new AssertionError("series notifications " + changes[0]);
+        if (changes[1] != 2) throw new AssertionError("bounds notifications " + changes[1]);
+        return true;
+    }
+
+    static boolean spillsToMappedFile() {
+        int previous = Series2D.getSpillThreshold();
+        Series2D.setSpillThreshold(1000);
+        try {
+            Series2D s = new Series2D();
+            int n = (1 << 20) + 5000; // crosses a mapped chunk boundary
+            for (int i = 0; i < n; i++) s.add(i, 0.25 * i);
+            if (!s.isSpilled()) throw new AssertionError("not spilled");
+            for (int i = 0; i < n; i += 997)
+                if (s.getX(i) != i || s.getY(i) != 0.25 * i) throw new AssertionError("spilled value at " + i);
+            if (s.getX(n - 1) != n - 1) throw new AssertionError("last spilled value");
+            s.set(n - 2, new Vector(-1, -2));
+            if (s.getX(n - 2) != -1 || s.getY(n - 2) != -2) throw new AssertionError("spilled set");
+            s.clear();
+            if (s.isSpilled() || !s.isEmpty()) throw new AssertionError("spill not released");
+            s.add(4, 5);
+            if (s.getX(0) != 4) throw new AssertionError("reuse after clear");
+        } finally {
+            Series2D.setSpillThreshold(previous);
+        }
+        return true;
+    }
+}
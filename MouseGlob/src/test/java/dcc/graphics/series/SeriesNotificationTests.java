@@ -0,0 +1,98 @@
+package dcc.graphics.series;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks that updates coalesce series notifications and that throttled
+ * listeners are rate limited but always see the last change. No external test
+ * framework required; run main() to execute checks.
+ */
+public class SeriesNotificationTests {
+
+    public static void main(String[] args) {
+        boolean ok = true;
+        try {
+            ok &= updateNotifiesOncePerSeries();
+            ok &= nestedUpdatesDeliverAtOutermostEnd();
+            ok &= throttledListenerCoalesces();
+            ok &= throttledListenerCanBeRemoved();
+        } catch (Throwable t) {
+            System.out.println("[DEBUG_LOG] SeriesNotification tests FAILED: " + t);
+            t.printStackTrace();
+            System.exit(1);
+        }
+        System.out.println("[DEBUG_LOG] SeriesNotification tests " + (ok ? "OK" : "FAILED"));
+    }
+
+    static boolean updateNotifiesOncePerSeries() {
+        Series1D a = new Series1D();
+        Series2D b = new Series2D();
+        int[] changes = new int[3];
+        a.addSeriesListener(series -> changes[0]++);
+        a.addBoundsListener(series -> changes[1]++);
+        b.addSeriesListener(series -> changes[2]++);
+        Series.beginUpdate();
+        try {
+            for (int i = 0; i < 100; i++) {
+                a.add(i);
+                b.add(i, -i);
+            }
+            if (changes[0] + changes[1] + changes[2] != 0) throw new AssertionError("notified during update");
+        } finally {
+            Series.endUpdate();
+        }
+        if (changes[0] != 1 || changes[1] != 1 || changes[2] != 1)
+            throw new AssertionError("notifications " + changes[0] + ", " + changes[1] + ", " + changes[2]);
+        a.add(100);
+        if (changes[0] != 2) throw new AssertionError("not notified outside an update");
+        return true;
+    }
+
+    static boolean nestedUpdatesDeliverAtOutermostEnd() {
+        Series1D a = new Series1D();
+        int[] changes = new int[1];
+        a.addSeriesListener(series -> changes[0]++);
+        Series.beginUpdate();
+        Series.beginUpdate();
+        a.add(1);
+        Series.endUpdate();
+        if (changes[0] != 0) throw new AssertionError("inner update delivered");
+        a.add(2);
+        Series.endUpdate();
+        if (changes[0] != 1) throw new AssertionError("notifications " + changes[0]);
+        return true;
+    }
+
+    static boolean throttledListenerCoalesces() throws InterruptedException {
+        Series1D a = new Series1D();
+        AtomicInteger calls = new AtomicInteger();
+        AtomicInteger lastSize = new AtomicInteger();
+        CountDownLatch sawAll = new CountDownLatch(1);
+        a.addSeriesListener(series -> {
+            calls.incrementAndGet();
+            lastSize.set(series.size());
+            if (series.size() == 1000) sawAll.countDown();
+        }, 20);
+        long start = System.nanoTime();
+        for (int i = 0; i < 1000; i++) a.add(i);
+        if (TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) > 1000)
+            throw new AssertionError("adding was held up by the listener");
+        if (!sawAll.await(2, TimeUnit.SECONDS)) throw new AssertionError("last change not delivered, saw " + lastSize.get());
+        if (calls.get() > 3) throw new AssertionError("not throttled: " + calls.get() + " calls");
+        return true;
+    }
+
+    static boolean throttledListenerCanBeRemoved() throws InterruptedException {
+        Series1D a = new Series1D();
+        AtomicInteger calls = new AtomicInteger();
+        SeriesListener listener = series -> calls.incrementAndGet();
+        a.addSeriesListener(listener, 100);
+        a.removeSeriesListener(listener);
+        a.add(1);
+        Thread.sleep(100);
+        if (calls.get() != 0) throw new AssertionError("removed listener called");
+        return true;
+    }
+}
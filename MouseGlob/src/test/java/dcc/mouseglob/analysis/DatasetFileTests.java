@@ -0,0 +1,171 @@
+package dcc.mouseglob.analysis;
+
+import dcc.graphics.series.Series1D;
+import dcc.graphics.series.Series2D;
+import dcc.mouseglob.analysis.Analysis.AnalysisInfo;
+import dcc.mouseglob.analysis.Dataset.Time;
+import dcc.mouseglob.tracking.Tracker;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes datasets in the binary format and reads them back by frame and by
+ * time. No external test framework required; run main() to execute checks.
+ */
+public class DatasetFileTests {
+
+    public static void main(String[] args) {
+        boolean ok = true;
+        try {
+            ok &= roundTripsColumns();
+            ok &= seeksByTime();
+            ok &= recordsNewFrames();
+            ok &= emptyDataset();
+            ok &= rejectsOtherFiles();
+        } catch (Throwable t) {
+            System.out.println("[DEBUG_LOG] DatasetFile tests FAILED: " + t);
+            t.printStackTrace();
+            System.exit(1);
+        }
+        System.out.println("[DEBUG_LOG] DatasetFile tests " + (ok ? "OK" : "FAILED"));
+    }
+
+    static boolean roundTripsColumns() throws IOException {
+        Dataset dataset = newDataset();
+        int n = 3 * DatasetFormat.BLOCK_ROWS + 17;
+        for (int i = 0; i < n; i++) dataset.update(40L * i);
+        Path file = Files.createTempFile("dataset", ".mgds");
+        try {
+            new DatasetWriter(dataset).write(file);
+            if (Files.size(file) > n * 8L * 4 / 2) throw new AssertionError("not compressed: " + Files.size(file));
+            try (DatasetReader reader = new DatasetReader(file)) {
+                if (reader.size() != n) throw new AssertionError("size " + reader.size());
+                List<String> names = Arrays.asList("Time", "Ramp", "Walk x", "Walk y");
+                for (int c = 0; c < names.size(); c++)
+                    if (!reader.getColumnName(c).equals(names.get(c))) throw new AssertionError("column " + reader.getColumnName(c));
+                int ramp = reader.getColumn("Ramp"), x = reader.getColumn("Walk x"), y = reader.getColumn("Walk y");
+                // Read backwards and across blocks, so the block cache is exercised
+                for (int i = n - 1; i >= 0; i -= 7) {
+                    if (reader.getTime(i) != 40L * i / 1e3) throw new AssertionError("time at " + i);
+                    if (reader.getDouble(ramp, i) != Math.sqrt(i)) throw new AssertionError("ramp at " + i);
+                    if (reader.getDouble(x, i) != i % 13 || reader.getDouble(y, i) != -i) throw new AssertionError("walk at " + i);
+                }
+                if (reader.getLong(ramp, n - 1) != (long) Math.sqrt(n - 1)) throw new AssertionError("long view");
+                try {
+                    reader.getTime(n);
+                    throw new AssertionError("read past the end");
+                } catch (IndexOutOfBoundsException expected) {
+                    // expected
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+        return true;
+    }
+
+    static boolean seeksByTime() throws IOException {
+        Dataset dataset = newDataset();
+        int n = 2 * DatasetFormat.BLOCK_ROWS + 5;
+        for (int i = 0; i < n; i++) dataset.update(100 + 40L * i);
+        Path file = Files.createTempFile("dataset", ".mgds");
+        try {
+            new DatasetWriter(dataset).write(file);
+            try (DatasetReader reader = new DatasetReader(file)) {
+                if (reader.seek(0.05) != -1) throw new AssertionError("before the start");
+                if (reader.seek(0.1) != 0) throw new AssertionError("first frame");
+                if (reader.seek(1e9) != n - 1) throw new AssertionError("after the end");
+                for (int i = 0; i < n; i += 3) {
+                    double t = (100 + 40L * i) / 1e3;
+                    if (reader.seek(t) != i) throw new AssertionError("seek " + t + " gave " + reader.seek(t));
+                    if (reader.seek(t + 0.02) != i) throw new AssertionError("seek between frames " + i);
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+        return true;
+    }
+
+    static boolean recordsNewFrames() throws IOException {
+        Dataset dataset = newDataset();
+        for (int i = 0; i < 10; i++) dataset.update(40L * i);
+        Path file = Files.createTempFile("dataset", ".mgds");
+        try {
+            DatasetWriter writer = new DatasetWriter(dataset);
+            writer.start(file);
+            if (!writer.isRecording()) throw new AssertionError("not recording");
+            for (int i = 10; i < DatasetFormat.BLOCK_ROWS + 100; i++) dataset.update(40L * i);
+            writer.stop();
+            dataset.update(1000000);
+            try (DatasetReader reader = new DatasetReader(file)) {
+                if (reader.size() != DatasetFormat.BLOCK_ROWS + 100) throw new AssertionError("recorded " + reader.size());
+                int ramp = reader.getColumn("Ramp");
+                if (reader.getDouble(ramp, 500) != Math.sqrt(500)) throw new AssertionError("recorded value");
+            }
+        } finally {
+            Files.delete(file);
+        }
+        return true;
+    }
+
+    static boolean emptyDataset() throws IOException {
+        Path file = Files.createTempFile("dataset", ".mgds");
+        try {
+            new DatasetWriter(newDataset()).write(file);
+            try (DatasetReader reader = new DatasetReader(file)) {
+                if (reader.size() != 0 || reader.getColumnCount() != 4) throw new AssertionError("empty file");
+                if (reader.seek(1) != -1) throw new AssertionError("seek in empty file");
+            }
+        } finally {
+            Files.delete(file);
+        }
+        return true;
+    }
+
+    static boolean rejectsOtherFiles() throws IOException {
+        Path file = Files.createTempFile("dataset", ".csv");
+        try {
+            Files.write(file, "Time,x,y\n0,1,2\n".getBytes());
+            try {
+                new DatasetReader(file).close();
+                throw new AssertionError("CSV accepted");
+            } catch (IOException expected) {
+                // expected
+            }
+        } finally {
+            Files.delete(file);
+        }
+        return true;
+    }
+
+    // --- helpers ---
+    private static Dataset newDataset() {
+        Tracker tracker = new Tracker(0, 0, 5, null) {
+            @Override
+            public void setDataset(Dataset dataset) {
+            }
+        };
+        return new Dataset(tracker, Arrays.<Class<? extends Analysis>> asList(Time.class, Ramp.class, Walk.class));
+    }
+
+    @AnalysisInfo("Ramp")
+    public static class Ramp extends Series1D implements Analysis {
+        @Override
+        public void update() {
+            add(Math.sqrt(size()));
+        }
+    }
+
+    @AnalysisInfo("Walk")
+    public static class Walk extends Series2D implements Analysis {
+        @Override
+        public void update() {
+            add(size() % 13, -size());
+        }
+    }
+}
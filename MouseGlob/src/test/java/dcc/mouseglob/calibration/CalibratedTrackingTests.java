@@ -0,0 +1,101 @@
+package dcc.mouseglob.calibration;
+
+import dcc.graphics.image.Image;
+import dcc.graphics.math.Vector;
+import dcc.inject.Context;
+import dcc.inject.Indexer;
+import dcc.mouseglob.analysis.AnalysesManager;
+import dcc.mouseglob.analysis.analyses.PositionAnalysis;
+import dcc.mouseglob.maze.BoundariesManager;
+import dcc.mouseglob.tracking.Tracker;
+import dcc.mouseglob.tracking.TrackingManager;
+
+/**
+ * Checks that a tracker keeps following the mouse under a lens model whose
+ * arena origin is neither at the frame's corner nor aligned with it: trackers
+ * move in the frame, while their positions are mapped to the arena once. No
+ * external test framework required; run main() to execute checks.
+ */
+public class CalibratedTrackingTests {
+
+    private static final int WIDTH = 160, HEIGHT = 120;
+    private static final int FRAMES = 40;
+    /** Arena origin in the frame, and the arena's rotation from the frame's axes */
+    private static final double ORIGIN_X = 37, ORIGIN_Y = 91, ANGLE = Math.toRadians(30);
+    private static final double SCALE = 0.25; // cm/px
+
+    public static void main(String[] args) {
+        boolean ok = true;
+        try {
+            ok &= trackerFollowsBlobUnderRotatedArena();
+        } catch (Throwable t) {
+            System.out.println("[DEBUG_LOG] CalibratedTracking tests FAILED: " + t);
+            t.printStackTrace();
+            System.exit(1);
+        }
+        System.out.println("[DEBUG_LOG] CalibratedTracking tests " + (ok ? "OK" : "FAILED"));
+    }
+
+    static boolean trackerFollowsBlobUnderRotatedArena() {
+        Context ctx = new Context();
+        ctx.inject(Indexer.load(TrackingManager.class, BoundariesManager.class));
+        ctx.getInstance(AnalysesManager.class).setContext(ctx);
+        TrackingManager trackingManager = ctx.getInstance(TrackingManager.class);
+        BoundariesManager boundariesManager = ctx.getInstance(BoundariesManager.class);
+        Calibration calibration = ctx.getInstance(Calibration.class);
+
+        for (int i = 0; i <= 4; i++)
+            for (int j = 0; j <= 3; j++) {
+                Vector p = new Vector(i * (WIDTH - 1) / 4.0, j * (HEIGHT - 1) / 3.0);
+                calibration.addReferencePoint(p, arena(p));
+            }
+        LensModel model = calibration.fitLens(WIDTH, HEIGHT);
+        if (model.getError() > 0.01) throw new AssertionError("fit error " + model);
+        if (Math.abs(calibration.getScale() - SCALE) > 1e-3)
+            throw new AssertionError("scale " + calibration.getScale());
+
+        Tracker tracker = null;
+        for (int f = 0; f < FRAMES; f++) {
+            Vector blob = blob(f);
+            Image frame = frame(blob);
+            boundariesManager.newFrame(frame, f * 40L);
+            if (tracker == null) {
+                tracker = new Tracker(blob.x, blob.y, trackingManager.getTrackerSize(),
+                        boundariesManager.getMask(blob.x, blob.y));
+                trackingManager.add(tracker);
+            }
+            trackingManager.newFrame(frame, f * 40L);
+
+            // The tracker moves in the frame...
+            Vector position = tracker.getPosition();
+            if (position.distance(blob) > 0.5)
+                throw new AssertionError("frame " + f + ": tracker at " + position + ", blob at " + blob);
+            // ...and its trajectory is in the arena
+            Vector cm = tracker.getDataset().require(PositionAnalysis.class).get(-1);
+            if (cm.distance(arena(blob)) > 0.2)
+                throw new AssertionError("frame " + f + ": position " + cm + " cm, blob at " + arena(blob));
+        }
+        return true;
+    }
+
+    /** The blob crosses the frame diagonally, away from the arena origin. */
+    private static Vector blob(int f) {
+        return new Vector(30 + 2.5 * f, 25 + 1.5 * f);
+    }
+
+    private static Vector arena(Vector p) {
+        double dx = (p.x - ORIGIN_X) * SCALE, dy = (p.y - ORIGIN_Y) * SCALE;
+        double cos = Math.cos(ANGLE), sin = Math.sin(ANGLE);
+        return new Vector(cos * dx + sin * dy, -sin * dx + cos * dy);
+    }
+
+    /** A light disc on a dark background, as tracked by default. */
+    private static Image frame(Vector blob) {
+        Image image = new Image(WIDTH, HEIGHT);
+        int[] pixels = image.getPixels();
+        for (int y = 0; y < HEIGHT; y++)
+            for (int x = 0; x < WIDTH; x++)
+                pixels[y * WIDTH + x] = Math.hypot(x - blob.x, y - blob.y) < 6 ? 0xFFFFFFFF : 0xFF000000;
+        return image;
+    }
+}
@@ -0,0 +1,174 @@
+package dcc.mouseglob.calibration;
+
+import dcc.graphics.math.Vector;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks fitting lens models to reference points, mapping between frame and
+ * arena, and the remap tables computed from the models and cached on disk. No
+ * external test framework required; run main() to execute checks.
+ */
+public class LensModelTests {
+
+    private static final int WIDTH = 640, HEIGHT = 480;
+    /** A barrel-distorted camera, slightly off-axis, at about 0.2 cm/px */
+    private static final LensModel CAMERA = new LensModel(WIDTH, HEIGHT, 0.12, 0.03,
+            new double[] { 0.2, 0.01, -5, -0.005, 0.21, -3, 2e-5, 1e-5, 1 }, 0);
+
+    public static void main(String[] args) {
+        boolean ok = true;
+        try {
+            ok &= fitRecoversDistortionAndPerspective();
+            ok &= fourPointsFitAHomography();
+            ok &= degeneratePointsAreRejected();
+            ok &= toImageInvertsToWorld();
+            ok &= remapTableMatchesModel();
+            ok &= remapTableIsCachedForItsModelOnly();
+        } catch (Throwable t) {
+            System.out.println("[DEBUG_LOG] LensModel tests FAILED: " + t);
+            t.printStackTrace();
+            System.exit(1);
+        }
+        System.out.println("[DEBUG_LOG] LensModel tests " + (ok ? "OK" : "FAILED"));
+    }
+
+    static boolean fitRecoversDistortionAndPerspective() {
+        List<Vector> image = new ArrayList<>(), world = new ArrayList<>();
+        for (int i = 0; i <= 4; i++)
+            for (int j = 0; j <= 3; j++) {
+                Vector p = new Vector(20 + i * 150, 15 + j * 150);
+                image.add(p);
+                world.add(CAMERA.toWorld(p.x, p.y));
+            }
+        LensModel fitted = LensModel.fit(image, world, WIDTH, HEIGHT);
+        if (fitted.getError() > 0.01) throw new AssertionError("fit error " + fitted);
+        Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            double x = random.nextDouble() * WIDTH, y = random.nextDouble() * HEIGHT;
+            double d = fitted.toWorld(x, y).distance(CAMERA.toWorld(x, y));
+            if (d > 0.02) throw new AssertionError("off by " + d + " cm at " + x + ", " + y);
+        }
+        assertNear(fitted.getScale(), CAMERA.getScale(), 1e-3, "scale");
+
+        // A single scale is wrong near the edges of a distorted frame
+        double scale = CAMERA.getScale();
+        Vector o = CAMERA.toWorld(WIDTH / 2.0, HEIGHT / 2.0);
+        Vector corner = CAMERA.toWorld(0, 0);
+        double scaled = Math.hypot(WIDTH / 2.0, HEIGHT / 2.0) * scale;
+        if (Math.abs(corner.distance(o) - scaled) < 1)
+            throw new AssertionError("distortion too weak to test");
+        return true;
+    }
+
+    static boolean fourPointsFitAHomography() {
+        List<Vector> image = Arrays.asList(new Vector(10, 10), new Vector(600, 30),
+                new Vector(620, 460), new Vector(30, 440));
+        List<Vector> world = Arrays.asList(new Vector(0, 0), new Vector(100, 0),
+                new Vector(100, 80), new Vector(0, 80));
+        LensModel fitted = LensModel.fit(image, world, WIDTH, HEIGHT);
+        if (fitted.getK1() != 0 || fitted.getK2() != 0) throw new AssertionError("distortion from 4 points");
+        for (int i = 0; i < 4; i++) {
+            Vector p = image.get(i);
+            double d = fitted.toWorld(p.x, p.y).distance(world.get(i));
+            if (d > 1e-6) throw new AssertionError("corner " + i + " off by " + d);
+        }
+        return true;
+    }
+
+    static boolean degeneratePointsAreRejected() {
+        List<Vector> line = Arrays.asList(new Vector(0, 0), new Vector(10, 10),
+                new Vector(20, 20), new Vector(30, 30));
+        expectRejected(line, line, WIDTH, HEIGHT, "collinear points");
+        expectRejected(line.subList(0, 3), line.subList(0, 3), WIDTH, HEIGHT, "three points");
+        List<Vector> square = Arrays.asList(new Vector(0, 0), new Vector(10, 0),
+                new Vector(10, 10), new Vector(0, 10));
+        expectRejected(square, square, 0, 0, "unknown frame size");
+        return true;
+    }
+
+    static boolean toImageInvertsToWorld() {
+        Random random = new Random(2);
+        for (int i = 0; i < 1000; i++) {
+            double x = random.nextDouble() * WIDTH, y = random.nextDouble() * HEIGHT;
+            Vector w = CAMERA.toWorld(x, y);
+            Vector p = CAMERA.toImage(w.x, w.y);
+            if (Math.hypot(p.x - x, p.y - y) > 1e-3)
+                throw new AssertionError("(" + x + ", " + y + ") came back as " + p);
+        }
+        return true;
+    }
+
+    static boolean remapTableMatchesModel() {
+        RemapTable table = RemapTable.compute(CAMERA);
+        Random random = new Random(3);
+        for (int i = 0; i < 10000; i++) {
+            double x = random.nextDouble() * (WIDTH - 1), y = random.nextDouble() * (HEIGHT - 1);
+            double d = table.map(x, y).distance(CAMERA.toWorld(x, y));
+            if (d > 0.005) throw new AssertionError("table off by " + d + " cm at " + x + ", " + y);
+        }
+        // The last pixels, and points outside the frame, are still mapped
+        Vector last = table.map(WIDTH - 1, HEIGHT - 1);
+        if (last.distance(CAMERA.toWorld(WIDTH - 1, HEIGHT - 1)) > 0.005) throw new AssertionError("last pixel " + last);
+        Vector outside = table.map(-3, HEIGHT + 2);
+        if (outside.distance(CAMERA.toWorld(-3, HEIGHT + 2)) > 1e-9) throw new AssertionError("outside " + outside);
+        return true;
+    }
+
+    static boolean remapTableIsCachedForItsModelOnly() throws Exception {
+        File dir = Files.createTempDirectory("remap").toFile();
+        try {
+            File file = new File(dir, "experiment.mgr");
+            if (RemapTable.read(file, CAMERA) != null) throw new AssertionError("read a missing table");
+
+            RemapTable table = RemapTable.compute(CAMERA);
+            table.write(file);
+            RemapTable read = RemapTable.read(file, CAMERA);
+            if (read == null) throw new AssertionError("table not read back");
+            Random random = new Random(4);
+            for (int i = 0; i < 1000; i++) {
+                double x = random.nextDouble() * (WIDTH - 1), y = random.nextDouble() * (HEIGHT - 1);
+                Vector a = table.map(x, y), b = read.map(x, y);
+                if (a.x != b.x || a.y != b.y) throw new AssertionError("read table differs at " + x + ", " + y);
+            }
+
+            // A table of another model must be recomputed, not reused
+            LensModel other = new LensModel(WIDTH, HEIGHT, 0.121, 0.03, CAMERA.getHomography(), 0);
+            if (RemapTable.read(file, other) != null) throw new AssertionError("table reused for another model");
+            LensModel resized = new LensModel(320, 240, 0.12, 0.03, CAMERA.getHomography(), 0);
+            if (RemapTable.read(file, resized) != null) throw new AssertionError("table reused for another size");
+            if (new File(dir, "experiment.mgr.part").exists()) throw new AssertionError("partial file left behind");
+        } finally {
+            deleteTree(dir);
+        }
+        return true;
+    }
+
+    private static void expectRejected(List<Vector> image, List<Vector> world, int width, int height,
+            String what) {
+        try {
+            LensModel.fit(image, world, width, height);
+        } catch (IllegalArgumentException expected) {
+            return;
+        }
+        throw new AssertionError(what + " accepted");
+    }
+
+    private static void deleteTree(File file) {
+        File[] children = file.listFiles();
+        if (children != null)
+            for (File child : children)
+                deleteTree(child);
+        file.delete();
+    }
+
+    private static void assertNear(double value, double expected, double tolerance, String what) {
+        if (Math.abs(value - expected) > tolerance)
+            throw new AssertionError(what + " " + value + ", expected " + expected);
+    }
+}
@@ -0,0 +1,134 @@
+package dcc.mouseglob.camera;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks several camera streams captured at once by a rig, each replaying a
+ * directory of frames as a fake device: every stream delivers its own frames,
+ * in order, and a camera that cannot open does not keep the others from
+ * starting. No external test framework required; run main() to execute checks.
+ */
+public class CameraRigTests {
+
+    private static final int CAMERAS = 4;
+    private static final int FRAMES = 12;
+    private static final List<File> TEMP = new ArrayList<>();
+
+    public static void main(String[] args) {
+        boolean ok = true;
+        try {
+            ok &= streamsDeliverTheirOwnFramesInOrder();
+            ok &= failingCameraDoesNotStopTheOthers();
+            ok &= duplicateIdsAreRejected();
+        } catch (Throwable t) {
+            System.out.println("[DEBUG_LOG] CameraRig tests FAILED: " + t);
+            t.printStackTrace();
+            System.exit(1);
+        } finally {
+            for (File dir : TEMP) deleteTree(dir);
+        }
+        System.out.println("[DEBUG_LOG] CameraRig tests " + (ok ? "OK" : "FAILED"));
+    }
+
+    static boolean streamsDeliverTheirOwnFramesInOrder() throws Exception {
+        // Queue policy with buffers to spare: nothing is dropped, so every frame must arrive
+        CameraRig rig = new CameraRig(FRAMES + 1, false);
+        List<List<Integer>> received = new ArrayList<>();
+        for (int c = 0; c < CAMERAS; c++) {
+            List<Integer> frames = Collections.synchronizedList(new ArrayList<>());
+            received.add(frames);
+            CameraStream stream = rig.open("cam" + c, new FileSource(frameDir(c, FRAMES).toFile(), 200, false));
+            stream.addNewFrameListener((image, time) -> frames.add(image.getPixels()[0] & 0xFFFFFF));
+        }
+        if (!rig.start().isEmpty()) throw new AssertionError("cameras failed to start");
+        if (!rig.awaitTermination(10, TimeUnit.SECONDS)) throw new AssertionError("rig did not end");
+        if (rig.getRunning() != 0) throw new AssertionError("streams still running after their sources ended");
+
+        for (int c = 0; c < CAMERAS; c++) {
+            List<Integer> frames = received.get(c);
+            if (frames.size() != FRAMES)
+                throw new AssertionError("cam" + c + " delivered " + frames.size() + " of " + FRAMES + " frames");
+            for (int f = 0; f < FRAMES; f++)
+                if (frames.get(f) != pixel(c, f))
+                    throw new AssertionError("cam" + c + " frame " + f + " was " + Integer.toHexString(frames.get(f)));
+            CameraStream stream = rig.getStream("cam" + c);
+            if (stream.getFrames() != FRAMES) throw new AssertionError("cam" + c + " counted " + stream.getFrames());
+            if (stream.getLatency(CameraManager.Stage.TOTAL).getCount() != FRAMES)
+                throw new AssertionError("cam" + c + " latency samples " + stream.getLatency(CameraManager.Stage.TOTAL).getCount());
+        }
+        String metrics = rig.getMetricsText();
+        if (!metrics.startsWith("Cams 0/" + CAMERAS + " ON") || !metrics.contains("drop: 0"))
+            throw new AssertionError("metrics: " + metrics);
+        rig.stop();
+        return true;
+    }
+
+    static boolean failingCameraDoesNotStopTheOthers() throws Exception {
+        CameraRig rig = new CameraRig(4, true);
+        CameraStream empty = rig.open("empty", new FileSource(tempDir("rig-empty").toFile(), -1, false));
+        CameraStream live = rig.open("live", new FileSource(frameDir(9, 3).toFile(), 100, true));
+        List<CameraStream> failed = rig.start();
+        try {
+            if (!failed.equals(Collections.singletonList(empty))) throw new AssertionError("failed: " + failed);
+            if (!live.isRunning() || empty.isRunning()) throw new AssertionError("wrong streams running");
+            // A looping source goes on until stopped
+            if (rig.awaitTermination(200, TimeUnit.MILLISECONDS)) throw new AssertionError("looping stream ended");
+            if (live.getFrames() == 0) throw new AssertionError("no frames from the live stream");
+        } finally {
+            rig.stop();
+        }
+        if (live.isRunning()) throw new AssertionError("stream running after stop");
+        return true;
+    }
+
+    static boolean duplicateIdsAreRejected() throws Exception {
+        CameraRig rig = new CameraRig(4, true);
+        rig.open("cam", new FileSource(new File("unused"), 0, false));
+        try {
+            rig.open("cam", new FileSource(new File("unused"), 0, false));
+            throw new AssertionError("duplicate id accepted");
+        } catch (IllegalArgumentException expected) {
+            // ok
+        }
+        return rig.getStreams().size() == 1;
+    }
+
+    /** Frame f of camera c has a first pixel telling both apart. */
+    private static int pixel(int c, int f) {
+        return (c << 16) | (f << 8) | 0x7F;
+    }
+
+    private static Path frameDir(int c, int frames) throws Exception {
+        Path dir = tempDir("rig-cam" + c);
+        for (int f = 0; f < frames; f++) {
+            BufferedImage image = new BufferedImage(8, 6, BufferedImage.TYPE_INT_RGB);
+            image.setRGB(0, 0, pixel(c, f));
+            ImageIO.write(image, "png", dir.resolve(String.format("frame%03d.png", f)).toFile());
+        }
+        return dir;
+    }
+
+    /** Creates a temporary directory, deleted when the checks end. */
+    private static Path tempDir(String prefix) throws IOException {
+        Path dir = Files.createTempDirectory(prefix);
+        TEMP.add(dir.toFile());
+        return dir;
+    }
+
+    private static void deleteTree(File file) {
+        File[] children = file.listFiles();
+        if (children != null)
+            for (File child : children)
+                deleteTree(child);
+        file.delete();
+    }
+}
@@ -0,0 +1,166 @@
+package dcc.mouseglob.camera;
+
+import dcc.graphics.image.Image;
+import dcc.util.LatencyHistogram;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks the camera frame ring under both policies (buffer ownership, order,
+ * drops) and the latency histograms fed by the low-latency capture path. No
+ * external test framework required; run main() to execute checks.
+ */
+public class FrameRingTests {
+
+    private static final long TIMEOUT = TimeUnit.MILLISECONDS.toNanos(100);
+
+    public static void main(String[] args) {
+        boolean ok = true;
+        try {
+            ok &= queueKeepsOrderAndDropsWhenFull();
+            ok &= latestFrameWins();
+            ok &= buffersAreNeverSharedAcrossThreads(FrameRing.Policy.QUEUE);
+            ok &= buffersAreNeverSharedAcrossThreads(FrameRing.Policy.LATEST);
+            ok &= histogramBucketsAndPercentiles();
+        } catch (Throwable t) {
+            System.out.println("[DEBUG_LOG] FrameRing tests FAILED: " + t);
+            t.printStackTrace();
+            System.exit(1);
+        }
+        System.out.println("[DEBUG_LOG] FrameRing tests " + (ok ? "OK" : "FAILED"));
+    }
+
+    static boolean queueKeepsOrderAndDropsWhenFull() {
+        FrameRing ring = new FrameRing(4, FrameRing.Policy.QUEUE);
+        for (int t = 1; t <= 4; t++) {
+            FrameRing.Slot slot = ring.claim();
+            if (slot == null) throw new AssertionError("no buffer for frame " + t);
+            ring.publish(slot, new Image(2, 2), t, System.nanoTime());
+        }
+        if (ring.claim() != null) throw new AssertionError("claimed past the ring size");
+        if (ring.getMetrics().getDropped() != 1 || ring.getPending() != 4) throw new AssertionError("metrics " + ring.getMetrics());
+        for (int t = 1; t <= 4; t++) {
+            FrameRing.Slot slot = ring.take(TIMEOUT);
+            if (slot == null || slot.getTime() != t) throw new AssertionError("order at " + t);
+            ring.release(slot);
+        }
+        if (ring.take(TimeUnit.MILLISECONDS.toNanos(5)) != null) throw new AssertionError("frame taken twice");
+        FrameRing.Slot slot = ring.claim();
+        if (slot == null || slot.getImage() == null) throw new AssertionError("buffer not reused");
+        ring.cancel(slot);
+        if (ring.claim() != slot) throw new AssertionError("cancelled buffer lost");
+        return true;
+    }
+
+    static boolean latestFrameWins() {
+        FrameRing ring = new FrameRing(3, FrameRing.Policy.LATEST);
+        for (int t = 1; t <= 100; t++) {
+            FrameRing.Slot slot = ring.claim();
+            if (slot == null) throw new AssertionError("ran out of buffers at " + t);
+            ring.publish(slot, new Image(1, 1), t, System.nanoTime());
+            if (ring.getPending() != 1) throw new AssertionError("more than one frame waiting");
+        }
+        FrameRing.Slot slot = ring.take(TIMEOUT);
+        if (slot == null || slot.getTime() != 100) throw new AssertionError("not the newest frame");
+        if (ring.getMetrics().getDropped() != 99) throw new AssertionError("drops " + ring.getMetrics().getDropped());
+        // The capture thread keeps going while the dispatching thread holds a frame
+        for (int t = 101; t <= 110; t++) {
+            FrameRing.Slot next = ring.claim();
+            if (next == null || next == slot) throw new AssertionError("buffer in use claimed at " + t);
+            ring.publish(next, new Image(1, 1), t, System.nanoTime());
+        }
+        ring.release(slot);
+        if (ring.take(TIMEOUT).getTime() != 110) throw new AssertionError("not the newest frame after release");
+        try {
+            new FrameRing(2, FrameRing.Policy.LATEST);
+            throw new AssertionError("two buffers accepted");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+        return true;
+    }
+
+    static boolean buffersAreNeverSharedAcrossThreads(FrameRing.Policy policy) throws InterruptedException {
+        final int n = 5000;
+        final FrameRing ring = new FrameRing(4, policy);
+        final long[] result = new long[3];
+        Thread dispatcher = new Thread(() -> {
+            long previous = 0;
+            while (previous < n) {
+                FrameRing.Slot slot = ring.take(TIMEOUT);
+                if (slot == null) continue;
+                if (slot.getTime() <= previous) result[1]++;
+                previous = slot.getTime();
+                if (previous % 50 == 0) sleep(1);
+                if (slot.getImage().get(0, 0) != (int) slot.getTime()) result[2]++;
+                result[0]++;
+                ring.release(slot);
+            }
+        }, "Dispatch");
+        dispatcher.start();
+
+        int claimed = 0;
+        for (int t = 1; t <= n; t++) {
+            FrameRing.Slot slot = ring.claim();
+            if (slot == null) {
+                if (t == n) t--; // the last frame must get through
+                Thread.yield();
+                continue;
+            }
+            claimed++;
+            Image image = slot.getImage() != null ? slot.getImage() : new Image(8, 8);
+            image.set(0, 0, t);
+            ring.publish(slot, image, t, System.nanoTime());
+        }
+        dispatcher.join(30_000);
+        if (dispatcher.isAlive()) throw new AssertionError(policy + ": dispatcher stuck");
+        if (result[1] != 0) throw new AssertionError(policy + ": out of order");
+        if (result[2] != 0) throw new AssertionError(policy + ": buffer written while in use");
+        long published = ring.getMetrics().getPublished();
+        if (published != claimed) throw new AssertionError(policy + ": published " + published);
+        // Under QUEUE only frames without a buffer are dropped, and never published
+        long overwritten = policy == FrameRing.Policy.QUEUE ? 0
+                : ring.getMetrics().getDropped() - (n - claimed);
+        if (result[0] + overwritten != published) throw new AssertionError(policy + ": frames unaccounted " + ring.getMetrics());
+        return true;
+    }
+
+    static boolean histogramBucketsAndPercentiles() {
+        // Durations are kept within 1/8 of their value
+        for (long micros = 1; micros < 100_000_000; micros += 1 + micros / 3) {
+            LatencyHistogram one = new LatencyHistogram();
+            one.record(TimeUnit.MICROSECONDS.toNanos(micros));
+            one.record(TimeUnit.HOURS.toNanos(1));
+            double p50 = one.getPercentile(50) * 1000;
+            if (p50 < micros || p50 > micros + micros / 8.0) throw new AssertionError(micros + " us read as " + p50);
+        }
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        if (histogram.getPercentile(99) != 0) throw new AssertionError("empty percentile");
+        for (int i = 1; i <= 1000; i++) histogram.record(TimeUnit.MICROSECONDS.toNanos(i * 10));
+        histogram.record(-5);
+        if (histogram.getCount() != 1001) throw new AssertionError("count");
+        assertNear(histogram.getPercentile(50), 5.0, "p50");
+        assertNear(histogram.getPercentile(99), 9.9, "p99");
+        if (histogram.getPercentile(100) != histogram.getMax() || histogram.getMax() != 10.0) throw new AssertionError("max");
+        assertNear(histogram.getMean(), 5.0, "mean");
+        histogram.reset();
+        if (histogram.getCount() != 0 || histogram.getPercentile(50) != 0) throw new AssertionError("reset");
+        histogram.record(TimeUnit.DAYS.toNanos(1));
+        if (histogram.getPercentile(50) != TimeUnit.DAYS.toMillis(1)) throw new AssertionError("overflow bucket");
+        return true;
+    }
+
+    // --- helpers ---
+    private static void assertNear(double value, double expected, String what) {
+        if (Math.abs(value - expected) > expected / 8) throw new AssertionError(what + " " + value);
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package dcc.mouseglob.cli;
+
+import dcc.mouseglob.cli.BatchProcessor.OutputFormat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Checks how batch jobs are listed and resumed: every job gets an output of its own,
+ * videos listed twice are rejected, and jobs whose output exists are skipped while
+ * failed ones run again. No external test framework required; run main() to execute
+ * checks.
+ */
+public class BatchSchedulerTests {
+
+    public static void main(String[] args) {
+        boolean ok = true;
+        Path dir = null;
+        try {
+            dir = Files.createTempDirectory("batch");
+            ok &= directoryVideosSharingABaseNameGetTheirOwnOutputs(dir.resolve("scan"));
+            ok &= manifestVideosInSeveralDirectoriesGetTheirOwnOutputs(dir.resolve("manifest"));
+            ok &= videoListedTwiceIsRejected(dir.resolve("twice"));
+            ok &= finishedJobsAreSkippedAndFailedOnesRerun(dir.resolve("resume"));
+        } catch (Throwable t) {
+            System.out.println("[DEBUG_LOG] BatchScheduler tests FAILED: " + t);
+            t.printStackTrace();
+            System.exit(1);
+        } finally {
+            if (dir != null) deleteTree(dir.toFile());
+        }
+        System.out.println("[DEBUG_LOG] BatchScheduler tests " + (ok ? "OK" : "FAILED"));
+    }
+
+    static boolean directoryVideosSharingABaseNameGetTheirOwnOutputs(Path dir) throws IOException {
+        touch(dir, "trial.mp4", "trial.avi", "Trial.mov", "other.mp4", "notes.txt");
+        List<BatchScheduler.Job> jobs = BatchScheduler.listJobs(dir, null, null, null);
+        assertNames(jobs, "other", "Trial_mov", "trial_avi", "trial_mp4");
+        return true;
+    }
+
+    static boolean manifestVideosInSeveralDirectoriesGetTheirOwnOutputs(Path dir) throws IOException {
+        touch(dir, "day1/trial.mp4", "day2/trial.mp4", "day2/trial.avi", "day3/single.mp4");
+        Path manifest = write(dir.resolve("jobs.txt"),
+                "day1/trial.mp4", "day2/trial.mp4", "day2/trial.avi", "day3/single.mp4");
+        List<BatchScheduler.Job> jobs = BatchScheduler.listJobs(manifest, null, null, null);
+        assertNames(jobs, "day1_trial", "day2_trial_mp4", "day2_trial_avi", "single");
+        return true;
+    }
+
+    static boolean videoListedTwiceIsRejected(Path dir) throws IOException {
+        touch(dir, "trial.mp4");
+        Path manifest = write(dir.resolve("jobs.txt"), "trial.mp4", "./trial.mp4, , , 24");
+        try {
+            BatchScheduler.listJobs(manifest, null, null, null);
+        } catch (IOException expected) {
+            return true;
+        }
+        throw new AssertionError("video listed twice accepted");
+    }
+
+    static boolean finishedJobsAreSkippedAndFailedOnesRerun(Path dir) throws Exception {
+        touch(dir, "a.mp4", "b.mp4", "c.mp4");
+        Path out = Files.createDirectories(dir.resolve("out"));
+        List<BatchScheduler.Job> jobs = BatchScheduler.listJobs(dir, null, null, null);
+        BatchScheduler scheduler = new BatchScheduler(out, OutputFormat.CSV, 2);
+
+        // First run: b fails after leaving a partial file behind, as an interrupted run would
+        Set<String> ran = Collections.synchronizedSet(new HashSet<>());
+        int failed = scheduler.run(jobs, (job, output) -> {
+            ran.add(job.name);
+            if (job.name.equals("b")) {
+                write(output.resolveSibling(output.getFileName() + ".part"), "0,1.00,2.00");
+                throw new IOException("decoder failed");
+            }
+            write(output, "0,1.00,2.00");
+        });
+        if (failed != 1) throw new AssertionError("failed jobs " + failed);
+        if (!ran.equals(new HashSet<>(Arrays.asList("a", "b", "c")))) throw new AssertionError("ran " + ran);
+        if (!Files.exists(out.resolve("a.csv")) || Files.exists(out.resolve("b.csv")))
+            throw new AssertionError("outputs " + Arrays.toString(out.toFile().list()));
+
+        // Second run: only the failed job runs again
+        ran.clear();
+        failed = scheduler.run(jobs, (job, output) -> {
+            ran.add(job.name);
+            write(output, "0,1.00,2.00");
+        });
+        if (failed != 0) throw new AssertionError("failed jobs on resume " + failed);
+        if (!ran.equals(Collections.singleton("b"))) throw new AssertionError("resumed " + ran);
+
+        // Third run: nothing left to do
+        ran.clear();
+        scheduler.run(jobs, (job, output) -> ran.add(job.name));
+        if (!ran.isEmpty()) throw new AssertionError("finished jobs ran again: " + ran);
+        return true;
+    }
+
+    // --- helpers ---
+    private static void assertNames(List<BatchScheduler.Job> jobs, String... expected) {
+        Set<String> names = new HashSet<>();
+        for (BatchScheduler.Job job : jobs) names.add(job.name);
+        if (jobs.size() != expected.length || !names.equals(new HashSet<>(Arrays.asList(expected))))
+            throw new AssertionError("output names " + names + ", expected " + Arrays.toString(expected));
+    }
+
+    private static void touch(Path dir, String... files) throws IOException {
+        for (String file : files) {
+            Path path = dir.resolve(file);
+            Files.createDirectories(path.getParent());
+            Files.createFile(path);
+        }
+    }
+
+    private static Path write(Path file, String... lines) throws IOException {
+        Files.createDirectories(file.getParent());
+        return Files.write(file, new ArrayList<>(Arrays.asList(lines)));
+    }
+
+    private static void deleteTree(File file) {
+        File[] children = file.listFiles();
+        if (children != null)
+            for (File child : children)
+                deleteTree(child);
+        file.delete();
+    }
+}
@@ -0,0 +1,100 @@
+package dcc.mouseglob.cli;
+
+import dcc.mouseglob.cli.BatchProcessor.OutputFormat;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs a rig of fake cameras, each replaying a directory of frames, end to end: every
+ * camera is tracked in a context of its own and written to an output of its own, and a
+ * camera that cannot start leaves no output behind. No external test framework
+ * required; run main() to execute checks.
+ */
+public class RigProcessorTests {
+
+    private static final int WIDTH = 64, HEIGHT = 48;
+    /** Where each camera's blob sits, off the centre the trackers start from. */
+    private static final int[][] BLOBS = { { -5, -3 }, { 5, -3 }, { -5, 3 }, { 5, 3 } };
+
+    public static void main(String[] args) {
+        boolean ok = true;
+        Path dir = null;
+        try {
+            dir = Files.createTempDirectory("rig");
+            ok &= camerasAreTrackedAndWrittenSeparately(dir);
+        } catch (Throwable t) {
+            System.out.println("[DEBUG_LOG] RigProcessor tests FAILED: " + t);
+            t.printStackTrace();
+            System.exit(1);
+        } finally {
+            if (dir != null) deleteTree(dir.toFile());
+        }
+        System.out.println("[DEBUG_LOG] RigProcessor tests " + (ok ? "OK" : "FAILED"));
+    }
+
+    static boolean camerasAreTrackedAndWrittenSeparately(Path dir) throws Exception {
+        List<RigProcessor.Camera> cameras = new ArrayList<>();
+        for (int c = 0; c < BLOBS.length; c++)
+            cameras.add(new RigProcessor.Camera("arena" + c, frameDir(dir.resolve("cam" + c), c).toString(), null));
+        cameras.add(new RigProcessor.Camera("empty", Files.createDirectories(dir.resolve("empty")).toString(), null));
+
+        Path out = dir.resolve("out");
+        RigProcessor rig = new RigProcessor(out, OutputFormat.CSV);
+        rig.setThreads(2);
+        // The fake cameras loop, so the rig runs for its duration
+        rig.setDuration(1);
+        int failed = rig.run(cameras);
+        if (failed != 1) throw new AssertionError("failed cameras " + failed);
+
+        List<String> files = Arrays.asList(out.toFile().list());
+        if (files.size() != BLOBS.length) throw new AssertionError("outputs " + files);
+        for (int c = 0; c < BLOBS.length; c++) {
+            List<String> lines = Files.readAllLines(out.resolve("arena" + c + ".csv"));
+            if (!lines.get(0).equals("t_ms,x_px,y_px")) throw new AssertionError("header " + lines.get(0));
+            if (lines.size() < 6) throw new AssertionError("arena" + c + " wrote " + (lines.size() - 1) + " frames");
+            long lastT = -1;
+            for (String line : lines.subList(1, lines.size())) {
+                long t = Long.parseLong(line.split(",")[0]);
+                if (t < lastT) throw new AssertionError("arena" + c + " time went back: " + line);
+                lastT = t;
+            }
+            // Each tracker found its own camera's blob, which a shared context would not give
+            String[] last = lines.get(lines.size() - 1).split(",");
+            double x = Double.parseDouble(last[1]), y = Double.parseDouble(last[2]);
+            double dx = x - (WIDTH / 2 + BLOBS[c][0]), dy = y - (HEIGHT / 2 + BLOBS[c][1]);
+            if (Math.hypot(dx, dy) > 1)
+                throw new AssertionError("arena" + c + " tracked at (" + x + ", " + y + ")");
+        }
+        return true;
+    }
+
+    /** Frames of a light disc on a dark background, at the camera's own place. */
+    private static Path frameDir(Path dir, int c) throws IOException {
+        Files.createDirectories(dir);
+        int bx = WIDTH / 2 + BLOBS[c][0], by = HEIGHT / 2 + BLOBS[c][1];
+        for (int f = 0; f < 3; f++) {
+            BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+            for (int y = 0; y < HEIGHT; y++)
+                for (int x = 0; x < WIDTH; x++)
+                    image.setRGB(x, y, Math.hypot(x - bx, y - by) < 4 ? 0xFFFFFF : 0x000000);
+            ImageIO.write(image, "png", dir.resolve(String.format("frame%03d.png", f)).toFile());
+        }
+        return dir;
+    }
+
+    private static void deleteTree(File file) {
+        File[] children = file.listFiles();
+        if (children != null)
+            for (File child : children)
+                deleteTree(child);
+        file.delete();
+    }
+}
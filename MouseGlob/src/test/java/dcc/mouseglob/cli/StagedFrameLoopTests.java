@@ -0,0 +1,145 @@
+package dcc.mouseglob.cli;
+
+import dcc.graphics.image.Image;
+import org.bytedeco.javacv.Frame;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Checks the staged frame loop over a fake grabber: results come out in decode order
+ * with strictly increasing times, and a failure in any stage ends the loop with that
+ * failure instead of leaving it waiting for frames that will not come. No external
+ * test framework required; run main() to execute checks.
+ */
+public class StagedFrameLoopTests {
+
+    private static final int FRAMES = 50;
+    private static final long TIMEOUT_MS = 10_000;
+
+    public static void main(String[] args) {
+        boolean ok = true;
+        try {
+            ok &= resultsKeepDecodeOrder();
+            ok &= timestampsIncreaseStrictly();
+            ok &= failingHandlerEndsTheLoop();
+            ok &= failingOutputEndsTheLoop();
+            ok &= failingGrabberEndsTheLoop();
+        } catch (Throwable t) {
+            System.out.println("[DEBUG_LOG] StagedFrameLoop tests FAILED: " + t);
+            t.printStackTrace();
+            System.exit(1);
+        }
+        System.out.println("[DEBUG_LOG] StagedFrameLoop tests " + (ok ? "OK" : "FAILED"));
+    }
+
+    static boolean resultsKeepDecodeOrder() throws Exception {
+        List<Integer> written = Collections.synchronizedList(new ArrayList<>());
+        StagedFrameLoop<Integer> loop = new StagedFrameLoop<>(2, (frame, tMs) -> frame.get(0, 0) & 0xFF, written::add);
+        Throwable failure = runWithin(loop, new FakeGrabber(FRAMES, -1, f -> f));
+        if (failure != null) throw new AssertionError("loop failed", failure);
+        if (written.size() != FRAMES) throw new AssertionError("wrote " + written.size() + " of " + FRAMES);
+        for (int i = 0; i < FRAMES; i++)
+            if (written.get(i) != i) throw new AssertionError("frame " + i + " written as " + written.get(i));
+        return true;
+    }
+
+    static boolean timestampsIncreaseStrictly() throws Exception {
+        // Repeated and decreasing grabber timestamps, as some containers report
+        List<Long> times = Collections.synchronizedList(new ArrayList<>());
+        StagedFrameLoop<Long> loop = new StagedFrameLoop<>(3, (frame, tMs) -> tMs, times::add);
+        Throwable failure = runWithin(loop, new FakeGrabber(FRAMES, -1, f -> (f / 3) * 40_000 - (f % 3) * 10_000));
+        if (failure != null) throw new AssertionError("loop failed", failure);
+        for (int i = 1; i < times.size(); i++)
+            if (times.get(i) <= times.get(i - 1)) throw new AssertionError("time " + i + ": " + times);
+
+        // The serial loop follows the same rule
+        if (BatchProcessor.nextTimestamp(5_000, -1) != 5) throw new AssertionError("first frame moved");
+        if (BatchProcessor.nextTimestamp(5_000, 5) != 6) throw new AssertionError("repeated time kept");
+        if (BatchProcessor.nextTimestamp(3_000, 5) != 6) throw new AssertionError("earlier time kept");
+        if (BatchProcessor.nextTimestamp(-7, -1) != 0) throw new AssertionError("negative time kept");
+        return true;
+    }
+
+    static boolean failingHandlerEndsTheLoop() throws Exception {
+        IllegalStateException thrown = new IllegalStateException("tracking failed");
+        StagedFrameLoop<Integer> loop = new StagedFrameLoop<>(2, (frame, tMs) -> {
+            if ((frame.get(0, 0) & 0xFF) == 7) throw thrown;
+            return 0;
+        }, result -> { });
+        Throwable failure = runWithin(loop, new FakeGrabber(FRAMES, -1, f -> f));
+        if (failure != thrown) throw new AssertionError("expected the handler's exception, got " + failure);
+        return true;
+    }
+
+    static boolean failingOutputEndsTheLoop() throws Exception {
+        IllegalStateException thrown = new IllegalStateException("disk full");
+        StagedFrameLoop<Integer> loop = new StagedFrameLoop<>(2, (frame, tMs) -> frame.get(0, 0) & 0xFF, result -> {
+            if (result == 3) throw thrown;
+        });
+        Throwable failure = runWithin(loop, new FakeGrabber(FRAMES, -1, f -> f));
+        if (failure != thrown) throw new AssertionError("expected the output's exception, got " + failure);
+        return true;
+    }
+
+    static boolean failingGrabberEndsTheLoop() throws Exception {
+        StagedFrameLoop<Integer> loop = new StagedFrameLoop<>(2, (frame, tMs) -> 0, result -> { });
+        Throwable failure = runWithin(loop, new FakeGrabber(FRAMES, 5, f -> f));
+        if (!(failure instanceof java.io.IOException)) throw new AssertionError("expected the grabber's exception, got " + failure);
+        return true;
+    }
+
+    /** Runs the loop on another thread, failing instead of hanging if it does not end. */
+    private static Throwable runWithin(StagedFrameLoop<?> loop, StagedFrameLoop.FrameSource source)
+            throws InterruptedException {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread thread = new Thread(() -> {
+            try {
+                loop.run(source);
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        }, "staged-loop-test");
+        thread.setDaemon(true);
+        thread.start();
+        thread.join(TIMEOUT_MS);
+        if (thread.isAlive()) throw new AssertionError("loop still running after " + TIMEOUT_MS + " ms");
+        return failure.get();
+    }
+
+    private interface Timestamps {
+        long of(long frame);
+    }
+
+    /** Gray frames whose first pixel is their index; fails at frame {@code failAt} if not negative. */
+    private static final class FakeGrabber implements StagedFrameLoop.FrameSource {
+        private final int frames;
+        private final int failAt;
+        private final Timestamps timestamps;
+        private final Frame frame = new Frame(4, 3, Frame.DEPTH_UBYTE, 1);
+        private int next;
+
+        FakeGrabber(int frames, int failAt, Timestamps timestamps) {
+            this.frames = frames;
+            this.failAt = failAt;
+            this.timestamps = timestamps;
+        }
+
+        @Override
+        public Frame grab() throws Exception {
+            if (next == failAt) throw new java.io.IOException("corrupt packet");
+            if (next == frames) return null;
+            // The grabber reuses its buffer, as FFmpeg's does
+            ((ByteBuffer) frame.image[0]).put(0, (byte) next++);
+            return frame;
+        }
+
+        @Override
+        public long getTimestamp() {
+            return timestamps.of(next - 1);
+        }
+    }
+}
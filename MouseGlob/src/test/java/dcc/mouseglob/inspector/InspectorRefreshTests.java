@@ -0,0 +1,140 @@
+package dcc.mouseglob.inspector;
+
+import javax.swing.SwingUtilities;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks that inspector updates from other threads are coalesced into
+ * rate-limited refreshes on the event dispatch thread, and that hidden
+ * inspectors are only refreshed once shown. No external test framework
+ * required; run main() to execute checks.
+ */
+public class InspectorRefreshTests {
+
+    public static void main(String[] args) {
+        boolean ok = true;
+        try {
+            ok &= updatesAreCoalescedOnTheEdt();
+            ok &= hiddenInspectorRefreshedWhenShown();
+            ok &= parentsAreMarked();
+        } catch (Throwable t) {
+            System.out.println("[DEBUG_LOG] InspectorRefresh tests FAILED: " + t);
+            t.printStackTrace();
+            System.exit(1);
+        }
+        System.out.println("[DEBUG_LOG] InspectorRefresh tests " + (ok ? "OK" : "FAILED"));
+    }
+
+    static boolean updatesAreCoalescedOnTheEdt() throws Exception {
+        final Counter counter = new Counter();
+        final TestInspector inspector = new TestInspector(counter, true);
+        SwingUtilities.invokeAndWait(inspector::getPanel);
+        counter.reads.set(0);
+        long refreshesBefore = InspectorRefresher.getInstance().getRefreshCount();
+
+        long start = System.nanoTime();
+        Thread frames = new Thread(() -> {
+            for (int i = 1; i <= 3000; i++) {
+                counter.value = i;
+                inspector.update();
+                if (i % 100 == 0) sleep(10);
+            }
+        });
+        frames.start();
+        frames.join();
+        awaitRefreshes();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long refreshes = InspectorRefresher.getInstance().getRefreshCount() - refreshesBefore;
+        if (refreshes < 1 || refreshes > seconds * 10 + 2) throw new AssertionError("refreshes " + refreshes + " in " + seconds + " s");
+        if (counter.reads.get() != refreshes) throw new AssertionError("reads " + counter.reads + " for " + refreshes + " refreshes");
+        if (counter.offEdt.get() != 0) throw new AssertionError("read off the EDT");
+        if (counter.last != 3000) throw new AssertionError("last value shown " + counter.last);
+        return true;
+    }
+
+    static boolean hiddenInspectorRefreshedWhenShown() throws Exception {
+        final Counter counter = new Counter();
+        final TestInspector inspector = new TestInspector(counter, false);
+        SwingUtilities.invokeAndWait(inspector::getPanel);
+        counter.reads.set(0);
+        for (int i = 0; i < 100; i++) inspector.update();
+        awaitRefreshes();
+        if (counter.reads.get() != 0) throw new AssertionError("hidden inspector refreshed");
+        SwingUtilities.invokeAndWait(inspector::getPanel);
+        if (counter.reads.get() != 1) throw new AssertionError("not refreshed when shown: " + counter.reads);
+        SwingUtilities.invokeAndWait(inspector::getPanel);
+        if (counter.reads.get() != 1) throw new AssertionError("refreshed again without changes");
+        return true;
+    }
+
+    static boolean parentsAreMarked() throws Exception {
+        final Counter counter = new Counter();
+        final TestInspector child = new TestInspector(counter, false);
+        final Inspector parent = new Inspector("Parent") {
+            @Override
+            boolean isShowing() {
+                return true;
+            }
+        };
+        parent.merge(child);
+        SwingUtilities.invokeAndWait(parent::getPanel);
+        counter.reads.set(0);
+        child.update();
+        awaitRefreshes();
+        if (counter.reads.get() != 1) throw new AssertionError("parent not refreshed: " + counter.reads);
+        return true;
+    }
+
+    // --- helpers ---
+    /** Waits until no refresh is scheduled or running, so that every update has been refreshed. */
+    private static void awaitRefreshes() throws Exception {
+        InspectorRefresher refresher = InspectorRefresher.getInstance();
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (refresher.isPending()) {
+            if (System.nanoTime() > deadline) throw new AssertionError("refresh still pending");
+            sleep(5);
+        }
+        // A refresh is no longer pending once it has run on the EDT
+        SwingUtilities.invokeAndWait(() -> { });
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static class Counter {
+        final AtomicInteger reads = new AtomicInteger();
+        final AtomicInteger offEdt = new AtomicInteger();
+        volatile int value;
+        volatile int last;
+    }
+
+    static class TestInspector extends Inspector {
+        private final boolean showing;
+
+        TestInspector(final Counter counter, boolean showing) {
+            super("Test");
+            this.showing = showing;
+            add(new PropertyInspector<Integer>("Value", "%d") {
+                @Override
+                protected Integer getValue() {
+                    counter.reads.incrementAndGet();
+                    if (!SwingUtilities.isEventDispatchThread()) counter.offEdt.incrementAndGet();
+                    counter.last = counter.value;
+                    return counter.last;
+                }
+            });
+        }
+
+        @Override
+        boolean isShowing() {
+            return showing;
+        }
+    }
+}
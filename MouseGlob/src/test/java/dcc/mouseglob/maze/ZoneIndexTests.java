@@ -0,0 +1,125 @@
+package dcc.mouseglob.maze;
+
+import dcc.mouseglob.shape.Circle;
+import dcc.mouseglob.shape.Polygon;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks the zone index against testing every zone. No external test framework
+ * required; run main() to execute checks.
+ */
+public class ZoneIndexTests {
+
+    public static void main(String[] args) {
+        boolean ok = true;
+        try {
+            ok &= matchesContainsOnRandomPoints();
+            ok &= matchesContainsOnVerticesAndCellEdges();
+            ok &= emptyIndexFindsNothing();
+            ok &= staleAfterEdits();
+        } catch (Throwable t) {
+            System.out.println("[DEBUG_LOG] ZoneIndex tests FAILED: " + t);
+            t.printStackTrace();
+            System.exit(1);
+        }
+        System.out.println("[DEBUG_LOG] ZoneIndex tests " + (ok ? "OK" : "FAILED"));
+    }
+
+    static boolean matchesContainsOnRandomPoints() {
+        List<Zone> zones = randomZones(40, 1);
+        ZoneIndex index = new ZoneIndex(zones);
+        Random rnd = new Random(2);
+        List<Zone> found = new ArrayList<>();
+        for (int n = 0; n < 200000; n++) {
+            double x = rnd.nextDouble() * 700 - 30, y = rnd.nextDouble() * 540 - 30;
+            check(zones, index.find(x, y, found), x, y);
+        }
+        return true;
+    }
+
+    static boolean matchesContainsOnVerticesAndCellEdges() {
+        List<Zone> zones = randomZones(30, 3);
+        Polygon square = new Polygon();
+        square.addVertex(100, 100);
+        square.addVertex(228, 100);
+        square.addVertex(228, 228);
+        square.addVertex(100, 228);
+        zones.add(new Zone(square));
+        ZoneIndex index = new ZoneIndex(zones);
+        List<Zone> found = new ArrayList<>();
+        for (int x = -10; x <= 650; x++)
+            for (int y = -10; y <= 490; y += 3) {
+                check(zones, index.find(x, y, found), x, y);
+                check(zones, index.find(x + 0.5, y, found), x + 0.5, y);
+            }
+        return true;
+    }
+
+    static boolean emptyIndexFindsNothing() {
+        List<Zone> found = new ArrayList<>();
+        found.add(null);
+        if (!new ZoneIndex(new ArrayList<Zone>()).find(10, 10, found).isEmpty())
+            throw new AssertionError("empty index found zones");
+        List<Zone> zones = randomZones(5, 4);
+        if (!new ZoneIndex(zones).find(Double.NaN, 10, found).isEmpty())
+            throw new AssertionError("NaN position found zones");
+        return true;
+    }
+
+    static boolean staleAfterEdits() {
+        Polygon polygon = new Polygon();
+        polygon.addVertex(0, 0);
+        polygon.addVertex(100, 0);
+        polygon.addVertex(100, 100);
+        Circle circle = new Circle(500, 400, 20);
+        List<Zone> zones = new ArrayList<>();
+        zones.add(new Zone(polygon));
+        zones.add(new Zone(circle));
+        ZoneIndex index = new ZoneIndex(zones);
+        if (index.isStale()) throw new AssertionError("fresh index is stale");
+        List<Zone> found = new ArrayList<>();
+        if (!index.find(90, 10, found).contains(zones.get(0))) throw new AssertionError("zone not found");
+        if (index.find(10, 90, found).contains(zones.get(0))) throw new AssertionError("point below the diagonal found");
+
+        polygon.addVertex(0, 100);
+        if (!index.isStale()) throw new AssertionError("edited zone not noticed");
+        if (!new ZoneIndex(zones).find(10, 90, found).contains(zones.get(0))) throw new AssertionError("edit not seen");
+        return true;
+    }
+
+    // --- helpers ---
+    private static void check(List<Zone> zones, List<Zone> found, double x, double y) {
+        int expected = 0;
+        for (Zone zone : zones)
+            if (zone.contains(x, y)) {
+                expected++;
+                if (!found.contains(zone))
+                    throw new AssertionError("missing zone at (" + x + ", " + y + ")");
+            }
+        if (found.size() != expected) throw new AssertionError("extra zones at (" + x + ", " + y + ")");
+    }
+
+    /** Circles and star-shaped (possibly concave) polygons over a 640x480 frame, some overlapping. */
+    private static List<Zone> randomZones(int count, long seed) {
+        Random rnd = new Random(seed);
+        List<Zone> zones = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            double cx = rnd.nextDouble() * 640, cy = rnd.nextDouble() * 480;
+            if (i % 3 == 0) {
+                zones.add(new Zone(new Circle(cx, cy, 5 + rnd.nextDouble() * 60)));
+            } else {
+                Polygon polygon = new Polygon();
+                int vertices = 3 + rnd.nextInt(12);
+                for (int v = 0; v < vertices; v++) {
+                    double a = 2 * Math.PI * v / vertices, r = 10 + rnd.nextDouble() * 70;
+                    polygon.addVertex(Math.rint(cx + r * Math.cos(a)), Math.rint(cy + r * Math.sin(a)));
+                }
+                zones.add(new Zone(polygon));
+            }
+        }
+        return zones;
+    }
+}
@@ -0,0 +1,173 @@
+package dcc.mouseglob.maze;
+
+import dcc.graphics.image.Image;
+import dcc.graphics.math.Vector;
+import dcc.inject.Context;
+import dcc.inject.Indexer;
+import dcc.mouseglob.analysis.AnalysesManager;
+import dcc.mouseglob.analysis.analyses.PositionAnalysis;
+import dcc.mouseglob.shape.Circle;
+import dcc.mouseglob.tracking.Tracker;
+import dcc.mouseglob.tracking.TrackingManager;
+import dcc.mouseglob.visit.VisitAnalysis;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks the occupancy of a zone shared by several trackers updated in parallel:
+ * every tracker entering or leaving the zone is counted once, and each tracker's
+ * visits are its own, and a frame interrupted while its trackers update is dropped
+ * as a whole. No external test framework required; run main() to execute checks.
+ */
+public class ZoneOccupancyTests {
+
+    private static final int WIDTH = 200, HEIGHT = 120;
+    private static final int TRACKERS = 2;
+    private static final int INSIDE = 30, OUTSIDE = 20;
+    /** Long enough for the visits to outlast the default duration threshold */
+    private static final long FRAME_MS = 100;
+
+    public static void main(String[] args) {
+        boolean ok = true;
+        try {
+            ok &= trackersShareAZoneWhenUpdatedInParallel();
+            ok &= interruptedFrameIsNotAnalysed();
+        } catch (Throwable t) {
+            System.out.println("[DEBUG_LOG] ZoneOccupancy tests FAILED: " + t);
+            t.printStackTrace();
+            System.exit(1);
+        }
+        System.out.println("[DEBUG_LOG] ZoneOccupancy tests " + (ok ? "OK" : "FAILED"));
+    }
+
+    static boolean trackersShareAZoneWhenUpdatedInParallel() {
+        Context ctx = new Context();
+        ctx.inject(Indexer.load(TrackingManager.class, BoundariesManager.class, ZonesManager.class));
+        ctx.getInstance(AnalysesManager.class).setContext(ctx);
+        TrackingManager trackingManager = ctx.getInstance(TrackingManager.class);
+        BoundariesManager boundariesManager = ctx.getInstance(BoundariesManager.class);
+        ZonesManager zonesManager = ctx.getInstance(ZonesManager.class);
+
+        // Zones must exist before the trackers, whose visit analyses take them on creation
+        Zone zone = new Zone(new Circle(70, 60, 45));
+        zonesManager.add(zone);
+        trackingManager.setParallelUpdate(true);
+
+        List<Tracker> trackers = new ArrayList<>();
+        boolean[][] wasInside = new boolean[TRACKERS][INSIDE + OUTSIDE];
+        for (int f = 0; f < INSIDE + OUTSIDE; f++) {
+            Vector[] blobs = blobs(f);
+            Image frame = frame(blobs);
+            boundariesManager.newFrame(frame, f * FRAME_MS);
+            if (trackers.isEmpty())
+                for (Vector blob : blobs) {
+                    Tracker tracker = new Tracker(blob.x, blob.y, trackingManager.getTrackerSize(),
+                            boundariesManager.getMask(blob.x, blob.y));
+                    trackingManager.add(tracker);
+                    trackers.add(tracker);
+                }
+            trackingManager.newFrame(frame, f * FRAME_MS);
+
+            // Visits follow the position each frame was analysed from, one frame behind
+            int inside = 0;
+            for (int i = 0; i < TRACKERS; i++)
+                if (zone.contains(trackers.get(i).getAnalysedPosition())) {
+                    wasInside[i][f] = true;
+                    inside++;
+                }
+            if (zone.getTrackersInside() != inside)
+                throw new AssertionError("frame " + f + ": " + zone.getTrackersInside() + " trackers inside, expected " + inside);
+            if (f == INSIDE - 1 && inside != TRACKERS) throw new AssertionError("trackers not in the zone");
+        }
+        if (zone.getTrackersInside() != 0) throw new AssertionError("trackers left inside");
+
+        for (int i = 0; i < TRACKERS; i++) {
+            Tracker tracker = trackers.get(i);
+            VisitAnalysis visits = tracker.getDataset().require(VisitAnalysis.class);
+            if (visits.getFrameCount() != INSIDE + OUTSIDE)
+                throw new AssertionError(tracker + " analysed " + visits.getFrameCount() + " frames");
+            if (visits.getEventClassSequence().size() != 1)
+                throw new AssertionError(tracker + " visits: " + visits.getEventClassSequence());
+            // Visits are only updated on entering and leaving; the frames between are filled in
+            for (int f = 0; f < INSIDE + OUTSIDE; f++)
+                if (visits.getVisitMask(f) != (wasInside[i][f] ? 1 : 0))
+                    throw new AssertionError(tracker + " visit mask at frame " + f);
+        }
+        return true;
+    }
+
+    static boolean interruptedFrameIsNotAnalysed() throws Exception {
+        Context ctx = new Context();
+        ctx.inject(Indexer.load(TrackingManager.class, BoundariesManager.class));
+        ctx.getInstance(AnalysesManager.class).setContext(ctx);
+        TrackingManager trackingManager = ctx.getInstance(TrackingManager.class);
+        BoundariesManager boundariesManager = ctx.getInstance(BoundariesManager.class);
+        trackingManager.setParallelUpdate(true);
+        AtomicInteger notified = new AtomicInteger();
+        trackingManager.addNewFrameListener((image, time) -> notified.incrementAndGet());
+
+        // One worker, held busy, so the trackers' tasks are still waiting when interrupted
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            trackingManager.setTrackerExecutor(executor);
+            Image frame = frame(blobs(0));
+            boundariesManager.newFrame(frame, 0);
+            List<Tracker> trackers = new ArrayList<>();
+            for (Vector blob : blobs(0)) {
+                Tracker tracker = new Tracker(blob.x, blob.y, trackingManager.getTrackerSize(),
+                        boundariesManager.getMask(blob.x, blob.y));
+                trackingManager.add(tracker);
+                trackers.add(tracker);
+            }
+            executor.submit(() -> {
+                release.await();
+                return null;
+            });
+            Thread.currentThread().interrupt();
+            trackingManager.newFrame(frame, 0);
+            if (!Thread.interrupted()) throw new AssertionError("interrupt not kept");
+            if (notified.get() != 0) throw new AssertionError("listeners told of an interrupted frame");
+            for (Tracker tracker : trackers)
+                if (tracker.getDataset().require(PositionAnalysis.class).size() != 0)
+                    throw new AssertionError(tracker + " analysed an interrupted frame");
+
+            // The next frame goes through for every tracker
+            release.countDown();
+            trackingManager.newFrame(frame, FRAME_MS);
+            if (notified.get() != 1) throw new AssertionError("listeners told " + notified.get() + " times");
+            for (Tracker tracker : trackers)
+                if (tracker.getDataset().require(PositionAnalysis.class).size() != 1)
+                    throw new AssertionError(tracker + " positions after the next frame");
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+        return true;
+    }
+
+    /** Two blobs inside the zone, which then both move out to the right. */
+    private static Vector[] blobs(int f) {
+        double dx = f < INSIDE ? 0 : 4 * (f - INSIDE + 1);
+        return new Vector[] { new Vector(55 + dx, 45), new Vector(85 + dx, 75) };
+    }
+
+    /** Light discs on a dark background, as tracked by default. */
+    private static Image frame(Vector[] blobs) {
+        Image image = new Image(WIDTH, HEIGHT);
+        int[] pixels = image.getPixels();
+        for (int y = 0; y < HEIGHT; y++)
+            for (int x = 0; x < WIDTH; x++) {
+                int color = 0xFF000000;
+                for (Vector blob : blobs)
+                    if (Math.hypot(x - blob.x, y - blob.y) < 5) color = 0xFFFFFFFF;
+                pixels[y * WIDTH + x] = color;
+            }
+        return image;
+    }
+}
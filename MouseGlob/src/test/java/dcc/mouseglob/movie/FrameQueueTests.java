@@ -0,0 +1,105 @@
+package dcc.mouseglob.movie;
+
+import dcc.graphics.image.Image;
+import dcc.util.FrameMetrics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks buffer ownership in the frame queue: frames are broadcast in order,
+ * a buffer is never overwritten while listeners read it, and drops, latency
+ * and occupancy are counted. No external test framework required; run main()
+ * to execute checks.
+ */
+public class FrameQueueTests {
+
+    public static void main(String[] args) {
+        boolean ok = true;
+        try {
+            ok &= dropsWhenAllBuffersAreClaimed();
+            ok &= cancelledBufferIsReused();
+            ok &= broadcastsInOrderWithoutOverwriting();
+        } catch (Throwable t) {
+            System.out.println("[DEBUG_LOG] FrameQueue tests FAILED: " + t);
+            t.printStackTrace();
+            System.exit(1);
+        }
+        System.out.println("[DEBUG_LOG] FrameQueue tests " + (ok ? "OK" : "FAILED"));
+    }
+
+    static boolean dropsWhenAllBuffersAreClaimed() {
+        FrameQueue queue = new FrameQueue(new MovieManager());
+        FrameMetrics metrics = queue.new QueueMonitor().getMetrics();
+        List<FrameQueue.Slot> slots = new ArrayList<>();
+        FrameQueue.Slot slot;
+        while ((slot = queue.claim()) != null) slots.add(slot);
+        if (slots.size() != 16) throw new AssertionError("pool size " + slots.size());
+        if (metrics.getDropped() != 1) throw new AssertionError("drop not counted");
+        for (int i = 0; i < slots.size(); i++) queue.publish(slots.get(i), new Image(2, 2), i + 1);
+        if (queue.new QueueMonitor().getSize() != 16 || metrics.getMaxOccupancy() != 16) throw new AssertionError("occupancy");
+        queue.clear();
+        if (queue.new QueueMonitor().getSize() != 0) throw new AssertionError("not cleared");
+        if (queue.claim() == null) throw new AssertionError("buffers not released");
+        return true;
+    }
+
+    static boolean cancelledBufferIsReused() {
+        FrameQueue queue = new FrameQueue(new MovieManager());
+        FrameQueue.Slot slot = queue.claim();
+        queue.publish(slot, null, 40);
+        if (queue.claim() != slot) throw new AssertionError("failed decode lost the buffer");
+        queue.publish(slot, new Image(1, 1), 40);
+        FrameQueue.Slot again = queue.claim();
+        queue.publish(again, new Image(1, 1), 40);
+        if (queue.new QueueMonitor().getSize() != 1) throw new AssertionError("repeated time queued");
+        if (queue.claim() != again) throw new AssertionError("repeated time kept the buffer");
+        return true;
+    }
+
+    static boolean broadcastsInOrderWithoutOverwriting() throws InterruptedException {
+        final int n = 2000;
+        MovieManager manager = new MovieManager();
+        final List<Long> times = new ArrayList<>();
+        final boolean[] overwritten = new boolean[1];
+        manager.addNewFrameListener((image, time) -> {
+            if (time % 100 == 0) {
+                // A slow listener, so that the decoder runs out of buffers
+                try {
+                    Thread.sleep(2);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (image.get(0, 0) != (int) time) overwritten[0] = true;
+            times.add(time);
+        });
+        FrameQueue queue = new FrameQueue(manager);
+        FrameMetrics metrics = queue.new QueueMonitor().getMetrics();
+        Thread consumer = new Thread(queue, "FrameQueue");
+        consumer.setDaemon(true);
+        consumer.start();
+
+        for (int t = 1; t <= n; t++) {
+            FrameQueue.Slot slot = queue.claim();
+            if (slot == null) continue;
+            Image image = slot.getImage() != null ? slot.getImage() : new Image(4, 4);
+            image.set(0, 0, t);
+            queue.publish(slot, image, t);
+        }
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (metrics.getConsumed() < metrics.getPublished() && System.currentTimeMillis() < deadline)
+            Thread.sleep(1);
+        consumer.interrupt();
+        consumer.join(1000);
+
+        if (overwritten[0]) throw new AssertionError("buffer written while in use");
+        if (metrics.getPublished() + metrics.getDropped() != n) throw new AssertionError("frames unaccounted: " + metrics);
+        if (times.size() != metrics.getPublished()) throw new AssertionError("published frames lost: " + metrics);
+        for (int i = 1; i < times.size(); i++)
+            if (times.get(i) <= times.get(i - 1)) throw new AssertionError("out of order at " + i);
+        if (metrics.getMaxOccupancy() > 16 || metrics.getMaxLatency() <= 0) throw new AssertionError("metrics " + metrics);
+        if (consumer.isAlive()) throw new AssertionError("consumer not stopped by interrupt");
+        return true;
+    }
+}
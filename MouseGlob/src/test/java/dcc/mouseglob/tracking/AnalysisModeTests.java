@@ -0,0 +1,132 @@
+package dcc.mouseglob.tracking;
+
+import dcc.graphics.image.Image;
+import dcc.graphics.math.ScalarMap;
+import dcc.graphics.math.Vector;
+import dcc.graphics.series.Series2D;
+import dcc.inject.Context;
+import dcc.inject.Indexer;
+import dcc.mouseglob.analysis.AnalysesManager;
+import dcc.mouseglob.analysis.analyses.PositionAnalysis;
+import dcc.mouseglob.maze.BoundariesManager;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Checks that analysing frames on the analysis thread gives the same trajectory as
+ * analysing them while tracking, and that the tracker's map can be copied for display
+ * while its frames' maps are being recycled. No external test framework required; run
+ * main() to execute checks.
+ */
+public class AnalysisModeTests {
+
+    private static final int WIDTH = 200, HEIGHT = 150;
+    private static final int FRAMES = 300;
+
+    public static void main(String[] args) {
+        boolean ok = true;
+        try {
+            ok &= asyncAnalysisMatchesSyncAnalysis();
+        } catch (Throwable t) {
+            System.out.println("[DEBUG_LOG] AnalysisMode tests FAILED: " + t);
+            t.printStackTrace();
+            System.exit(1);
+        }
+        System.out.println("[DEBUG_LOG] AnalysisMode tests " + (ok ? "OK" : "FAILED"));
+    }
+
+    static boolean asyncAnalysisMatchesSyncAnalysis() throws Exception {
+        Session sync = new Session(false);
+        Session async = new Session(true);
+
+        // Copy the async tracker's map as a report would, while frames go by
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<Throwable> readerFailure = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            ScalarMap copy = null;
+            try {
+                while (running.get()) {
+                    Tracker tracker = async.tracker;
+                    if (tracker != null && tracker.hasData()) copy = tracker.copyMap(copy);
+                    Thread.yield();
+                }
+            } catch (Throwable t) {
+                readerFailure.set(t);
+            }
+        }, "map-reader");
+        reader.start();
+        try {
+            for (int f = 0; f < FRAMES; f++) {
+                sync.track(f);
+                async.track(f);
+            }
+            async.trackingManager.waitForAnalysis();
+        } finally {
+            running.set(false);
+            reader.join();
+        }
+        if (readerFailure.get() != null) throw new AssertionError("copying the map failed", readerFailure.get());
+
+        Series2D expected = sync.tracker.getDataset().require(PositionAnalysis.class);
+        Series2D actual = async.tracker.getDataset().require(PositionAnalysis.class);
+        if (expected.size() != FRAMES || actual.size() != FRAMES)
+            throw new AssertionError("positions: " + expected.size() + " sync, " + actual.size() + " async");
+        for (int i = 0; i < FRAMES; i++) {
+            double d = expected.get(i).distance(actual.get(i));
+            if (d > 1e-9) throw new AssertionError("frame " + i + ": " + expected.get(i) + " sync, " + actual.get(i) + " async");
+        }
+        if (sync.tracker.getPosition().distance(async.tracker.getPosition()) > 1e-9)
+            throw new AssertionError("trackers ended at " + sync.tracker.getPosition() + " and " + async.tracker.getPosition());
+        if (sync.tracker.getPosition().distance(blob(FRAMES - 1)) > 0.5)
+            throw new AssertionError("lost the blob: " + sync.tracker.getPosition());
+        return true;
+    }
+
+    /** One tracker following the blob, with its own context. */
+    private static final class Session {
+        final TrackingManager trackingManager;
+        final BoundariesManager boundariesManager;
+        volatile Tracker tracker;
+
+        Session(boolean async) {
+            Context ctx = new Context();
+            ctx.inject(Indexer.load(TrackingManager.class, BoundariesManager.class));
+            ctx.getInstance(AnalysesManager.class).setContext(ctx);
+            trackingManager = ctx.getInstance(TrackingManager.class);
+            boundariesManager = ctx.getInstance(BoundariesManager.class);
+            trackingManager.setAsyncAnalysis(async);
+        }
+
+        void track(int f) {
+            Image frame = frame(blob(f));
+            boundariesManager.newFrame(frame, f * 40L);
+            if (tracker == null) {
+                Vector start = blob(0);
+                Tracker tracker = new Tracker(start.x, start.y, trackingManager.getTrackerSize(),
+                        boundariesManager.getMask(start.x, start.y));
+                trackingManager.add(tracker);
+                this.tracker = tracker;
+            }
+            trackingManager.newFrame(frame, f * 40L);
+        }
+    }
+
+    /** The blob goes round an ellipse, a few pixels a frame, changing shape as it turns. */
+    private static Vector blob(int f) {
+        double a = 2 * Math.PI * f / 150;
+        return new Vector(100 + 60 * Math.cos(a), 75 + 40 * Math.sin(a));
+    }
+
+    /** A light ellipse on a dark background, elongated along its direction of motion. */
+    private static Image frame(Vector blob) {
+        Image image = new Image(WIDTH, HEIGHT);
+        int[] pixels = image.getPixels();
+        for (int y = 0; y < HEIGHT; y++)
+            for (int x = 0; x < WIDTH; x++) {
+                double dx = (x - blob.x) / 8, dy = (y - blob.y) / 5;
+                pixels[y * WIDTH + x] = dx * dx + dy * dy < 1 ? 0xFFFFFFFF : 0xFF000000;
+            }
+        return image;
+    }
+}
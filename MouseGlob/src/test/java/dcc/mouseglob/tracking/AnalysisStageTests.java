@@ -0,0 +1,166 @@
+package dcc.mouseglob.tracking;
+
+import dcc.graphics.math.ScalarMap;
+import dcc.graphics.math.Vector;
+import dcc.util.SPSCQueue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks the single-producer single-consumer queue and the asynchronous
+ * analysis stage built on it: order, bounded lag and the lag metrics. No
+ * external test framework required; run main() to execute checks.
+ */
+public class AnalysisStageTests {
+
+    public static void main(String[] args) {
+        boolean ok = true;
+        try {
+            ok &= queueIsFifoAndBounded();
+            ok &= queueKeepsOrderAcrossThreads();
+            ok &= analysesFramesInOrder();
+            ok &= fullQueueStallsWithoutLosingFrames();
+            ok &= failingAnalysisDoesNotStopStage();
+        } catch (Throwable t) {
+            System.out.println("[DEBUG_LOG] AnalysisStage tests FAILED: " + t);
+            t.printStackTrace();
+            System.exit(1);
+        }
+        System.out.println("[DEBUG_LOG] AnalysisStage tests " + (ok ? "OK" : "FAILED"));
+    }
+
+    static boolean queueIsFifoAndBounded() {
+        SPSCQueue<Integer> queue = new SPSCQueue<>(5);
+        if (queue.capacity() != 8) throw new AssertionError("capacity " + queue.capacity());
+        if (queue.poll() != null || !queue.isEmpty()) throw new AssertionError("not empty");
+        for (int i = 0; i < 8; i++)
+            if (!queue.offer(i)) throw new AssertionError("offer " + i);
+        if (queue.offer(8)) throw new AssertionError("offered past capacity");
+        if (queue.size() != 8 || queue.peek() != 0) throw new AssertionError("size or peek");
+        for (int round = 0; round < 20; round++) {
+            // Wrap around the ring several times
+            if (queue.poll() != round) throw new AssertionError("order at " + round);
+            if (!queue.offer(round + 8)) throw new AssertionError("offer after poll");
+        }
+        for (int i = 20; i < 28; i++)
+            if (queue.poll() != i) throw new AssertionError("drain at " + i);
+        if (queue.poll() != null) throw new AssertionError("left over");
+        try {
+            queue.offer(null);
+            throw new AssertionError("null offered");
+        } catch (NullPointerException expected) {
+            // expected
+        }
+        return true;
+    }
+
+    static boolean queueKeepsOrderAcrossThreads() throws InterruptedException {
+        final int n = 200_000;
+        final SPSCQueue<Integer> queue = new SPSCQueue<>(64);
+        final long[] result = new long[2];
+        Thread consumer = new Thread(() -> {
+            int expected = 0;
+            long sum = 0;
+            while (expected < n) {
+                Integer value = queue.poll();
+                if (value == null) {
+                    Thread.yield();
+                    continue;
+                }
+                if (value != expected) {
+                    result[1] = -1;
+                    return;
+                }
+                sum += value;
+                expected++;
+            }
+            result[0] = sum;
+        });
+        consumer.start();
+        for (int i = 0; i < n; i++)
+            while (!queue.offer(i))
+                Thread.yield();
+        consumer.join(60_000);
+        if (consumer.isAlive()) throw new AssertionError("consumer stuck");
+        if (result[1] != 0) throw new AssertionError("out of order");
+        if (result[0] != (long) n * (n - 1) / 2) throw new AssertionError("lost values");
+        return true;
+    }
+
+    static boolean analysesFramesInOrder() {
+        RecordingTracker a = new RecordingTracker(0), b = new RecordingTracker(0);
+        AnalysisStage stage = new AnalysisStage(16);
+        for (int i = 0; i < 100; i++) {
+            stage.submit(a, frame(i));
+            stage.submit(b, frame(1000 + i));
+        }
+        stage.drain();
+        if (stage.getPending() != 0) throw new AssertionError("pending after drain");
+        for (int i = 0; i < 100; i++)
+            if (a.times.get(i) != i || b.times.get(i) != 1000 + i) throw new AssertionError("order at " + i);
+        if (stage.getLastLag() <= 0 || stage.getMaxLag() < stage.getLastLag()) throw new AssertionError("lag metrics");
+        stage.stop();
+        return true;
+    }
+
+    static boolean fullQueueStallsWithoutLosingFrames() {
+        RecordingTracker slow = new RecordingTracker(2);
+        AnalysisStage stage = new AnalysisStage(4);
+        int maxPending = 0;
+        for (int i = 0; i < 40; i++) {
+            stage.submit(slow, frame(i));
+            maxPending = Math.max(maxPending, stage.getPending());
+        }
+        if (maxPending > stage.getCapacity()) throw new AssertionError("lag not bounded: " + maxPending);
+        if (stage.getStalls() == 0) throw new AssertionError("no stall counted");
+        // Stopping analyses what is left first
+        stage.stop();
+        if (slow.times.size() != 40) throw new AssertionError("lost frames: " + slow.times.size());
+        // Lag includes the time spent queued behind slow analyses
+        if (stage.getMaxLag() < 2 * 3) throw new AssertionError("max lag " + stage.getMaxLag());
+        return true;
+    }
+
+    static boolean failingAnalysisDoesNotStopStage() {
+        RecordingTracker tracker = new RecordingTracker(0) {
+            @Override
+            void analyse(TrackerFrame frame) {
+                if (frame.getTime() == 3) throw new IllegalStateException("bad frame");
+                super.analyse(frame);
+            }
+        };
+        AnalysisStage stage = new AnalysisStage(8);
+        for (int i = 0; i < 6; i++) stage.submit(tracker, frame(i));
+        stage.stop();
+        if (tracker.times.size() != 5 || tracker.times.contains(3L)) throw new AssertionError("frames " + tracker.times);
+        return true;
+    }
+
+    // --- helpers ---
+    private static TrackerFrame frame(long time) {
+        return new TrackerFrame(time, new ScalarMap(3, 3), false, 0, 0, 10, 10, Vector.ZERO);
+    }
+
+    static class RecordingTracker extends Tracker {
+        final List<Long> times = new ArrayList<>();
+        final long sleepMs;
+
+        RecordingTracker(long sleepMs) {
+            super(0, 0, 1, null);
+            this.sleepMs = sleepMs;
+        }
+
+        @Override
+        void analyse(TrackerFrame frame) {
+            if (sleepMs > 0) {
+                try {
+                    Thread.sleep(sleepMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            times.add(frame.getTime());
+        }
+    }
+}
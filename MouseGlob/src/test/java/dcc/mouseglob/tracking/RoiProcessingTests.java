@@ -0,0 +1,123 @@
+package dcc.mouseglob.tracking;
+
+import dcc.graphics.image.Image;
+import dcc.graphics.math.Vector;
+import dcc.graphics.series.Series2D;
+import dcc.inject.Context;
+import dcc.inject.Indexer;
+import dcc.mouseglob.analysis.AnalysesManager;
+import dcc.mouseglob.analysis.analyses.PositionAnalysis;
+import dcc.mouseglob.maze.BoundariesManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that processing only the trackers' region of each frame tracks exactly as
+ * processing the whole frame does, over a synthetic sequence with moving blobs and a
+ * flickering one away from them. No external test framework required; run main() to
+ * execute checks.
+ */
+public class RoiProcessingTests {
+
+    private static final int WIDTH = 320, HEIGHT = 240;
+    /** More than the default interval between full passes, so some happen mid-sequence */
+    private static final int FRAMES = 120;
+    private static final int BLOBS = 2;
+
+    public static void main(String[] args) {
+        boolean ok = true;
+        try {
+            ok &= regionGivesTheSamePositionsAsFullFrame();
+        } catch (Throwable t) {
+            System.out.println("[DEBUG_LOG] RoiProcessing tests FAILED: " + t);
+            t.printStackTrace();
+            System.exit(1);
+        }
+        System.out.println("[DEBUG_LOG] RoiProcessing tests " + (ok ? "OK" : "FAILED"));
+    }
+
+    static boolean regionGivesTheSamePositionsAsFullFrame() {
+        Session full = new Session(false);
+        Session roi = new Session(true);
+        for (int f = 0; f < FRAMES; f++) {
+            Image frame = frame(f);
+            full.track(frame, f);
+            roi.track(frame, f);
+            for (int i = 0; i < BLOBS; i++) {
+                Vector expected = full.trackers.get(i).getPosition(), actual = roi.trackers.get(i).getPosition();
+                if (expected.distance(actual) > 1e-9)
+                    throw new AssertionError("frame " + f + ", tracker " + i + ": " + expected + " full, " + actual + " region");
+            }
+        }
+
+        for (int i = 0; i < BLOBS; i++) {
+            Series2D expected = full.trackers.get(i).getDataset().require(PositionAnalysis.class);
+            Series2D actual = roi.trackers.get(i).getDataset().require(PositionAnalysis.class);
+            if (expected.size() != FRAMES || actual.size() != FRAMES)
+                throw new AssertionError("positions: " + expected.size() + " full, " + actual.size() + " region");
+            for (int f = 0; f < FRAMES; f++)
+                if (expected.get(f).distance(actual.get(f)) > 1e-9)
+                    throw new AssertionError("tracker " + i + " frame " + f + ": " + expected.get(f) + " full, "
+                            + actual.get(f) + " region");
+            if (full.trackers.get(i).getPosition().distance(blob(i, FRAMES - 1)) > 0.5)
+                throw new AssertionError("tracker " + i + " lost its blob: " + full.trackers.get(i).getPosition());
+        }
+        return true;
+    }
+
+    /** Trackers following the blobs, with their own context. */
+    private static final class Session {
+        final TrackingManager trackingManager;
+        final BoundariesManager boundariesManager;
+        final List<Tracker> trackers = new ArrayList<>();
+
+        Session(boolean roi) {
+            Context ctx = new Context();
+            ctx.inject(Indexer.load(TrackingManager.class, BoundariesManager.class));
+            ctx.getInstance(AnalysesManager.class).setContext(ctx);
+            trackingManager = ctx.getInstance(TrackingManager.class);
+            boundariesManager = ctx.getInstance(BoundariesManager.class);
+            trackingManager.setRoiProcessing(roi);
+        }
+
+        void track(Image frame, int f) {
+            boundariesManager.newFrame(frame, f * 40L);
+            if (trackers.isEmpty())
+                for (int i = 0; i < BLOBS; i++) {
+                    Vector start = blob(i, 0);
+                    Tracker tracker = new Tracker(start.x, start.y, trackingManager.getTrackerSize(),
+                            boundariesManager.getMask(start.x, start.y));
+                    trackingManager.add(tracker);
+                    trackers.add(tracker);
+                }
+            trackingManager.newFrame(frame, f * 40L);
+        }
+    }
+
+    /** The blobs drift across the left half of the frame, a couple of pixels a frame. */
+    private static Vector blob(int i, int f) {
+        double a = 2 * Math.PI * f / FRAMES;
+        return new Vector(60 + 30 * i + 25 * Math.cos(a + i), 70 + 60 * i + 20 * Math.sin(a + i));
+    }
+
+    /** Light blobs on a dark, slightly uneven background, with one far away flickering. */
+    private static Image frame(int f) {
+        Image image = new Image(WIDTH, HEIGHT);
+        int[] pixels = image.getPixels();
+        Vector[] blobs = new Vector[BLOBS];
+        for (int i = 0; i < BLOBS; i++) blobs[i] = blob(i, f);
+        boolean flicker = f % 7 < 3;
+        for (int y = 0; y < HEIGHT; y++)
+            for (int x = 0; x < WIDTH; x++) {
+                int v = (x * 7 + y * 13) % 24;
+                for (Vector blob : blobs) {
+                    double dx = (x - blob.x) / 7, dy = (y - blob.y) / 5;
+                    if (dx * dx + dy * dy < 1) v = 255;
+                }
+                if (flicker && Math.hypot(x - 270, y - 190) < 12) v = 255;
+                pixels[y * WIDTH + x] = 0xFF000000 | v << 16 | v << 8 | v;
+            }
+        return image;
+    }
+}
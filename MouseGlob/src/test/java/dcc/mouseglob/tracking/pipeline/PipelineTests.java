@@ -17,6 +17,7 @@ public class PipelineTests {
         try {
             ok &= detectsBrightBlobUnderNoiseAndIlluminationShift();
             ok &= partialOcclusionStillLeavesSignal();
+            ok &= fusedMatchesUnfused();
         } catch (Throwable t) {
             System.out.println("[DEBUG_LOG] Pipeline smoke tests FAILED: " + t);
             t.printStackTrace();
@@ -74,7 +75,55 @@ public class PipelineTests {
         return true;
     }
 
+    static boolean fusedMatchesUnfused() {
+        String[] configs = {
+                null, // default.json
+                "{\"stages\":[{\"type\":\"grayscale\"},{\"type\":\"background\",\"mode\":\"running\",\"alpha\":0.3},"
+                        + "{\"type\":\"threshold\",\"threshold\":20,\"dark\":true}]}",
+                "{\"stages\":[{\"type\":\"background\"},{\"type\":\"threshold\",\"threshold\":15},"
+                        + "{\"type\":\"morphology\",\"operation\":\"close\"}]}",
+                "{\"stages\":[{\"type\":\"grayscale\"},{\"type\":\"background\",\"mode\":\"running\",\"alpha\":0.1}]}",
+        };
+        for (String json : configs) {
+            for (boolean grayInput : new boolean[] { false, true }) {
+                FramePipeline fused = json == null ? JsonPipelineLoader.loadFromResource("/resource/pipelines/default.json")
+                        : JsonPipelineLoader.parse(json);
+                FramePipeline plain = json == null ? JsonPipelineLoader.loadFromResource("/resource/pipelines/default.json")
+                        : JsonPipelineLoader.parse(json);
+                plain.setFusion(false);
+                Random rnd = new Random(7);
+                dcc.graphics.image.GrayscaleImage bgFused = null, bgPlain = null;
+                for (int t = 0; t < 6; t++) {
+                    Image frame = new Image(97, 61);
+                    fill(frame, Color.rgb(90, 110, 130));
+                    drawCircle(frame, 15 + 12 * t, 30, 9, Color.rgb(230, 200, 210));
+                    addGaussianNoise(frame, rnd, 25);
+                    Image input = grayInput ? frame.luminance(null) : frame;
+
+                    PipelineContext a = fused.run(input, bgFused);
+                    PipelineContext b = plain.run(input, bgPlain);
+                    String what = (json == null ? "default" : json) + (grayInput ? " (gray input)" : "") + ", frame " + t;
+                    assertSamePixels(a.background, b.background, "background: " + what);
+                    assertSamePixels(a.gray, b.gray, "gray: " + what);
+                    assertSamePixels(a.work, b.work, "work: " + what);
+                    assertSamePixels(a.mask, b.mask, "mask: " + what);
+                    bgFused = a.background;
+                    bgPlain = b.background;
+                }
+            }
+        }
+        return true;
+    }
+
     // --- helpers ---
+    private static void assertSamePixels(Image a, Image b, String what) {
+        if (a == null || b == null) {
+            if (a != b) throw new AssertionError(what + ": one side is null");
+            return;
+        }
+        if (!java.util.Arrays.equals(a.getPixels(), b.getPixels())) throw new AssertionError(what + ": pixels differ");
+    }
+
     private static void fill(Image img, int rgb) {
         int[] p = img.getPixels();
         for (int i = 0; i < p.length; i++) p[i] = rgb;
@@ -0,0 +1,178 @@
+package dcc.mouseglob.trajectory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks the CSV formatting and parsing behind the trajectories files,
+ * including files written by earlier versions. No external test framework
+ * required; run main() to execute checks.
+ */
+public class TrajectoryIOTests {
+
+    public static void main(String[] args) {
+        boolean ok = true;
+        try {
+            ok &= formatsFixedPoint();
+            ok &= parsesWhatIsFormatted();
+            ok &= readsAcrossWindows();
+            ok &= readsLegacyFiles();
+            ok &= streamsPoints();
+        } catch (Throwable t) {
+            System.out.println("[DEBUG_LOG] TrajectoryIO tests FAILED: " + t);
+            t.printStackTrace();
+            System.exit(1);
+        }
+        System.out.println("[DEBUG_LOG] TrajectoryIO tests " + (ok ? "OK" : "FAILED"));
+    }
+
+    static boolean formatsFixedPoint() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CSVOutput out = new CSVOutput(bytes);
+        double[] values = { 0, 0.5, 12.345, -3.004, -0.001, 100, 1e20, Double.NaN };
+        for (double v : values) out.fixed(v, 2).separator();
+        out.number(-42).separator().number(Long.MIN_VALUE).separator().text("zona é").newLine();
+        out.close();
+        String expected = "\"0\",\"0.5\",\"12.35\",\"-3\",\"0\",\"100\",\"1.0E20\",\"NaN\","
+                + "-42,-9223372036854775808,zona é\n";
+        String actual = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        if (!actual.equals(expected)) throw new AssertionError("formatted " + actual);
+        return true;
+    }
+
+    static boolean parsesWhatIsFormatted() throws IOException {
+        Random rnd = new Random(5);
+        double[] values = new double[10000];
+        Path file = Files.createTempFile("trajectory", ".csv");
+        try {
+            CSVOutput out = new CSVOutput(Files.newOutputStream(file));
+            for (int i = 0; i < values.length; i++) {
+                values[i] = (rnd.nextDouble() - 0.3) * Math.pow(10, rnd.nextInt(8));
+                out.number(i).separator().fixed(values[i], 2).separator().text("k").newLine();
+            }
+            out.close();
+            try (CSVInput in = new CSVInput(file)) {
+                for (int i = 0; i < values.length; i++) {
+                    if (!in.nextLine()) throw new AssertionError("missing line " + i);
+                    if (in.integer() != i) throw new AssertionError("integer on line " + i);
+                    double expected = Double.parseDouble(String.format(java.util.Locale.ROOT, "%.2f", values[i]));
+                    double actual = in.decimal();
+                    if (actual != expected && !(actual == 0 && expected == 0))
+                        throw new AssertionError(values[i] + " read as " + actual);
+                    if (!in.text().equals("k") || in.hasField()) throw new AssertionError("trailing fields");
+                }
+                if (in.nextLine()) throw new AssertionError("extra line");
+            }
+        } finally {
+            Files.delete(file);
+        }
+        return true;
+    }
+
+    static boolean readsAcrossWindows() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 500; i++) sb.append(i).append(",\"").append(i).append(".25\",").append("x").append(i % 7).append('\n');
+        Path file = write(sb.toString());
+        try (CSVInput in = new CSVInput(file, 64)) {
+            for (int i = 0; i < 500; i++) {
+                if (!in.nextLine()) throw new AssertionError("missing line " + i);
+                if (in.integer() != i || in.decimal() != i + 0.25 || !in.text().equals("x" + i % 7))
+                    throw new AssertionError("line " + i);
+            }
+            if (in.nextLine()) throw new AssertionError("extra line");
+        } finally {
+            Files.delete(file);
+        }
+        Path longLine = write("1,2,3," + new String(new char[100]).replace('\0', 'a') + "\n");
+        try (CSVInput in = new CSVInput(longLine, 64)) {
+            in.nextLine();
+            throw new AssertionError("line longer than the window accepted");
+        } catch (IOException expected) {
+            // expected
+        } finally {
+            Files.delete(longLine);
+        }
+        return true;
+    }
+
+    static boolean readsLegacyFiles() throws IOException {
+        // Windows line breaks, DecimalFormat quirks and a comma locale, and
+        // a partial last line left by a recording in progress
+        String content = "MouseGlob 2.0\r\n"
+                + "Size,640x480\r\n"
+                + "1,Zones\r\n"
+                + "Scale,\"0,5\",cm/px\r\n"
+                + "Time,A x,A y,Z1,B x,B y,Z1\r\n"
+                + "0,\".5\",\"1\",0,\"2,25\",\"-3\",0,\r\n"
+                + "40,\"1\",\"1.5\",40,\"2.5\",\"-3.5\",0,Groom, Rear\r\n"
+                + "80,\"1.5\",\"2";
+        Path file = write(content);
+        try {
+            TrajectoryReader reader = new TrajectoryReader(file.toString());
+            reader.parse();
+            if (reader.getScale() != 0.5) throw new AssertionError("scale " + reader.getScale());
+            if (!reader.getNames().equals(Arrays.asList("A", "B"))) throw new AssertionError("names " + reader.getNames());
+            if (reader.getTime() != 40) throw new AssertionError("time " + reader.getTime());
+            List<Trajectory> trajectories = reader.getTrajectories();
+            if (trajectories.size() != 2 || !"B".equals(trajectories.get(1).getName())) throw new AssertionError("trajectories");
+            List<double[]> a = points(trajectories.get(0)), b = points(trajectories.get(1));
+            if (a.size() != 2 || a.get(0)[0] != 1 || a.get(0)[1] != 2 || a.get(1)[0] != 2 || a.get(1)[1] != 3)
+                throw new AssertionError("first trajectory");
+            if (b.size() != 2 || b.get(0)[0] != 4.5 || b.get(0)[1] != -6 || b.get(1)[1] != -7)
+                throw new AssertionError("second trajectory");
+            if (Math.abs(trajectories.get(0).getTotalDistance() - Math.sqrt(2)) > 1e-12) throw new AssertionError("distance");
+        } finally {
+            Files.delete(file);
+        }
+        return true;
+    }
+
+    static boolean streamsPoints() throws IOException {
+        StringBuilder sb = new StringBuilder("MouseGlob\nSize,1x1\n0,Zones\nScale,\"0\",cm/px\nTime,M x,M y\n");
+        for (int i = 0; i < 1000; i++) sb.append(i * 40).append(",\"").append(i).append("\",\"").append(-i).append("\",\n");
+        Path file = write(sb.toString());
+        try {
+            TrajectoryReader reader = new TrajectoryReader(file.toString());
+            final long[] sum = new long[2];
+            reader.read(new TrajectoryReader.PointListener() {
+                @Override
+                public void point(int trajectory, long time, double x, double y) {
+                    if (trajectory != 0 || x != -y || time != 40 * x) throw new AssertionError("point " + x);
+                    sum[0]++;
+                    sum[1] += (long) x;
+                }
+            });
+            if (sum[0] != 1000 || sum[1] != 999 * 500) throw new AssertionError("streamed " + sum[0]);
+            if (reader.getTrajectories() != null) throw new AssertionError("streaming kept points");
+        } finally {
+            Files.delete(file);
+        }
+        try {
+            new TrajectoryReader(file.toString());
+            throw new AssertionError("missing file accepted");
+        } catch (java.io.FileNotFoundException expected) {
+            // expected
+        }
+        return true;
+    }
+
+    // --- helpers ---
+    private static Path write(String content) throws IOException {
+        Path file = Files.createTempFile("trajectory", ".csv");
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static List<double[]> points(Trajectory trajectory) {
+        List<double[]> points = new ArrayList<>();
+        for (dcc.graphics.math.Vector v : trajectory) points.add(new double[] { v.x, v.y });
+        return points;
+    }
+}
@@ -0,0 +1,291 @@
+package dcc.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * Compiles fixtures and checks that the class index reads their headers,
+ * answers hierarchy and annotation queries without loading classes, and is
+ * reused from its cache until the classes change, which several projects can
+ * share. No external test framework required; run main() to execute checks.
+ */
+public class ClassIndexTests {
+
+    private static final String[][] SOURCES = {
+            { "Info", "package fixture;\n"
+                    + "import java.lang.annotation.*;\n"
+                    + "@Retention(RetentionPolicy.RUNTIME) @Inherited\n"
+                    + "public @interface Info { String value(); int[] sizes() default {}; Thread.State state() default Thread.State.NEW;"
+                    + " Class<?> type() default Object.class; Deprecated nested() default @Deprecated; }\n" },
+            { "Hidden", "package fixture;\n"
+                    + "import java.lang.annotation.*;\n"
+                    + "@Retention(RetentionPolicy.CLASS)\n"
+                    + "public @interface Hidden {}\n" },
+            { "Report", "package fixture;\n"
+                    + "public interface Report { long BIG = 1L << 40; double PI = 3.14; }\n" },
+            { "Base", "package fixture;\n"
+                    + "@Info(value = \"base\", sizes = { 1, 2 }, state = Thread.State.BLOCKED, type = String.class)\n"
+                    + "public abstract class Base implements Report {}\n" },
+            { "Child", "package fixture;\n"
+                    + "@Hidden @Deprecated\n"
+                    + "public class Child extends Base {\n"
+                    + "    static { System.setProperty(\"fixture.initialised\", \"true\"); }\n"
+                    + "    String s = \"\\u00e9t\\u00e9 \\ud83d\\udc2d\";\n"
+                    + "    public static class Inner implements Runnable { public void run() {} }\n"
+                    + "}\n" },
+            { "Timed", "package fixture;\n"
+                    + "public class Timed extends dcc.util.ClassIndexTests {}\n" },
+            { "Plain", "package fixture;\n"
+                    + "public class Plain {}\n" } };
+
+    private static final List<File> TEMP = new ArrayList<>();
+
+    public static void main(String[] args) {
+        boolean ok = true;
+        try {
+            ok &= readsHeaders();
+            ok &= queriesWithoutLoading();
+            ok &= reusesCacheUntilClassesChange();
+            ok &= indexesJars();
+            ok &= jarCacheFollowsContent();
+            ok &= saveKeepsOtherProjects();
+        } catch (Throwable t) {
+            System.out.println("[DEBUG_LOG] ClassIndex tests FAILED: " + t);
+            t.printStackTrace();
+            System.exit(1);
+        } finally {
+            for (File file : TEMP) deleteTree(file);
+        }
+        System.out.println("[DEBUG_LOG] ClassIndex tests " + (ok ? "OK" : "FAILED"));
+    }
+
+    static boolean readsHeaders() throws IOException {
+        ClassIndex index = new ClassIndex(null);
+        index.add(compile().toFile(), true);
+        if (index.getNames().size() != 8) throw new AssertionError("names " + index.getNames());
+
+        ClassHeader child = index.get("fixture.Child");
+        if (!"fixture.Base".equals(child.getSuperName())) throw new AssertionError("super " + child);
+        if (!child.getAnnotations().equals(Arrays.asList("java.lang.Deprecated")))
+            throw new AssertionError("annotations " + child.getAnnotations());
+        ClassHeader base = index.get("fixture.Base");
+        if (!base.getInterfaces().equals(Arrays.asList("fixture.Report"))) throw new AssertionError("interfaces " + base);
+        if (!base.getAnnotations().equals(Arrays.asList("fixture.Info"))) throw new AssertionError("annotations " + base);
+        ClassHeader inner = index.get("fixture.Child$Inner");
+        if (!inner.getInterfaces().equals(Arrays.asList("java.lang.Runnable"))) throw new AssertionError("inner " + inner);
+        if (index.get("java.lang.Object") != null) throw new AssertionError("platform class indexed");
+        return true;
+    }
+
+    static boolean queriesWithoutLoading() throws Exception {
+        ClassIndex index = new ClassIndex(null);
+        index.add(compile().toFile(), true);
+
+        // Timed's ancestry leaves the index, so it cannot be ruled out
+        Set<String> reports = index.getSubtypes("fixture.Report");
+        if (!reports.equals(set("fixture.Report", "fixture.Base", "fixture.Child", "fixture.Timed")))
+            throw new AssertionError("subtypes " + reports);
+        Set<String> runnables = index.getSubtypes("java.lang.Runnable");
+        if (!runnables.equals(set("fixture.Child$Inner", "fixture.Timed")))
+            throw new AssertionError("runnables " + runnables);
+
+        Class<? extends java.lang.annotation.Annotation> info = Class.forName("fixture.Info", false,
+                index.load("fixture.Info").getClassLoader()).asSubclass(java.lang.annotation.Annotation.class);
+        // Inherited, so Child carries it too
+        if (!index.getAnnotated(info).equals(set("fixture.Base", "fixture.Child")))
+            throw new AssertionError("annotated " + index.getAnnotated(info));
+        if (!index.getAnnotated(Deprecated.class).equals(set("fixture.Child")))
+            throw new AssertionError("deprecated " + index.getAnnotated(Deprecated.class));
+
+        Class<?> child = index.load("fixture.Child");
+        if (child == null || !child.isAnnotationPresent(info)) throw new AssertionError("loaded class");
+        if (System.getProperty("fixture.initialised") != null) throw new AssertionError("class initialised on load");
+        if (index.load("fixture.Missing") != null) throw new AssertionError("unindexed class loaded");
+        return true;
+    }
+
+    static boolean reusesCacheUntilClassesChange() throws IOException {
+        Path classes = compile();
+        File cache = tempFile("class-index", ".bin");
+        cache.delete();
+
+        ClassIndex first = new ClassIndex(cache);
+        first.add(classes.toFile(), true);
+        if (!first.isChanged()) throw new AssertionError("not read");
+        first.save();
+        if (!cache.isFile()) throw new AssertionError("cache not written");
+
+        ClassIndex second = new ClassIndex(cache);
+        second.add(classes.toFile(), true);
+        if (second.isChanged()) throw new AssertionError("cache not reused");
+        if (!second.getNames().equals(first.getNames())) throw new AssertionError("cached names " + second.getNames());
+        if (!second.get("fixture.Base").getInterfaces().equals(first.get("fixture.Base").getInterfaces())
+                || !"java.lang.Object".equals(second.get("fixture.Plain").getSuperName()))
+            throw new AssertionError("cached headers");
+        if (second.load("fixture.Plain") == null) throw new AssertionError("cached class not loadable");
+
+        // Removing a class changes the hash even if the times do not
+        Files.delete(classes.resolve("fixture/Plain.class"));
+        ClassIndex third = new ClassIndex(cache);
+        third.add(classes.toFile(), true);
+        if (!third.isChanged() || third.get("fixture.Plain") != null) throw new AssertionError("stale cache used");
+        third.save();
+
+        // Garbage in the cache is ignored
+        Files.write(cache.toPath(), "not an index".getBytes(StandardCharsets.UTF_8));
+        ClassIndex fourth = new ClassIndex(cache);
+        fourth.add(classes.toFile(), true);
+        if (!fourth.isChanged() || fourth.get("fixture.Child") == null) throw new AssertionError("corrupt cache");
+        cache.delete();
+        return true;
+    }
+
+    static boolean indexesJars() throws IOException {
+        Path classes = compile();
+        Path ext = tempDir("ext");
+        jar(classes, ext.resolve("module.jar"), false);
+        ClassIndex index = new ClassIndex(null);
+        index.add(ext.toFile(), true);
+        if (!index.getSubtypes("fixture.Base").equals(set("fixture.Base", "fixture.Child", "fixture.Timed")))
+            throw new AssertionError("jar subtypes " + index.getSubtypes("fixture.Base"));
+        if (index.load("fixture.Child") == null) throw new AssertionError("class not loaded from jar");
+        return true;
+    }
+
+    static boolean jarCacheFollowsContent() throws IOException {
+        Path classes = compile();
+        Path jar = tempDir("ext").resolve("module.jar");
+        File cache = tempFile("class-index", ".bin");
+        jar(classes, jar, false);
+        ClassIndex first = new ClassIndex(cache);
+        first.add(jar.toFile(), false);
+        first.save();
+
+        // Rebuilt with the same classes, later and with entries in another order
+        jar(classes, jar, true);
+        Files.setLastModifiedTime(jar, FileTime.fromMillis(System.currentTimeMillis() + 60_000));
+        ClassIndex second = new ClassIndex(cache);
+        second.add(jar.toFile(), false);
+        if (second.isChanged()) throw new AssertionError("jar with the same classes read again");
+
+        // A changed class is read again even though the size of the jar may not change
+        Path plain = classes.resolve("fixture/Plain.class");
+        byte[] bytes = Files.readAllBytes(plain);
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(plain, bytes);
+        jar(classes, jar, false);
+        ClassIndex third = new ClassIndex(cache);
+        third.add(jar.toFile(), false);
+        if (!third.isChanged()) throw new AssertionError("changed jar not read again");
+        cache.delete();
+        return true;
+    }
+
+    static boolean saveKeepsOtherProjects() throws IOException {
+        Path project1 = compile(), project2 = compile();
+        File cache = tempFile("class-index", ".bin");
+        ClassIndex first = new ClassIndex(cache);
+        first.add(project1.toFile(), true);
+        first.save();
+        ClassIndex second = new ClassIndex(cache);
+        second.add(project2.toFile(), true);
+        second.save();
+
+        // Both projects are still cached
+        for (Path project : Arrays.asList(project1, project2)) {
+            ClassIndex index = new ClassIndex(cache);
+            index.add(project.toFile(), true);
+            if (index.isChanged()) throw new AssertionError(project + " dropped from the cache");
+        }
+
+        // A project that no longer exists is dropped on the next save
+        deleteTree(project2.toFile());
+        Files.delete(project1.resolve("fixture/Plain.class"));
+        ClassIndex third = new ClassIndex(cache);
+        third.add(project1.toFile(), true);
+        third.save();
+        Set<String> keys = new ClassIndex(cache).getCachedKeys();
+        if (keys.size() != 1 || !keys.iterator().next().startsWith(project1.toString()))
+            throw new AssertionError("cached " + keys);
+        cache.delete();
+        return true;
+    }
+
+    // --- helpers ---
+    private static Set<String> set(String... names) {
+        return new HashSet<>(Arrays.asList(names));
+    }
+
+    private static void jar(Path classes, Path jar, boolean reversed) throws IOException {
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar));
+                Stream<Path> files = Files.walk(classes)) {
+            List<Path> list = files.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+            if (reversed) Collections.reverse(list);
+            for (Path file : list) {
+                out.putNextEntry(new JarEntry(classes.relativize(file).toString().replace(File.separatorChar, '/')));
+                Files.copy(file, out);
+                out.closeEntry();
+            }
+        }
+    }
+
+    /** Creates a temporary directory, deleted when the checks end. */
+    private static Path tempDir(String prefix) throws IOException {
+        Path dir = Files.createTempDirectory(prefix);
+        TEMP.add(dir.toFile());
+        return dir;
+    }
+
+    /** Creates a temporary file, deleted when the checks end. */
+    private static File tempFile(String prefix, String suffix) throws IOException {
+        File file = Files.createTempFile(prefix, suffix).toFile();
+        TEMP.add(file);
+        return file;
+    }
+
+    private static void deleteTree(File file) {
+        File[] children = file.listFiles();
+        if (children != null)
+            for (File child : children)
+                deleteTree(child);
+        file.delete();
+    }
+
+    private static Path compile() throws IOException {
+        Path dir = tempDir("class-index");
+        Path sources = Files.createDirectories(dir.resolve("src/fixture"));
+        Path classes = Files.createDirectories(dir.resolve("classes"));
+        List<File> files = new ArrayList<>();
+        for (String[] source : SOURCES) {
+            Path file = sources.resolve(source[0] + ".java");
+            Files.write(file, source[1].getBytes(StandardCharsets.UTF_8));
+            files.add(file.toFile());
+        }
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        try (StandardJavaFileManager fm = compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8)) {
+            List<String> options = Arrays.asList("-d", classes.toString(), "-proc:none",
+                    "-classpath", System.getProperty("java.class.path"));
+            if (!compiler.getTask(null, fm, null, options, null, fm.getJavaFileObjectsFromFiles(files)).call())
+                throw new AssertionError("fixtures did not compile");
+        }
+        return classes;
+    }
+}
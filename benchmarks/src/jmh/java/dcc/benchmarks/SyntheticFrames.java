@@ -0,0 +1,71 @@
+package dcc.benchmarks;
+
+import dcc.graphics.Color;
+import dcc.graphics.image.Image;
+
+import java.util.Random;
+
+/**
+ * Deterministic synthetic video frames for the benchmarks: a lit arena with a
+ * brightness gradient and sensor noise, and a bright elliptical "mouse" that moves
+ * along a circle from frame to frame.
+ */
+public final class SyntheticFrames {
+    private SyntheticFrames() {}
+
+    /** Frame sizes benchmarked by every suite, selected through a {@code resolution} parameter. */
+    public static int width(String resolution) {
+        switch (resolution) {
+            case "480p": return 640;
+            case "720p": return 1280;
+            case "1080p": return 1920;
+            default: throw new IllegalArgumentException("Unknown resolution " + resolution);
+        }
+    }
+
+    public static int height(String resolution) {
+        switch (resolution) {
+            case "480p": return 480;
+            case "720p": return 720;
+            case "1080p": return 1080;
+            default: throw new IllegalArgumentException("Unknown resolution " + resolution);
+        }
+    }
+
+    /** Centre of the blob in frame {@code index}. */
+    public static double blobX(int width, int index) {
+        return width / 2.0 + width / 4.0 * Math.cos(index * 0.05);
+    }
+
+    public static double blobY(int height, int index) {
+        return height / 2.0 + height / 4.0 * Math.sin(index * 0.05);
+    }
+
+    /** Blob radius, scaled with the frame like a mouse seen by a fixed camera. */
+    public static int blobRadius(int height) {
+        return Math.max(8, height / 24);
+    }
+
+    public static Image frame(int width, int height, int index) {
+        Random rnd = new Random(31L * index + width);
+        int[] pixels = new int[width * height];
+        double cx = blobX(width, index), cy = blobY(height, index);
+        double r = blobRadius(height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                double dx = (x - cx) / (1.6 * r), dy = (y - cy) / r;
+                int v = dx * dx + dy * dy <= 1.0 ? 220 : 60 + 40 * x / width;
+                v += rnd.nextInt(9) - 4;
+                int b = Math.max(0, Math.min(255, v));
+                pixels[y * width + x] = Color.rgb(b, Math.max(0, b - 10), Math.min(255, b + 5));
+            }
+        }
+        return new Image(width, height, pixels);
+    }
+
+    public static Image[] frames(int width, int height, int count) {
+        Image[] frames = new Image[count];
+        for (int i = 0; i < count; i++) frames[i] = frame(width, height, i);
+        return frames;
+    }
+}
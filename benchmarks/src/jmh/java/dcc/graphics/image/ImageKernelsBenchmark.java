@@ -0,0 +1,90 @@
+package dcc.graphics.image;
+
+import dcc.benchmarks.SyntheticFrames;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+
+/**
+ * Full-frame image kernels used on every tracked frame.
+ *
+ * Destinations are allocated once in setup and passed in, as the tracking loop does,
+ * so the reported allocation rate is what the kernels allocate internally.
+ */
+@State(Scope.Thread)
+public class ImageKernelsBenchmark {
+    private static final int[][] SQUARE_3X3 = StructuringElementFactory.rectangle(3, 3);
+    private static final double[][] BOX_5X5 = box(5);
+
+    @Param({"480p", "720p", "1080p"})
+    public String resolution;
+
+    private Image frame;
+    private GrayscaleImage gray;
+    private BinaryImage binary;
+
+    private Image colorOut;
+    private GrayscaleImage grayOut;
+    private BinaryImage binaryOut;
+
+    @Setup
+    public void setUp() {
+        int w = SyntheticFrames.width(resolution), h = SyntheticFrames.height(resolution);
+        frame = SyntheticFrames.frame(w, h, 0);
+        gray = frame.luminance(null);
+        binary = gray.threshold(128, (BinaryImage) null);
+        colorOut = new Image(w, h);
+        grayOut = new GrayscaleImage(w, h);
+        binaryOut = new BinaryImage(w, h);
+    }
+
+    @Benchmark
+    public GrayscaleImage luminance() {
+        return frame.luminance(grayOut);
+    }
+
+    @Benchmark
+    public BinaryImage threshold() {
+        return gray.threshold(128, binaryOut);
+    }
+
+    @Benchmark
+    public BinaryImage dilate() {
+        return binary.dilate(SQUARE_3X3, binaryOut);
+    }
+
+    @Benchmark
+    public BinaryImage erode() {
+        return binary.erode(SQUARE_3X3, binaryOut);
+    }
+
+    @Benchmark
+    public BinaryImage open() {
+        return binary.open(SQUARE_3X3, binaryOut);
+    }
+
+    @Benchmark
+    public Image filterColor() {
+        return frame.filter(BOX_5X5, colorOut);
+    }
+
+    @Benchmark
+    public GrayscaleImage filterGray() {
+        return gray.filter(BOX_5X5, grayOut);
+    }
+
+    @Benchmark
+    public GrayscaleImage blurGray() {
+        return gray.blur(2.5, grayOut);
+    }
+
+    private static double[][] box(int size) {
+        double[][] k = new double[size][size];
+        for (double[] row : k) Arrays.fill(row, 1.0 / (size * size));
+        return k;
+    }
+}
@@ -0,0 +1,49 @@
+package dcc.graphics.math.stats;
+
+import dcc.benchmarks.SyntheticFrames;
+import dcc.graphics.Box;
+import dcc.graphics.image.GrayscaleImage;
+import dcc.graphics.math.ScalarMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Image moments, as computed by MomentsAnalysis on each tracker window, and over a
+ * whole frame for scale.
+ */
+@State(Scope.Thread)
+public class CentralMomentsBenchmark {
+    /** Radius of a tracker window with the default tracker size. */
+    private static final int TRACKER_SIZE = 20;
+
+    @Param({"480p", "720p", "1080p"})
+    public String resolution;
+
+    private ScalarMap frameMap;
+    private ScalarMap windowMap;
+    private final CentralMoments moments = new CentralMoments();
+
+    @Setup
+    public void setUp() {
+        int w = SyntheticFrames.width(resolution), h = SyntheticFrames.height(resolution);
+        GrayscaleImage gray = SyntheticFrames.frame(w, h, 0).luminance(null);
+        frameMap = new ScalarMap(gray);
+        Box window = Box.fromRadius(SyntheticFrames.blobX(w, 0), SyntheticFrames.blobY(h, 0), TRACKER_SIZE);
+        windowMap = new ScalarMap(gray.get(window.toInt()));
+    }
+
+    @Benchmark
+    public CentralMoments frame() {
+        moments.calculate(frameMap, true);
+        return moments;
+    }
+
+    @Benchmark
+    public CentralMoments trackerWindow() {
+        moments.calculate(windowMap, true);
+        return moments;
+    }
+}
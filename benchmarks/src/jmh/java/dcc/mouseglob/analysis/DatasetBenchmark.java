@@ -0,0 +1,92 @@
+package dcc.mouseglob.analysis;
+
+import dcc.benchmarks.SyntheticFrames;
+import dcc.inject.Context;
+import dcc.inject.Indexer;
+import dcc.inject.Inject;
+import dcc.inject.InjectionPlan;
+import dcc.mouseglob.analysis.Dataset.Time;
+import dcc.mouseglob.analysis.analyses.DistanceAnalysis;
+import dcc.mouseglob.analysis.analyses.PositionAnalysis;
+import dcc.mouseglob.maze.BoundariesManager;
+import dcc.mouseglob.report.Report;
+import dcc.mouseglob.tracking.Tracker;
+import dcc.mouseglob.tracking.TrackingManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.awt.Component;
+
+/**
+ * Creating the dataset of a new tracker, and instantiating a report from it.
+ *
+ * With {@code plans=cached} the injection plans are reused, as they are after the
+ * first tracker. With {@code plans=rebuilt} they are dropped before each operation, so
+ * every plan is built again: its members are looked up from the generated injection
+ * index, or scanned for classes outside it, and their method handles created. The
+ * difference is what the plan cache saves on each tracker; it is not a measure of the
+ * injector that scanned every class by reflection on each call.
+ */
+@State(Scope.Thread)
+public class DatasetBenchmark {
+
+    @Param({"cached", "rebuilt"})
+    public String plans;
+
+    private AnalysesManager analysesManager;
+    private Tracker tracker;
+    private Dataset dataset;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        int w = SyntheticFrames.width("480p"), h = SyntheticFrames.height("480p");
+        Context context = new Context();
+        context.inject(Indexer.load(TrackingManager.class, BoundariesManager.class));
+        TrackingManager trackingManager = context.getInstance(TrackingManager.class);
+        BoundariesManager boundariesManager = context.getInstance(BoundariesManager.class);
+        boundariesManager.newFrame(SyntheticFrames.frame(w, h, 0), 0L);
+        analysesManager = context.getInstance(AnalysesManager.class);
+
+        double x = SyntheticFrames.blobX(w, 0), y = SyntheticFrames.blobY(h, 0);
+        tracker = new Tracker(x, y, trackingManager.getTrackerSize(), boundariesManager.getMask(x, y));
+        dataset = analysesManager.getNewDataset(tracker);
+    }
+
+    @Benchmark
+    public Dataset newDataset() {
+        if (plans.equals("rebuilt")) InjectionPlan.clearCache();
+        return analysesManager.getNewDataset(tracker);
+    }
+
+    @Benchmark
+    public Report newReport() {
+        if (plans.equals("rebuilt")) InjectionPlan.clearCache();
+        return dataset.getReport(ProbeReport.class);
+    }
+
+    /**
+     * A report with the usual kinds of dependencies and no view, so that only the
+     * injection is measured.
+     */
+    public static class ProbeReport extends Report {
+        @Inject
+        private DistanceAnalysis distance;
+        private final PositionAnalysis position;
+        private final Time time;
+
+        @Inject
+        public ProbeReport(PositionAnalysis position, Time time) {
+            this.position = position;
+            this.time = time;
+        }
+
+        @Override
+        protected Component getView() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package dcc.mouseglob.maze;
+
+import dcc.benchmarks.SyntheticFrames;
+import dcc.graphics.Box;
+import dcc.graphics.image.BinaryImage;
+import dcc.graphics.image.Image;
+import dcc.graphics.image.PackedBinaryImage;
+import dcc.inject.Context;
+import dcc.inject.Indexer;
+import dcc.mouseglob.maze.Boundary.BoundaryType;
+import dcc.mouseglob.shape.Circle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Masking a thresholded frame with the maze boundaries: the per-tracker window applied
+ * on every frame, a full frame, and recomputing the mask after the boundaries change.
+ *
+ * Applying a mask only clears pixels, so applying it again to the same image does the
+ * same work and the images need not be restored between invocations.
+ */
+@State(Scope.Thread)
+public class BoundaryMaskBenchmark {
+    private static final int TRACKER_SIZE = 20;
+
+    @Param({"480p", "720p", "1080p"})
+    public String resolution;
+
+    private BoundaryMask mask;
+    private BinaryImage frame;
+    private Box.Int frameBounds;
+    private BinaryImage window;
+    private PackedBinaryImage packedWindow;
+    private Box.Int windowBounds;
+
+    @Setup
+    public void setUp() {
+        int w = SyntheticFrames.width(resolution), h = SyntheticFrames.height(resolution);
+        Image image = SyntheticFrames.frame(w, h, 0);
+
+        Context context = new Context();
+        context.inject(Indexer.load(BoundariesManager.class));
+        BoundariesManager boundaries = context.getInstance(BoundariesManager.class);
+        // A round arena with a hole in the middle, so both boundary types are evaluated
+        boundaries.add(new Boundary(new Circle(w / 2.0, h / 2.0, h * 0.45), BoundaryType.POSITIVE));
+        boundaries.add(new Boundary(new Circle(w / 2.0, h / 2.0, h * 0.05), BoundaryType.NEGATIVE));
+        boundaries.newFrame(image, 0L);
+
+        double x = SyntheticFrames.blobX(w, 0), y = SyntheticFrames.blobY(h, 0);
+        mask = boundaries.getMask(x, y);
+
+        frame = image.luminance(null).threshold(128, (BinaryImage) null);
+        frameBounds = frame.getBox().toInt();
+        windowBounds = Box.fromRadius(x, y, TRACKER_SIZE).clamp(frame.getBox()).toInt();
+        window = frame.get(windowBounds);
+        packedWindow = PackedBinaryImage.pack(frame, windowBounds, null);
+    }
+
+    @Benchmark
+    public BinaryImage applyTrackerWindow() {
+        mask.apply(window, windowBounds);
+        return window;
+    }
+
+    @Benchmark
+    public PackedBinaryImage applyPackedTrackerWindow() {
+        mask.apply(packedWindow, windowBounds);
+        return packedWindow;
+    }
+
+    @Benchmark
+    public BinaryImage applyFrame() {
+        mask.apply(frame, frameBounds);
+        return frame;
+    }
+
+    @Benchmark
+    public BoundaryMask recalculate() {
+        mask.calculate();
+        return mask;
+    }
+}
@@ -0,0 +1,68 @@
+package dcc.mouseglob.tracking;
+
+import dcc.benchmarks.SyntheticFrames;
+import dcc.graphics.image.BinaryImage;
+import dcc.graphics.image.Image;
+import dcc.inject.Context;
+import dcc.inject.Indexer;
+import dcc.mouseglob.maze.BoundariesManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * One tracker update: crop, boundary mask, opening, blur and all analyses of the
+ * tracker's dataset, following a blob through a short clip of thresholded frames.
+ *
+ * Every update appends to the tracker's dataset, so a fresh tracker is created for
+ * each measurement iteration to keep the series from growing without bound.
+ */
+@State(Scope.Thread)
+public class TrackerBenchmark {
+    private static final int CLIP_LENGTH = 64;
+
+    @Param({"480p", "720p", "1080p"})
+    public String resolution;
+
+    private BinaryImage[] clip;
+    private TrackingManager trackingManager;
+    private BoundariesManager boundariesManager;
+    private Tracker tracker;
+    private int frame;
+
+    @Setup(Level.Trial)
+    public void setUpClip() {
+        int w = SyntheticFrames.width(resolution), h = SyntheticFrames.height(resolution);
+        Image[] frames = SyntheticFrames.frames(w, h, CLIP_LENGTH);
+        clip = new BinaryImage[CLIP_LENGTH];
+        for (int i = 0; i < CLIP_LENGTH; i++)
+            clip[i] = frames[i].luminance(null).threshold(128, (BinaryImage) null);
+
+        Context context = new Context();
+        context.inject(Indexer.load(TrackingManager.class, BoundariesManager.class));
+        trackingManager = context.getInstance(TrackingManager.class);
+        boundariesManager = context.getInstance(BoundariesManager.class);
+        boundariesManager.newFrame(frames[0], 0L);
+    }
+
+    @Setup(Level.Iteration)
+    public void setUpTracker() {
+        if (tracker != null) trackingManager.remove(tracker);
+        int w = clip[0].getWidth(), h = clip[0].getHeight();
+        double x = SyntheticFrames.blobX(w, 0), y = SyntheticFrames.blobY(h, 0);
+        tracker = new Tracker(x, y, trackingManager.getTrackerSize(), boundariesManager.getMask(x, y));
+        trackingManager.add(tracker);
+        frame = 0;
+    }
+
+    @Benchmark
+    public Tracker update() {
+        // 25 fps timestamps
+        tracker.update(clip[frame % CLIP_LENGTH], frame * 40L);
+        frame++;
+        return tracker;
+    }
+}
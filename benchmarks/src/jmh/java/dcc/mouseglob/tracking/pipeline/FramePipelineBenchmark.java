@@ -0,0 +1,60 @@
+package dcc.mouseglob.tracking.pipeline;
+
+import dcc.benchmarks.SyntheticFrames;
+import dcc.graphics.image.GrayscaleImage;
+import dcc.graphics.image.Image;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * A full run of the default tracking pipeline (grayscale, running background,
+ * adaptive threshold, opening) per frame, with and without stage fusion, on colour
+ * frames and on frames decoded straight to luminance.
+ */
+@State(Scope.Thread)
+public class FramePipelineBenchmark {
+    private static final int CLIP_LENGTH = 16;
+
+    /** Same stages as resource/pipelines/default.json. */
+    private static final String DEFAULT_PIPELINE = "{\"stages\": ["
+            + "{\"type\": \"grayscale\"},"
+            + "{\"type\": \"background\", \"mode\": \"running\", \"alpha\": 0.02},"
+            + "{\"type\": \"adaptiveThreshold\", \"mode\": \"adaptiveMean\", \"dark\": false, \"blockSize\": 15, \"c\": 5},"
+            + "{\"type\": \"morphology\", \"operation\": \"open\", \"kernel\": \"3x3\"}"
+            + "]}";
+
+    @Param({"480p", "720p", "1080p"})
+    public String resolution;
+
+    @Param({"true", "false"})
+    public boolean fusion;
+
+    @Param({"false", "true"})
+    public boolean grayscaleInput;
+
+    private FramePipeline pipeline;
+    private Image[] clip;
+    private GrayscaleImage background;
+    private int frame;
+
+    @Setup
+    public void setUp() {
+        int w = SyntheticFrames.width(resolution), h = SyntheticFrames.height(resolution);
+        clip = SyntheticFrames.frames(w, h, CLIP_LENGTH);
+        if (grayscaleInput)
+            for (int i = 0; i < CLIP_LENGTH; i++) clip[i] = clip[i].luminance(null);
+        pipeline = JsonPipelineLoader.parse(DEFAULT_PIPELINE);
+        pipeline.setFusion(fusion);
+        background = pipeline.run(clip[0], null).background;
+    }
+
+    @Benchmark
+    public PipelineContext run() {
+        PipelineContext ctx = pipeline.run(clip[frame++ % CLIP_LENGTH], background);
+        background = ctx.background;
+        return ctx;
+    }
+}